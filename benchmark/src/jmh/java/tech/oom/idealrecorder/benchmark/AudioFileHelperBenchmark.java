@@ -0,0 +1,87 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.AudioFileHelper;
+import tech.oom.idealrecorder.file.AudioFileListener;
+
+/**
+ * 录音文件写入 每次操作保存一帧 每轮迭代开始时新建文件 结束时写入文件头并关闭
+ * <p>
+ * 帧长度为字节数 320/882/3200/8820 分别对应16位单声道 16kHz 10ms、44.1kHz 10ms、16kHz 100ms、44.1kHz 100ms
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AudioFileHelperBenchmark {
+    @Param({"320", "882", "3200", "8820"})
+    int frameBytes;
+
+    private byte[] frame;
+    private ByteBuffer directFrame;
+    private File file;
+    private AudioFileHelper helper;
+
+    @Setup(Level.Trial)
+    public void setupFrame() {
+        frame = new byte[frameBytes];
+        new Random(42).nextBytes(frame);
+        directFrame = ByteBuffer.allocateDirect(frameBytes);
+        directFrame.put(frame).clear();
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        file = File.createTempFile("bench", ".wav");
+        helper = new AudioFileHelper(new AudioFileListener() {
+            @Override
+            public void onFailure(String reason) {
+                throw new IllegalStateException(reason);
+            }
+
+            @Override
+            public void onSuccess(String savePath) {
+            }
+
+            @Override
+            public void onSegmentComplete(String path, long startSample, long endSample) {
+            }
+        });
+        helper.setRecorderConfig(new IdealRecorder.RecordConfig());
+        helper.setSavePath(file.getAbsolutePath());
+        helper.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        helper.finish();
+        file.delete();
+    }
+
+    @Benchmark
+    public void save() {
+        helper.save(frame, 0, frameBytes);
+    }
+
+    @Benchmark
+    public void saveDirect() {
+        directFrame.clear();
+        helper.save(directFrame);
+    }
+}
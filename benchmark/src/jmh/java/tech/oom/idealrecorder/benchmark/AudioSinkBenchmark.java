@@ -0,0 +1,57 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.sink.AudioSinkDispatcher;
+import tech.oom.idealrecorder.sink.NullAudioSink;
+
+/**
+ * 将一帧20ms 16kHz的录音数据分发到多个sink 每次操作为录音线程分发一帧的时间
+ * <p>
+ * sink使用 {@link AudioSinkDispatcher#POLICY_BLOCK} 避免丢帧影响结果；配合 -prof gc 查看每帧的内存分配，
+ * 帧在所有sink间共用并循环使用 只有队列由空变为非空、提交到执行器时有少量分配
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AudioSinkBenchmark {
+    @Param({"1", "4"})
+    int sinks;
+
+    private final byte[] frame = new byte[640];
+    private final FrameInfo info = new FrameInfo();
+    private AudioSinkDispatcher dispatcher;
+
+    @Setup(Level.Iteration)
+    public void open() {
+        dispatcher = new AudioSinkDispatcher(null);
+        for (int i = 0; i < sinks; i++) {
+            dispatcher.addSink(new NullAudioSink(), null, AudioSinkDispatcher.DEFAULT_CAPACITY,
+                    AudioSinkDispatcher.POLICY_BLOCK);
+        }
+        dispatcher.open(new IdealRecorder.RecordConfig());
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        dispatcher.finish();
+    }
+
+    @Benchmark
+    public void write() {
+        dispatcher.write(frame, 0, frame.length, info);
+    }
+}
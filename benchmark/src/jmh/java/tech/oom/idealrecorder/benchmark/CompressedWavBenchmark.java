@@ -0,0 +1,76 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.AudioWriter;
+import tech.oom.idealrecorder.file.BufferedAudioWriter;
+import tech.oom.idealrecorder.file.CompressedAudioWriter;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * G.711 和 IMA ADPCM 编码写入文件 每次操作写入一帧20ms的16kHz单声道录音
+ * <p>
+ * 配合 -prof gc 查看每帧的内存分配 编码不应分配内存；wav 为不压缩直接写入的对照
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressedWavBenchmark {
+    @Param({"wav", "mulaw", "alaw", "ima"})
+    String format;
+
+    private IdealRecorder.RecordConfig config;
+    private byte[] frame;
+    private File file;
+    private AudioWriter writer;
+
+    @Setup(Level.Trial)
+    public void setupWriter() {
+        config = new IdealRecorder.RecordConfig().setSampleRate(16000);
+        frame = new byte[16000 / 50 * 2];
+        for (int i = 0; i < frame.length / 2; i++) {
+            int s = (int) (8000 * Math.sin(2 * Math.PI * 440 * i / 16000));
+            frame[i * 2] = (byte) s;
+            frame[i * 2 + 1] = (byte) (s >> 8);
+        }
+        if ("wav".equals(format)) {
+            writer = new BufferedAudioWriter();
+        } else {
+            int formatTag = "mulaw".equals(format) ? PcmToWavUtil.WAVE_FORMAT_MULAW
+                    : "alaw".equals(format) ? PcmToWavUtil.WAVE_FORMAT_ALAW : PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM;
+            writer = new CompressedAudioWriter(new BufferedAudioWriter(), config, formatTag);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        file = File.createTempFile("bench", ".wav");
+        writer.open(file, PcmToWavUtil.getWaveFileHeader(config, 0));
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        writer.close(PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength()));
+        file.delete();
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        writer.write(frame, 0, frame.length);
+        return writer.getDataLength();
+    }
+}
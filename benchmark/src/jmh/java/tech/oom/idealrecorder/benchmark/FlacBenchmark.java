@@ -0,0 +1,112 @@
+package tech.oom.idealrecorder.benchmark;
+
+import android.media.AudioFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.AudioWriter;
+import tech.oom.idealrecorder.file.BufferedAudioWriter;
+import tech.oom.idealrecorder.file.FlacAudioWriter;
+import tech.oom.idealrecorder.file.FlacEncoder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * FLAC编码和写入文件 每次操作写入 {@link #SECONDS} 秒的录音 结果为每秒录音的耗时
+ * <p>
+ * speech 为基频变化的谐波加上音节包络和少量噪声 接近语音录音；noise 为白噪声 是压缩率的下限；
+ * threads 为编码线程数 wav 为不压缩直接写入的对照
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FlacBenchmark {
+    static final int SECONDS = 30;
+
+    @Param({"16000-mono", "44100-stereo"})
+    String format;
+
+    @Param({"speech", "noise"})
+    String signal;
+
+    @Param({"wav", "0", "1", "2", "4"})
+    String threads;
+
+    private IdealRecorder.RecordConfig config;
+    private byte[] pcm;
+    private File file;
+    private AudioWriter writer;
+
+    @Setup
+    public void setup() throws IOException {
+        String[] parts = format.split("-");
+        config = new IdealRecorder.RecordConfig().setSampleRate(Integer.parseInt(parts[0]))
+                .setChannelConfig("stereo".equals(parts[1]) ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO);
+        pcm = generate(config.getSampleRate(), config.getChannelCount(), "speech".equals(signal));
+        file = File.createTempFile("bench", ".flac");
+        if ("wav".equals(threads)) {
+            writer = new BufferedAudioWriter();
+        } else {
+            writer = new FlacAudioWriter(new BufferedAudioWriter(), config, FlacEncoder.DEFAULT_BLOCK_SIZE,
+                    Integer.parseInt(threads));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SECONDS)
+    public long encode() throws IOException {
+        writer.open(file, PcmToWavUtil.getWaveFileHeader(config, 0));
+        // 按20ms一帧写入 与录音时相同
+        int frameBytes = config.getSampleRate() / 50 * config.getChannelCount() * 2;
+        for (int offset = 0; offset < pcm.length; offset += frameBytes) {
+            writer.write(pcm, offset, Math.min(frameBytes, pcm.length - offset));
+        }
+        writer.close(PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength()));
+        return file.length();
+    }
+
+    private static byte[] generate(int sampleRate, int channels, boolean speech) {
+        int frames = sampleRate * SECONDS;
+        byte[] data = new byte[frames * channels * 2];
+        Random random = new Random(42);
+        double phase = 0;
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / sampleRate;
+            double pitch = 120 + 30 * Math.sin(2 * Math.PI * 0.5 * t);
+            phase += 2 * Math.PI * pitch / sampleRate;
+            double envelope = 0.5 * (1 - Math.cos(2 * Math.PI * 4 * t));
+            double voice = 0;
+            for (int h = 1; h <= 10; h++) {
+                voice += Math.sin(h * phase) / h;
+            }
+            for (int c = 0; c < channels; c++) {
+                double v = speech ? voice * envelope * 6000 * (c == 0 ? 1 : 0.8) + random.nextGaussian() * 30
+                        : random.nextGaussian() * 8000;
+                int s = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(v)));
+                int o = (i * channels + c) * 2;
+                data[o] = (byte) s;
+                data[o + 1] = (byte) (s >> 8);
+            }
+        }
+        return data;
+    }
+}
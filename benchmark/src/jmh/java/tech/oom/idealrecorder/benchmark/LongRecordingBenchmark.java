@@ -0,0 +1,91 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.AudioWriter;
+import tech.oom.idealrecorder.file.BufferedAudioWriter;
+import tech.oom.idealrecorder.file.MappedAudioWriter;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 长时间录音的文件写入 每次操作写入一个完整的WAV文件
+ * <p>
+ * 数据为16kHz 单声道 16位 20ms一帧；randomAccessFile 为每帧调用一次 {@link RandomAccessFile#write(byte[], int, int)} 的原始方式
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class LongRecordingBenchmark {
+    @Param({"randomAccessFile", "buffered", "mapped"})
+    String writer;
+
+    @Param({"60"})
+    int minutes;
+
+    private IdealRecorder.RecordConfig config;
+    private byte[] frame;
+    private long frames;
+    private File file;
+    private AudioWriter audioWriter;
+
+    @Setup
+    public void setup() throws IOException {
+        config = new IdealRecorder.RecordConfig().setFrameDuration(20);
+        frame = new byte[config.getSampleRate() * 20 / 1000 * 2];
+        new Random(42).nextBytes(frame);
+        frames = minutes * 60L * 1000 / 20;
+        file = File.createTempFile("bench", ".wav");
+        if ("buffered".equals(writer)) {
+            audioWriter = new BufferedAudioWriter();
+        } else if ("mapped".equals(writer)) {
+            audioWriter = new MappedAudioWriter();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        if (audioWriter == null) {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.setLength(0);
+            byte[] header = PcmToWavUtil.getWaveFileHeader(config, 0);
+            randomAccessFile.write(header);
+            for (long i = 0; i < frames; i++) {
+                randomAccessFile.write(frame, 0, frame.length);
+            }
+            randomAccessFile.seek(0);
+            randomAccessFile.write(PcmToWavUtil.getWaveFileHeader(config, randomAccessFile.length() - header.length));
+            randomAccessFile.close();
+        } else {
+            audioWriter.open(file, PcmToWavUtil.getWaveFileHeader(config, 0));
+            for (long i = 0; i < frames; i++) {
+                audioWriter.write(frame, 0, frame.length);
+            }
+            audioWriter.close(PcmToWavUtil.getWaveFileHeader(config, audioWriter.getDataLength()));
+        }
+        return file.length();
+    }
+}
@@ -0,0 +1,93 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.utils.BytesTransUtil;
+import tech.oom.idealrecorder.utils.PcmCodec;
+import tech.oom.idealrecorder.utils.PcmConverter;
+
+/**
+ * PCM数据与字节之间的转换 每次操作转换一帧
+ * <p>
+ * 帧长度为采样数 160/441/1600/4410 分别对应 16kHz 10ms、44.1kHz 10ms、16kHz 100ms、44.1kHz 100ms
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PcmCodecBenchmark {
+    @Param({"160", "441", "1600", "4410"})
+    int frameSize;
+
+    private short[] shorts;
+    private float[] floats;
+    private byte[] bytes;
+    private byte[] floatBytes;
+    private ByteBuffer direct;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        shorts = new short[frameSize];
+        floats = new float[frameSize];
+        for (int i = 0; i < frameSize; i++) {
+            shorts[i] = (short) random.nextInt();
+            floats[i] = random.nextFloat() * 2 - 1;
+        }
+        bytes = new byte[frameSize * 2];
+        floatBytes = new byte[frameSize * 4];
+        direct = ByteBuffer.allocateDirect(frameSize * 2);
+        PcmCodec.encodeShorts(shorts, 0, bytes, 0, frameSize, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Benchmark
+    public byte[] shortsToBytes() {
+        return BytesTransUtil.getInstance().Shorts2Bytes(shorts);
+    }
+
+    @Benchmark
+    public short[] bytesToShorts() {
+        return BytesTransUtil.getInstance().Bytes2Shorts(bytes);
+    }
+
+    @Benchmark
+    public byte[] encodeShorts() {
+        PcmCodec.encodeShorts(shorts, 0, bytes, 0, frameSize, ByteOrder.LITTLE_ENDIAN);
+        return bytes;
+    }
+
+    @Benchmark
+    public short[] decodeShorts() {
+        PcmCodec.decodeShorts(bytes, 0, shorts, 0, frameSize, ByteOrder.LITTLE_ENDIAN);
+        return shorts;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeShortsDirect() {
+        PcmCodec.encodeShorts(shorts, 0, direct, frameSize, ByteOrder.LITTLE_ENDIAN);
+        return direct;
+    }
+
+    @Benchmark
+    public byte[] floatsToBytes() {
+        PcmConverter.floatToBytes(floats, 0, floatBytes, 0, frameSize);
+        return floatBytes;
+    }
+
+    @Benchmark
+    public float[] bytesToFloats() {
+        PcmConverter.bytesToFloat(floatBytes, 0, floats, 0, frameSize);
+        return floats;
+    }
+}
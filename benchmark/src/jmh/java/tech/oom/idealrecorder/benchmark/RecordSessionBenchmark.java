@@ -0,0 +1,137 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.RecordSession;
+import tech.oom.idealrecorder.RecordSessionFactory;
+import tech.oom.idealrecorder.StatusListener;
+import tech.oom.idealrecorder.record.CaptureClock;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.record.SyntheticPcmSource;
+
+/**
+ * 端到端的录音流程
+ * <p>
+ * {@link #onRecorded(Recording)} 直接在当前线程回调会话 每次操作为一帧 包括字节转换、写入文件和音量计算，
+ * 每次迭代对应一次录音 帧的采样序号和时间戳连续递增 音量回调和最长录音时间的判断与真实录音一致；
+ * {@link #session()} 使用 {@link SyntheticPcmSource} 驱动完整的录音线程 每次操作为一次1秒的录音(以远快于实时的速度)
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecordSessionBenchmark {
+    @Param({"10", "20", "100"})
+    int frameDuration;
+
+    @Param({"true", "false"})
+    boolean saveFile;
+
+    private RecordSessionFactory factory;
+    private IdealRecorder.RecordConfig config;
+    private short[] frame;
+    private File file;
+
+    /**
+     * 一次迭代中的录音 开始和停止不计入测量的时间
+     * <p>
+     * 一次迭代会产生远长于真实录音的数据 因此不在内存中保存全部数据，保存全部数据的开销由 {@link #session()} 测量
+     */
+    @State(Scope.Thread)
+    public static class Recording {
+        private final CaptureClock clock = new CaptureClock();
+        private final FrameInfo info = new FrameInfo();
+        private RecordSession session;
+        private int samplesPerFrame;
+        private long frameNanos;
+        private long readDoneNanos;
+
+        @Setup(Level.Iteration)
+        public void start(RecordSessionBenchmark benchmark) {
+            session = benchmark.newSession();
+            session.setKeepAllData(false);
+            session.onRecorderStart();
+            int sampleRate = benchmark.config.getSampleRate();
+            samplesPerFrame = benchmark.frame.length / benchmark.config.getChannelCount();
+            frameNanos = samplesPerFrame * 1000000000L / sampleRate;
+            readDoneNanos = System.nanoTime();
+            clock.reset(sampleRate);
+        }
+
+        /**
+         * 按照录音线程的方式为下一帧生成元信息 读取完成的时间按帧的时长递增
+         */
+        FrameInfo nextFrame() {
+            readDoneNanos += frameNanos;
+            clock.stamp(info, samplesPerFrame, readDoneNanos);
+            return info;
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() {
+            session.onRecorderStop();
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        factory = new RecordSessionFactory();
+        config = new IdealRecorder.RecordConfig().setFrameDuration(frameDuration);
+        factory.setDefaultRecordConfig(config);
+        file = File.createTempFile("bench", ".wav");
+        frame = new short[config.getSampleRate() * frameDuration / 1000];
+        Random random = new Random(42);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (short) random.nextInt();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    private RecordSession newSession() {
+        RecordSession session = factory.newSession();
+        // 每帧仍然判断是否到达最长录音时间 但测量期间不会到达
+        session.setMaxRecordTime(Long.MAX_VALUE / 1000000);
+        session.setRecordFilePath(saveFile ? file.getAbsolutePath() : null);
+        return session;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public void onRecorded(Recording recording) {
+        recording.session.onRecorded(frame, recording.nextFrame());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void session() throws InterruptedException {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        RecordSession session = newSession();
+        session.setPcmSource(new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE).setDurationMillis(1000));
+        session.setStatusListener(new StatusListener() {
+            @Override
+            public void onStopRecording() {
+                stopped.countDown();
+            }
+        });
+        session.start();
+        stopped.await();
+    }
+}
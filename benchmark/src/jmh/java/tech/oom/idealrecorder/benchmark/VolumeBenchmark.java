@@ -0,0 +1,66 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.utils.VolumeUtil;
+
+/**
+ * 每帧音量计算
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VolumeBenchmark {
+    @Param({"160", "441", "1600", "4410"})
+    int frameSize;
+
+    private short[] shorts;
+    private byte[] bytes;
+    private float[] floats;
+    private ShortBuffer buffer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        shorts = new short[frameSize];
+        bytes = new byte[frameSize];
+        floats = new float[frameSize];
+        for (int i = 0; i < frameSize; i++) {
+            shorts[i] = (short) random.nextInt();
+            bytes[i] = (byte) random.nextInt();
+            floats[i] = random.nextFloat() * 2 - 1;
+        }
+        buffer = ShortBuffer.wrap(shorts.clone());
+    }
+
+    @Benchmark
+    public int shorts() {
+        return VolumeUtil.calculateVolume(shorts);
+    }
+
+    @Benchmark
+    public int bytes() {
+        return VolumeUtil.calculateVolume(bytes);
+    }
+
+    @Benchmark
+    public int floats() {
+        return VolumeUtil.calculateVolume(floats);
+    }
+
+    @Benchmark
+    public int shortBuffer() {
+        return VolumeUtil.calculateVolume(buffer);
+    }
+}
@@ -0,0 +1,84 @@
+package tech.oom.idealrecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.WavStream;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * PCM数据转换为WAV 内存中添加文件头以及PCM文件转换为WAV文件
+ * <p>
+ * 数据为16kHz 单声道 16位 时长分别为1秒和10秒；wavStream 通过 {@link WavStream} 依次读出文件头和数据，
+ * 与 getWaveFile 对比 配合 -prof gc 查看分配的内存
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WavFileBenchmark {
+    @Param({"1", "10"})
+    int seconds;
+
+    private IdealRecorder.RecordConfig config;
+    private byte[] pcm;
+    private final byte[] buffer = new byte[8192];
+    private File pcmFile;
+    private File wavFile;
+
+    @Setup
+    public void setup() throws IOException {
+        config = new IdealRecorder.RecordConfig();
+        pcm = new byte[config.getSampleRate() * 2 * seconds];
+        new Random(42).nextBytes(pcm);
+        pcmFile = File.createTempFile("bench", ".pcm");
+        wavFile = File.createTempFile("bench", ".wav");
+        FileOutputStream out = new FileOutputStream(pcmFile);
+        try {
+            out.write(pcm);
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pcmFile.delete();
+        wavFile.delete();
+    }
+
+    @Benchmark
+    public byte[] getWaveFile() {
+        return PcmToWavUtil.getWaveFile(config, pcm);
+    }
+
+    @Benchmark
+    public long wavStream() throws IOException {
+        WavStream stream = WavStream.of(config, pcm);
+        long total = 0;
+        int n;
+        while ((n = stream.read(buffer, 0, buffer.length)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long transferPcmToWav() {
+        PcmToWavUtil.transferPcmToWav(config, pcmFile.getAbsolutePath(), wavFile.getAbsolutePath());
+        return wavFile.length();
+    }
+}
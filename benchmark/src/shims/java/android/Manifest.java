@@ -0,0 +1,11 @@
+package android;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 只包含library用到的部分
+ */
+public final class Manifest {
+    public static final class permission {
+        public static final String RECORD_AUDIO = "android.permission.RECORD_AUDIO";
+        public static final String WRITE_EXTERNAL_STORAGE = "android.permission.WRITE_EXTERNAL_STORAGE";
+    }
+}
@@ -0,0 +1,8 @@
+package android.annotation;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名注解
+ */
+public @interface TargetApi {
+    int value();
+}
@@ -0,0 +1,8 @@
+package android.content;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 只包含library用到的部分
+ */
+public final class ContentValues {
+    public static final String TAG = "ContentValues";
+}
@@ -0,0 +1,20 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 只包含library用到的部分
+ */
+public class Context {
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public File getExternalFilesDir(String type) {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public File getCacheDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+}
@@ -0,0 +1,9 @@
+package android.content.pm;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 只包含library用到的部分
+ */
+public class PackageManager {
+    public static final int PERMISSION_GRANTED = 0;
+    public static final int PERMISSION_DENIED = -1;
+}
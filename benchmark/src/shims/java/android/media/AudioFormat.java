@@ -0,0 +1,12 @@
+package android.media;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 只包含library用到的部分
+ */
+public class AudioFormat {
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int ENCODING_PCM_8BIT = 3;
+    public static final int ENCODING_PCM_FLOAT = 4;
+    public static final int CHANNEL_IN_MONO = 16;
+    public static final int CHANNEL_IN_STEREO = 12;
+}
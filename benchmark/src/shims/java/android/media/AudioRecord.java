@@ -0,0 +1,59 @@
+package android.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 只用于编译 基准测试不使用麦克风 所有读取都返回错误
+ */
+public class AudioRecord {
+    public static final int STATE_UNINITIALIZED = 0;
+    public static final int STATE_INITIALIZED = 1;
+    public static final int RECORDSTATE_STOPPED = 1;
+    public static final int RECORDSTATE_RECORDING = 3;
+    public static final int READ_BLOCKING = 0;
+    public static final int READ_NON_BLOCKING = 1;
+    public static final int ERROR = -1;
+    public static final int ERROR_BAD_VALUE = -2;
+    public static final int ERROR_INVALID_OPERATION = -3;
+    public static final int ERROR_DEAD_OBJECT = -6;
+
+    public AudioRecord(int audioSource, int sampleRateInHz, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+    }
+
+    public static int getMinBufferSize(int sampleRateInHz, int channelConfig, int audioFormat) {
+        return ERROR_BAD_VALUE;
+    }
+
+    public int getState() {
+        return STATE_UNINITIALIZED;
+    }
+
+    public int getRecordingState() {
+        return RECORDSTATE_STOPPED;
+    }
+
+    public void startRecording() {
+    }
+
+    public void stop() {
+    }
+
+    public void release() {
+    }
+
+    public int read(short[] audioData, int offsetInShorts, int sizeInShorts) {
+        return ERROR_INVALID_OPERATION;
+    }
+
+    public int read(byte[] audioData, int offsetInBytes, int sizeInBytes) {
+        return ERROR_INVALID_OPERATION;
+    }
+
+    public int read(float[] audioData, int offsetInFloats, int sizeInFloats, int readMode) {
+        return ERROR_INVALID_OPERATION;
+    }
+
+    public int read(ByteBuffer audioBuffer, int sizeInBytes) {
+        return ERROR_INVALID_OPERATION;
+    }
+}
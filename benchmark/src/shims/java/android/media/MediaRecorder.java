@@ -0,0 +1,11 @@
+package android.media;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 只包含library用到的部分
+ */
+public class MediaRecorder {
+    public static final class AudioSource {
+        public static final int DEFAULT = 0;
+        public static final int MIC = 1;
+    }
+}
@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 视为最新的系统版本
+ */
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.P;
+    }
+
+    public static class VERSION_CODES {
+        public static final int M = 23;
+        public static final int P = 28;
+    }
+}
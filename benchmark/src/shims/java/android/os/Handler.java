@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 没有UI线程 post的任务在调用线程中立即执行
+ */
+public class Handler {
+    public Handler() {
+    }
+
+    public Handler(Looper looper) {
+    }
+
+    public boolean post(Runnable r) {
+        r.run();
+        return true;
+    }
+}
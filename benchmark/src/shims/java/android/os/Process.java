@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * 在普通JVM上运行基准测试时代替Android SDK中的同名类 线程优先级的设置被忽略
+ */
+public class Process {
+    public static final int THREAD_PRIORITY_URGENT_AUDIO = -19;
+    public static final int THREAD_PRIORITY_AUDIO = -16;
+
+    public static void setThreadPriority(int priority) {
+    }
+}
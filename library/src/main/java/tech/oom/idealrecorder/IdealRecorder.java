@@ -1,48 +1,46 @@
 package tech.oom.idealrecorder;
 
-import android.Manifest;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.media.AudioFormat;
 import android.media.MediaRecorder;
-import android.os.Handler;
-import android.support.v4.content.ContextCompat;
-import android.text.TextUtils;
 
-import java.io.ByteArrayOutputStream;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.Executor;
 
+import tech.oom.idealrecorder.file.AsyncAudioWriter;
 import tech.oom.idealrecorder.file.AudioFileHelper;
-import tech.oom.idealrecorder.file.AudioFileListener;
+import tech.oom.idealrecorder.file.FlushPolicy;
+import tech.oom.idealrecorder.file.MappedAudioWriter;
+import tech.oom.idealrecorder.file.WavStream;
+import tech.oom.idealrecorder.file.WriteQueueStats;
+import tech.oom.idealrecorder.file.WriteStats;
+import tech.oom.idealrecorder.record.CaptureClock;
+import tech.oom.idealrecorder.record.FilePcmSource;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.record.PcmSource;
 import tech.oom.idealrecorder.record.Recorder;
-import tech.oom.idealrecorder.record.RecorderCallback;
-import tech.oom.idealrecorder.utils.BytesTransUtil;
+import tech.oom.idealrecorder.record.ReplayPcmSource;
+import tech.oom.idealrecorder.record.SyntheticPcmSource;
+import tech.oom.idealrecorder.sink.AudioSink;
+import tech.oom.idealrecorder.sink.AudioSinkDispatcher;
 import tech.oom.idealrecorder.utils.Log;
 
 /**
  * 录音功能的核心类
+ * <p>
+ * 全局唯一的入口 所有操作都转发给默认的 {@link RecordSession}；需要同时进行多个录音时，
+ * 通过 {@link #newSession()} 创建新的会话
  */
 
-public class IdealRecorder implements RecorderCallback, AudioFileListener {
+public class IdealRecorder {
     private static final String TAG = "IdealRecorder";
-    private Context context;
-    private Handler idealHandler;
-    private RecordConfig config;
-
-    private AudioFileHelper audioFileHelper;
-    private boolean isAudioFileHelperInit;
-    private Recorder recorder;
-    private StatusListener statusListener;
-    private long maxRecordTime = 6000L;
-    private long volumeInterval = 200L;
-    private int count;
-    private ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-    private AtomicBoolean isStarted = new AtomicBoolean(false);
+    private final RecordSessionFactory factory;
+    private final RecordSession session;
 
     private IdealRecorder() {
-        idealHandler = new Handler();
-        recorder = new Recorder(config, this);
-        audioFileHelper = new AudioFileHelper(this);
+        factory = new RecordSessionFactory();
+        session = factory.newSession();
     }
 
     public static IdealRecorder getInstance() {
@@ -55,8 +53,7 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
      * @param mContext 当前应用的application context
      */
     public void init(Context mContext) {
-        context = mContext.getApplicationContext();
-
+        factory.init(mContext);
     }
 
     /**
@@ -65,15 +62,38 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
      * @return 当前应用的context
      */
     public Context getContext() {
-        if (context == null)
-            throw new IllegalStateException("请先在Application或Activity中调用 IdealRecorder.getInstance.init() 初始化！");
-        return context;
+        return factory.getContext();
+    }
+
+    /**
+     * 获取会话工厂 与默认会话共享context和缓存池
+     *
+     * @return 会话工厂
+     */
+    public RecordSessionFactory getSessionFactory() {
+        return factory;
+    }
+
+    /**
+     * 创建一个新的录音会话 与默认会话以及其它会话相互独立 可以同时录音
+     *
+     * @return 录音会话
+     */
+    public RecordSession newSession() {
+        return factory.newSession();
+    }
+
+    /**
+     * 获取默认的录音会话 IdealRecorder的所有操作都作用于该会话
+     *
+     * @return 默认的录音会话
+     */
+    public RecordSession getSession() {
+        return session;
     }
 
     public IdealRecorder setRecordConfig(RecordConfig config) {
-        this.config = config;
-        audioFileHelper.setRecorderConfig(config);
-        recorder.setRecordConfig(config);
+        session.setRecordConfig(config);
         return this;
     }
 
@@ -84,27 +104,19 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
      * @return
      */
     public IdealRecorder setMaxRecordTime(long maxRecordTimeMillis) {
-        this.maxRecordTime = maxRecordTimeMillis;
+        session.setMaxRecordTime(maxRecordTimeMillis);
         return this;
     }
 
 
     /**
-     * 设置音量回调时长 单位毫秒 必须为100毫秒的整数倍
+     * 设置音量回调时长 单位毫秒 音量在每个间隔到达后的第一帧回调 精度为每帧的时长 {@link RecordConfig#setFrameDuration(int)}
      *
      * @param intervalMillis 音量回调间隔时长
      * @return
      */
     public IdealRecorder setVolumeInterval(long intervalMillis) {
-        if (intervalMillis < 100) {
-            Log.e(TAG, "Volume interval should at least 100 Millisecond .Current set will not take effect, default interval is 200ms");
-            return this;
-        }
-        if (intervalMillis % Recorder.TIMER_INTERVAL != 0) {
-            intervalMillis = intervalMillis / Recorder.TIMER_INTERVAL * Recorder.TIMER_INTERVAL;
-            Log.e(TAG, "Current interval is changed to " + intervalMillis);
-        }
-        this.volumeInterval = intervalMillis;
+        session.setVolumeInterval(intervalMillis);
         return this;
     }
 
@@ -115,23 +127,7 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
      * @param path 文件保存绝对路径
      */
     public IdealRecorder setRecordFilePath(String path) {
-        if (!TextUtils.isEmpty(path) && audioFileHelper != null) {
-            String externalFilePath = context.getExternalFilesDir(null).getAbsolutePath();
-            String cacheFilePath = context.getCacheDir().getAbsolutePath();
-
-            if (!path.startsWith(externalFilePath) || !path.startsWith(cacheFilePath)) {
-                if (!isWriteExternalStoragePermissionGranted()) {
-                    Log.e(TAG, "set recorder file path failed,because no WRITE_EXTERNAL_STORAGE permission was granted");
-                    return this;
-                }
-            }
-
-            isAudioFileHelperInit = true;
-            audioFileHelper.setSavePath(path);
-        } else {
-            isAudioFileHelperInit = false;
-            audioFileHelper.setSavePath(null);
-        }
+        session.setRecordFilePath(path);
         return this;
     }
 
@@ -142,241 +138,350 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
      * @return
      */
     public IdealRecorder setWavFormat(boolean isWav) {
-        audioFileHelper.setWav(isWav);
+        session.setWavFormat(isWav);
         return this;
     }
 
     /**
-     * 设置录音时各种状态的监听
+     * 设置录音文件的格式 默认为wav
+     * <p>
+     * {@link AudioFileHelper#FORMAT_FLAC} 为无损压缩 文件通常为wav的1/2到1/3，只支持8位和16位录音；
+     * 编码在写入文件的线程或单独的编码线程中进行 见 {@link #setFlacEncoder(int, int)}；
+     * {@link AudioFileHelper#FORMAT_MULAW}, {@link AudioFileHelper#FORMAT_ALAW} 为 G.711 编码的wav文件 为16位wav的1/2，
+     * {@link AudioFileHelper#FORMAT_IMA_ADPCM} 约为1/4 都是有损压缩 适用于语音
      *
-     * @param statusListener statusListener
+     * @param format {@link AudioFileHelper#FORMAT_PCM}, {@link AudioFileHelper#FORMAT_WAV}, {@link AudioFileHelper#FORMAT_FLAC},
+     *               {@link AudioFileHelper#FORMAT_MULAW}, {@link AudioFileHelper#FORMAT_ALAW}, {@link AudioFileHelper#FORMAT_IMA_ADPCM}
      * @return
      */
-    public IdealRecorder setStatusListener(StatusListener statusListener) {
-        this.statusListener = statusListener;
+    public IdealRecorder setFileFormat(int format) {
+        session.setFileFormat(format);
         return this;
     }
 
     /**
-     * 判断是否有录音权限
+     * 设置FLAC编码的块大小和编码线程数
+     * <p>
+     * 每个块独立编码为一个FLAC帧 多个线程时并行编码后按顺序写入，输出的文件与线程数无关
      *
+     * @param blockSize 块大小 每个声道的采样数 默认4096
+     * @param threads   编码线程数 默认为1 为0时在写入文件的线程中编码
      * @return
      */
-    public boolean isRecordAudioPermissionGranted() {
-        return ContextCompat.checkSelfPermission(getContext(), Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
+    public IdealRecorder setFlacEncoder(int blockSize, int threads) {
+        session.setFlacEncoder(blockSize, threads);
+        return this;
     }
 
     /**
-     * 判断是否有读写存储权限
+     * 设置录音文件的写入策略 默认使用64KB缓冲区 缓冲区满或录音结束时写入文件
      *
+     * @param policy 写入策略 为null时使用默认策略
      * @return
      */
-    public boolean isWriteExternalStoragePermissionGranted() {
-        return ContextCompat.checkSelfPermission(getContext(), Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
+    public IdealRecorder setFlushPolicy(FlushPolicy policy) {
+        session.setFlushPolicy(policy);
+        return this;
     }
 
     /**
-     * 开始录音
+     * 设置超过4GB的wav录音是否使用RF64格式
+     * <p>
+     * 默认为 {@link AudioFileHelper#RF64_AUTO}：最长录音时间对应的数据可能超过4GB时，文件头中预留ds64块(此时文件头增加36字节)，
+     * 录音超过4GB时自动转换为RF64格式 否则仍是普通的wav文件；最长录音时间较短时使用标准的44字节文件头。
+     * RF64文件可以通过 {@link tech.oom.idealrecorder.file.WavReader} 读取
      *
+     * @param mode {@link AudioFileHelper#RF64_NEVER}, {@link AudioFileHelper#RF64_AUTO}, {@link AudioFileHelper#RF64_RESERVE}
      * @return
      */
-    public boolean start() {
-        if (isStarted.compareAndSet(false, true)) {
-            recorder.start();
-            Log.d(TAG, "Ideal Recorder Started");
-            return true;
-        } else {
-            Log.e(TAG, "Start failed , Because the Ideal Recorder already started");
-            return false;
-        }
+    public IdealRecorder setRf64Mode(int mode) {
+        session.setRf64Mode(mode);
+        return this;
     }
 
     /**
-     * 停止录音
+     * 设置分段录音 默认不分段
+     * <p>
+     * 分段时录音按时长或大小依次写入多个独立的文件 文件名为录音路径加序号 例如 rec.wav 的分段为 rec_0001.wav、rec_0002.wav，
+     * 分段之间连续 不会丢失采样；每个分段完成时回调 {@link StatusListener#onSegmentComplete(String, long, long)}，
+     * 录音过程中即可上传或处理已完成的分段。两个条件都设置时先达到的生效
+     *
+     * @param durationMillis 每段的时长 单位毫秒 0表示不按时长分段
+     * @param sizeBytes      每段的数据大小 单位字节 不包括文件头 0表示不按大小分段
+     * @return
      */
-    public void stop() {
-        Log.d(TAG, "Stop Ideal Recorder is called");
-        if (this.isStarted.get()) {
-            this.isStarted.set(false);
-            this.recorder.immediateStop();
+    public IdealRecorder setSegment(long durationMillis, long sizeBytes) {
+        session.setSegment(durationMillis, sizeBytes);
+        return this;
+    }
 
-        } else if (this.recorder != null) {
-            this.recorder.immediateStop();
-        }
+    /**
+     * 设置录音过程中重写wav文件头的间隔 默认为0 即只在录音结束时写入
+     * <p>
+     * 设置后会定期写入缓冲的数据并以当前长度重写文件头，进程异常退出时文件仍然可以播放 最多丢失一个间隔的数据；
+     * 异步写入时在写入线程中进行 不会阻塞录音。异常退出留下的文件可以通过 {@link tech.oom.idealrecorder.file.WavRecovery} 修复
+     *
+     * @param intervalMillis 间隔 单位毫秒 例如5000
+     * @return
+     */
+    public IdealRecorder setCheckpointInterval(long intervalMillis) {
+        session.setCheckpointInterval(intervalMillis);
+        return this;
+    }
+
+    /**
+     * 设置是否通过内存映射写入录音文件 默认为false
+     * <p>
+     * 文件按区段预先分配 录音数据直接拷贝到映射内存中 不需要每帧的系统调用 也能减少闪存上的碎片 适用于长时间录音；
+     * 停止录音时文件截断到实际长度。此时 {@link #setFlushPolicy(FlushPolicy)} 不生效
+     *
+     * @param mapped 是否通过内存映射写入
+     * @return
+     */
+    public IdealRecorder setMappedWrite(boolean mapped) {
+        return setMappedWrite(mapped, MappedAudioWriter.DEFAULT_EXTENT_SIZE);
     }
 
     /**
-     * 在UI线程执行
+     * 设置是否通过内存映射写入录音文件
      *
-     * @param runnable 需要执行的runnable
+     * @param mapped     是否通过内存映射写入
+     * @param extentSize 每次预分配的区段大小 单位字节 默认 {@link MappedAudioWriter#DEFAULT_EXTENT_SIZE}
+     * @return
      */
-    private void runOnUi(Runnable runnable) {
-        idealHandler.post(runnable);
+    public IdealRecorder setMappedWrite(boolean mapped, int extentSize) {
+        session.setMappedWrite(mapped, extentSize);
+        return this;
     }
 
+    /**
+     * 设置是否在单独的线程中写入录音文件 默认为false
+     * <p>
+     * 异步写入时录音数据先拷贝到预先分配的有界队列中，由写入线程写入文件，存储设备的卡顿或同步不会阻塞录音线程；
+     * 停止录音时会等待队列中的数据全部写入后再写入文件头
+     *
+     * @param async 是否异步写入
+     * @return
+     */
+    public IdealRecorder setAsyncWrite(boolean async) {
+        session.setAsyncWrite(async);
+        return this;
+    }
 
-    @Override
-    public boolean onRecorderReady() {
-        if (!isRecordAudioPermissionGranted()) {
-            Log.e(TAG, "set recorder failed,because no RECORD_AUDIO permission was granted");
-            onRecordedFail(IdealConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
-        }
-        return isRecordAudioPermissionGranted();
+    /**
+     * 设置异步写入的队列容量和队列已满时的策略
+     *
+     * @param capacity 队列容量 帧数 默认 {@link AsyncAudioWriter#DEFAULT_CAPACITY}
+     * @param policy   {@link AsyncAudioWriter#POLICY_BLOCK} 等待(默认)，{@link AsyncAudioWriter#POLICY_DROP_OLDEST} 丢弃最早的帧，
+     *                 {@link AsyncAudioWriter#POLICY_SPILL} 额外分配内存
+     * @return
+     */
+    public IdealRecorder setWriteQueue(int capacity, int policy) {
+        session.setWriteQueue(capacity, policy);
+        return this;
     }
 
-    @Override
-    public boolean onRecorderStart() {
-        if (isAudioFileHelperInit) {
-            audioFileHelper.start();
-        }
-        count = 0;
-        byteArrayOutputStream.reset();
-        runOnUi(new Runnable() {
-            public void run() {
-                if (statusListener != null) {
-                    statusListener.onStartRecording();
-                }
-                Log.d(TAG, "onRecorderStart");
-            }
-        });
-        return true;
+    /**
+     * 获取当前或最近一次录音的异步写入队列统计 包括队列深度、最大深度和丢弃的字节数
+     */
+    public WriteQueueStats getWriteQueueStats() {
+        return session.getWriteQueueStats();
     }
 
-    @Override
-    public void onRecorded(final short[] wave) {
-        count++;
-        final byte[] bytes = BytesTransUtil.getInstance().Shorts2Bytes(wave);
-        if (isAudioFileHelperInit) {
+    /**
+     * 获取当前或最近一次录音文件的写入统计 包括写入次数、延迟和写放大
+     */
+    public WriteStats getWriteStats() {
+        return session.getWriteStats();
+    }
 
-            audioFileHelper.save(bytes, 0, bytes.length);
-        }
-        byteArrayOutputStream.write(bytes, 0, bytes.length);
-        if (statusListener != null) {
-            statusListener.onRecordDataOnWorkerThread(wave, wave == null ? 0 : wave.length);
-        }
-        runOnUi(new Runnable() {
-            @Override
-            public void run() {
-                if (statusListener != null) {
-                    statusListener.onRecordData(wave, wave == null ? 0 : wave.length);
-                }
-            }
-        });
+    /**
+     * 设置是否在内存中保存全部录音数据 默认为true
+     * <p>
+     * 保存时录音结束后通过 {@link StatusListener#onRecordedAllData(WavStream)} 以wav视图回调全部数据 不拷贝，
+     * 默认转为 {@link StatusListener#onRecordedAllData(byte[])}；
+     * 长时间录音(例如数小时的录音)的数据无法全部放在内存中 只需要录音文件时应设置为false 此时不再回调该方法
+     *
+     * @param keepAllData 是否保存全部录音数据
+     * @return
+     */
+    public IdealRecorder setKeepAllData(boolean keepAllData) {
+        session.setKeepAllData(keepAllData);
+        return this;
+    }
 
-        long recordedTime = count * Recorder.TIMER_INTERVAL;
-        if (recordedTime >= volumeInterval && recordedTime % volumeInterval == 0) {
-            onRecorderVolume(calculateVolume(wave));
-        }
-        if (recordedTime >= maxRecordTime) {
-            recorder.stop();
-            isStarted.set(false);
-        }
+    /**
+     * 添加录音数据的输出 可以同时添加多个 每个sink在单独的线程中处理 下次开始录音时生效
+     * 详见 {@link RecordSession#addSink(AudioSink)}
+     *
+     * @param sink 录音数据的输出
+     * @return
+     */
+    public IdealRecorder addSink(AudioSink sink) {
+        session.addSink(sink);
+        return this;
+    }
 
+    /**
+     * 添加录音数据的输出 见 {@link RecordSession#addSink(AudioSink)}
+     *
+     * @param sink     录音数据的输出
+     * @param executor 执行sink的方法的执行器 为null时使用单独的线程；同一个sink的方法不会同时执行
+     * @param capacity 队列容量 帧数
+     * @param policy   队列已满时的处理方式 {@link AudioSinkDispatcher#POLICY_DROP} 丢弃新帧，
+     *                 {@link AudioSinkDispatcher#POLICY_BLOCK} 录音线程等待 适用于快于实时的数据源
+     * @return
+     */
+    public IdealRecorder addSink(AudioSink sink, Executor executor, int capacity, int policy) {
+        session.addSink(sink, executor, capacity, policy);
+        return this;
     }
 
-    private void onRecorderVolume(final int volume) {
+    /**
+     * 移除录音数据的输出 下次开始录音时生效
+     *
+     * @return
+     */
+    public IdealRecorder removeSink(AudioSink sink) {
+        session.removeSink(sink);
+        return this;
+    }
 
-        runOnUi(new Runnable() {
-            public void run() {
-                if (statusListener != null) {
-                    statusListener.onVoiceVolume(volume);
-                }
-            }
-        });
+    /**
+     * 设置录音的数据源 默认从麦克风采集
+     * <p>
+     * 使用 {@link FilePcmSource}、{@link SyntheticPcmSource}、{@link ReplayPcmSource} 等数据源时
+     * 不需要录音权限 可以在没有设备的情况下以远快于实时的速度驱动整个录音流程
+     *
+     * @param source 数据源 为null时恢复为从麦克风采集
+     * @return
+     */
+    public IdealRecorder setPcmSource(PcmSource source) {
+        session.setPcmSource(source);
+        return this;
+    }
 
+    /**
+     * 设置是否使用直接内存模式 默认为false
+     * <p>
+     * 直接内存模式下录音数据读取到预先分配的直接内存 {@link ByteBuffer} 中并直接写入文件，
+     * 录音数据通过 {@link StatusListener#onRecordData(ShortBuffer, FrameInfo)} 等只读视图回调，
+     * 不再回调short数组的方法；16位录音从采集到写入文件没有额外的数组分配和字节序转换；
+     * 仅对16位录音有效 8位和浮点录音始终使用对应类型的数组
+     *
+     * @param directBufferMode 是否使用直接内存模式
+     * @return
+     */
+    public IdealRecorder setDirectBufferMode(boolean directBufferMode) {
+        session.setDirectBufferMode(directBufferMode);
+        return this;
+    }
 
+    /**
+     * 设置录音时各种状态的监听
+     *
+     * @param statusListener statusListener
+     * @return
+     */
+    public IdealRecorder setStatusListener(StatusListener statusListener) {
+        session.setStatusListener(statusListener);
+        return this;
     }
 
-    @Override
-    public void onRecordedFail(final int paramInt) {
-        if (isAudioFileHelperInit) {
+    /**
+     * 判断是否有录音权限
+     *
+     * @return
+     */
+    public boolean isRecordAudioPermissionGranted() {
+        return factory.isRecordAudioPermissionGranted();
+    }
 
-            audioFileHelper.cancel();
-        }
-        runOnUi(new Runnable() {
-            public void run() {
-                String errorMsg = "";
-                switch (paramInt) {
-                    case IdealConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR:
-                        errorMsg = "启动或录音时抛出异常Exception";
-                        break;
-                    case IdealConst.RecorderErrorCode.RECORDER_READ_ERROR:
-                        errorMsg = "Recorder.read() 过程中发生错误";
-                        break;
-                    case IdealConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR:
-                        errorMsg = "当前应用没有录音权限或者录音功能被占用";
-                        break;
-                    default:
-                        errorMsg = "未知错误";
-                }
-                if (statusListener != null) {
-                    statusListener.onRecordError(paramInt, errorMsg);
-                }
-            }
-        });
+    /**
+     * 判断是否有读写存储权限
+     *
+     * @return
+     */
+    public boolean isWriteExternalStoragePermissionGranted() {
+        return factory.isWriteExternalStoragePermissionGranted();
     }
 
-    @Override
-    public void onRecorderStop() {
-        if (isAudioFileHelperInit) {
-            audioFileHelper.finish();
-        }
-        runOnUi(new Runnable() {
-            @Override
-            public void run() {
-                if (statusListener != null) {
-                    statusListener.onRecordedAllData(byteArrayOutputStream.toByteArray());
-                    statusListener.onStopRecording();
-                }
-            }
-        });
-//        byteArrayOutputStream.reset();
+    /**
+     * 开始录音
+     *
+     * @return
+     */
+    public boolean start() {
+        return session.start();
     }
 
-    private int calculateVolume(short[] wave) {
-        long v = 0;
-        // 将 buffer 内容取出，进行平方和运算
-        for (int i = 0; i < wave.length; i++) {
-            v += wave[i] * wave[i];
-        }
-        // 平方和除以数据总长度，得到音量大小。
-        double mean = v / (double) wave.length;
-        double volume = 10 * Math.log10(mean);
-        return (int) volume;
+    /**
+     * 预热录音 提前初始化并启动录音 之后调用 {@link #start()} 时可以立即开始采集 适用于按住说话等对开始延迟敏感的场景；
+     * 预热期间会持续占用麦克风 不再需要时调用 {@link #disarm()} 释放。预热后修改录音配置需要重新预热才能生效
+     *
+     * @return 是否预热成功
+     */
+    public boolean arm() {
+        return session.arm();
     }
 
+    /**
+     * 取消预热 释放麦克风 正在录音时在录音结束后释放
+     */
+    public void disarm() {
+        session.disarm();
+    }
 
     /**
-     * 保存文件失败
+     * 设置预录的时长 下次预热时生效
+     * <p>
+     * 预热期间始终保留最近一段时间的录音，调用 {@link #start()} 后这部分数据会先写入文件并回调，随后是实时录音的数据，
+     * 适用于用户在点击开始之前就已经开始说话的场景
+     *
+     * @param preRollMillis 预录时长 单位毫秒 0为不预录 最大为 {@link Recorder#MAX_PRE_ROLL_MILLIS}
+     * @return
      */
-    @Override
-    public void onFailure(final String reason) {
+    public IdealRecorder setPreRollMillis(int preRollMillis) {
+        session.setPreRollMillis(preRollMillis);
+        return this;
+    }
 
-        Log.d(TAG, "save record file failure, this reason is " + reason);
+    public boolean isArmed() {
+        return session.isArmed();
+    }
 
-        runOnUi(new Runnable() {
-            public void run() {
-                if (statusListener != null) {
-                    statusListener.onFileSaveFailed(reason);
-                }
-            }
-        });
+    /**
+     * 获取最近一次开始录音的延迟 即从调用 {@link #start()} 到第一帧采集完成的时间
+     *
+     * @return 延迟 单位纳秒 尚未采集到第一帧时为-1
+     */
+    public long getStartLatencyNanos() {
+        return session.getStartLatencyNanos();
     }
 
     /**
-     * 保存文件成功
+     * 停止录音
      */
-    @Override
-    public void onSuccess(final String savePath) {
-        Log.d(TAG, "save record file success, the file path is" + savePath);
-        runOnUi(new Runnable() {
-            public void run() {
-                if (statusListener != null) {
-                    statusListener.onFileSaveSuccess(savePath);
-                }
-            }
-        });
+    public void stop() {
+        session.stop();
+    }
+
+    /**
+     * 获取因处理线程或UI线程处理不及时 环形缓冲区已满而被丢弃的帧的总数量
+     *
+     * @return 溢出的帧数量
+     */
+    public long getFrameOverflowCount() {
+        return session.getFrameOverflowCount();
+    }
 
+    /**
+     * 获取录音的采样时钟 可查询已录制的采样数以及采样时钟与系统时钟之间的偏差
+     *
+     * @return 采样时钟
+     */
+    public CaptureClock getCaptureClock() {
+        return session.getCaptureClock();
     }
 
     /**
@@ -394,10 +499,21 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
         public static final int SAMPLE_RATE_16K_HZ = 16000;
         public static final int SAMPLE_RATE_11K_HZ = 11025;
         public static final int SAMPLE_RATE_8K_HZ = 8000;
+        /**
+         * 每帧时长 低延迟模式
+         */
+        public static final int FRAME_DURATION_10_MS = 10;
+        public static final int FRAME_DURATION_20_MS = 20;
+        public static final int FRAME_DURATION_40_MS = 40;
+        /**
+         * 每帧时长 默认值
+         */
+        public static final int FRAME_DURATION_100_MS = Recorder.TIMER_INTERVAL;
         private int audioSource = MediaRecorder.AudioSource.MIC;
         private int sampleRate = SAMPLE_RATE_16K_HZ;
         private int channelConfig = AudioFormat.CHANNEL_IN_MONO;
         private int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
+        private int frameDuration = FRAME_DURATION_100_MS;
 
         /**
          * 录音配置的构造方法
@@ -430,6 +546,19 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
 
         }
 
+        /**
+         * 复制录音配置
+         *
+         * @param other 需要复制的配置
+         */
+        public RecordConfig(RecordConfig other) {
+            this.audioSource = other.audioSource;
+            this.sampleRate = other.sampleRate;
+            this.channelConfig = other.channelConfig;
+            this.audioFormat = other.audioFormat;
+            this.frameDuration = other.frameDuration;
+        }
+
         public int getAudioSource() {
             return audioSource;
         }
@@ -481,12 +610,70 @@ public class IdealRecorder implements RecorderCallback, AudioFileListener {
          * @param audioFormat the format in which the audio data is to be returned.
          *                    See {@link AudioFormat#ENCODING_PCM_8BIT}, {@link AudioFormat#ENCODING_PCM_16BIT},
          *                    and {@link AudioFormat#ENCODING_PCM_FLOAT}.
+         *                    浮点格式从麦克风采集需要API 23及以上 低版本开始录音时失败
          */
         public RecordConfig setAudioFormat(int audioFormat) {
             this.audioFormat = audioFormat;
             return this;
         }
 
+        public int getFrameDuration() {
+            return frameDuration;
+        }
+
+        /**
+         * 设置每帧数据的时长 即每次回调录音数据的间隔 时长越短延迟越低；
+         * 每帧的采样数需要是整数 即采样率乘以时长能被1000整除 否则设置不生效 需要先设置采样率
+         *
+         * @param frameDurationMillis 每帧时长 单位毫秒 {@link RecordConfig#FRAME_DURATION_10_MS},{@link RecordConfig#FRAME_DURATION_20_MS},
+         *                            {@link RecordConfig#FRAME_DURATION_40_MS},默认为{@link RecordConfig#FRAME_DURATION_100_MS}
+         */
+        public RecordConfig setFrameDuration(int frameDurationMillis) {
+            if (frameDurationMillis < FRAME_DURATION_10_MS || frameDurationMillis > 1000) {
+                Log.e(TAG, "Frame duration should between 10 and 1000 Millisecond .Current set will not take effect");
+                return this;
+            }
+            if ((long) sampleRate * frameDurationMillis % 1000 != 0) {
+                Log.e(TAG, "Frame duration " + frameDurationMillis + "ms is not a whole number of samples at " + sampleRate
+                        + "Hz .Current set will not take effect");
+                return this;
+            }
+            this.frameDuration = frameDurationMillis;
+            return this;
+        }
+
+        /**
+         * 获取声道数
+         *
+         * @return 单声道为1 双声道为2
+         */
+        public int getChannelCount() {
+            return channelConfig == AudioFormat.CHANNEL_IN_MONO ? 1 : 2;
+        }
+
+        /**
+         * 获取每个采样的位数
+         *
+         * @return 16位为16 8位为8 浮点为32
+         */
+        public int getBitsPerSample() {
+            switch (audioFormat) {
+                case AudioFormat.ENCODING_PCM_16BIT:
+                    return 16;
+                case AudioFormat.ENCODING_PCM_FLOAT:
+                    return 32;
+                default:
+                    return 8;
+            }
+        }
+
+        /**
+         * 是否为32位浮点格式 {@link AudioFormat#ENCODING_PCM_FLOAT}
+         */
+        public boolean isFloat() {
+            return audioFormat == AudioFormat.ENCODING_PCM_FLOAT;
+        }
+
 
     }
 
@@ -0,0 +1,952 @@
+package tech.oom.idealrecorder;
+
+import android.content.Context;
+import android.os.Handler;
+import android.text.TextUtils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import tech.oom.idealrecorder.IdealRecorder.RecordConfig;
+import tech.oom.idealrecorder.file.AsyncAudioWriter;
+import tech.oom.idealrecorder.file.AudioFileHelper;
+import tech.oom.idealrecorder.file.AudioFileListener;
+import tech.oom.idealrecorder.file.FlushPolicy;
+import tech.oom.idealrecorder.file.MappedAudioWriter;
+import tech.oom.idealrecorder.file.WavStream;
+import tech.oom.idealrecorder.file.WriteQueueStats;
+import tech.oom.idealrecorder.file.WriteStats;
+import tech.oom.idealrecorder.record.CaptureClock;
+import tech.oom.idealrecorder.record.FilePcmSource;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.record.FrameRing;
+import tech.oom.idealrecorder.record.PcmSource;
+import tech.oom.idealrecorder.record.Recorder;
+import tech.oom.idealrecorder.record.RecorderCallback;
+import tech.oom.idealrecorder.record.ReplayPcmSource;
+import tech.oom.idealrecorder.record.SyntheticPcmSource;
+import tech.oom.idealrecorder.sink.AudioSink;
+import tech.oom.idealrecorder.sink.AudioSinkDispatcher;
+import tech.oom.idealrecorder.sink.AudioSinkListener;
+import tech.oom.idealrecorder.sink.MemoryAudioSink;
+import tech.oom.idealrecorder.utils.Log;
+import tech.oom.idealrecorder.utils.PcmCodec;
+import tech.oom.idealrecorder.utils.PcmConverter;
+import tech.oom.idealrecorder.utils.VolumeUtil;
+
+/**
+ * 录音会话 拥有独立的录音线程、文件、全部数据和监听，通过 {@link RecordSessionFactory#newSession()} 创建；
+ * 多个会话可以同时录音 互不影响
+ */
+public class RecordSession implements RecorderCallback, AudioFileListener, AudioSinkListener {
+    private static final String TAG = "RecordSession";
+    private final RecordSessionFactory factory;
+    private final Handler idealHandler;
+    private RecordConfig config;
+
+    private AudioFileHelper audioFileHelper;
+    private boolean isAudioFileHelperInit;
+    private Recorder recorder;
+    private StatusListener statusListener;
+    private long maxRecordTime = 6000L;
+    private long volumeInterval = 200L;
+    /**
+     * 已录制的采样数(每个声道) 来自每帧的 {@link FrameInfo} 用于计算录音时长和音量回调时机
+     */
+    private long recordedSamples;
+    private long nextVolumeSample;
+    private long volumeIntervalSamples;
+    private long maxRecordSamples;
+    /**
+     * 全部录音数据 在录音线程中写入
+     */
+    private final MemoryAudioSink allData = new MemoryAudioSink();
+    private boolean keepAllData = true;
+    /**
+     * 通过 {@link #addSink(AudioSink)} 添加的输出
+     */
+    private final AudioSinkDispatcher sinkDispatcher = new AudioSinkDispatcher(this);
+    /**
+     * 转换用的数组 录音开始时从工厂的缓存池中取出 结束时归还
+     */
+    private byte[] allDataBuffer = new byte[0];
+    private AtomicBoolean isStarted = new AtomicBoolean(false);
+    private AtomicBoolean uiDrainPending = new AtomicBoolean(false);
+    /**
+     * 在UI线程中依次取出录音线程发布的帧 回调 onRecordData 后归还
+     */
+    private final Runnable uiDrainRun = new Runnable() {
+        @Override
+        public void run() {
+            uiDrainPending.set(false);
+            FrameRing ring = recorder.getFrameRing();
+            if (ring == null) {
+                return;
+            }
+            int type = ring.getType();
+            int length = ring.getFrameSize();
+            int slot;
+            while ((slot = ring.peek()) >= 0) {
+                if (statusListener != null) {
+                    FrameInfo info = ring.infoAt(slot);
+                    switch (type) {
+                        case FrameRing.TYPE_BYTE:
+                            statusListener.onRecordData(ring.bytesAt(slot), length, info);
+                            break;
+                        case FrameRing.TYPE_FLOAT:
+                            statusListener.onRecordData(ring.floatsAt(slot), length, info);
+                            break;
+                        case FrameRing.TYPE_DIRECT_BUFFER:
+                            statusListener.onRecordData(ring.uiViewAt(slot), info);
+                            break;
+                        default:
+                            statusListener.onRecordData(ring.shortsAt(slot), length, info);
+                            break;
+                    }
+                }
+                ring.release();
+            }
+        }
+    };
+
+    /**
+     * 通过 {@link RecordSessionFactory#newSession()} 创建
+     */
+    RecordSession(RecordSessionFactory factory) {
+        this.factory = factory;
+        idealHandler = factory.getHandler();
+        config = factory.getDefaultRecordConfig();
+        recorder = new Recorder(config, this);
+        audioFileHelper = new AudioFileHelper(this);
+        audioFileHelper.setRecorderConfig(config);
+    }
+
+    public RecordSessionFactory getFactory() {
+        return factory;
+    }
+
+    public RecordConfig getRecordConfig() {
+        return config;
+    }
+
+    /**
+     * 设置录音配置 保存的是配置的拷贝 之后修改传入的配置不会影响本次会话
+     */
+    public RecordSession setRecordConfig(RecordConfig config) {
+        config = new RecordConfig(config);
+        this.config = config;
+        audioFileHelper.setRecorderConfig(config);
+        recorder.setRecordConfig(config);
+        return this;
+    }
+
+    /**
+     * 设置最长语音
+     *
+     * @param maxRecordTimeMillis 最长录音时间 单位 毫秒
+     * @return
+     */
+    public RecordSession setMaxRecordTime(long maxRecordTimeMillis) {
+        this.maxRecordTime = maxRecordTimeMillis;
+        return this;
+    }
+
+
+    /**
+     * 设置音量回调时长 单位毫秒 音量在每个间隔到达后的第一帧回调 精度为每帧的时长 {@link RecordConfig#setFrameDuration(int)}
+     *
+     * @param intervalMillis 音量回调间隔时长
+     * @return
+     */
+    public RecordSession setVolumeInterval(long intervalMillis) {
+        if (intervalMillis < RecordConfig.FRAME_DURATION_10_MS) {
+            Log.e(TAG, "Volume interval should at least 10 Millisecond .Current set will not take effect, default interval is 200ms");
+            return this;
+        }
+        this.volumeInterval = intervalMillis;
+        return this;
+    }
+
+
+    /**
+     * 设置录音保存路径 保存格式为wav
+     *
+     * @param path 文件保存绝对路径
+     */
+    public RecordSession setRecordFilePath(String path) {
+        if (!TextUtils.isEmpty(path) && audioFileHelper != null) {
+            if (!factory.hasContext()) {
+                // 未初始化context时(例如在JVM上使用非实时数据源)无法检查存储权限 改为检查保存的目录是否可写
+                if (!isWritablePath(path)) {
+                    Log.e(TAG, "set recorder file path failed,because no context was set and the directory is not writable");
+                    onFailure("record file path is not writable: " + path);
+                    return this;
+                }
+                isAudioFileHelperInit = true;
+                audioFileHelper.setSavePath(path);
+                return this;
+            }
+            Context context = factory.getContext();
+            String externalFilePath = context.getExternalFilesDir(null).getAbsolutePath();
+            String cacheFilePath = context.getCacheDir().getAbsolutePath();
+
+            if (!path.startsWith(externalFilePath) || !path.startsWith(cacheFilePath)) {
+                if (!isWriteExternalStoragePermissionGranted()) {
+                    Log.e(TAG, "set recorder file path failed,because no WRITE_EXTERNAL_STORAGE permission was granted");
+                    onFailure("no WRITE_EXTERNAL_STORAGE permission for " + path);
+                    return this;
+                }
+            }
+
+            isAudioFileHelperInit = true;
+            audioFileHelper.setSavePath(path);
+        } else {
+            isAudioFileHelperInit = false;
+            audioFileHelper.setSavePath(null);
+        }
+        return this;
+    }
+
+    /**
+     * 设置录音保存的格式是否为wav 默认保存为wav格式 true 保存为wav格式 false 文件保存问pcm格式
+     *
+     * @param isWav 是否为wav格式 默认为true 保存为wav格式 ;false 文件保存问pcm格式
+     * @return
+     */
+    public RecordSession setWavFormat(boolean isWav) {
+        audioFileHelper.setWav(isWav);
+        return this;
+    }
+
+    /**
+     * 设置录音文件的格式 默认为wav
+     * <p>
+     * {@link AudioFileHelper#FORMAT_FLAC} 为无损压缩 文件通常为wav的1/2到1/3，只支持8位和16位录音；
+     * 编码在写入文件的线程或单独的编码线程中进行 见 {@link #setFlacEncoder(int, int)}；
+     * {@link AudioFileHelper#FORMAT_MULAW}, {@link AudioFileHelper#FORMAT_ALAW} 为 G.711 编码的wav文件 为16位wav的1/2，
+     * {@link AudioFileHelper#FORMAT_IMA_ADPCM} 约为1/4 都是有损压缩 适用于语音
+     *
+     * @param format {@link AudioFileHelper#FORMAT_PCM}, {@link AudioFileHelper#FORMAT_WAV}, {@link AudioFileHelper#FORMAT_FLAC},
+     *               {@link AudioFileHelper#FORMAT_MULAW}, {@link AudioFileHelper#FORMAT_ALAW}, {@link AudioFileHelper#FORMAT_IMA_ADPCM}
+     * @return
+     */
+    public RecordSession setFileFormat(int format) {
+        audioFileHelper.setFormat(format);
+        return this;
+    }
+
+    /**
+     * 设置FLAC编码的块大小和编码线程数
+     * <p>
+     * 每个块独立编码为一个FLAC帧 多个线程时并行编码后按顺序写入，输出的文件与线程数无关
+     *
+     * @param blockSize 块大小 每个声道的采样数 默认4096
+     * @param threads   编码线程数 默认为1 为0时在写入文件的线程中编码
+     * @return
+     */
+    public RecordSession setFlacEncoder(int blockSize, int threads) {
+        audioFileHelper.setFlacEncoder(blockSize, threads);
+        return this;
+    }
+
+    /**
+     * 设置录音文件的写入策略 默认使用64KB缓冲区 缓冲区满或录音结束时写入文件
+     *
+     * @param policy 写入策略 为null时使用默认策略
+     * @return
+     */
+    public RecordSession setFlushPolicy(FlushPolicy policy) {
+        audioFileHelper.setFlushPolicy(policy);
+        return this;
+    }
+
+    /**
+     * 设置超过4GB的wav录音是否使用RF64格式
+     * <p>
+     * 默认为 {@link AudioFileHelper#RF64_AUTO}：最长录音时间对应的数据可能超过4GB时，文件头中预留ds64块(此时文件头增加36字节)，
+     * 录音超过4GB时自动转换为RF64格式 否则仍是普通的wav文件；最长录音时间较短时使用标准的44字节文件头。
+     * RF64文件可以通过 {@link tech.oom.idealrecorder.file.WavReader} 读取
+     *
+     * @param mode {@link AudioFileHelper#RF64_NEVER}, {@link AudioFileHelper#RF64_AUTO}, {@link AudioFileHelper#RF64_RESERVE}
+     * @return
+     */
+    public RecordSession setRf64Mode(int mode) {
+        audioFileHelper.setRf64Mode(mode);
+        return this;
+    }
+
+    /**
+     * 设置分段录音 默认不分段
+     * <p>
+     * 分段时录音按时长或大小依次写入多个独立的文件 文件名为录音路径加序号 例如 rec.wav 的分段为 rec_0001.wav、rec_0002.wav，
+     * 分段之间连续 不会丢失采样；每个分段完成时回调 {@link StatusListener#onSegmentComplete(String, long, long)}，
+     * 录音过程中即可上传或处理已完成的分段。两个条件都设置时先达到的生效
+     *
+     * @param durationMillis 每段的时长 单位毫秒 0表示不按时长分段
+     * @param sizeBytes      每段的数据大小 单位字节 不包括文件头 0表示不按大小分段
+     * @return
+     */
+    public RecordSession setSegment(long durationMillis, long sizeBytes) {
+        audioFileHelper.setSegment(durationMillis, sizeBytes);
+        return this;
+    }
+
+    /**
+     * 设置录音过程中重写wav文件头的间隔 默认为0 即只在录音结束时写入
+     * <p>
+     * 设置后会定期写入缓冲的数据并以当前长度重写文件头，进程异常退出时文件仍然可以播放 最多丢失一个间隔的数据；
+     * 异步写入时在写入线程中进行 不会阻塞录音。异常退出留下的文件可以通过 {@link tech.oom.idealrecorder.file.WavRecovery} 修复
+     *
+     * @param intervalMillis 间隔 单位毫秒 例如5000
+     * @return
+     */
+    public RecordSession setCheckpointInterval(long intervalMillis) {
+        audioFileHelper.setCheckpointInterval(intervalMillis);
+        return this;
+    }
+
+    /**
+     * 设置是否通过内存映射写入录音文件 默认为false
+     * <p>
+     * 文件按区段预先分配 录音数据直接拷贝到映射内存中 不需要每帧的系统调用 也能减少闪存上的碎片 适用于长时间录音；
+     * 停止录音时文件截断到实际长度。此时 {@link #setFlushPolicy(FlushPolicy)} 不生效；
+     * 尚未回收的映射区段最多 {@link MappedAudioWriter#DEFAULT_MAX_LIVE_EXTENTS} 个，超出或地址空间不足时
+     * 文件剩余的部分改为普通写入 录音不会中断
+     *
+     * @param mapped 是否通过内存映射写入
+     * @return
+     */
+    public RecordSession setMappedWrite(boolean mapped) {
+        return setMappedWrite(mapped, MappedAudioWriter.DEFAULT_EXTENT_SIZE);
+    }
+
+    /**
+     * 设置是否通过内存映射写入录音文件
+     *
+     * @param mapped     是否通过内存映射写入
+     * @param extentSize 每次预分配的区段大小 单位字节 默认 {@link MappedAudioWriter#DEFAULT_EXTENT_SIZE}
+     * @return
+     */
+    public RecordSession setMappedWrite(boolean mapped, int extentSize) {
+        audioFileHelper.setMappedWrite(mapped, extentSize);
+        return this;
+    }
+
+    /**
+     * 设置是否在单独的线程中写入录音文件 默认为false
+     * <p>
+     * 异步写入时录音数据先拷贝到预先分配的有界队列中，由写入线程写入文件，存储设备的卡顿或同步不会阻塞录音线程；
+     * 停止录音时会等待队列中的数据全部写入后再写入文件头
+     *
+     * @param async 是否异步写入
+     * @return
+     */
+    public RecordSession setAsyncWrite(boolean async) {
+        audioFileHelper.setAsyncWrite(async);
+        return this;
+    }
+
+    /**
+     * 设置异步写入的队列容量和队列已满时的策略
+     *
+     * @param capacity 队列容量 帧数 默认 {@link AsyncAudioWriter#DEFAULT_CAPACITY}
+     * @param policy   {@link AsyncAudioWriter#POLICY_BLOCK} 等待(默认)，{@link AsyncAudioWriter#POLICY_DROP_OLDEST} 丢弃最早的帧，
+     *                 {@link AsyncAudioWriter#POLICY_SPILL} 额外分配内存
+     * @return
+     */
+    public RecordSession setWriteQueue(int capacity, int policy) {
+        audioFileHelper.setWriteQueue(capacity, policy);
+        return this;
+    }
+
+    /**
+     * 获取当前或最近一次录音的异步写入队列统计 包括队列深度、最大深度和丢弃的字节数
+     */
+    public WriteQueueStats getWriteQueueStats() {
+        return audioFileHelper.getWriteQueueStats();
+    }
+
+    /**
+     * 获取当前或最近一次录音文件的写入统计 包括写入次数、延迟和写放大
+     */
+    public WriteStats getWriteStats() {
+        return audioFileHelper.getWriteStats();
+    }
+
+    /**
+     * 设置是否在内存中保存全部录音数据 默认为true
+     * <p>
+     * 保存时录音结束后通过 {@link StatusListener#onRecordedAllData(WavStream)} 以wav视图回调全部数据 不拷贝，
+     * 默认转为 {@link StatusListener#onRecordedAllData(byte[])}；
+     * 长时间录音(例如数小时的录音)的数据无法全部放在内存中 只需要录音文件时应设置为false 此时不再回调该方法
+     *
+     * @param keepAllData 是否保存全部录音数据
+     * @return
+     */
+    public RecordSession setKeepAllData(boolean keepAllData) {
+        this.keepAllData = keepAllData;
+        return this;
+    }
+
+    /**
+     * 添加录音数据的输出 可以同时添加多个 例如wav存档加上压缩后上传的副本 下次开始录音时生效
+     * <p>
+     * 录音数据转换为小端字节序的PCM后只拷贝一次 所有sink共用，{@link tech.oom.idealrecorder.sink.MonoAudioSink}
+     * 共用一份混合后的单声道数据；每个sink在单独的线程中按顺序处理，
+     * 队列({@link AudioSinkDispatcher#DEFAULT_CAPACITY}帧)已满时丢弃该sink的新帧 不会影响录音和其它sink。
+     * 录音结束时等待所有sink处理完再回调 {@link StatusListener#onStopRecording()}；
+     * sink出错时回调 {@link StatusListener#onSinkError(AudioSink, String)}
+     *
+     * @param sink 录音数据的输出 例如 {@link tech.oom.idealrecorder.sink.FileAudioSink}、
+     *             {@link tech.oom.idealrecorder.sink.EncoderAudioSink}
+     * @return
+     */
+    public RecordSession addSink(AudioSink sink) {
+        return addSink(sink, null, AudioSinkDispatcher.DEFAULT_CAPACITY, AudioSinkDispatcher.POLICY_DROP);
+    }
+
+    /**
+     * 添加录音数据的输出 见 {@link #addSink(AudioSink)}
+     *
+     * @param sink     录音数据的输出
+     * @param executor 执行sink的方法的执行器 为null时使用单独的线程；同一个sink的方法不会同时执行
+     * @param capacity 队列容量 帧数
+     * @param policy   队列已满时的处理方式 {@link AudioSinkDispatcher#POLICY_DROP} 丢弃新帧，
+     *                 {@link AudioSinkDispatcher#POLICY_BLOCK} 录音线程等待 适用于快于实时的数据源
+     * @return
+     */
+    public RecordSession addSink(AudioSink sink, Executor executor, int capacity, int policy) {
+        sinkDispatcher.addSink(sink, executor, capacity, policy);
+        return this;
+    }
+
+    /**
+     * 移除录音数据的输出 下次开始录音时生效
+     *
+     * @return
+     */
+    public RecordSession removeSink(AudioSink sink) {
+        sinkDispatcher.removeSink(sink);
+        return this;
+    }
+
+    /**
+     * 当前或最近一次录音中 该sink处理不及时丢弃的帧数
+     */
+    public long getSinkDroppedFrames(AudioSink sink) {
+        return sinkDispatcher.getDroppedFrames(sink);
+    }
+
+    /**
+     * 设置录音的数据源 默认从麦克风采集
+     * <p>
+     * 使用 {@link FilePcmSource}、{@link SyntheticPcmSource}、{@link ReplayPcmSource} 等数据源时
+     * 不需要录音权限 可以在没有设备的情况下以远快于实时的速度驱动整个录音流程
+     *
+     * @param source 数据源 为null时恢复为从麦克风采集
+     * @return
+     */
+    public RecordSession setPcmSource(PcmSource source) {
+        recorder.setPcmSource(source);
+        return this;
+    }
+
+    /**
+     * 设置是否使用直接内存模式 默认为false
+     * <p>
+     * 直接内存模式下录音数据读取到预先分配的直接内存 {@link ByteBuffer} 中并直接写入文件，
+     * 录音数据通过 {@link StatusListener#onRecordData(ShortBuffer, FrameInfo)} 等只读视图回调，
+     * 不再回调short数组的方法；16位录音从采集到写入文件没有额外的数组分配和字节序转换；
+     * 仅对16位录音有效 8位和浮点录音始终使用对应类型的数组
+     *
+     * @param directBufferMode 是否使用直接内存模式
+     * @return
+     */
+    public RecordSession setDirectBufferMode(boolean directBufferMode) {
+        recorder.setDirectBufferMode(directBufferMode);
+        return this;
+    }
+
+    /**
+     * 设置录音时各种状态的监听
+     *
+     * @param statusListener statusListener
+     * @return
+     */
+    public RecordSession setStatusListener(StatusListener statusListener) {
+        this.statusListener = statusListener;
+        return this;
+    }
+
+    /**
+     * 判断是否有录音权限
+     *
+     * @return
+     */
+    public boolean isRecordAudioPermissionGranted() {
+        return factory.isRecordAudioPermissionGranted();
+    }
+
+    /**
+     * 判断是否有读写存储权限
+     *
+     * @return
+     */
+    public boolean isWriteExternalStoragePermissionGranted() {
+        return factory.isWriteExternalStoragePermissionGranted();
+    }
+
+    /**
+     * 保存的目录是否可写 目录还不存在时检查最近的已存在的上级目录 录音开始时会创建缺少的目录
+     */
+    private static boolean isWritablePath(String path) {
+        File dir = new File(path).getAbsoluteFile().getParentFile();
+        while (dir != null && !dir.exists()) {
+            dir = dir.getParentFile();
+        }
+        return dir != null && dir.isDirectory() && dir.canWrite();
+    }
+
+    /**
+     * 开始录音
+     *
+     * @return 是否开始成功 已经在录音或者录音启动失败时为false
+     */
+    public boolean start() {
+        if (!isStarted.compareAndSet(false, true)) {
+            Log.e(TAG, "Start failed , Because the Record Session already started");
+            return false;
+        }
+        if (!recorder.start()) {
+            isStarted.set(false);
+            Log.e(TAG, "Start failed , Because the recorder failed to start");
+            return false;
+        }
+        Log.d(TAG, "Record Session Started");
+        return true;
+    }
+
+    /**
+     * 预热录音 提前初始化并启动录音 之后调用 {@link #start()} 时可以立即开始采集 适用于按住说话等对开始延迟敏感的场景；
+     * 预热期间会持续占用麦克风 不再需要时调用 {@link #disarm()} 释放。预热后修改录音配置需要重新预热才能生效
+     *
+     * @return 是否预热成功
+     */
+    public boolean arm() {
+        if (isStarted.get()) {
+            Log.e(TAG, "Arm failed , Because the Record Session already started");
+            return false;
+        }
+        return recorder.arm();
+    }
+
+    /**
+     * 取消预热 释放麦克风 正在录音时在录音结束后释放
+     */
+    public void disarm() {
+        recorder.disarm();
+    }
+
+    /**
+     * 设置预录的时长 下次预热时生效
+     * <p>
+     * 预热期间始终保留最近一段时间的录音，调用 {@link #start()} 后这部分数据会先写入文件并回调，随后是实时录音的数据，
+     * 适用于用户在点击开始之前就已经开始说话的场景
+     *
+     * @param preRollMillis 预录时长 单位毫秒 0为不预录 最大为 {@link Recorder#MAX_PRE_ROLL_MILLIS}
+     * @return
+     */
+    public RecordSession setPreRollMillis(int preRollMillis) {
+        recorder.setPreRollMillis(preRollMillis);
+        return this;
+    }
+
+    public boolean isArmed() {
+        return recorder.isArmed();
+    }
+
+    /**
+     * 获取最近一次开始录音的延迟 即从调用 {@link #start()} 到第一帧采集完成的时间
+     *
+     * @return 延迟 单位纳秒 尚未采集到第一帧时为-1
+     */
+    public long getStartLatencyNanos() {
+        return recorder.getStartLatencyNanos();
+    }
+
+    /**
+     * 停止录音
+     */
+    public void stop() {
+        Log.d(TAG, "Stop Record Session is called");
+        if (this.isStarted.get()) {
+            this.isStarted.set(false);
+            this.recorder.immediateStop();
+
+        } else if (this.recorder != null) {
+            this.recorder.immediateStop();
+        }
+    }
+
+    /**
+     * 获取因处理线程或UI线程处理不及时 环形缓冲区已满而被丢弃的帧的总数量
+     *
+     * @return 溢出的帧数量
+     */
+    public long getFrameOverflowCount() {
+        FrameRing ring = recorder.getFrameRing();
+        return ring == null ? 0 : ring.getOverflowCount();
+    }
+
+    /**
+     * 获取录音的采样时钟 可查询已录制的采样数以及采样时钟与系统时钟之间的偏差
+     *
+     * @return 采样时钟
+     */
+    public CaptureClock getCaptureClock() {
+        return recorder.getCaptureClock();
+    }
+
+    /**
+     * 在UI线程执行
+     *
+     * @param runnable 需要执行的runnable
+     */
+    private void runOnUi(Runnable runnable) {
+        idealHandler.post(runnable);
+    }
+
+
+    @Override
+    public boolean onRecorderReady() {
+        if (!recorder.getPcmSource().isLiveCapture()) {
+            return true;
+        }
+        if (!isRecordAudioPermissionGranted()) {
+            Log.e(TAG, "set recorder failed,because no RECORD_AUDIO permission was granted");
+            onRecordedFail(IdealConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
+        }
+        return isRecordAudioPermissionGranted();
+    }
+
+    @Override
+    public boolean onRecorderStart() {
+        // 开始录音时会等待上一次录音结束 上一次录音的结束回调可能已经把状态重置 这里重新设置
+        isStarted.set(true);
+        if (isAudioFileHelperInit) {
+            audioFileHelper.setMaxRecordTime(maxRecordTime);
+            audioFileHelper.start();
+        }
+        recordedSamples = 0;
+        volumeIntervalSamples = Math.max(1, volumeInterval * config.getSampleRate() / 1000);
+        nextVolumeSample = volumeIntervalSamples;
+        maxRecordSamples = maxRecordTime * config.getSampleRate() / 1000;
+        allData.open(config);
+        sinkDispatcher.open(config);
+        int frameBytes = config.getSampleRate() * config.getFrameDuration() / 1000
+                * config.getChannelCount() * config.getBitsPerSample() / 8;
+        allDataBuffer = factory.getBufferPool().acquire(frameBytes);
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onStartRecording();
+                }
+                Log.d(TAG, "onRecorderStart");
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void onRecorded(final short[] wave, FrameInfo info) {
+        recordedSamples = info.getEndSampleIndex();
+        // WAV文件中的数据为小端字节序 转换到复用的数组中 不再为每帧分配数组
+        int size = wave.length * 2;
+        if (allDataBuffer.length < size) {
+            allDataBuffer = new byte[size];
+        }
+        PcmCodec.encodeShorts(wave, 0, allDataBuffer, 0, wave.length, ByteOrder.LITTLE_ENDIAN);
+        dispatch(allDataBuffer, size, info, true);
+        if (statusListener != null) {
+            statusListener.onRecordDataOnWorkerThread(wave, wave == null ? 0 : wave.length, info);
+        }
+        scheduleUiDrain();
+
+        if (isVolumeDue()) {
+            onRecorderVolume(VolumeUtil.calculateVolume(wave));
+        }
+        checkMaxRecordTime();
+    }
+
+    @Override
+    public void onRecorded(ByteBuffer data, ShortBuffer samples, FrameInfo info) {
+        recordedSamples = info.getEndSampleIndex();
+        if (isAudioFileHelperInit) {
+            audioFileHelper.save(data);
+            data.clear();
+        }
+        // 直接内存模式下数据通过复用的数组拷贝到全部数据中 不再为每帧分配数组
+        int size = data.remaining();
+        if (allDataBuffer.length < size) {
+            allDataBuffer = new byte[size];
+        }
+        data.get(allDataBuffer, 0, size);
+        data.clear();
+        dispatch(allDataBuffer, size, info, false);
+        if (statusListener != null) {
+            statusListener.onRecordDataOnWorkerThread(samples, info);
+            samples.clear();
+        }
+        scheduleUiDrain();
+
+        if (isVolumeDue()) {
+            onRecorderVolume(VolumeUtil.calculateVolume(samples));
+        }
+        checkMaxRecordTime();
+    }
+
+    @Override
+    public void onRecorded(byte[] data, FrameInfo info) {
+        recordedSamples = info.getEndSampleIndex();
+        // 8位数据与文件中的格式一致 直接写入 不需要转换
+        dispatch(data, data.length, info, true);
+        if (statusListener != null) {
+            statusListener.onRecordDataOnWorkerThread(data, data.length, info);
+        }
+        scheduleUiDrain();
+
+        if (isVolumeDue()) {
+            onRecorderVolume(VolumeUtil.calculateVolume(data));
+        }
+        checkMaxRecordTime();
+    }
+
+    @Override
+    public void onRecorded(float[] data, FrameInfo info) {
+        recordedSamples = info.getEndSampleIndex();
+        int size = data.length * 4;
+        if (allDataBuffer.length < size) {
+            allDataBuffer = new byte[size];
+        }
+        PcmConverter.floatToBytes(data, 0, allDataBuffer, 0, data.length);
+        dispatch(allDataBuffer, size, info, true);
+        if (statusListener != null) {
+            statusListener.onRecordDataOnWorkerThread(data, data.length, info);
+        }
+        scheduleUiDrain();
+
+        if (isVolumeDue()) {
+            onRecorderVolume(VolumeUtil.calculateVolume(data));
+        }
+        checkMaxRecordTime();
+    }
+
+    /**
+     * 转换后的录音数据写入文件、全部数据和添加的sink 每帧只转换一次
+     *
+     * @param saveFile 是否写入文件 直接内存模式下已经直接写入
+     */
+    private void dispatch(byte[] data, int size, FrameInfo info, boolean saveFile) {
+        if (saveFile && isAudioFileHelperInit) {
+            audioFileHelper.save(data, 0, size);
+        }
+        if (keepAllData) {
+            allData.write(data, 0, size, info);
+        }
+        sinkDispatcher.write(data, 0, size, info);
+    }
+
+    /**
+     * 通知UI线程取出已处理的帧
+     */
+    private void scheduleUiDrain() {
+        if (uiDrainPending.compareAndSet(false, true) && !idealHandler.post(uiDrainRun)) {
+            // UI线程不可用时(例如在JVM上运行) 直接在处理线程中归还帧 避免缓冲区被占满
+            uiDrainPending.set(false);
+            uiDrainRun.run();
+        }
+    }
+
+    /**
+     * 根据已录制的采样数判断是否需要回调音量
+     */
+    private boolean isVolumeDue() {
+        if (recordedSamples < nextVolumeSample) {
+            return false;
+        }
+        while (nextVolumeSample <= recordedSamples) {
+            nextVolumeSample += volumeIntervalSamples;
+        }
+        return true;
+    }
+
+    /**
+     * 根据已录制的采样数判断是否到达最长录音时间
+     */
+    private void checkMaxRecordTime() {
+        if (recordedSamples >= maxRecordSamples) {
+            recorder.stop();
+            isStarted.set(false);
+        }
+    }
+
+    @Override
+    public void onRecordOverrun(final long totalDroppedFrames) {
+        Log.w(TAG, "capture overrun, total dropped frames " + totalDroppedFrames);
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onRecordOverrun(totalDroppedFrames);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onRecordUnderrun(final long totalUnderruns) {
+        Log.w(TAG, "capture underrun, total " + totalUnderruns);
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onRecordUnderrun(totalUnderruns);
+                }
+            }
+        });
+    }
+
+    private void onRecorderVolume(final int volume) {
+
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onVoiceVolume(volume);
+                }
+            }
+        });
+
+
+    }
+
+    @Override
+    public void onRecordedFail(final int paramInt) {
+        isStarted.set(false);
+        if (isAudioFileHelperInit) {
+
+            audioFileHelper.cancel();
+        }
+        sinkDispatcher.cancel();
+        runOnUi(new Runnable() {
+            public void run() {
+                String errorMsg = "";
+                switch (paramInt) {
+                    case IdealConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR:
+                        errorMsg = "启动或录音时抛出异常Exception";
+                        break;
+                    case IdealConst.RecorderErrorCode.RECORDER_READ_ERROR:
+                        errorMsg = "Recorder.read() 过程中发生错误";
+                        break;
+                    case IdealConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR:
+                        errorMsg = "当前应用没有录音权限或者录音功能被占用";
+                        break;
+                    default:
+                        errorMsg = "未知错误";
+                }
+                if (statusListener != null) {
+                    statusListener.onRecordError(paramInt, errorMsg);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onRecorderStop() {
+        // 录音到结尾或者到达最长录音时间时 录音线程自行结束 之后可以再次开始录音
+        isStarted.set(false);
+        if (isAudioFileHelperInit) {
+            audioFileHelper.finish();
+        }
+        sinkDispatcher.finish();
+        factory.getBufferPool().release(allDataBuffer);
+        allDataBuffer = new byte[0];
+        // 在录音线程中创建视图 UI线程回调之前开始的下一次录音不会影响这次的数据
+        final WavStream allDataStream = keepAllData ? allData.toWavStream() : null;
+        runOnUi(new Runnable() {
+            @Override
+            public void run() {
+                if (statusListener != null) {
+                    if (allDataStream != null) {
+                        statusListener.onRecordedAllData(allDataStream);
+                    }
+                    statusListener.onStopRecording();
+                }
+            }
+        });
+    }
+
+    /**
+     * 保存文件失败
+     */
+    @Override
+    public void onFailure(final String reason) {
+
+        Log.d(TAG, "save record file failure, this reason is " + reason);
+
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onFileSaveFailed(reason);
+                }
+            }
+        });
+    }
+
+    /**
+     * 分段录音时一个分段文件写入完成
+     */
+    @Override
+    public void onSegmentComplete(final String path, final long startSample, final long endSample) {
+        Log.d(TAG, "record segment complete " + path + " [" + startSample + ", " + endSample + ")");
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onSegmentComplete(path, startSample, endSample);
+                }
+            }
+        });
+    }
+
+    /**
+     * 添加的sink出错 在sink的线程中回调
+     */
+    @Override
+    public void onSinkError(final AudioSink sink, final String reason) {
+        Log.e(TAG, "audio sink " + sink + " failed: " + reason);
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onSinkError(sink, reason);
+                }
+            }
+        });
+    }
+
+    /**
+     * 保存文件成功
+     */
+    @Override
+    public void onSuccess(final String savePath) {
+        Log.d(TAG, "save record file success, the file path is" + savePath);
+        runOnUi(new Runnable() {
+            public void run() {
+                if (statusListener != null) {
+                    statusListener.onFileSaveSuccess(savePath);
+                }
+            }
+        });
+
+    }
+}
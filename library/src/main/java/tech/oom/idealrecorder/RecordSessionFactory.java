@@ -0,0 +1,123 @@
+package tech.oom.idealrecorder;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.ContextCompat;
+
+import tech.oom.idealrecorder.utils.BufferPool;
+
+/**
+ * 录音会话的工厂 创建相互独立的 {@link RecordSession}
+ * <p>
+ * 各个会话只共享工厂中的context、UI线程的Handler、默认录音配置的副本以及数组缓存池，
+ * 录音线程、文件、监听等状态都属于会话自身，因此可以同时运行多个会话，
+ * 例如在麦克风录音的同时通过 {@link tech.oom.idealrecorder.record.FilePcmSource} 并行处理多个文件
+ */
+public class RecordSessionFactory {
+    /**
+     * 缓存池中最多缓存的数组数量
+     */
+    public static final int DEFAULT_POOLED_BUFFERS = 8;
+    private volatile Context context;
+    private final Handler handler;
+    private final BufferPool bufferPool;
+    private volatile IdealRecorder.RecordConfig defaultConfig = new IdealRecorder.RecordConfig();
+
+    public RecordSessionFactory() {
+        this(DEFAULT_POOLED_BUFFERS);
+    }
+
+    /**
+     * @param maxPooledBuffers 缓存池中最多缓存的数组数量
+     */
+    public RecordSessionFactory(int maxPooledBuffers) {
+        handler = new Handler(Looper.getMainLooper());
+        bufferPool = new BufferPool(maxPooledBuffers);
+    }
+
+    /**
+     * 初始化工厂
+     *
+     * @param mContext 当前应用的application context
+     */
+    public void init(Context mContext) {
+        context = mContext.getApplicationContext();
+    }
+
+    /**
+     * 获取当前应用的context
+     *
+     * @return 当前应用的context
+     */
+    public Context getContext() {
+        if (context == null)
+            throw new IllegalStateException("请先在Application或Activity中调用 IdealRecorder.getInstance.init() 初始化！");
+        return context;
+    }
+
+    /**
+     * 是否已经初始化context 未初始化时(例如在JVM上使用非实时数据源)不检查权限
+     */
+    boolean hasContext() {
+        return context != null;
+    }
+
+    /**
+     * 设置新建会话的默认录音配置 工厂保存配置的副本 之后修改传入的配置不会影响工厂和已创建的会话
+     *
+     * @param config 录音配置
+     * @return
+     */
+    public RecordSessionFactory setDefaultRecordConfig(IdealRecorder.RecordConfig config) {
+        defaultConfig = new IdealRecorder.RecordConfig(config);
+        return this;
+    }
+
+    /**
+     * 获取默认录音配置的副本
+     */
+    public IdealRecorder.RecordConfig getDefaultRecordConfig() {
+        return new IdealRecorder.RecordConfig(defaultConfig);
+    }
+
+    /**
+     * 创建一个新的录音会话 会话使用默认录音配置的副本
+     *
+     * @return 录音会话
+     */
+    public RecordSession newSession() {
+        return new RecordSession(this);
+    }
+
+    /**
+     * 会话之间共享的数组缓存池
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    Handler getHandler() {
+        return handler;
+    }
+
+    /**
+     * 判断是否有录音权限
+     *
+     * @return
+     */
+    public boolean isRecordAudioPermissionGranted() {
+        return ContextCompat.checkSelfPermission(getContext(), Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * 判断是否有读写存储权限
+     *
+     * @return
+     */
+    public boolean isWriteExternalStoragePermissionGranted() {
+        return ContextCompat.checkSelfPermission(getContext(), Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
+    }
+}
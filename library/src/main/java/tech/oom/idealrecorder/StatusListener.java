@@ -1,5 +1,12 @@
 package tech.oom.idealrecorder;
 
+import java.io.IOException;
+import java.nio.ShortBuffer;
+
+import tech.oom.idealrecorder.file.WavStream;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.sink.AudioSink;
+
 /**
  * 录音各种状态的回调类
  */
@@ -22,6 +29,17 @@ public class StatusListener {
     public void onRecordData(short[] data, int length) {
     }
 
+    /**
+     * 录音时的buffer 带有该帧的采样序号和采集时间戳 默认回调 {@link #onRecordData(short[], int)}
+     *
+     * @param data   PCM Data
+     * @param length 长度
+     * @param info   该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordData(short[] data, int length, FrameInfo info) {
+        onRecordData(data, length);
+    }
+
     /**
      * 录音时的buffer回调 在工作线程中
      *
@@ -32,6 +50,93 @@ public class StatusListener {
 
     }
 
+    /**
+     * 录音时的buffer回调 在工作线程中 带有该帧的采样序号和采集时间戳 默认回调 {@link #onRecordDataOnWorkerThread(short[], int)}
+     *
+     * @param data   PCM Data
+     * @param length 长度
+     * @param info   该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordDataOnWorkerThread(short[] data, int length, FrameInfo info) {
+        onRecordDataOnWorkerThread(data, length);
+    }
+
+
+    /**
+     * 处理线程(保存文件、onRecordDataOnWorkerThread等)处理不及时 录音线程丢弃了数据
+     *
+     * @param totalDroppedFrames 本次录音中被丢弃的总帧数
+     */
+    public void onRecordOverrun(long totalDroppedFrames) {
+
+    }
+
+    /**
+     * 录音设备没有及时提供数据 两次读取的间隔超过两帧的时长
+     *
+     * @param totalUnderruns 本次录音中发生的总次数
+     */
+    public void onRecordUnderrun(long totalUnderruns) {
+
+    }
+
+    /**
+     * 直接内存模式下录音时的buffer {@link IdealRecorder#setDirectBufferMode(boolean)}
+     *
+     * @param data PCM Data 的只读视图 仅在回调中有效
+     * @param info 该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordData(ShortBuffer data, FrameInfo info) {
+    }
+
+    /**
+     * 直接内存模式下录音时的buffer回调 在工作线程中 {@link IdealRecorder#setDirectBufferMode(boolean)}
+     *
+     * @param data PCM Data 的只读视图 仅在回调中有效
+     * @param info 该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordDataOnWorkerThread(ShortBuffer data, FrameInfo info) {
+    }
+
+    /**
+     * 8位录音时的buffer 数据为无符号PCM 静音为128
+     *
+     * @param data   PCM Data
+     * @param length 长度
+     * @param info   该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordData(byte[] data, int length, FrameInfo info) {
+    }
+
+    /**
+     * 8位录音时的buffer回调 在工作线程中
+     *
+     * @param data   PCM Data
+     * @param length 长度
+     * @param info   该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordDataOnWorkerThread(byte[] data, int length, FrameInfo info) {
+    }
+
+    /**
+     * 浮点录音时的buffer 数据范围为[-1.0,1.0]
+     *
+     * @param data   PCM Data
+     * @param length 长度
+     * @param info   该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordData(float[] data, int length, FrameInfo info) {
+    }
+
+    /**
+     * 浮点录音时的buffer回调 在工作线程中
+     *
+     * @param data   PCM Data
+     * @param length 长度
+     * @param info   该帧的元信息 对象会被复用 需要保存时请复制
+     */
+    public void onRecordDataOnWorkerThread(float[] data, int length, FrameInfo info) {
+    }
 
     /**
      * 录音时的音量
@@ -72,6 +177,27 @@ public class StatusListener {
     }
 
 
+    /**
+     * 分段录音时一个分段文件保存完成 {@link IdealRecorder#setSegment(long, long)}
+     *
+     * @param path        分段文件的路径
+     * @param startSample 分段第一个采样的序号 按帧计算 从录音开始时为0
+     * @param endSample   分段最后一个采样的下一个序号 即下一个分段的startSample
+     */
+    public void onSegmentComplete(String path, long startSample, long endSample) {
+
+    }
+
+    /**
+     * 通过 {@link RecordSession#addSink(AudioSink)} 添加的输出出错 这次录音不再向它写入数据
+     *
+     * @param sink   出错的输出
+     * @param reason 失败的原因
+     */
+    public void onSinkError(AudioSink sink, String reason) {
+
+    }
+
     /**
      * 停止录音的回调
      */
@@ -87,4 +213,20 @@ public class StatusListener {
 
     }
 
+    /**
+     * 全部的录音数据 以wav文件的流式视图回调 录音结束后先于 {@link #onStopRecording()} 回调
+     * <p>
+     * 视图直接读取内存中保存的录音数据 上传等场景可以直接读取或者通过 {@link WavStream#writeTo(java.io.OutputStream)} 写出，
+     * 不需要再拷贝一份；默认实现拷贝pcm数据后回调 {@link #onRecordedAllData(byte[])}，重写该方法时不再回调
+     *
+     * @param wav 全部录音数据的wav视图 下次开始录音后仍然可以读取
+     */
+    public void onRecordedAllData(WavStream wav) {
+        try {
+            onRecordedAllData(wav.toPcmByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
 }
@@ -0,0 +1,337 @@
+package tech.oom.idealrecorder.file;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import tech.oom.idealrecorder.utils.Log;
+
+/**
+ * 异步写入录音文件 录音数据拷贝到预先分配的有界队列中 由单独的写入线程写入 {@link AudioWriter}，
+ * 存储设备的卡顿或同步不再阻塞录音线程
+ * <p>
+ * 队列已满时的处理方式由策略决定：{@link #POLICY_BLOCK} 等待写入线程腾出空间，
+ * {@link #POLICY_DROP_OLDEST} 丢弃最早的未写入的帧，{@link #POLICY_SPILL} 额外分配内存保存；
+ * 丢弃的帧不会写入文件 文件头中的长度与实际写入的数据一致
+ */
+public class AsyncAudioWriter {
+    private static final String TAG = "AsyncAudioWriter";
+    /**
+     * 队列已满时等待 不丢失数据 但写入卡顿会传递到录音线程
+     */
+    public static final int POLICY_BLOCK = 0;
+    /**
+     * 队列已满时丢弃最早的未写入的帧 录音线程不会等待
+     */
+    public static final int POLICY_DROP_OLDEST = 1;
+    /**
+     * 队列已满时额外分配内存保存 不丢失数据且录音线程不会等待 但存储持续跟不上时内存会一直增长
+     */
+    public static final int POLICY_SPILL = 2;
+    /**
+     * 默认队列容量 帧数
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final AudioFileListener listener;
+    private final Object lock = new Object();
+    private final WriteQueueStats stats = new WriteQueueStats();
+
+    private int capacity = DEFAULT_CAPACITY;
+    private int policy = POLICY_BLOCK;
+    /**
+     * 等待写入的帧 循环队列 只有 {@link #POLICY_SPILL} 下才会扩容
+     */
+    private byte[][] queue;
+    private int[] lengths;
+    private int head;
+    private int count;
+    /**
+     * 空闲的预分配数组
+     */
+    private byte[][] free;
+    private int freeCount;
+    private boolean finishing;
+    private boolean aborted;
+    private boolean failed;
+    private Thread thread;
+    private AudioWriter writer;
+
+    public AsyncAudioWriter(AudioFileListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 设置队列容量和队列已满时的策略 下次开始时生效
+     *
+     * @param capacity 队列容量 帧数 至少为2
+     * @param policy   {@link #POLICY_BLOCK}, {@link #POLICY_DROP_OLDEST}, {@link #POLICY_SPILL}
+     */
+    public void setQueue(int capacity, int policy) {
+        this.capacity = Math.max(2, capacity);
+        this.policy = policy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * 分配队列并启动写入线程
+     *
+     * @param writer     已经打开的写入方式 之后只在写入线程中使用 直到 {@link #finish()} 或 {@link #cancel()} 返回
+     * @param frameBytes 每帧的字节数 用于预分配队列中的数组 更大的帧会重新分配
+     */
+    public void start(AudioWriter writer, int frameBytes) {
+        synchronized (lock) {
+            this.writer = writer;
+            if (queue == null || queue.length != capacity || free[0] == null || free[0].length < frameBytes) {
+                queue = new byte[capacity][];
+                lengths = new int[capacity];
+                free = new byte[capacity][];
+                for (int i = 0; i < capacity; i++) {
+                    free[i] = new byte[frameBytes];
+                }
+            } else {
+                // 复用上次录音的数组 队列中剩余的数组全部放回空闲数组
+                for (int i = 0; i < count; i++) {
+                    release(queue[(head + i) % queue.length]);
+                }
+            }
+            freeCount = 0;
+            for (int i = 0; i < free.length && free[i] != null; i++) {
+                freeCount++;
+            }
+            head = 0;
+            count = 0;
+            finishing = false;
+            aborted = false;
+            failed = false;
+            stats.reset(capacity);
+        }
+        thread = new Thread(WriteRun, "IdealRecorder-Writer");
+        thread.start();
+    }
+
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * 将数据拷贝到队列中
+     *
+     * @return 数据是否进入队列 写入失败或已结束时返回false
+     */
+    public boolean offer(byte[] data, int offset, int size) {
+        synchronized (lock) {
+            byte[] buffer = obtain(size);
+            if (buffer == null) {
+                return false;
+            }
+            System.arraycopy(data, offset, buffer, 0, size);
+            enqueue(buffer, size);
+        }
+        return true;
+    }
+
+    /**
+     * 将buffer中从position到limit的数据拷贝到队列中 拷贝后position等于limit
+     */
+    public boolean offer(ByteBuffer data) {
+        synchronized (lock) {
+            int size = data.remaining();
+            byte[] buffer = obtain(size);
+            if (buffer == null) {
+                return false;
+            }
+            data.get(buffer, 0, size);
+            enqueue(buffer, size);
+        }
+        return true;
+    }
+
+    /**
+     * 等待队列中的数据全部写入后停止写入线程 之后可以关闭 {@link AudioWriter} 写入文件头
+     */
+    public void finish() {
+        synchronized (lock) {
+            finishing = true;
+            lock.notifyAll();
+        }
+        join();
+    }
+
+    /**
+     * 丢弃队列中的数据并停止写入线程
+     */
+    public void cancel() {
+        synchronized (lock) {
+            aborted = true;
+            lock.notifyAll();
+        }
+        join();
+    }
+
+    /**
+     * 获取队列统计的快照
+     */
+    public WriteQueueStats getStats() {
+        WriteQueueStats snapshot = new WriteQueueStats();
+        synchronized (lock) {
+            stats.depth = count;
+            snapshot.copyFrom(stats);
+        }
+        return snapshot;
+    }
+
+    private void join() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * 取出一个可以写入的数组 队列已满时按策略处理 需要持有lock
+     */
+    private byte[] obtain(int size) {
+        if (failed || aborted || finishing) {
+            return null;
+        }
+        byte[] buffer = null;
+        if (freeCount > 0) {
+            buffer = free[--freeCount];
+            free[freeCount] = null;
+        } else if (policy == POLICY_SPILL) {
+            stats.spilledFrames++;
+        } else if (policy == POLICY_DROP_OLDEST && count > 0) {
+            buffer = queue[head];
+            stats.droppedFrames++;
+            stats.droppedBytes += lengths[head];
+            queue[head] = null;
+            head = (head + 1) % queue.length;
+            count--;
+        } else {
+            // POLICY_BLOCK 或者所有数组都在写入中 等待写入线程归还
+            long start = System.nanoTime();
+            while (freeCount == 0 && !failed && !aborted) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            stats.blockedNanos += System.nanoTime() - start;
+            if (freeCount == 0) {
+                return null;
+            }
+            buffer = free[--freeCount];
+            free[freeCount] = null;
+        }
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return buffer;
+    }
+
+    private void enqueue(byte[] buffer, int size) {
+        if (count == queue.length) {
+            // 只有 POLICY_SPILL 会超出预分配的容量 队列扩容
+            byte[][] newQueue = new byte[queue.length * 2][];
+            int[] newLengths = new int[queue.length * 2];
+            for (int i = 0; i < count; i++) {
+                int index = (head + i) % queue.length;
+                newQueue[i] = queue[index];
+                newLengths[i] = lengths[index];
+            }
+            queue = newQueue;
+            lengths = newLengths;
+            head = 0;
+        }
+        int tail = (head + count) % queue.length;
+        queue[tail] = buffer;
+        lengths[tail] = size;
+        count++;
+        stats.queuedFrames++;
+        if (count > stats.highWaterMark) {
+            stats.highWaterMark = count;
+        }
+        lock.notifyAll();
+    }
+
+    /**
+     * 数组放回空闲数组 超出预分配数量的数组(扩容时分配的)直接丢弃 需要持有lock
+     */
+    private void release(byte[] buffer) {
+        if (freeCount < free.length) {
+            free[freeCount++] = buffer;
+        }
+    }
+
+    private final Runnable WriteRun = new Runnable() {
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+            while (true) {
+                byte[] buffer;
+                int size;
+                synchronized (lock) {
+                    while (count == 0 && !finishing && !aborted) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            aborted = true;
+                        }
+                    }
+                    if (aborted || count == 0) {
+                        return;
+                    }
+                    buffer = queue[head];
+                    size = lengths[head];
+                    queue[head] = null;
+                    head = (head + 1) % queue.length;
+                    count--;
+                }
+                boolean ok = true;
+                try {
+                    writer.write(buffer, 0, size);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    ok = false;
+                    if (listener != null) {
+                        listener.onFailure(e.toString());
+                    }
+                }
+                synchronized (lock) {
+                    release(buffer);
+                    if (!ok) {
+                        Log.e(TAG, "write failed, dropping " + count + " queued frames");
+                        failed = true;
+                        while (count > 0) {
+                            release(queue[head]);
+                            queue[head] = null;
+                            head = (head + 1) % queue.length;
+                            count--;
+                        }
+                    }
+                    lock.notifyAll();
+                    if (!ok) {
+                        return;
+                    }
+                }
+            }
+        }
+    };
+}
@@ -1,14 +1,14 @@
 package tech.oom.idealrecorder.file;
 
-import android.media.AudioFormat;
 import android.text.TextUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 import tech.oom.idealrecorder.IdealRecorder;
 import tech.oom.idealrecorder.utils.Log;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
 
 
 /**
@@ -18,15 +18,83 @@ import tech.oom.idealrecorder.utils.Log;
 public class AudioFileHelper {
 
     public static final String TAG = "AudioFileHelper";
+    /**
+     * 保存为pcm文件 只有录音数据
+     */
+    public static final int FORMAT_PCM = 0;
+    /**
+     * 保存为wav文件
+     */
+    public static final int FORMAT_WAV = 1;
+    /**
+     * 保存为FLAC无损压缩文件 只支持8位和16位录音
+     */
+    public static final int FORMAT_FLAC = 2;
+    /**
+     * 保存为 G.711 µ-law 编码的wav文件 每个采样8位
+     */
+    public static final int FORMAT_MULAW = 3;
+    /**
+     * 保存为 G.711 A-law 编码的wav文件 每个采样8位
+     */
+    public static final int FORMAT_ALAW = 4;
+    /**
+     * 保存为 IMA ADPCM 编码的wav文件 每个采样4位
+     */
+    public static final int FORMAT_IMA_ADPCM = 5;
+    /**
+     * 始终使用标准的wav文件头 超过4GB的长度无法记录
+     */
+    public static final int RF64_NEVER = 0;
+    /**
+     * 最长录音时间对应的数据可能超过4GB时预留ds64块 超过4GB时自动转换为RF64格式 否则使用标准的wav文件头
+     */
+    public static final int RF64_AUTO = 1;
+    /**
+     * 始终预留ds64块 超过4GB时自动转换为RF64格式
+     */
+    public static final int RF64_RESERVE = 2;
     private AudioFileListener listener;
     private String savePath;
-    private RandomAccessFile randomAccessFile;
+    private final BufferedAudioWriter bufferedWriter = new BufferedAudioWriter();
+    private final MappedAudioWriter mappedWriter = new MappedAudioWriter();
+    private final AsyncAudioWriter asyncWriter;
+    /**
+     * 当前录音使用的写入方式
+     */
+    private AudioWriter writer = bufferedWriter;
     private File targetFile;
     private IdealRecorder.RecordConfig config;
-    private boolean isWav = true;
+    private int format = FORMAT_WAV;
+    private int flacBlockSize = FlacEncoder.DEFAULT_BLOCK_SIZE;
+    private int flacThreads = FlacAudioWriter.DEFAULT_THREADS;
+    /**
+     * 上次录音使用的FLAC编码 参数相同时复用其中的缓存数组
+     */
+    private FlacAudioWriter flacWriter;
+    /**
+     * 上次录音使用的 G.711/IMA ADPCM 编码 参数相同时复用
+     */
+    private CompressedAudioWriter compressedWriter;
+    private boolean isAsync;
+    private boolean isMapped;
+    private long checkpointIntervalMillis;
+    private int rf64Mode = RF64_AUTO;
+    private long maxRecordTimeMillis = -1;
+    private long segmentDurationMillis;
+    private long segmentSizeBytes;
+    /**
+     * 分段录音时的写入方式 不分段时为null
+     */
+    private SegmentedAudioWriter segmentedWriter;
+    /**
+     * 当前文件的文件头是否预留了ds64块
+     */
+    private boolean reserveDs64;
 
     public AudioFileHelper(AudioFileListener listener) {
         this.listener = listener;
+        this.asyncWriter = new AsyncAudioWriter(listener);
     }
 
     public void setSavePath(String savePath) {
@@ -38,7 +106,132 @@ public class AudioFileHelper {
     }
 
     public void setWav(boolean wav) {
-        this.isWav = wav;
+        this.format = wav ? FORMAT_WAV : FORMAT_PCM;
+    }
+
+    /**
+     * 设置文件格式 下次开始录音时生效
+     *
+     * @param format {@link #FORMAT_PCM}, {@link #FORMAT_WAV}(默认), {@link #FORMAT_FLAC},
+     *               {@link #FORMAT_MULAW}, {@link #FORMAT_ALAW}, {@link #FORMAT_IMA_ADPCM}
+     */
+    public void setFormat(int format) {
+        this.format = format;
+    }
+
+    /**
+     * 设置FLAC编码的参数 下次开始录音时生效
+     * <p>
+     * 每个块独立编码 多个线程时并行编码 输出与线程数无关
+     *
+     * @param blockSize 块大小 每个声道的采样数 默认 {@link FlacEncoder#DEFAULT_BLOCK_SIZE}
+     * @param threads   编码线程数 默认 {@link FlacAudioWriter#DEFAULT_THREADS} 为0时在写入文件的线程中编码
+     */
+    public void setFlacEncoder(int blockSize, int threads) {
+        this.flacBlockSize = blockSize;
+        this.flacThreads = threads;
+    }
+
+    /**
+     * 设置文件的写入策略 下次开始录音时生效
+     *
+     * @param policy 写入策略 为null时使用默认策略
+     */
+    public void setFlushPolicy(FlushPolicy policy) {
+        bufferedWriter.setFlushPolicy(policy);
+    }
+
+    /**
+     * 设置是否通过内存映射写入文件 默认为false 下次开始录音时生效
+     * <p>
+     * 内存映射时文件按区段预先分配 写入数据不需要系统调用 适用于长时间录音；此时 {@link #setFlushPolicy(FlushPolicy)} 不生效
+     *
+     * @param mapped     是否通过内存映射写入
+     * @param extentSize 每次预分配的区段大小 单位字节 默认 {@link MappedAudioWriter#DEFAULT_EXTENT_SIZE}
+     */
+    public void setMappedWrite(boolean mapped, int extentSize) {
+        this.isMapped = mapped;
+        mappedWriter.setExtentSize(extentSize);
+    }
+
+    /**
+     * 获取当前或最近一次录音文件的写入统计
+     */
+    public WriteStats getWriteStats() {
+        return writer.getWriteStats();
+    }
+
+    /**
+     * 设置超过4GB的录音是否使用RF64格式 下次开始录音时生效
+     *
+     * @param mode {@link #RF64_NEVER}, {@link #RF64_AUTO}(默认), {@link #RF64_RESERVE}
+     */
+    public void setRf64Mode(int mode) {
+        this.rf64Mode = mode;
+    }
+
+    /**
+     * 设置最长录音时间 {@link #RF64_AUTO} 据此判断是否需要预留ds64块
+     *
+     * @param maxRecordTimeMillis 最长录音时间 单位毫秒 小于0表示不限制
+     */
+    public void setMaxRecordTime(long maxRecordTimeMillis) {
+        this.maxRecordTimeMillis = maxRecordTimeMillis;
+    }
+
+    /**
+     * 设置分段录音 下次开始录音时生效
+     * <p>
+     * 分段时录音数据按时长或大小依次写入多个独立的文件 文件名为录音路径加序号 例如 rec_0001.wav，
+     * 每个分段完成时回调 {@link AudioFileListener#onSegmentComplete(String, long, long)}，可以在录音过程中上传或处理已完成的分段；
+     * 两个条件都设置时先达到的生效 都为0时不分段
+     *
+     * @param durationMillis 每段的时长 单位毫秒 0表示不按时长分段
+     * @param sizeBytes      每段的数据大小 单位字节 不包括文件头 向下取整到整帧 0表示不按大小分段
+     */
+    public void setSegment(long durationMillis, long sizeBytes) {
+        this.segmentDurationMillis = Math.max(0, durationMillis);
+        this.segmentSizeBytes = Math.max(0, sizeBytes);
+    }
+
+    /**
+     * 设置录音过程中重写文件头的间隔 下次开始录音时生效
+     * <p>
+     * 文件头中的长度默认只在录音结束时写入，进程异常退出时文件头中的长度为0 多数播放器无法播放；
+     * 设置间隔后会定期写入缓冲的数据并以当前长度重写文件头 异常退出时最多丢失一个间隔的数据
+     *
+     * @param intervalMillis 间隔 单位毫秒 0表示只在录音结束时写入 默认为0
+     */
+    public void setCheckpointInterval(long intervalMillis) {
+        this.checkpointIntervalMillis = Math.max(0, intervalMillis);
+    }
+
+    /**
+     * 设置是否在单独的线程中写入文件 默认为false 下次开始录音时生效
+     * <p>
+     * 异步写入时录音数据先拷贝到预先分配的有界队列中，存储设备的卡顿不会阻塞录音线程
+     *
+     * @param async 是否异步写入
+     */
+    public void setAsyncWrite(boolean async) {
+        this.isAsync = async;
+    }
+
+    /**
+     * 设置异步写入的队列容量和队列已满时的策略 下次开始录音时生效
+     *
+     * @param capacity 队列容量 帧数 默认 {@link AsyncAudioWriter#DEFAULT_CAPACITY}
+     * @param policy   {@link AsyncAudioWriter#POLICY_BLOCK}, {@link AsyncAudioWriter#POLICY_DROP_OLDEST}, {@link AsyncAudioWriter#POLICY_SPILL}
+     */
+    public void setWriteQueue(int capacity, int policy) {
+        asyncWriter.setQueue(capacity, policy);
+    }
+
+    /**
+     * 获取当前或最近一次录音的异步写入队列统计
+     */
+    public WriteQueueStats getWriteQueueStats() {
+        return asyncWriter.getStats();
     }
 
     public void start() {
@@ -55,11 +248,39 @@ public class AudioFileHelper {
     }
 
     public void save(byte[] data, int offset, int size) {
-        if (randomAccessFile == null) {
+        if (!writer.isOpen()) {
+            return;
+        }
+        if (asyncWriter.isRunning()) {
+            asyncWriter.offer(data, offset, size);
             return;
         }
         try {
-            write(randomAccessFile, data, offset, size);
+            writer.write(data, offset, size);
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (listener != null) {
+                listener.onFailure(e.toString());
+            }
+
+        }
+    }
+
+    /**
+     * 保存直接内存中的数据 拷贝到写入缓冲区 不经过中间数组
+     *
+     * @param data 需要保存的数据 从position写到limit
+     */
+    public void save(ByteBuffer data) {
+        if (!writer.isOpen()) {
+            return;
+        }
+        if (asyncWriter.isRunning()) {
+            asyncWriter.offer(data);
+            return;
+        }
+        try {
+            writer.write(data);
         } catch (IOException e) {
             e.printStackTrace();
             if (listener != null) {
@@ -93,106 +314,130 @@ public class AudioFileHelper {
             return;
         }
         targetFile = new File(path);
+        long segmentBytes = getSegmentBytes();
 
-        if (targetFile.exists()) {
+        if (targetFile.exists() && segmentBytes == 0) {
             targetFile.delete();
         } else {
             File parentDir = targetFile.getParentFile();
-            if (!parentDir.exists()) {
+            if (parentDir != null && !parentDir.exists()) {
                 parentDir.mkdirs();
             }
         }
-        short bSamples;
-        short nChannels;
-        int sRate;
-        if (config.getAudioFormat() == AudioFormat.ENCODING_PCM_16BIT) {
-            bSamples = 16;
-        } else {
-            bSamples = 8;
+        // 数据长度先写0 关闭文件时写入实际长度 浮点格式使用 WAVE_FORMAT_IEEE_FLOAT
+        boolean isWav = format == FORMAT_WAV;
+        reserveDs64 = isWav && needDs64(segmentBytes);
+        writer = isMapped ? mappedWriter : bufferedWriter;
+        if (format == FORMAT_FLAC) {
+            if (config.isFloat()) {
+                throw new IOException("FLAC does not support float pcm");
+            }
+            if (flacWriter == null || !flacWriter.matches(writer, config, flacBlockSize, flacThreads)) {
+                flacWriter = new FlacAudioWriter(writer, config, flacBlockSize, flacThreads);
+            }
+            writer = flacWriter;
+        } else if (format == FORMAT_MULAW || format == FORMAT_ALAW || format == FORMAT_IMA_ADPCM) {
+            int formatTag = format == FORMAT_MULAW ? PcmToWavUtil.WAVE_FORMAT_MULAW
+                    : format == FORMAT_ALAW ? PcmToWavUtil.WAVE_FORMAT_ALAW : PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM;
+            if (compressedWriter == null || !compressedWriter.matches(writer, config, formatTag)) {
+                compressedWriter = new CompressedAudioWriter(writer, config, formatTag);
+            }
+            writer = compressedWriter;
         }
-
-        if (config.getChannelConfig() == AudioFormat.CHANNEL_IN_MONO) {
-            nChannels = 1;
-        } else {
-            nChannels = 2;
-        }
-        sRate = config.getSampleRate();
-        randomAccessFile = new RandomAccessFile(targetFile, "rw");
-        randomAccessFile.setLength(0);
-        if (isWav) {
-            // Set file length to
-            // 0, to prevent unexpected behavior in case the file already existed
-            // 16K、16bit、单声道
-            /* RIFF header */
-            randomAccessFile.writeBytes("RIFF"); // riff id
-            randomAccessFile.writeInt(0); // riff chunk size *PLACEHOLDER*
-            randomAccessFile.writeBytes("WAVE"); // wave type
-
-            /* fmt chunk */
-            randomAccessFile.writeBytes("fmt "); // fmt id
-            randomAccessFile.writeInt(Integer.reverseBytes(16)); // fmt chunk size
-            randomAccessFile.writeShort(Short.reverseBytes((short) 1)); // AudioFormat,1 for PCM
-            randomAccessFile.writeShort(Short.reverseBytes(nChannels));// Number of channels, 1 for mono, 2 for stereo
-            randomAccessFile.writeInt(Integer.reverseBytes(sRate)); // Sample rate
-            randomAccessFile.writeInt(Integer.reverseBytes(sRate * bSamples * nChannels / 8)); // Byte rate,SampleRate*NumberOfChannels*BitsPerSample/8
-            randomAccessFile.writeShort(Short.reverseBytes((short) (nChannels * bSamples / 8))); // Block align, NumberOfChannels*BitsPerSample/8
-            randomAccessFile.writeShort(Short.reverseBytes(bSamples)); // Bits per sample
-
-            /* data chunk */
-            randomAccessFile.writeBytes("data"); // data id
-            randomAccessFile.writeInt(0); // data chunk size *PLACEHOLDER*
+        if (checkpointIntervalMillis > 0) {
+            writer = new CheckpointAudioWriter(writer, config, isWav, reserveDs64, checkpointIntervalMillis);
+        }
+        segmentedWriter = null;
+        if (segmentBytes > 0) {
+            segmentedWriter = new SegmentedAudioWriter(writer, targetFile, config, isWav, reserveDs64, segmentBytes, listener);
+            writer = segmentedWriter;
+        }
+        writer.open(targetFile, isWav ? PcmToWavUtil.getWaveFileHeader(config, 0, reserveDs64) : null);
+        if (isAsync) {
+            int frameBytes = config.getSampleRate() * config.getFrameDuration() / 1000
+                    * config.getChannelCount() * config.getBitsPerSample() / 8;
+            asyncWriter.start(writer, frameBytes);
         }
-
 
         Log.d(TAG, "saved file path: " + path);
 
     }
 
-    private void write(RandomAccessFile file, byte[] data, int offset, int size) throws IOException {
-        file.write(data, offset, size);
-//        Log.d(TAG, "fwrite: " + size);
+    /**
+     * 每个分段的数据长度 取时长和大小中较小的一个 按整帧计算
+     *
+     * @return 不分段时返回0
+     */
+    private long getSegmentBytes() {
+        long blockAlign = config.getChannelCount() * config.getBitsPerSample() / 8;
+        long bytes = segmentSizeBytes / blockAlign * blockAlign;
+        if (segmentDurationMillis > 0) {
+            long durationBytes = Math.max(1, config.getSampleRate() * segmentDurationMillis / 1000) * blockAlign;
+            bytes = bytes == 0 ? durationBytes : Math.min(bytes, durationBytes);
+        } else if (segmentSizeBytes > 0 && bytes == 0) {
+            bytes = blockAlign;
+        }
+        return bytes;
     }
 
-    private void close() throws IOException {
-        try {
-            if (randomAccessFile == null) {
-                if (listener != null) {
-                    listener.onFailure("File save error exception occurs");
-                }
-                return;
-            }
-            if (isWav) {
-                randomAccessFile.seek(4); // riff chunk size
-                randomAccessFile.writeInt(Integer.reverseBytes((int) (randomAccessFile.length() - 8)));
-                randomAccessFile.seek(40); // data chunk size
-                randomAccessFile.writeInt(Integer.reverseBytes((int) (randomAccessFile.length() - 44)));
-            }
+    /**
+     * @param segmentBytes 每个分段的数据长度 不分段时为0
+     */
+    private boolean needDs64(long segmentBytes) {
+        if (rf64Mode == RF64_RESERVE) {
+            return true;
+        }
+        if (rf64Mode != RF64_AUTO) {
+            return false;
+        }
+        long maxDataLength = PcmToWavUtil.MAX_RIFF_SIZE - PcmToWavUtil.getWaveFileHeaderSize(PcmToWavUtil.WAVE_FORMAT_IEEE_FLOAT);
+        if (segmentBytes > 0) {
+            return segmentBytes > maxDataLength;
+        }
+        if (maxRecordTimeMillis < 0) {
+            return true;
+        }
+        long byteRate = (long) config.getSampleRate() * config.getChannelCount() * config.getBitsPerSample() / 8;
+        return maxRecordTimeMillis / 1000 + 1 > maxDataLength / byteRate;
+    }
 
-            Log.d(TAG, "file size: " + randomAccessFile.length());
+    private void close() throws IOException {
+        // 等待队列中的数据全部写入 之后才能写入实际长度的文件头
+        asyncWriter.finish();
+        if (!writer.isOpen()) {
             if (listener != null) {
-                listener.onSuccess(savePath);
-            }
-
-        } finally {
-            if (randomAccessFile != null) {
-                randomAccessFile.close();
-                randomAccessFile = null;
+                listener.onFailure("File save error exception occurs");
             }
-
+            return;
+        }
+        // 写入缓冲区中剩余的数据 再写入实际长度的文件头
+        writer.close(format == FORMAT_WAV ? PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength(), reserveDs64) : null);
+
+        // 分段录音时回调最后一个分段的路径
+        File savedFile = segmentedWriter != null ? segmentedWriter.getLastFile() : targetFile;
+        Log.d(TAG, "file size: " + savedFile.length() + " " + writer.getWriteStats()
+                + (isAsync ? " " + asyncWriter.getStats() : ""));
+        if (listener != null) {
+            listener.onSuccess(segmentedWriter != null ? savedFile.getPath() : savePath);
         }
     }
 
     public void cancel() {
-        if (randomAccessFile == null) {
+        asyncWriter.cancel();
+        if (!writer.isOpen()) {
             return;
         }
+        if (segmentedWriter != null) {
+            // 只删除未完成的分段 已完成的分段已经回调 保留
+            targetFile = segmentedWriter.getCurrentFile();
+        }
+        writer.abort();
         if (targetFile == null) {
             return;
         }
         if (targetFile.exists()) {
             targetFile.delete();
         }
-        randomAccessFile = null;
         targetFile = null;
 
     }
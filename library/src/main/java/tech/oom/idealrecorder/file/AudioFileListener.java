@@ -16,4 +16,13 @@ public interface AudioFileListener {
      * @param savePath 保存文件的路径
      */
     void onSuccess(String savePath);
+
+    /**
+     * 分段录音时一个分段文件写入完成 在写入文件的线程中回调
+     *
+     * @param path        分段文件的路径
+     * @param startSample 分段第一个采样的序号 按帧计算 从录音开始时为0
+     * @param endSample   分段最后一个采样的下一个序号 即下一个分段的startSample
+     */
+    void onSegmentComplete(String path, long startSample, long endSample);
 }
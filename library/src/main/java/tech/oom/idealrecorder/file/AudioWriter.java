@@ -0,0 +1,58 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 录音文件的写入方式 {@link AudioFileHelper} 通过该接口写入文件头和录音数据
+ * <p>
+ * 实现只需要支持单个线程写入 统计信息可以在任意线程中读取
+ */
+public interface AudioWriter {
+    /**
+     * 打开文件并写入文件头 文件已存在时清空
+     *
+     * @param target 目标文件
+     * @param header 文件头 可以为null
+     */
+    void open(File target, byte[] header) throws IOException;
+
+    boolean isOpen();
+
+    void write(byte[] data, int offset, int size) throws IOException;
+
+    /**
+     * 写入buffer中从position到limit的数据 写入后position等于limit
+     */
+    void write(ByteBuffer data) throws IOException;
+
+    /**
+     * 打开文件后写入的数据总长度 不包括文件头
+     */
+    long getDataLength();
+
+    /**
+     * 写入缓冲的数据并在文件开头重写文件头 文件保持打开 用于异常退出时保留已录制的数据
+     *
+     * @param header 当前数据长度的文件头 为null时只写入缓冲的数据 长度需要与打开时的文件头一致
+     */
+    void checkpoint(byte[] header) throws IOException;
+
+    /**
+     * 写入剩余的数据 在文件开头重写文件头后关闭文件
+     *
+     * @param header 最终的文件头 为null时不重写 长度需要与打开时的文件头一致
+     */
+    void close(byte[] header) throws IOException;
+
+    /**
+     * 丢弃未写入的数据并关闭文件 不删除文件
+     */
+    void abort();
+
+    /**
+     * 获取写入统计的快照
+     */
+    WriteStats getWriteStats();
+}
@@ -0,0 +1,342 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.Log;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 批量将pcm文件转换为wav文件 适合转换大量缓存的录音
+ * <p>
+ * 转换前根据pcm文件的长度生成最终的文件头 只写入一次 不需要回头重写；
+ * 数据通过 {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} 在内核中复制 不经过Java的数组。
+ * 多个文件在固定数量的线程中并发转换，返回每个文件的结果和总体的吞吐量；单个文件失败不影响其它文件。
+ * <p>
+ * 末尾不完整的采样不会写入wav文件，超过4GB的文件使用RF64格式
+ */
+public class BatchWavConverter {
+    private static final String TAG = "BatchWavConverter";
+    /**
+     * 转换成功
+     */
+    public static final int STATUS_OK = 0;
+    /**
+     * 读写失败或者被中断 目标文件已删除
+     */
+    public static final int STATUS_FAILED = 1;
+    /**
+     * 默认的并发线程数 转换受限于存储设备 更多的线程通常不会更快
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    private final IdealRecorder.RecordConfig config;
+    private int threads = DEFAULT_THREADS;
+
+    /**
+     * 单个文件的转换结果
+     */
+    public static class Result {
+        private final File source;
+        private final File target;
+        private final int status;
+        private final long dataLength;
+        private final long elapsedNanos;
+        private final String message;
+
+        Result(File source, File target, int status, long dataLength, long elapsedNanos, String message) {
+            this.source = source;
+            this.target = target;
+            this.status = status;
+            this.dataLength = dataLength;
+            this.elapsedNanos = elapsedNanos;
+            this.message = message;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        /**
+         * {@link #STATUS_OK}, {@link #STATUS_FAILED}
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * 写入的音频数据长度 不包括文件头 失败时为-1
+         */
+        public long getDataLength() {
+            return dataLength;
+        }
+
+        /**
+         * 转换该文件的耗时 单位纳秒
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{source=" + source + ", target=" + target + ", status=" + status
+                    + ", dataLength=" + dataLength + ", elapsedNanos=" + elapsedNanos + ", message='" + message + "'}";
+        }
+    }
+
+    /**
+     * 一次批量转换的结果
+     */
+    public static class Report {
+        private final List<Result> results;
+        private final long elapsedNanos;
+        private final int succeeded;
+        private final long totalBytes;
+
+        Report(List<Result> results, long elapsedNanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.elapsedNanos = elapsedNanos;
+            int succeeded = 0;
+            long totalBytes = 0;
+            for (Result result : results) {
+                if (result.getStatus() == STATUS_OK) {
+                    succeeded++;
+                    totalBytes += result.getDataLength();
+                }
+            }
+            this.succeeded = succeeded;
+            this.totalBytes = totalBytes;
+        }
+
+        /**
+         * 每个文件的结果 与传入的顺序一致
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public int getSucceededCount() {
+            return succeeded;
+        }
+
+        public int getFailedCount() {
+            return results.size() - succeeded;
+        }
+
+        /**
+         * 转换成功的文件的音频数据总长度 不包括文件头
+         */
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * 整个批量转换的耗时 单位纳秒
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * 吞吐量 每秒转换的音频数据字节数
+         */
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : totalBytes * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 每秒转换的文件数
+         */
+        public double getFilesPerSecond() {
+            return elapsedNanos == 0 ? 0 : results.size() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{files=" + results.size() + ", succeeded=" + succeeded + ", failed=" + getFailedCount()
+                    + ", totalBytes=" + totalBytes + ", elapsedMillis=" + elapsedNanos / 1000000
+                    + ", bytesPerSecond=" + (long) getBytesPerSecond() + "}";
+        }
+    }
+
+    /**
+     * @param config pcm文件的录音配置 决定文件头中的采样率、通道数和采样位数
+     */
+    public BatchWavConverter(IdealRecorder.RecordConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 设置并发转换的线程数 默认为 {@link #DEFAULT_THREADS}
+     *
+     * @return
+     */
+    public BatchWavConverter setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * 转换多个pcm文件 wav文件保存在目标目录中 文件名的扩展名替换为.wav
+     *
+     * @param sources         pcm文件
+     * @param targetDirectory 保存wav文件的目录 不存在时创建
+     * @return 每个文件的结果和总体的统计
+     */
+    public Report convert(List<File> sources, File targetDirectory) {
+        List<File> targets = new ArrayList<>(sources.size());
+        for (File source : sources) {
+            String name = source.getName();
+            int dot = name.lastIndexOf('.');
+            targets.add(new File(targetDirectory, (dot > 0 ? name.substring(0, dot) : name) + ".wav"));
+        }
+        return convert(sources, targets);
+    }
+
+    /**
+     * 转换多个pcm文件
+     *
+     * @param sources pcm文件
+     * @param targets 对应的wav文件 已经存在时覆盖
+     * @return 每个文件的结果和总体的统计
+     */
+    public Report convert(final List<File> sources, final List<File> targets) {
+        if (sources.size() != targets.size()) {
+            throw new IllegalArgumentException("sources and targets differ in size: " + sources.size() + " != " + targets.size());
+        }
+        final Result[] results = new Result[sources.size()];
+        final AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        int workers = Math.min(threads, results.length);
+        if (workers > 0) {
+            ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "IdealRecorder-Convert-" + count.incrementAndGet());
+                }
+            });
+            // 每个线程依次取下一个文件 不需要为每个文件提交任务
+            for (int i = 0; i < workers; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int index;
+                        while ((index = next.getAndIncrement()) < results.length && !Thread.currentThread().isInterrupted()) {
+                            results[index] = convertOne(sources.get(index), targets.get(index));
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // 中断正在转换的文件 等待线程结束后再读取结果
+                executor.shutdownNow();
+                awaitUninterruptibly(executor);
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new Result(sources.get(i), targets.get(i), STATUS_FAILED, -1, 0, "interrupted");
+            }
+        }
+        Report report = new Report(Arrays.asList(results), System.nanoTime() - start);
+        Log.d(TAG, "converted " + report);
+        return report;
+    }
+
+    private Result convertOne(File source, File target) {
+        long start = System.nanoTime();
+        try {
+            long dataLength = convert(config, source, target);
+            return new Result(source, target, STATUS_OK, dataLength, System.nanoTime() - start, "ok");
+        } catch (IOException e) {
+            e.printStackTrace();
+            target.delete();
+            return new Result(source, target, STATUS_FAILED, -1, System.nanoTime() - start, e.toString());
+        }
+    }
+
+    /**
+     * 将一个pcm文件转换为wav文件 先写入最终的文件头 数据在内核中复制
+     *
+     * @param config pcm文件的录音配置
+     * @param source pcm文件
+     * @param target wav文件 已经存在时覆盖 父目录不存在时创建
+     * @return 写入的音频数据长度 不包括文件头
+     * @throws IOException 读写失败 目标文件可能只写入了一部分
+     */
+    public static long convert(IdealRecorder.RecordConfig config, File source, File target) throws IOException {
+        File parentDir = target.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(target);
+            try {
+                FileChannel src = in.getChannel();
+                FileChannel dst = out.getChannel();
+                int blockAlign = config.getChannelCount() * config.getBitsPerSample() / 8;
+                long length = src.size();
+                long dataLength = length - length % blockAlign;
+                boolean reserveDs64 = dataLength + PcmToWavUtil.getWaveFileHeaderSize(PcmToWavUtil.WAVE_FORMAT_PCM) - 8
+                        > PcmToWavUtil.MAX_RIFF_SIZE;
+                ByteBuffer header = ByteBuffer.wrap(PcmToWavUtil.getWaveFileHeader(config, dataLength, reserveDs64));
+                while (header.hasRemaining()) {
+                    dst.write(header);
+                }
+                long position = 0;
+                while (position < dataLength) {
+                    long n = src.transferTo(position, dataLength - position, dst);
+                    if (n <= 0) {
+                        throw new IOException("pcm file truncated during conversion: " + source);
+                    }
+                    position += n;
+                }
+                return dataLength;
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void awaitUninterruptibly(ExecutorService executor) {
+        while (true) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                return;
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
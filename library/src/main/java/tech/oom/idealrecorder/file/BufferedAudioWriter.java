@@ -0,0 +1,308 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 带缓冲的录音文件写入 通过复用的直接内存缓冲区合并多帧数据 再由 {@link FileChannel} 一次写入
+ * <p>
+ * 缓冲区在多次录音之间复用 只在大小变化时重新分配；文件头通过一次写入完成，
+ * 关闭时在文件开头原位重写。只应在一个线程中写入 统计信息可以在任意线程中读取
+ */
+public class BufferedAudioWriter implements AudioWriter {
+    private FlushPolicy policy = new FlushPolicy();
+    private ByteBuffer buffer;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private final WriteStats stats = new WriteStats();
+    /**
+     * 缓冲区中最早的数据写入的时间 缓冲区为空时无意义
+     */
+    private long bufferedSinceNanos;
+    private long flushIntervalNanos;
+    private int flushBytes;
+
+    public FlushPolicy getFlushPolicy() {
+        return new FlushPolicy(policy);
+    }
+
+    /**
+     * 设置写入策略 下次打开文件时生效
+     */
+    public void setFlushPolicy(FlushPolicy policy) {
+        this.policy = policy == null ? new FlushPolicy() : new FlushPolicy(policy);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * 打开文件并写入文件头 文件已存在时清空
+     *
+     * @param target 目标文件
+     * @param header 文件头 可以为null
+     */
+    @Override
+    public void open(File target, byte[] header) throws IOException {
+        openAt(target, 0);
+        if (header != null) {
+            writeFully(ByteBuffer.wrap(header), -1);
+        }
+    }
+
+    /**
+     * 打开已有的文件 从指定位置继续写入 之后的部分被截掉；
+     * 用于 {@link MappedAudioWriter} 无法继续映射时接着写入同一个文件
+     *
+     * @param position 继续写入的位置 包括文件头
+     */
+    void openAt(File target, long position) throws IOException {
+        if (buffer == null || buffer.capacity() != policy.getBufferSize()) {
+            buffer = ByteBuffer.allocateDirect(policy.getBufferSize());
+        }
+        buffer.clear();
+        flushBytes = policy.getFlushBytes();
+        flushIntervalNanos = policy.getFlushIntervalMillis() * 1000000L;
+        synchronized (stats) {
+            stats.reset();
+        }
+        file = new RandomAccessFile(target, "rw");
+        file.setLength(position);
+        channel = file.getChannel();
+        channel.position(position);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        synchronized (stats) {
+            stats.submittedBytes += size;
+        }
+        if (size > buffer.capacity()) {
+            // 比缓冲区还大的数据不经过缓冲区 直接写入
+            flush();
+            writeFully(ByteBuffer.wrap(data, offset, size), -1);
+            afterFlush();
+            return;
+        }
+        while (size > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            markBuffered();
+            int n = Math.min(size, buffer.remaining());
+            buffer.put(data, offset, n);
+            offset += n;
+            size -= n;
+        }
+        flushIfDue();
+    }
+
+    /**
+     * 写入buffer中从position到limit的数据 写入后position等于limit
+     */
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        int size = data.remaining();
+        synchronized (stats) {
+            stats.submittedBytes += size;
+        }
+        if (size > buffer.capacity()) {
+            flush();
+            writeFully(data, -1);
+            afterFlush();
+            return;
+        }
+        int limit = data.limit();
+        while (data.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            markBuffered();
+            data.limit(data.position() + Math.min(data.remaining(), buffer.remaining()));
+            buffer.put(data);
+            data.limit(limit);
+        }
+        flushIfDue();
+    }
+
+    /**
+     * 将缓冲区中的数据写入文件
+     */
+    public void flush() throws IOException {
+        if (channel == null || buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        writeFully(buffer, -1);
+        buffer.clear();
+        afterFlush();
+    }
+
+    /**
+     * 打开文件后写入的数据总长度 包括仍在缓冲区中的数据 不包括文件头
+     */
+    @Override
+    public long getDataLength() {
+        synchronized (stats) {
+            return stats.submittedBytes;
+        }
+    }
+
+    @Override
+    public void checkpoint(byte[] header) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        flush();
+        if (header != null) {
+            writeFully(ByteBuffer.wrap(header), 0);
+        }
+        synchronized (stats) {
+            stats.checkpointCount++;
+        }
+        if (policy.isForceOnFlush()) {
+            force();
+        }
+    }
+
+    /**
+     * 写入缓冲区中剩余的数据 在文件开头重写文件头后关闭文件
+     *
+     * @param header 最终的文件头 为null时不重写
+     */
+    @Override
+    public void close(byte[] header) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+            if (header != null) {
+                writeFully(ByteBuffer.wrap(header), 0);
+            }
+            if (policy.isForceOnFlush()) {
+                force();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 丢弃缓冲区中的数据并关闭文件 不删除文件
+     */
+    @Override
+    public void abort() {
+        if (buffer != null) {
+            buffer.clear();
+        }
+        release();
+    }
+
+    /**
+     * 获取写入统计的快照
+     */
+    @Override
+    public WriteStats getWriteStats() {
+        WriteStats snapshot = new WriteStats();
+        synchronized (stats) {
+            snapshot.copyFrom(stats);
+        }
+        return snapshot;
+    }
+
+    private void afterFlush() throws IOException {
+        synchronized (stats) {
+            stats.flushCount++;
+        }
+        if (policy.isForceOnFlush()) {
+            force();
+        }
+    }
+
+    private void markBuffered() {
+        if (buffer.position() == 0) {
+            bufferedSinceNanos = System.nanoTime();
+        }
+    }
+
+    private void flushIfDue() throws IOException {
+        int buffered = buffer.position();
+        if (buffered == 0) {
+            return;
+        }
+        if (buffered >= flushBytes
+                || (flushIntervalNanos > 0 && System.nanoTime() - bufferedSinceNanos >= flushIntervalNanos)) {
+            flush();
+        }
+    }
+
+    /**
+     * @param position 写入的位置 为-1时写入当前位置
+     */
+    private void writeFully(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            long start = System.nanoTime();
+            int written = position < 0 ? channel.write(data) : channel.write(data, position);
+            long elapsed = System.nanoTime() - start;
+            if (position >= 0) {
+                position += written;
+            }
+            synchronized (stats) {
+                stats.writtenBytes += written;
+                stats.writeCount++;
+                record(elapsed);
+            }
+        }
+    }
+
+    /**
+     * 将已经写入文件的数据同步到存储设备 不包括缓冲区中的数据
+     */
+    void force() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        channel.force(false);
+        long elapsed = System.nanoTime() - start;
+        synchronized (stats) {
+            stats.forceCount++;
+            record(elapsed);
+        }
+    }
+
+    private void record(long elapsed) {
+        stats.totalWriteNanos += elapsed;
+        if (elapsed > stats.maxWriteNanos) {
+            stats.maxWriteNanos = elapsed;
+        }
+        if (elapsed >= WriteStats.SLOW_WRITE_NANOS) {
+            stats.slowWriteCount++;
+        }
+    }
+
+    private void release() {
+        try {
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            file = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 定期重写文件头的写入方式 包装实际的 {@link AudioWriter}
+ * <p>
+ * 每次写入后检查距离上次重写是否超过设定的间隔，超过时写入缓冲的数据并以当前长度重写文件头，
+ * 进程异常退出时文件中最多丢失一个间隔的数据 且文件头中的长度有效。
+ * 重写在写入数据的线程中进行 异步写入时即写入线程 不会阻塞录音
+ */
+class CheckpointAudioWriter implements AudioWriter {
+    private final AudioWriter writer;
+    private final IdealRecorder.RecordConfig config;
+    private final boolean isWav;
+    private final boolean reserveDs64;
+    private final long intervalNanos;
+    private long nextCheckpointNanos;
+
+    /**
+     * @param writer         实际的写入方式
+     * @param config         录音配置 用于生成文件头
+     * @param isWav          是否为wav文件 pcm文件只写入缓冲的数据
+     * @param reserveDs64    文件头是否预留ds64块 与打开文件时的文件头一致
+     * @param intervalMillis 重写的间隔 单位毫秒
+     */
+    CheckpointAudioWriter(AudioWriter writer, IdealRecorder.RecordConfig config, boolean isWav, boolean reserveDs64,
+                          long intervalMillis) {
+        this.writer = writer;
+        this.config = config;
+        this.isWav = isWav;
+        this.reserveDs64 = reserveDs64;
+        this.intervalNanos = intervalMillis * 1000000L;
+    }
+
+    @Override
+    public void open(File target, byte[] header) throws IOException {
+        writer.open(target, header);
+        nextCheckpointNanos = System.nanoTime() + intervalNanos;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return writer.isOpen();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size) throws IOException {
+        writer.write(data, offset, size);
+        checkpointIfDue();
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        writer.write(data);
+        checkpointIfDue();
+    }
+
+    @Override
+    public long getDataLength() {
+        return writer.getDataLength();
+    }
+
+    @Override
+    public void checkpoint(byte[] header) throws IOException {
+        writer.checkpoint(header);
+        nextCheckpointNanos = System.nanoTime() + intervalNanos;
+    }
+
+    @Override
+    public void close(byte[] header) throws IOException {
+        writer.close(header);
+    }
+
+    @Override
+    public void abort() {
+        writer.abort();
+    }
+
+    @Override
+    public WriteStats getWriteStats() {
+        return writer.getWriteStats();
+    }
+
+    private void checkpointIfDue() throws IOException {
+        if (System.nanoTime() - nextCheckpointNanos < 0) {
+            return;
+        }
+        checkpoint(isWav ? PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength(), reserveDs64) : null);
+    }
+}
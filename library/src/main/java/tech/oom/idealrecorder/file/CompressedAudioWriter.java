@@ -0,0 +1,275 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.G711;
+import tech.oom.idealrecorder.utils.ImaAdpcm;
+import tech.oom.idealrecorder.utils.PcmCodec;
+import tech.oom.idealrecorder.utils.PcmConverter;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 将录音数据编码为 G.711 µ-law/A-law 或 IMA ADPCM 的wav文件后写入 包装实际的 {@link AudioWriter}
+ * <p>
+ * 8位、16位和浮点PCM都先转换为16位再编码 转换和编码使用创建时分配的数组 写入时不分配内存。
+ * G.711 每次写入的数据立即编码；IMA ADPCM 按块编码 不足一个块的数据等待下次写入，关闭时用最后一个采样补齐，
+ * fact块中记录实际的采样数。文件头由本类生成 {@link #getDataLength()} 返回写入的PCM数据长度 而不是编码后的长度
+ */
+public class CompressedAudioWriter implements AudioWriter {
+    /**
+     * G.711 每次编码的最大帧数
+     */
+    private static final int G711_FRAMES = 1024;
+
+    private final AudioWriter writer;
+    private final int formatTag;
+    private final int channels;
+    private final int sampleRate;
+    private final int bitsPerSample;
+    private final boolean isFloat;
+    /**
+     * 输入PCM每帧的字节数
+     */
+    private final int frameBytes;
+    /**
+     * 编码后每个块的字节数 G.711为声道数
+     */
+    private final int blockAlign;
+    /**
+     * 每次编码的帧数 IMA ADPCM为每个块的采样数
+     */
+    private final int framesPerBlock;
+    private final short[] pcm;
+    private final float[] floats;
+    private final byte[] out;
+    private final int[] stepIndex;
+    /**
+     * 不足一帧的数据 等待下次写入补齐
+     */
+    private final byte[] carry;
+    private int carryLength;
+    /**
+     * 直接内存的中转数组
+     */
+    private final byte[] scratch = new byte[4096];
+
+    private int fill;
+    private boolean open;
+    private long dataLength;
+    private long encodedLength;
+    private long sampleCount;
+
+    /**
+     * @param writer    实际的写入方式
+     * @param config    录音配置
+     * @param formatTag 编码格式 {@link PcmToWavUtil#WAVE_FORMAT_MULAW},{@link PcmToWavUtil#WAVE_FORMAT_ALAW},
+     *                  {@link PcmToWavUtil#WAVE_FORMAT_IMA_ADPCM}
+     */
+    public CompressedAudioWriter(AudioWriter writer, IdealRecorder.RecordConfig config, int formatTag) {
+        if (formatTag != PcmToWavUtil.WAVE_FORMAT_MULAW && formatTag != PcmToWavUtil.WAVE_FORMAT_ALAW
+                && formatTag != PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM) {
+            throw new IllegalArgumentException("unsupported format: " + formatTag);
+        }
+        this.writer = writer;
+        this.formatTag = formatTag;
+        this.channels = config.getChannelCount();
+        this.sampleRate = config.getSampleRate();
+        this.bitsPerSample = config.getBitsPerSample();
+        this.isFloat = config.isFloat();
+        this.frameBytes = channels * bitsPerSample / 8;
+        if (formatTag == PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM) {
+            blockAlign = ImaAdpcm.getDefaultBlockAlign(sampleRate, channels);
+            framesPerBlock = ImaAdpcm.getSamplesPerBlock(blockAlign, channels);
+            out = new byte[blockAlign];
+        } else {
+            blockAlign = channels;
+            framesPerBlock = G711_FRAMES;
+            out = new byte[G711_FRAMES * channels];
+        }
+        pcm = new short[framesPerBlock * channels];
+        floats = isFloat ? new float[framesPerBlock * channels] : null;
+        stepIndex = new int[channels];
+        carry = new byte[frameBytes];
+    }
+
+    /**
+     * 是否使用相同的写入方式和编码参数 用于复用
+     */
+    boolean matches(AudioWriter writer, IdealRecorder.RecordConfig config, int formatTag) {
+        return this.writer == writer && this.formatTag == formatTag && channels == config.getChannelCount()
+                && sampleRate == config.getSampleRate() && bitsPerSample == config.getBitsPerSample()
+                && isFloat == config.isFloat();
+    }
+
+    /**
+     * 打开文件并写入文件头
+     *
+     * @param target 目标文件
+     * @param header 忽略 文件头由本类生成
+     */
+    @Override
+    public void open(File target, byte[] header) throws IOException {
+        fill = 0;
+        carryLength = 0;
+        dataLength = 0;
+        encodedLength = 0;
+        sampleCount = 0;
+        Arrays.fill(stepIndex, 0);
+        writer.open(target, header());
+        open = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open && writer.isOpen();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size) throws IOException {
+        if (!open) {
+            return;
+        }
+        dataLength += size;
+        if (carryLength > 0) {
+            int n = Math.min(size, frameBytes - carryLength);
+            System.arraycopy(data, offset, carry, carryLength, n);
+            carryLength += n;
+            offset += n;
+            size -= n;
+            if (carryLength < frameBytes) {
+                return;
+            }
+            convert(carry, 0, 1);
+            carryLength = 0;
+        }
+        while (size >= frameBytes) {
+            int frames = Math.min(size / frameBytes, framesPerBlock - fill);
+            convert(data, offset, frames);
+            offset += frames * frameBytes;
+            size -= frames * frameBytes;
+        }
+        if (size > 0) {
+            System.arraycopy(data, offset, carry, 0, size);
+            carryLength = size;
+        }
+        if (formatTag != PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM && fill > 0) {
+            encode(fill);
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+        while (data.hasRemaining()) {
+            int n = Math.min(data.remaining(), scratch.length);
+            data.get(scratch, 0, n);
+            write(scratch, 0, n);
+        }
+    }
+
+    /**
+     * 写入的PCM数据长度
+     */
+    @Override
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * 按已经编码的数据重写文件头 IMA ADPCM 未满的块不写入
+     *
+     * @param header 忽略 文件头由本类生成
+     */
+    @Override
+    public void checkpoint(byte[] header) throws IOException {
+        if (!open) {
+            return;
+        }
+        writer.checkpoint(header());
+    }
+
+    /**
+     * 编码剩余的数据 写入最终的文件头后关闭文件
+     *
+     * @param header 忽略 文件头由本类生成
+     */
+    @Override
+    public void close(byte[] header) throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        // 不足一个采样帧的数据无法编码 丢弃
+        if (fill > 0) {
+            encode(fill);
+        }
+        writer.close(header());
+    }
+
+    @Override
+    public void abort() {
+        open = false;
+        writer.abort();
+    }
+
+    /**
+     * 编码后数据的写入统计
+     */
+    @Override
+    public WriteStats getWriteStats() {
+        return writer.getWriteStats();
+    }
+
+    /**
+     * 转换为16位追加到当前块 填满时编码
+     */
+    private void convert(byte[] data, int offset, int frames) throws IOException {
+        int samples = frames * channels;
+        int position = fill * channels;
+        if (isFloat) {
+            PcmCodec.decodeFloats(data, offset, floats, 0, samples, ByteOrder.LITTLE_ENDIAN);
+            PcmConverter.floatToPcm16(floats, 0, pcm, position, samples);
+        } else if (bitsPerSample == 8) {
+            PcmConverter.pcm8ToPcm16(data, offset, pcm, position, samples);
+        } else {
+            PcmCodec.decodeShorts(data, offset, pcm, position, samples, ByteOrder.LITTLE_ENDIAN);
+        }
+        fill += frames;
+        if (fill == framesPerBlock) {
+            encode(fill);
+        }
+    }
+
+    private void encode(int frames) throws IOException {
+        if (formatTag == PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM) {
+            ImaAdpcm.encodeBlock(pcm, 0, frames, channels, stepIndex, out, 0, blockAlign);
+            writer.write(out, 0, blockAlign);
+            encodedLength += blockAlign;
+        } else {
+            int samples = frames * channels;
+            if (formatTag == PcmToWavUtil.WAVE_FORMAT_MULAW) {
+                G711.encodeMuLaw(pcm, 0, out, 0, samples);
+            } else {
+                G711.encodeALaw(pcm, 0, out, 0, samples);
+            }
+            writer.write(out, 0, samples);
+            encodedLength += samples;
+        }
+        sampleCount += frames;
+        fill = 0;
+    }
+
+    private byte[] header() {
+        return PcmToWavUtil.getCompressedWaveFileHeader(formatTag, sampleRate, channels, blockAlign,
+                encodedLength, sampleCount);
+    }
+}
@@ -0,0 +1,410 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealRecorder;
+
+/**
+ * 将录音数据编码为FLAC后写入 包装实际的 {@link AudioWriter}
+ * <p>
+ * 写入的PCM数据按固定的块大小分块，每个块独立编码为一个FLAC帧 可以分配到多个编码线程中并行编码，
+ * 编码完成的帧按顺序写入文件；每个帧的内容只取决于该块的数据和序号 因此输出与线程数无关 逐字节相同。
+ * 关闭时在文件开头重写 STREAMINFO 写入总采样数、帧长度范围和MD5；重写文件头时只写入已经编码的完整块
+ * <p>
+ * 支持8位和16位的整数PCM 不支持浮点格式；{@link #getDataLength()} 返回写入的PCM数据长度 而不是编码后的长度
+ */
+public class FlacAudioWriter implements AudioWriter {
+    /**
+     * 默认的编码线程数
+     */
+    public static final int DEFAULT_THREADS = 1;
+
+    private final AudioWriter writer;
+    private final int channels;
+    private final int bitsPerSample;
+    private final int sampleRate;
+    private final int blockAlign;
+    private final int blockSize;
+    private final int threads;
+    private final MessageDigest md5;
+    /**
+     * 编码中和等待写入的块 循环队列 编码线程为0时只有一个块
+     */
+    private final Block[] blocks;
+    /**
+     * 不足一帧的数据 等待下次写入补齐
+     */
+    private final byte[] carry;
+    private int carryLength;
+    /**
+     * 直接内存的中转数组
+     */
+    private final byte[] scratch = new byte[4096];
+    /**
+     * 8位数据计算MD5时的中转数组
+     */
+    private final byte[] md5Scratch = new byte[4096];
+
+    private ExecutorService executor;
+    private int head;
+    private int pending;
+    private int fill;
+    private boolean open;
+    private long dataLength;
+    private long totalSamples;
+    private long frameNumber;
+    private int minFrameSize;
+    private int maxFrameSize;
+
+    /**
+     * @param writer 实际的写入方式
+     * @param config 录音配置 只支持8位和16位的整数PCM
+     */
+    public FlacAudioWriter(AudioWriter writer, IdealRecorder.RecordConfig config) {
+        this(writer, config, FlacEncoder.DEFAULT_BLOCK_SIZE, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param writer    实际的写入方式
+     * @param config    录音配置 只支持8位和16位的整数PCM
+     * @param blockSize 块大小 每个声道的采样数 16~65535 默认 {@link FlacEncoder#DEFAULT_BLOCK_SIZE}
+     * @param threads   编码线程数 为0时在写入数据的线程中编码
+     */
+    public FlacAudioWriter(AudioWriter writer, IdealRecorder.RecordConfig config, int blockSize, int threads) {
+        if (config.isFloat()) {
+            throw new IllegalArgumentException("flac does not support float pcm");
+        }
+        this.writer = writer;
+        this.channels = config.getChannelCount();
+        this.bitsPerSample = config.getBitsPerSample();
+        this.sampleRate = config.getSampleRate();
+        this.blockAlign = channels * bitsPerSample / 8;
+        this.blockSize = blockSize;
+        this.threads = Math.max(0, threads);
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        carry = new byte[blockAlign];
+        // 每个编码线程两个块 编码的同时可以填充下一个块
+        blocks = new Block[this.threads == 0 ? 1 : this.threads * 2 + 1];
+        int maxFrameBytes = FlacEncoder.getMaxFrameSize(channels, bitsPerSample, blockSize);
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new Block(new FlacEncoder(channels, bitsPerSample, sampleRate, blockSize),
+                    new int[channels][blockSize], new byte[maxFrameBytes]);
+        }
+    }
+
+    /**
+     * 是否使用相同的写入方式和编码参数 用于复用
+     */
+    boolean matches(AudioWriter writer, IdealRecorder.RecordConfig config, int blockSize, int threads) {
+        return this.writer == writer && channels == config.getChannelCount() && bitsPerSample == config.getBitsPerSample()
+                && sampleRate == config.getSampleRate() && this.blockSize == blockSize && this.threads == Math.max(0, threads);
+    }
+
+    /**
+     * 打开文件并写入 STREAMINFO 占位
+     *
+     * @param target 目标文件
+     * @param header 忽略 文件头由编码器生成
+     */
+    @Override
+    public void open(File target, byte[] header) throws IOException {
+        head = 0;
+        pending = 0;
+        fill = 0;
+        carryLength = 0;
+        dataLength = 0;
+        totalSamples = 0;
+        frameNumber = 0;
+        minFrameSize = 0;
+        maxFrameSize = 0;
+        md5.reset();
+        writer.open(target, streamHeader(false));
+        if (threads > 0) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "IdealRecorder-Flac-" + (++count));
+                }
+            });
+        }
+        open = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open && writer.isOpen();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size) throws IOException {
+        if (!open) {
+            return;
+        }
+        dataLength += size;
+        if (carryLength > 0) {
+            int n = Math.min(size, blockAlign - carryLength);
+            System.arraycopy(data, offset, carry, carryLength, n);
+            carryLength += n;
+            offset += n;
+            size -= n;
+            if (carryLength < blockAlign) {
+                return;
+            }
+            deinterleave(carry, 0, 1);
+            carryLength = 0;
+        }
+        while (size >= blockAlign) {
+            int frames = Math.min(size / blockAlign, blockSize - fill);
+            deinterleave(data, offset, frames);
+            offset += frames * blockAlign;
+            size -= frames * blockAlign;
+        }
+        if (size > 0) {
+            System.arraycopy(data, offset, carry, 0, size);
+            carryLength = size;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+        while (data.hasRemaining()) {
+            int n = Math.min(data.remaining(), scratch.length);
+            data.get(scratch, 0, n);
+            write(scratch, 0, n);
+        }
+    }
+
+    /**
+     * 写入的PCM数据长度
+     */
+    @Override
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * 写入已经编码完成的块并重写 STREAMINFO 正在填充的块不写入
+     *
+     * @param header 忽略 文件头由编码器生成
+     */
+    @Override
+    public void checkpoint(byte[] header) throws IOException {
+        if (!open) {
+            return;
+        }
+        drain(true);
+        writer.checkpoint(streamHeader(false));
+    }
+
+    /**
+     * 编码剩余的数据 写入最终的 STREAMINFO 后关闭文件
+     *
+     * @param header 忽略 文件头由编码器生成
+     */
+    @Override
+    public void close(byte[] header) throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            // 不足一个采样帧的数据无法编码 丢弃
+            if (fill > 0) {
+                submit();
+            }
+            drain(true);
+            writer.close(streamHeader(true));
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Override
+    public void abort() {
+        open = false;
+        shutdown();
+        writer.abort();
+    }
+
+    /**
+     * 编码后数据的写入统计
+     */
+    @Override
+    public WriteStats getWriteStats() {
+        return writer.getWriteStats();
+    }
+
+    private void updateMd5(byte[] data, int offset, int size) {
+        if (bitsPerSample != 8) {
+            md5.update(data, offset, size);
+            return;
+        }
+        // FLAC的MD5按有符号数计算 8位PCM为无符号数
+        while (size > 0) {
+            int n = Math.min(size, md5Scratch.length);
+            for (int i = 0; i < n; i++) {
+                md5Scratch[i] = (byte) (data[offset + i] ^ 0x80);
+            }
+            md5.update(md5Scratch, 0, n);
+            offset += n;
+            size -= n;
+        }
+    }
+
+    /**
+     * 交错的PCM数据拆分到当前块的各个声道 填满时提交编码 只处理完整的采样帧 MD5也只包括这些数据
+     */
+    private void deinterleave(byte[] data, int offset, int frames) throws IOException {
+        updateMd5(data, offset, frames * blockAlign);
+        int[][] samples = blocks[(head + pending) % blocks.length].samples;
+        int end = fill + frames;
+        if (bitsPerSample == 16) {
+            for (int i = fill; i < end; i++) {
+                for (int c = 0; c < channels; c++, offset += 2) {
+                    samples[c][i] = (short) ((data[offset] & 0xFF) | (data[offset + 1] << 8));
+                }
+            }
+        } else {
+            for (int i = fill; i < end; i++) {
+                for (int c = 0; c < channels; c++) {
+                    samples[c][i] = (data[offset++] & 0xFF) - 128;
+                }
+            }
+        }
+        fill = end;
+        if (fill == blockSize) {
+            submit();
+        }
+    }
+
+    /**
+     * 提交当前块编码 写入已经完成的块 没有空闲的块时等待最早的块完成
+     */
+    private void submit() throws IOException {
+        Block block = blocks[(head + pending) % blocks.length];
+        block.count = fill;
+        block.frameNumber = frameNumber++;
+        totalSamples += fill;
+        fill = 0;
+        if (executor == null) {
+            block.run();
+            writeBlock(block);
+            return;
+        }
+        block.future = executor.submit(block);
+        pending++;
+        drain(false);
+        if (pending == blocks.length) {
+            writeHead();
+        }
+    }
+
+    /**
+     * 按顺序写入编码完成的块
+     *
+     * @param all 是否等待所有的块编码完成
+     */
+    private void drain(boolean all) throws IOException {
+        while (pending > 0 && (all || blocks[head].future.isDone())) {
+            writeHead();
+        }
+    }
+
+    private void writeHead() throws IOException {
+        Block block = blocks[head];
+        try {
+            block.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("flac encoding interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("flac encoding failed", e.getCause());
+        }
+        block.future = null;
+        head = (head + 1) % blocks.length;
+        pending--;
+        writeBlock(block);
+    }
+
+    private void writeBlock(Block block) throws IOException {
+        writer.write(block.out, 0, block.length);
+        if (minFrameSize == 0 || block.length < minFrameSize) {
+            minFrameSize = block.length;
+        }
+        if (block.length > maxFrameSize) {
+            maxFrameSize = block.length;
+        }
+    }
+
+    /**
+     * @param md5 是否写入MD5 只有全部数据都已编码时才有效
+     */
+    private byte[] streamHeader(boolean md5) {
+        long samples = totalSamples;
+        for (int i = 0; i < pending; i++) {
+            samples -= blocks[(head + i) % blocks.length].count;
+        }
+        return FlacEncoder.getStreamHeader(channels, bitsPerSample, sampleRate, blockSize,
+                minFrameSize, maxFrameSize, samples, md5 ? this.md5.digest() : null);
+    }
+
+    private void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            // 等待正在编码的块结束 避免下次录音时同时使用
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        for (Block block : blocks) {
+            block.future = null;
+        }
+    }
+
+    private static final class Block implements Runnable {
+        final FlacEncoder encoder;
+        final int[][] samples;
+        final byte[] out;
+        int count;
+        long frameNumber;
+        int length;
+        Future<?> future;
+
+        Block(FlacEncoder encoder, int[][] samples, byte[] out) {
+            this.encoder = encoder;
+            this.samples = samples;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            length = encoder.encodeFrame(samples, count, frameNumber, out);
+        }
+    }
+}
@@ -0,0 +1,906 @@
+package tech.oom.idealrecorder.file;
+
+/**
+ * FLAC帧编码器 将一个块的PCM数据编码为一个独立的FLAC帧
+ * <p>
+ * 每个声道依次尝试 CONSTANT、FIXED(0~4阶)、LPC 和 VERBATIM 子帧 选择位数最少的一种，残差使用分区Rice编码；
+ * 双声道时在 左右、左-差、差-右、中-差 四种声道组合中选择估计位数最少的一种。
+ * 编码结果只取决于输入的数据和帧序号 相同的输入总是得到相同的输出，因此各个块可以在不同的线程中编码；
+ * 对象内部有缓存数组 同一个对象不能同时在多个线程中使用
+ */
+public class FlacEncoder {
+    /**
+     * 默认的块大小 每个声道的采样数
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    /**
+     * 默认的LPC最大阶数
+     */
+    public static final int DEFAULT_MAX_LPC_ORDER = 8;
+    /**
+     * STREAMINFO 元数据块的长度
+     */
+    public static final int STREAM_INFO_SIZE = 34;
+    /**
+     * 文件开头 "fLaC" 标记、元数据块头 与 STREAMINFO 的总长度
+     */
+    public static final int STREAM_HEADER_SIZE = 4 + 4 + STREAM_INFO_SIZE;
+
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int MAX_RICE_PARAMETER = 30;
+    /**
+     * 残差超过该范围时放弃对应的预测方式 保证Rice编码时不溢出
+     */
+    private static final int MAX_RESIDUAL = 1 << 29;
+    private static final long UNAVAILABLE = Long.MAX_VALUE / 4;
+
+    private static final int CHANNEL_INDEPENDENT = 0;
+    private static final int CHANNEL_LEFT_SIDE = 8;
+    private static final int CHANNEL_RIGHT_SIDE = 9;
+    private static final int CHANNEL_MID_SIDE = 10;
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int j = 0; j < 8; j++) {
+                crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            CRC8_TABLE[i] = crc8 & 0xFF;
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+        }
+    }
+
+    private final int channels;
+    private final int bitsPerSample;
+    private final int sampleRate;
+    private final int maxBlockSize;
+    private final int maxLpcOrder;
+    private final BitWriter bits = new BitWriter();
+
+    private final int[] mid;
+    private final int[] side;
+    private final int[] shifted;
+    private int[] residual;
+    private int[] candidateResidual;
+    private final long[] partitionSums = new long[1 << MAX_PARTITION_ORDER];
+    private int[] riceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private int[] candidateRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final int[] orderRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private int partitionOrder;
+    private int candidatePartitionOrder;
+
+    private final double[] window;
+    private int windowSize;
+    private final double[] windowed;
+    private final double[] autoc;
+    private final double[] lpc;
+    private final double[][] lpCoefficients;
+    private final double[] lpcError;
+    private final int[] qlp;
+    private int qlpShift;
+    private final int[] bestQlp;
+    private int bestQlpShift;
+
+    /**
+     * @param channels      声道数 1~8
+     * @param bitsPerSample 每个采样的位数 4~24
+     * @param sampleRate    采样率
+     * @param maxBlockSize  最大块大小 每个声道的采样数 16~65535
+     */
+    public FlacEncoder(int channels, int bitsPerSample, int sampleRate, int maxBlockSize) {
+        this(channels, bitsPerSample, sampleRate, maxBlockSize, DEFAULT_MAX_LPC_ORDER);
+    }
+
+    /**
+     * @param maxLpcOrder LPC最大阶数 0~32 为0时只使用 FIXED 预测
+     */
+    public FlacEncoder(int channels, int bitsPerSample, int sampleRate, int maxBlockSize, int maxLpcOrder) {
+        if (channels < 1 || channels > 8 || bitsPerSample < 4 || bitsPerSample > 24
+                || maxBlockSize < 16 || maxBlockSize > 65535) {
+            throw new IllegalArgumentException("unsupported flac format: channels=" + channels
+                    + " bitsPerSample=" + bitsPerSample + " blockSize=" + maxBlockSize);
+        }
+        this.channels = channels;
+        this.bitsPerSample = bitsPerSample;
+        this.sampleRate = sampleRate;
+        this.maxBlockSize = maxBlockSize;
+        this.maxLpcOrder = Math.max(0, Math.min(32, maxLpcOrder));
+        mid = channels == 2 ? new int[maxBlockSize] : null;
+        side = channels == 2 ? new int[maxBlockSize] : null;
+        shifted = new int[maxBlockSize];
+        residual = new int[maxBlockSize];
+        candidateResidual = new int[maxBlockSize];
+        window = new double[maxBlockSize];
+        windowed = new double[maxBlockSize];
+        autoc = new double[this.maxLpcOrder + 1];
+        lpc = new double[this.maxLpcOrder];
+        lpCoefficients = new double[this.maxLpcOrder][this.maxLpcOrder];
+        lpcError = new double[this.maxLpcOrder];
+        qlp = new int[this.maxLpcOrder];
+        bestQlp = new int[this.maxLpcOrder];
+    }
+
+    /**
+     * 编码后的帧的最大长度 用于分配输出数组
+     *
+     * @param blockSize 块大小 每个声道的采样数
+     */
+    public static int getMaxFrameSize(int channels, int bitsPerSample, int blockSize) {
+        // 帧头最长16字节 每个子帧最长为 1字节子帧头 + 原始数据(差声道多1位) 帧尾2字节CRC
+        return 16 + channels * (1 + (blockSize * (bitsPerSample + 1) + 7) / 8) + 2;
+    }
+
+    /**
+     * 编码一个块
+     *
+     * @param samples     每个声道的采样 samples[声道][序号] 数值为有符号整数
+     * @param blockSize   本块每个声道的采样数 只有最后一个块可以小于创建时的块大小
+     * @param frameNumber 帧序号 从0开始
+     * @param out         输出数组 长度至少为 {@link #getMaxFrameSize(int, int, int)}
+     * @return 编码后帧的长度
+     */
+    public int encodeFrame(int[][] samples, int blockSize, long frameNumber, byte[] out) {
+        if (blockSize < 1 || blockSize > maxBlockSize) {
+            throw new IllegalArgumentException("block size " + blockSize + " out of range");
+        }
+        int assignment = CHANNEL_INDEPENDENT;
+        if (channels == 2) {
+            int[] left = samples[0];
+            int[] right = samples[1];
+            for (int i = 0; i < blockSize; i++) {
+                side[i] = left[i] - right[i];
+                mid[i] = (left[i] + right[i]) >> 1;
+            }
+            double leftBits = estimateBits(left, blockSize);
+            double rightBits = estimateBits(right, blockSize);
+            double sideBits = estimateBits(side, blockSize);
+            double midBits = estimateBits(mid, blockSize);
+            double best = leftBits + rightBits;
+            if (leftBits + sideBits < best) {
+                best = leftBits + sideBits;
+                assignment = CHANNEL_LEFT_SIDE;
+            }
+            if (sideBits + rightBits < best) {
+                best = sideBits + rightBits;
+                assignment = CHANNEL_RIGHT_SIDE;
+            }
+            if (midBits + sideBits < best) {
+                assignment = CHANNEL_MID_SIDE;
+            }
+        }
+
+        bits.reset(out);
+        writeFrameHeader(blockSize, frameNumber, assignment);
+        switch (assignment) {
+            case CHANNEL_LEFT_SIDE:
+                encodeSubframe(samples[0], blockSize, bitsPerSample);
+                encodeSubframe(side, blockSize, bitsPerSample + 1);
+                break;
+            case CHANNEL_RIGHT_SIDE:
+                encodeSubframe(side, blockSize, bitsPerSample + 1);
+                encodeSubframe(samples[1], blockSize, bitsPerSample);
+                break;
+            case CHANNEL_MID_SIDE:
+                encodeSubframe(mid, blockSize, bitsPerSample);
+                encodeSubframe(side, blockSize, bitsPerSample + 1);
+                break;
+            default:
+                for (int c = 0; c < channels; c++) {
+                    encodeSubframe(samples[c], blockSize, bitsPerSample);
+                }
+        }
+        bits.align();
+        int length = bits.position();
+        int crc = crc16(out, 0, length);
+        out[length++] = (byte) (crc >> 8);
+        out[length++] = (byte) crc;
+        return length;
+    }
+
+    /**
+     * 生成 "fLaC" 标记和 STREAMINFO 元数据块
+     *
+     * @param blockSize    块大小
+     * @param minFrameSize 最小帧长度 未知时为0
+     * @param maxFrameSize 最大帧长度 未知时为0
+     * @param totalSamples 每个声道的总采样数 未知时为0
+     * @param md5          原始PCM数据的MD5 未知时为null
+     */
+    public static byte[] getStreamHeader(int channels, int bitsPerSample, int sampleRate, int blockSize,
+                                         int minFrameSize, int maxFrameSize, long totalSamples, byte[] md5) {
+        byte[] header = new byte[STREAM_HEADER_SIZE];
+        header[0] = 'f';
+        header[1] = 'L';
+        header[2] = 'a';
+        header[3] = 'C';
+        // 最后一个元数据块 类型0 长度34
+        header[4] = (byte) 0x80;
+        header[7] = STREAM_INFO_SIZE;
+        BitWriter writer = new BitWriter();
+        writer.reset(header, 8);
+        writer.write(blockSize, 16);
+        writer.write(blockSize, 16);
+        writer.write(minFrameSize, 24);
+        writer.write(maxFrameSize, 24);
+        writer.write(sampleRate, 20);
+        writer.write(channels - 1, 3);
+        writer.write(bitsPerSample - 1, 5);
+        writer.write((int) (totalSamples >>> 32) & 0xF, 4);
+        writer.write((int) totalSamples, 32);
+        if (md5 != null) {
+            System.arraycopy(md5, 0, header, 26, 16);
+        }
+        return header;
+    }
+
+    private void writeFrameHeader(int blockSize, long frameNumber, int assignment) {
+        int start = bits.position();
+        // 同步码 0b11111111111110 保留位0 固定块大小
+        bits.write(0xFFF8, 16);
+        int blockSizeCode = blockSizeCode(blockSize);
+        bits.write(blockSizeCode, 4);
+        int sampleRateCode = sampleRateCode(sampleRate);
+        bits.write(sampleRateCode, 4);
+        bits.write(assignment == CHANNEL_INDEPENDENT ? channels - 1 : assignment, 4);
+        bits.write(sampleSizeCode(bitsPerSample), 3);
+        bits.write(0, 1);
+        writeUtf8(frameNumber);
+        if (blockSizeCode == 6) {
+            bits.write(blockSize - 1, 8);
+        } else if (blockSizeCode == 7) {
+            bits.write(blockSize - 1, 16);
+        }
+        if (sampleRateCode == 12) {
+            bits.write(sampleRate / 1000, 8);
+        } else if (sampleRateCode == 13) {
+            bits.write(sampleRate, 16);
+        } else if (sampleRateCode == 14) {
+            bits.write(sampleRate / 10, 16);
+        }
+        bits.write(crc8(bits.buffer(), start, bits.position() - start), 8);
+    }
+
+    private void writeUtf8(long value) {
+        if (value < 0x80) {
+            bits.write((int) value, 8);
+            return;
+        }
+        int continuation;
+        if (value < 0x800) {
+            continuation = 1;
+        } else if (value < 0x10000) {
+            continuation = 2;
+        } else if (value < 0x200000) {
+            continuation = 3;
+        } else if (value < 0x4000000) {
+            continuation = 4;
+        } else if (value < 0x80000000L) {
+            continuation = 5;
+        } else {
+            continuation = 6;
+        }
+        // 首字节为 continuation+1 个1 之后一个0 再跟数值的高位
+        int prefix = (0xFF00 >> (continuation + 1)) & 0xFF;
+        bits.write(prefix | (int) (value >>> (6 * continuation)), 8);
+        for (int i = continuation - 1; i >= 0; i--) {
+            bits.write(0x80 | (int) ((value >>> (6 * i)) & 0x3F), 8);
+        }
+    }
+
+    private static int blockSizeCode(int blockSize) {
+        if (blockSize == 192) {
+            return 1;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (blockSize == 576 << i) {
+                return 2 + i;
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            if (blockSize == 256 << i) {
+                return 8 + i;
+            }
+        }
+        return blockSize <= 256 ? 6 : 7;
+    }
+
+    private static int sampleRateCode(int sampleRate) {
+        switch (sampleRate) {
+            case 88200:
+                return 1;
+            case 176400:
+                return 2;
+            case 192000:
+                return 3;
+            case 8000:
+                return 4;
+            case 16000:
+                return 5;
+            case 22050:
+                return 6;
+            case 24000:
+                return 7;
+            case 32000:
+                return 8;
+            case 44100:
+                return 9;
+            case 48000:
+                return 10;
+            case 96000:
+                return 11;
+            default:
+                if (sampleRate % 1000 == 0 && sampleRate / 1000 <= 255) {
+                    return 12;
+                }
+                if (sampleRate <= 0xFFFF) {
+                    return 13;
+                }
+                if (sampleRate % 10 == 0 && sampleRate / 10 <= 0xFFFF) {
+                    return 14;
+                }
+                return 0;
+        }
+    }
+
+    private static int sampleSizeCode(int bitsPerSample) {
+        switch (bitsPerSample) {
+            case 8:
+                return 1;
+            case 12:
+                return 2;
+            case 16:
+                return 4;
+            case 20:
+                return 5;
+            case 24:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 编码一个子帧 在 CONSTANT、VERBATIM、FIXED、LPC 中选择位数最少的一种
+     */
+    private void encodeSubframe(int[] x, int n, int bps) {
+        boolean constant = true;
+        int or = 0;
+        for (int i = 0; i < n; i++) {
+            or |= x[i];
+            if (x[i] != x[0]) {
+                constant = false;
+            }
+        }
+        if (constant) {
+            bits.write(0, 8);
+            bits.write(x[0], bps);
+            return;
+        }
+        // 所有采样的低位都为0时(例如8位数据放大到16位)先移除这些位
+        int wasted = Integer.numberOfTrailingZeros(or);
+        if (wasted > 0) {
+            for (int i = 0; i < n; i++) {
+                shifted[i] = x[i] >> wasted;
+            }
+            x = shifted;
+            bps -= wasted;
+        }
+
+        long verbatimBits = (long) n * bps;
+        long bestBits = verbatimBits;
+        int bestType = -1;
+        int bestOrder = 0;
+
+        if (n > MAX_FIXED_ORDER) {
+            int order = bestFixedOrder(x, n);
+            if (computeFixedResidual(x, n, order, candidateResidual)) {
+                long cost = (long) order * bps + riceBits(candidateResidual, n, order);
+                if (cost < bestBits) {
+                    bestBits = cost;
+                    bestType = 0;
+                    bestOrder = order;
+                    keepCandidate();
+                }
+            }
+        }
+
+        int precision = 0;
+        if (maxLpcOrder > 0 && n > maxLpcOrder * 4) {
+            precision = qlpPrecision(n, bps);
+            int order = computeLpc(x, n, bps, precision);
+            if (order > 0 && quantizeCoefficients(lpCoefficients[order - 1], order, precision)
+                    && computeLpcResidual(x, n, order, candidateResidual)) {
+                long cost = (long) order * bps + 4 + 5 + (long) order * precision + riceBits(candidateResidual, n, order);
+                if (cost < bestBits) {
+                    bestBits = cost;
+                    bestType = 1;
+                    bestOrder = order;
+                    keepCandidate();
+                    System.arraycopy(qlp, 0, bestQlp, 0, order);
+                    bestQlpShift = qlpShift;
+                }
+            }
+        }
+
+        if (bestType < 0) {
+            writeSubframeHeader(1, wasted);
+            for (int i = 0; i < n; i++) {
+                bits.write(x[i], bps);
+            }
+        } else if (bestType == 0) {
+            writeSubframeHeader(0x08 | bestOrder, wasted);
+            for (int i = 0; i < bestOrder; i++) {
+                bits.write(x[i], bps);
+            }
+            writeResidual(n, bestOrder);
+        } else {
+            writeSubframeHeader(0x20 | (bestOrder - 1), wasted);
+            for (int i = 0; i < bestOrder; i++) {
+                bits.write(x[i], bps);
+            }
+            bits.write(precision - 1, 4);
+            bits.write(bestQlpShift, 5);
+            for (int i = 0; i < bestOrder; i++) {
+                bits.write(bestQlp[i], precision);
+            }
+            writeResidual(n, bestOrder);
+        }
+    }
+
+    private void writeSubframeHeader(int type, int wasted) {
+        bits.write(type << 1 | (wasted > 0 ? 1 : 0), 8);
+        if (wasted > 0) {
+            bits.writeUnary(wasted - 1);
+        }
+    }
+
+    /**
+     * 当前候选的残差和Rice参数成为最佳结果
+     */
+    private void keepCandidate() {
+        int[] swap = residual;
+        residual = candidateResidual;
+        candidateResidual = swap;
+        swap = riceParameters;
+        riceParameters = candidateRiceParameters;
+        candidateRiceParameters = swap;
+        partitionOrder = candidatePartitionOrder;
+    }
+
+    private void writeResidual(int n, int predictorOrder) {
+        int partitions = 1 << partitionOrder;
+        boolean rice2 = false;
+        for (int p = 0; p < partitions; p++) {
+            if (riceParameters[p] > 14) {
+                rice2 = true;
+                break;
+            }
+        }
+        int parameterBits = rice2 ? 5 : 4;
+        bits.write(rice2 ? 1 : 0, 2);
+        bits.write(partitionOrder, 4);
+        int partitionSize = n >> partitionOrder;
+        int i = predictorOrder;
+        for (int p = 0; p < partitions; p++) {
+            int k = riceParameters[p];
+            bits.write(k, parameterBits);
+            int end = (p + 1) * partitionSize;
+            for (; i < end; i++) {
+                bits.writeRice(residual[i], k);
+            }
+        }
+    }
+
+    /**
+     * 按分区Rice编码残差所需的位数(上界) 选择分区阶数和每个分区的参数 结果保存在 candidate 中
+     */
+    private long riceBits(int[] res, int n, int predictorOrder) {
+        int maxOrder = MAX_PARTITION_ORDER;
+        while (maxOrder > 0 && ((n & ((1 << maxOrder) - 1)) != 0 || (n >> maxOrder) <= predictorOrder)) {
+            maxOrder--;
+        }
+        int partitions = 1 << maxOrder;
+        int partitionSize = n >> maxOrder;
+        int i = predictorOrder;
+        for (int p = 0; p < partitions; p++) {
+            long sum = 0;
+            int end = (p + 1) * partitionSize;
+            for (; i < end; i++) {
+                int r = res[i];
+                sum += ((r << 1) ^ (r >> 31)) & 0xFFFFFFFFL;
+            }
+            partitionSums[p] = sum;
+        }
+        long best = UNAVAILABLE;
+        for (int order = maxOrder; order >= 0; order--) {
+            partitions = 1 << order;
+            partitionSize = n >> order;
+            long total = 2 + 4;
+            boolean rice2 = false;
+            for (int p = 0; p < partitions; p++) {
+                int count = p == 0 ? partitionSize - predictorOrder : partitionSize;
+                long sum = partitionSums[p];
+                int k = riceParameter(sum, count);
+                orderRiceParameters[p] = k;
+                if (k > 14) {
+                    rice2 = true;
+                }
+                total += 4 + (long) count * (k + 1) + (sum >>> k);
+            }
+            if (rice2) {
+                total += partitions;
+            }
+            if (total < best) {
+                best = total;
+                candidatePartitionOrder = order;
+                System.arraycopy(orderRiceParameters, 0, candidateRiceParameters, 0, partitions);
+            }
+            // 合并相邻的分区 用于下一个更小的阶数
+            for (int p = 0; p < partitions / 2; p++) {
+                partitionSums[p] = partitionSums[2 * p] + partitionSums[2 * p + 1];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 选择使 count*(k+1) + sum>>k 最小的参数k
+     */
+    private static int riceParameter(long sum, int count) {
+        if (sum <= count) {
+            return 0;
+        }
+        int k = 63 - Long.numberOfLeadingZeros(sum / count);
+        if (k > MAX_RICE_PARAMETER) {
+            return MAX_RICE_PARAMETER;
+        }
+        long cost = (long) count * k + (sum >>> k);
+        if (k > 0 && (long) count * (k - 1) + (sum >>> (k - 1)) < cost) {
+            return k - 1;
+        }
+        if (k < MAX_RICE_PARAMETER && (long) count * (k + 1) + (sum >>> (k + 1)) < cost) {
+            return k + 1;
+        }
+        return k;
+    }
+
+    /**
+     * 根据0~4阶差分的绝对值之和选择 FIXED 预测的阶数
+     */
+    private static int bestFixedOrder(int[] x, int n) {
+        long sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0, sum4 = 0;
+        int last0 = x[3];
+        int last1 = x[3] - x[2];
+        int last2 = last1 - (x[2] - x[1]);
+        int last3 = last2 - (x[2] - x[1] - (x[1] - x[0]));
+        for (int i = 4; i < n; i++) {
+            int e0 = x[i];
+            int e1 = e0 - last0;
+            int e2 = e1 - last1;
+            int e3 = e2 - last2;
+            int e4 = e3 - last3;
+            sum0 += Math.abs(e0);
+            sum1 += Math.abs(e1);
+            sum2 += Math.abs(e2);
+            sum3 += Math.abs(e3);
+            sum4 += Math.abs(e4);
+            last0 = e0;
+            last1 = e1;
+            last2 = e2;
+            last3 = e3;
+        }
+        int order = 0;
+        long min = sum0;
+        if (sum1 < min) {
+            min = sum1;
+            order = 1;
+        }
+        if (sum2 < min) {
+            min = sum2;
+            order = 2;
+        }
+        if (sum3 < min) {
+            min = sum3;
+            order = 3;
+        }
+        if (sum4 < min) {
+            order = 4;
+        }
+        return order;
+    }
+
+    /**
+     * 估计一个声道编码后的位数 用于选择双声道的组合方式
+     */
+    private static double estimateBits(int[] x, int n) {
+        if (n <= MAX_FIXED_ORDER) {
+            return n * 16.0;
+        }
+        int order = bestFixedOrder(x, n);
+        long sum = 0;
+        for (int i = order; i < n; i++) {
+            sum += Math.abs(fixedResidual(x, i, order));
+        }
+        return n * (StrictMath.log(1.0 + (double) sum / n) / StrictMath.log(2.0));
+    }
+
+    private static long fixedResidual(int[] x, int i, int order) {
+        switch (order) {
+            case 0:
+                return x[i];
+            case 1:
+                return (long) x[i] - x[i - 1];
+            case 2:
+                return (long) x[i] - 2L * x[i - 1] + x[i - 2];
+            case 3:
+                return (long) x[i] - 3L * x[i - 1] + 3L * x[i - 2] - x[i - 3];
+            default:
+                return (long) x[i] - 4L * x[i - 1] + 6L * x[i - 2] - 4L * x[i - 3] + x[i - 4];
+        }
+    }
+
+    private static boolean computeFixedResidual(int[] x, int n, int order, int[] res) {
+        for (int i = order; i < n; i++) {
+            long r = fixedResidual(x, i, order);
+            if (r >= MAX_RESIDUAL || r <= -MAX_RESIDUAL) {
+                return false;
+            }
+            res[i] = (int) r;
+        }
+        return true;
+    }
+
+    private boolean computeLpcResidual(int[] x, int n, int order, int[] res) {
+        int shift = qlpShift;
+        for (int i = order; i < n; i++) {
+            long sum = 0;
+            for (int j = 0; j < order; j++) {
+                sum += (long) qlp[j] * x[i - j - 1];
+            }
+            long r = x[i] - (sum >> shift);
+            if (r >= MAX_RESIDUAL || r <= -MAX_RESIDUAL) {
+                return false;
+            }
+            res[i] = (int) r;
+        }
+        return true;
+    }
+
+    /**
+     * 量化系数的精度 与libFLAC的默认值相同
+     */
+    private static int qlpPrecision(int n, int bps) {
+        int precision;
+        if (n <= 192) {
+            precision = 7;
+        } else if (n <= 384) {
+            precision = 8;
+        } else if (n <= 576) {
+            precision = 9;
+        } else if (n <= 1152) {
+            precision = 10;
+        } else if (n <= 2304) {
+            precision = 11;
+        } else if (n <= 4608) {
+            precision = 12;
+        } else {
+            precision = 13;
+        }
+        return Math.max(5, Math.min(precision, 32 - bps - 5));
+    }
+
+    /**
+     * 加窗后计算自相关 用 Levinson-Durbin 求各阶的LPC系数 按估计的位数选择阶数
+     *
+     * @return 选择的阶数 无法预测时返回0
+     */
+    private int computeLpc(int[] x, int n, int bps, int precision) {
+        if (windowSize != n) {
+            tukeyWindow(n);
+        }
+        for (int i = 0; i < n; i++) {
+            windowed[i] = x[i] * window[i];
+        }
+        int maxOrder = maxLpcOrder;
+        for (int lag = 0; lag <= maxOrder; lag++) {
+            double sum = 0;
+            for (int i = lag; i < n; i++) {
+                sum += windowed[i] * windowed[i - lag];
+            }
+            autoc[lag] = sum;
+        }
+        if (autoc[0] == 0) {
+            return 0;
+        }
+        double err = autoc[0];
+        for (int i = 0; i < maxOrder; i++) {
+            double r = -autoc[i + 1];
+            for (int j = 0; j < i; j++) {
+                r -= lpc[j] * autoc[i - j];
+            }
+            r /= err;
+            lpc[i] = r;
+            int j = 0;
+            for (; j < (i >> 1); j++) {
+                double tmp = lpc[j];
+                lpc[j] += r * lpc[i - 1 - j];
+                lpc[i - 1 - j] += r * tmp;
+            }
+            if ((i & 1) != 0) {
+                lpc[j] += lpc[j] * r;
+            }
+            err *= 1.0 - r * r;
+            for (j = 0; j <= i; j++) {
+                lpCoefficients[i][j] = -lpc[j];
+            }
+            lpcError[i] = err;
+            if (err <= 0) {
+                maxOrder = i + 1;
+                break;
+            }
+        }
+        // 按残差的期望位数加上系数的位数选择阶数
+        int bestOrder = 0;
+        double bestBits = Double.MAX_VALUE;
+        double errorScale = 0.5 / n;
+        for (int order = 1; order <= maxOrder; order++) {
+            double error = lpcError[order - 1];
+            double bitsPerResidual = error > 0 ? 0.5 * StrictMath.log(errorScale * error) / StrictMath.log(2.0) : 0;
+            if (bitsPerResidual < 0) {
+                bitsPerResidual = 0;
+            }
+            double total = bitsPerResidual * (n - order) + order * (precision + bps);
+            if (total < bestBits) {
+                bestBits = total;
+                bestOrder = order;
+            }
+        }
+        return bestOrder;
+    }
+
+    private void tukeyWindow(int n) {
+        for (int i = 0; i < n; i++) {
+            window[i] = 1.0;
+        }
+        int np = (int) (0.25 * n) - 1;
+        if (np > 0) {
+            for (int i = 0; i <= np; i++) {
+                window[i] = 0.5 - 0.5 * StrictMath.cos(Math.PI * i / np);
+                window[n - np - 1 + i] = 0.5 - 0.5 * StrictMath.cos(Math.PI * (i + np) / np);
+            }
+        }
+        windowSize = n;
+    }
+
+    /**
+     * 系数量化为 precision 位的整数 结果保存在 qlp 和 qlpShift 中
+     */
+    private boolean quantizeCoefficients(double[] coefficients, int order, int precision) {
+        double cmax = 0;
+        for (int i = 0; i < order; i++) {
+            cmax = Math.max(cmax, Math.abs(coefficients[i]));
+        }
+        if (cmax <= 0 || Double.isNaN(cmax) || Double.isInfinite(cmax)) {
+            return false;
+        }
+        int qmax = (1 << (precision - 1)) - 1;
+        int qmin = -qmax - 1;
+        int shift = precision - 1 - Math.getExponent(cmax) - 1;
+        if (shift > 15) {
+            shift = 15;
+        } else if (shift < 0) {
+            return false;
+        }
+        double error = 0;
+        for (int i = 0; i < order; i++) {
+            error += coefficients[i] * (1 << shift);
+            long q = Math.round(error);
+            if (q > qmax) {
+                q = qmax;
+            } else if (q < qmin) {
+                q = qmin;
+            }
+            error -= q;
+            qlp[i] = (int) q;
+        }
+        qlpShift = shift;
+        return true;
+    }
+
+    private static int crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /**
+     * 按位写入字节数组 高位在前
+     */
+    static final class BitWriter {
+        private byte[] buffer;
+        private int position;
+        private long cache;
+        private int cacheBits;
+
+        void reset(byte[] buffer) {
+            reset(buffer, 0);
+        }
+
+        void reset(byte[] buffer, int offset) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.cache = 0;
+            this.cacheBits = 0;
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        /**
+         * 已经写满的字节数 需要先 {@link #align()}
+         */
+        int position() {
+            return position;
+        }
+
+        /**
+         * 写入value的低n位 n为0~32
+         */
+        void write(int value, int n) {
+            cache = (cache << n) | (value & ((1L << n) - 1));
+            cacheBits += n;
+            while (cacheBits >= 8) {
+                cacheBits -= 8;
+                buffer[position++] = (byte) (cache >>> cacheBits);
+            }
+        }
+
+        /**
+         * 写入n个0和一个1
+         */
+        void writeUnary(int n) {
+            while (n >= 31) {
+                write(0, 31);
+                n -= 31;
+            }
+            write(1, n + 1);
+        }
+
+        /**
+         * 写入一个有符号数的Rice编码 先映射为无符号数 商为一元码 余数为k位
+         */
+        void writeRice(int value, int k) {
+            int u = (value << 1) ^ (value >> 31);
+            int q = u >>> k;
+            if (q + k < 32) {
+                write((1 << k) | (u & ((1 << k) - 1)), q + k + 1);
+            } else {
+                writeUnary(q);
+                write(u, k);
+            }
+        }
+
+        void align() {
+            if (cacheBits > 0) {
+                write(0, 8 - cacheBits);
+            }
+        }
+    }
+}
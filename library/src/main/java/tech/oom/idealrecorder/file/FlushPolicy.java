@@ -0,0 +1,110 @@
+package tech.oom.idealrecorder.file;
+
+/**
+ * 录音文件的写入策略 决定缓冲区中的数据何时写入文件
+ * <p>
+ * 数据先写入复用的直接内存缓冲区，满足以下任一条件时才通过一次系统调用写入文件：
+ * 缓冲区已满、缓冲的数据达到 {@link #setFlushBytes(int)}、最早缓冲的数据超过 {@link #setFlushIntervalMillis(long)}，
+ * 以及录音结束时。时间条件在每次写入时检查 不会启动额外的线程
+ */
+public class FlushPolicy {
+    /**
+     * 默认缓冲区大小 64KB 约为16kHz单声道16位录音2秒的数据
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int flushBytes = DEFAULT_BUFFER_SIZE;
+    private long flushIntervalMillis = 0;
+    private boolean forceOnFlush;
+
+    public FlushPolicy() {
+    }
+
+    public FlushPolicy(FlushPolicy other) {
+        this.bufferSize = other.bufferSize;
+        this.flushBytes = other.flushBytes;
+        this.flushIntervalMillis = other.flushIntervalMillis;
+        this.forceOnFlush = other.forceOnFlush;
+    }
+
+    /**
+     * 缓冲的数据达到指定字节数时写入文件
+     */
+    public static FlushPolicy bySize(int flushBytes) {
+        return new FlushPolicy().setBufferSize(Math.max(DEFAULT_BUFFER_SIZE, flushBytes)).setFlushBytes(flushBytes);
+    }
+
+    /**
+     * 最早缓冲的数据超过指定时长时写入文件 缓冲区已满时也会写入
+     */
+    public static FlushPolicy byTime(long flushIntervalMillis) {
+        return new FlushPolicy().setFlushIntervalMillis(flushIntervalMillis);
+    }
+
+    /**
+     * 只在缓冲区已满和录音结束时写入文件 系统调用最少 但异常退出时丢失的数据最多
+     */
+    public static FlushPolicy onStop(int bufferSize) {
+        return new FlushPolicy().setBufferSize(bufferSize).setFlushBytes(bufferSize);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 设置缓冲区大小 单位字节 默认 {@link #DEFAULT_BUFFER_SIZE}
+     */
+    public FlushPolicy setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(1, bufferSize);
+        return this;
+    }
+
+    /**
+     * 获取写入文件的字节数阈值 不超过缓冲区大小
+     */
+    public int getFlushBytes() {
+        return Math.min(flushBytes, bufferSize);
+    }
+
+    /**
+     * 设置缓冲的数据达到多少字节时写入文件 默认与缓冲区大小相同
+     */
+    public FlushPolicy setFlushBytes(int flushBytes) {
+        this.flushBytes = Math.max(1, flushBytes);
+        return this;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * 设置数据在缓冲区中停留的最长时间 单位毫秒 0表示不按时间写入 默认为0
+     */
+    public FlushPolicy setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = Math.max(0, flushIntervalMillis);
+        return this;
+    }
+
+    public boolean isForceOnFlush() {
+        return forceOnFlush;
+    }
+
+    /**
+     * 设置每次写入文件后是否调用 {@link java.nio.channels.FileChannel#force(boolean)} 将数据同步到存储设备 默认为false
+     * <p>
+     * 同步可以保证异常断电时已写入的数据不丢失 但每次写入的延迟会明显增加
+     */
+    public FlushPolicy setForceOnFlush(boolean forceOnFlush) {
+        this.forceOnFlush = forceOnFlush;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "FlushPolicy{bufferSize=" + bufferSize + ", flushBytes=" + getFlushBytes()
+                + ", flushIntervalMillis=" + flushIntervalMillis + ", forceOnFlush=" + forceOnFlush + '}';
+    }
+}
@@ -0,0 +1,371 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.oom.idealrecorder.utils.Log;
+
+/**
+ * 通过内存映射写入录音文件 适用于长时间录音
+ * <p>
+ * 文件按固定大小的区段预先分配，录音数据直接拷贝到当前区段的 {@link MappedByteBuffer} 中，
+ * 写满后映射下一个区段；写入数据不需要系统调用，大块的预分配也能减少闪存上的碎片。
+ * 关闭时将文件截断到实际长度并在开头重写文件头
+ * <p>
+ * 统计信息中的写入次数为文件头写入和区段映射的次数，写入延迟为这些操作的耗时，
+ * 数据拷贝到映射内存不计入
+ * <p>
+ * 写满的区段不再引用 由虚拟机回收时解除映射，回收之前仍然占用进程的地址空间；
+ * 尚未回收的区段(包括之前录音的文件)达到 {@link #setMaxLiveExtents(int)} 的上限、或者映射时地址空间不足，
+ * 这个文件剩余的部分改为通过 {@link BufferedAudioWriter} 在同一个文件中继续写入 不会中断录音。
+ * 默认上限为 {@link #DEFAULT_MAX_LIVE_EXTENTS} 个 即默认区段大小时最多占用256MB的地址空间
+ */
+public class MappedAudioWriter implements AudioWriter {
+    private static final String TAG = "MappedAudioWriter";
+    /**
+     * 默认区段大小 8MB 约为16kHz单声道16位录音4分钟的数据
+     */
+    public static final int DEFAULT_EXTENT_SIZE = 8 * 1024 * 1024;
+    /**
+     * 写在每个区段末尾的标记 异常退出后 {@link WavRecovery} 据此识别文件末尾预分配的空白部分；
+     * 区段写满时标记被录音数据覆盖 正常关闭时随预分配的部分一起截掉
+     */
+    static final byte[] EXTENT_MARKER = {'I', 'R', 'M', 'A', 'P', 'E', 'X', 'T'};
+    /**
+     * 默认最多同时存在的映射区段数量
+     */
+    public static final int DEFAULT_MAX_LIVE_EXTENTS = 32;
+
+    private int extentSize = DEFAULT_EXTENT_SIZE;
+    private int maxLiveExtents = DEFAULT_MAX_LIVE_EXTENTS;
+    /**
+     * 已映射的区段 用于统计尚未被回收的数量 不阻止回收
+     */
+    private final List<WeakReference<MappedByteBuffer>> extents = new ArrayList<>();
+    /**
+     * 无法继续映射时改用的写入方式
+     */
+    private final BufferedAudioWriter fallback = new BufferedAudioWriter();
+    private volatile boolean fallenBack;
+    private File target;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    /**
+     * 当前区段在文件中的起始位置
+     */
+    private long windowStart;
+    private int headerSize;
+    private final WriteStats stats = new WriteStats();
+
+    public int getExtentSize() {
+        return extentSize;
+    }
+
+    /**
+     * 设置每次预分配和映射的区段大小 单位字节 下次打开文件时生效
+     */
+    public void setExtentSize(int extentSize) {
+        this.extentSize = Math.max(4096, extentSize);
+    }
+
+    public int getMaxLiveExtents() {
+        return maxLiveExtents;
+    }
+
+    /**
+     * 设置最多同时存在的映射区段数量 达到上限后改为普通写入 见类的说明
+     */
+    public void setMaxLiveExtents(int maxLiveExtents) {
+        this.maxLiveExtents = Math.max(1, maxLiveExtents);
+    }
+
+    /**
+     * 当前或最近一次录音的文件是否因为无法继续映射而改为普通写入
+     */
+    public boolean isFallenBack() {
+        return fallenBack;
+    }
+
+    @Override
+    public void open(File target, byte[] header) throws IOException {
+        synchronized (stats) {
+            stats.reset();
+        }
+        fallenBack = false;
+        this.target = target;
+        file = new RandomAccessFile(target, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        headerSize = header == null ? 0 : header.length;
+        if (header != null) {
+            writeHeader(header);
+        }
+        map(headerSize);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null || fallback.isOpen();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size) throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        synchronized (stats) {
+            stats.submittedBytes += size;
+        }
+        while (size > 0) {
+            if (fallenBack || !window.hasRemaining() && !map(windowStart + window.position())) {
+                fallback.write(data, offset, size);
+                return;
+            }
+            int n = Math.min(size, window.remaining());
+            window.put(data, offset, n);
+            synchronized (stats) {
+                stats.writtenBytes += n;
+            }
+            offset += n;
+            size -= n;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        synchronized (stats) {
+            stats.submittedBytes += data.remaining();
+        }
+        int limit = data.limit();
+        while (data.hasRemaining()) {
+            if (fallenBack || !window.hasRemaining() && !map(windowStart + window.position())) {
+                fallback.write(data);
+                return;
+            }
+            int n = Math.min(data.remaining(), window.remaining());
+            data.limit(data.position() + n);
+            window.put(data);
+            data.limit(limit);
+            synchronized (stats) {
+                stats.writtenBytes += n;
+            }
+        }
+    }
+
+    @Override
+    public long getDataLength() {
+        synchronized (stats) {
+            return stats.submittedBytes;
+        }
+    }
+
+    /**
+     * 将映射内存中的数据同步到存储设备
+     */
+    public void force() throws IOException {
+        if (fallenBack) {
+            fallback.flush();
+            fallback.force();
+            return;
+        }
+        if (window == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        window.force();
+        long elapsed = System.nanoTime() - start;
+        synchronized (stats) {
+            stats.forceCount++;
+            record(elapsed);
+        }
+    }
+
+    /**
+     * 映射内存中的数据由系统写回文件 进程异常退出时不会丢失 这里只需要重写文件头；
+     * 异常退出后文件末尾会留下预分配的空白区段 由 {@link WavRecovery} 去除
+     */
+    @Override
+    public void checkpoint(byte[] header) throws IOException {
+        if (fallenBack) {
+            fallback.checkpoint(header);
+            return;
+        }
+        if (channel == null) {
+            return;
+        }
+        if (header != null) {
+            writeHeader(header);
+        }
+        synchronized (stats) {
+            stats.checkpointCount++;
+        }
+    }
+
+    @Override
+    public void close(byte[] header) throws IOException {
+        if (fallenBack) {
+            fallback.close(header);
+            return;
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            long end = windowStart + window.position();
+            window = null;
+            // 去掉预分配但没有写入的部分
+            long start = System.nanoTime();
+            channel.truncate(end);
+            long elapsed = System.nanoTime() - start;
+            synchronized (stats) {
+                stats.flushCount++;
+                record(elapsed);
+            }
+            if (header != null) {
+                writeHeader(header);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void abort() {
+        window = null;
+        release();
+        if (fallenBack) {
+            fallback.abort();
+        }
+    }
+
+    @Override
+    public WriteStats getWriteStats() {
+        WriteStats snapshot = new WriteStats();
+        synchronized (stats) {
+            snapshot.copyFrom(stats);
+        }
+        if (fallenBack) {
+            // 提交的数据已经在这里统计
+            WriteStats buffered = fallback.getWriteStats();
+            buffered.submittedBytes = 0;
+            snapshot.add(buffered);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 映射从指定位置开始的下一个区段 映射超出文件长度的区域时文件会自动扩展
+     *
+     * @return 是否映射成功 失败时已经改为普通写入 从指定位置继续
+     */
+    private boolean map(long position) throws IOException {
+        window = null;
+        if (liveExtents() >= maxLiveExtents) {
+            fallBack(position, "too many live extents");
+            return false;
+        }
+        long start = System.nanoTime();
+        MappedByteBuffer extent;
+        try {
+            extent = mapExtent(position, extentSize);
+        } catch (OutOfMemoryError e) {
+            fallBack(position, e.toString());
+            return false;
+        } catch (IOException e) {
+            // 地址空间不足时 FileChannel.map 抛出以 OutOfMemoryError 为原因的 IOException
+            if (!(e.getCause() instanceof OutOfMemoryError)) {
+                throw e;
+            }
+            fallBack(position, e.getCause().toString());
+            return false;
+        }
+        for (int i = 0; i < EXTENT_MARKER.length; i++) {
+            extent.put(extentSize - EXTENT_MARKER.length + i, EXTENT_MARKER[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+        window = extent;
+        windowStart = position;
+        extents.add(new WeakReference<>(extent));
+        synchronized (stats) {
+            stats.writeCount++;
+            record(elapsed);
+        }
+        return true;
+    }
+
+    MappedByteBuffer mapExtent(long position, int size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+    }
+
+    /**
+     * 尚未被虚拟机回收的区段数量 同时去掉已经回收的
+     */
+    private int liveExtents() {
+        for (int i = extents.size() - 1; i >= 0; i--) {
+            if (extents.get(i).get() == null) {
+                extents.remove(i);
+            }
+        }
+        return extents.size();
+    }
+
+    /**
+     * 关闭映射的文件 由 {@link BufferedAudioWriter} 从指定位置继续写入 之后预分配的部分被截掉
+     */
+    private void fallBack(long position, String reason) throws IOException {
+        Log.w(TAG, "can not map extent at " + position + " (" + reason + "), continue with buffered write");
+        release();
+        fallenBack = true;
+        fallback.openAt(target, position);
+    }
+
+    private void writeHeader(byte[] header) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(header);
+        long position = 0;
+        while (data.hasRemaining()) {
+            long start = System.nanoTime();
+            int written = channel.write(data, position);
+            long elapsed = System.nanoTime() - start;
+            position += written;
+            synchronized (stats) {
+                stats.writtenBytes += written;
+                stats.writeCount++;
+                record(elapsed);
+            }
+        }
+    }
+
+    private void record(long elapsed) {
+        stats.totalWriteNanos += elapsed;
+        if (elapsed > stats.maxWriteNanos) {
+            stats.maxWriteNanos = elapsed;
+        }
+        if (elapsed >= WriteStats.SLOW_WRITE_NANOS) {
+            stats.slowWriteCount++;
+        }
+    }
+
+    private void release() {
+        try {
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            file = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 通过内存映射随机读取wav文件 支持超过4GB的RF64文件
+ * <p>
+ * 打开时解析所有的块(包括未知的块) 数据区域按需映射 不会载入Java堆；任意帧的位置通过计算得到，
+ * {@link #getShort(long, int)}、{@link #shorts(long, int)} 等直接读取映射的内存。
+ * {@link #exportClip(long, long, File)} 把一段帧写成新的wav文件 数据通过 {@link FileChannel#transferTo} 复制 不需要解码。
+ * <p>
+ * 与 {@link WavReader} 按顺序读取不同 适合波形显示、剪辑等随机访问的场景；
+ * 返回的视图都是只读的 关闭后不能再使用。读取方法可以在多个线程中同时调用
+ */
+public class MappedWavReader implements Closeable {
+    /**
+     * 每段映射的最大长度 超过时数据区域分为多段映射
+     */
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final WavChunks chunks;
+    private final List<Chunk> chunkList;
+    private final long dataLength;
+    /**
+     * 每段映射的长度 为blockAlign的整数倍 使每帧都落在同一段内
+     */
+    private final long regionSize;
+    private final AtomicReferenceArray<MappedByteBuffer> regions;
+
+    /**
+     * wav文件中的一个块
+     */
+    public static class Chunk {
+        private final int id;
+        private final long offset;
+        private final long size;
+
+        Chunk(int id, long offset, long size) {
+            this.id = id;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * 块标识 例如 "fmt "、"data"、"LIST"
+         */
+        public String getId() {
+            char[] chars = new char[4];
+            for (int i = 0; i < 4; i++) {
+                chars[i] = (char) ((id >> (i * 8)) & 0xFF);
+            }
+            return new String(chars);
+        }
+
+        /**
+         * 块数据在文件中的位置 不包括块标识和长度字段
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * 块头中记录的长度 RF64文件的data块为0xFFFFFFFF 实际长度见 {@link MappedWavReader#getDataLength()}
+         */
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "Chunk{id='" + getId() + "', offset=" + offset + ", size=" + size + "}";
+        }
+    }
+
+    /**
+     * 打开并解析wav文件
+     *
+     * @throws IOException 文件无法读取或者不是wav文件
+     */
+    public MappedWavReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        try {
+            chunks = WavChunks.parse(channel);
+            if (chunks == null) {
+                throw new IOException("not a wav file: " + file);
+            }
+            dataLength = chunks.getDataLength(channel.size());
+            chunks.parseTrailing(channel, dataLength);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+        chunkList = Collections.unmodifiableList(chunks.list);
+        regionSize = MAX_REGION_SIZE - MAX_REGION_SIZE % chunks.blockAlign;
+        regions = new AtomicReferenceArray<>((int) ((dataLength + regionSize - 1) / regionSize));
+    }
+
+    /**
+     * 编码格式 {@link PcmToWavUtil#WAVE_FORMAT_PCM},{@link PcmToWavUtil#WAVE_FORMAT_IEEE_FLOAT}等
+     */
+    public int getFormatTag() {
+        return chunks.formatTag;
+    }
+
+    public int getSampleRate() {
+        return chunks.sampleRate;
+    }
+
+    public int getChannels() {
+        return chunks.channels;
+    }
+
+    public int getBitsPerSample() {
+        return chunks.bitsPerSample;
+    }
+
+    /**
+     * 每帧的字节数(所有声道) IMA ADPCM为每个块的字节数
+     */
+    public int getBlockAlign() {
+        return chunks.blockAlign;
+    }
+
+    public boolean isRf64() {
+        return chunks.rf64;
+    }
+
+    /**
+     * 文件中所有的块 按在文件中的顺序 包括未知的块和data块之后的块
+     */
+    public List<Chunk> getChunks() {
+        return chunkList;
+    }
+
+    /**
+     * 查找块
+     *
+     * @param id 块标识 例如 "LIST"
+     * @return 第一个匹配的块 没有时返回null
+     */
+    public Chunk findChunk(String id) {
+        int fourCc = WavChunks.fourCc(id);
+        for (Chunk chunk : chunkList) {
+            if (chunk.id == fourCc) {
+                return chunk;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取块的数据 适用于LIST等较小的块
+     */
+    public byte[] readChunk(Chunk chunk) throws IOException {
+        long size = Math.min(chunk.size, channel.size() - chunk.offset);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("chunk too large: " + chunk);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, chunk.offset + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 数据在文件中的开始位置
+     */
+    public long getDataOffset() {
+        return chunks.dataOffset;
+    }
+
+    /**
+     * 数据的长度 单位字节
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * 帧数 即每个声道的采样数
+     */
+    public long getFrameCount() {
+        return chunks.getFrameCount(dataLength);
+    }
+
+    public long getDurationMillis() {
+        return getFrameCount() * 1000 / chunks.sampleRate;
+    }
+
+    /**
+     * 帧在文件中的位置
+     */
+    public long getFrameOffset(long frame) {
+        checkPcm();
+        return chunks.dataOffset + frame * chunks.blockAlign;
+    }
+
+    /**
+     * 读取一个16位采样
+     *
+     * @param frame        帧的位置
+     * @param channelIndex 声道 从0开始
+     */
+    public short getShort(long frame, int channelIndex) throws IOException {
+        checkFormat(PcmToWavUtil.WAVE_FORMAT_PCM, 16);
+        long offset = checkFrames(frame, 1) * chunks.blockAlign + checkChannel(channelIndex) * 2;
+        return region(offset).getShort((int) (offset % regionSize));
+    }
+
+    /**
+     * 读取一个32位浮点采样
+     *
+     * @param frame        帧的位置
+     * @param channelIndex 声道 从0开始
+     */
+    public float getFloat(long frame, int channelIndex) throws IOException {
+        checkFormat(PcmToWavUtil.WAVE_FORMAT_IEEE_FLOAT, 32);
+        long offset = checkFrames(frame, 1) * chunks.blockAlign + checkChannel(channelIndex) * 4;
+        return region(offset).getFloat((int) (offset % regionSize));
+    }
+
+    /**
+     * 一段帧的原始数据的只读视图 小端字节序
+     *
+     * @param frame  开始的帧
+     * @param frames 帧数
+     */
+    public ByteBuffer bytes(long frame, int frames) throws IOException {
+        checkPcm();
+        long offset = checkFrames(frame, frames) * chunks.blockAlign;
+        long length = (long) frames * chunks.blockAlign;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many frames for one view: " + frames);
+        }
+        ByteBuffer view;
+        if (length == 0) {
+            view = ByteBuffer.allocate(0);
+        } else if (offset / regionSize == (offset + length - 1) / regionSize) {
+            ByteBuffer region = region(offset).duplicate();
+            int start = (int) (offset % regionSize);
+            region.limit(start + (int) length).position(start);
+            view = region.slice();
+        } else {
+            // 跨越两段映射时单独映射这一段
+            view = channel.map(FileChannel.MapMode.READ_ONLY, chunks.dataOffset + offset, length);
+        }
+        return view.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 一段帧的16位采样的只读视图 多声道交错排列
+     *
+     * @param frame  开始的帧
+     * @param frames 帧数
+     */
+    public ShortBuffer shorts(long frame, int frames) throws IOException {
+        checkFormat(PcmToWavUtil.WAVE_FORMAT_PCM, 16);
+        return bytes(frame, frames).asShortBuffer();
+    }
+
+    /**
+     * 一段帧的32位浮点采样的只读视图 多声道交错排列
+     *
+     * @param frame  开始的帧
+     * @param frames 帧数
+     */
+    public FloatBuffer floats(long frame, int frames) throws IOException {
+        checkFormat(PcmToWavUtil.WAVE_FORMAT_IEEE_FLOAT, 32);
+        return bytes(frame, frames).asFloatBuffer();
+    }
+
+    /**
+     * 把一段帧写成新的wav文件 数据不解码 直接在文件之间复制
+     *
+     * @param frame  开始的帧
+     * @param frames 帧数 超出结尾时截取到结尾
+     * @param target 目标文件 已经存在时覆盖
+     * @return 写入的数据长度 不包括文件头
+     */
+    public long exportClip(long frame, long frames, File target) throws IOException {
+        File parentDir = target.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            return exportClip(frame, frames, out.getChannel());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 把一段帧写成wav格式 先写文件头再复制数据
+     *
+     * @param frame  开始的帧
+     * @param frames 帧数 超出结尾时截取到结尾
+     * @param target 阻塞模式的通道
+     * @return 写入的数据长度 不包括文件头
+     */
+    public long exportClip(long frame, long frames, WritableByteChannel target) throws IOException {
+        checkPcm();
+        long frameCount = getFrameCount();
+        if (frame < 0 || frame > frameCount || frames < 0) {
+            throw new IndexOutOfBoundsException("frame " + frame + ", frames " + frames + ", frame count " + frameCount);
+        }
+        frames = Math.min(frames, frameCount - frame);
+        long length = frames * chunks.blockAlign;
+        ByteBuffer header = ByteBuffer.wrap(clipHeader(length, frames));
+        while (header.hasRemaining()) {
+            target.write(header);
+        }
+        long start = chunks.dataOffset + frame * chunks.blockAlign;
+        long position = 0;
+        while (position < length) {
+            long n = channel.transferTo(start + position, length - position, target);
+            if (n <= 0) {
+                throw new IOException("wav file truncated during export");
+            }
+            position += n;
+        }
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 映射的内存由GC回收
+        file.close();
+    }
+
+    private byte[] clipHeader(long length, long frames) {
+        int formatTag = chunks.formatTag;
+        if (formatTag == PcmToWavUtil.WAVE_FORMAT_MULAW || formatTag == PcmToWavUtil.WAVE_FORMAT_ALAW) {
+            return PcmToWavUtil.getCompressedWaveFileHeader(formatTag, chunks.sampleRate, chunks.channels,
+                    chunks.blockAlign, length, frames);
+        }
+        boolean reserveDs64 = length + PcmToWavUtil.getWaveFileHeaderSize(formatTag) - 8 > PcmToWavUtil.MAX_RIFF_SIZE;
+        return PcmToWavUtil.getWaveFileHeader(formatTag, chunks.sampleRate, chunks.channels, chunks.bitsPerSample,
+                length, reserveDs64);
+    }
+
+    /**
+     * 数据偏移所在的映射 第一次访问时映射
+     */
+    private ByteBuffer region(long offset) throws IOException {
+        int index = (int) (offset / regionSize);
+        MappedByteBuffer region = regions.get(index);
+        if (region == null) {
+            // 多个线程同时映射时使用先完成的 其余的由GC回收
+            long start = index * regionSize;
+            region = channel.map(FileChannel.MapMode.READ_ONLY, chunks.dataOffset + start,
+                    Math.min(regionSize, dataLength - start));
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            if (!regions.compareAndSet(index, null, region)) {
+                region = regions.get(index);
+            }
+        }
+        return region;
+    }
+
+    /**
+     * @return 开始的帧
+     */
+    private long checkFrames(long frame, int frames) {
+        if (frame < 0 || frames < 0 || frame + frames > getFrameCount()) {
+            throw new IndexOutOfBoundsException("frame " + frame + ", frames " + frames + ", frame count " + getFrameCount());
+        }
+        return frame;
+    }
+
+    private int checkChannel(int channelIndex) {
+        if (channelIndex < 0 || channelIndex >= chunks.channels) {
+            throw new IndexOutOfBoundsException("channel " + channelIndex + ", channels " + chunks.channels);
+        }
+        return channelIndex;
+    }
+
+    /**
+     * IMA ADPCM 按块压缩 帧没有固定的位置
+     */
+    private void checkPcm() {
+        if (chunks.formatTag == PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM) {
+            throw new IllegalStateException("random access is not supported for IMA ADPCM");
+        }
+    }
+
+    private void checkFormat(int formatTag, int bitsPerSample) {
+        if (chunks.formatTag != formatTag || chunks.bitsPerSample != bitsPerSample) {
+            throw new IllegalStateException("not a " + bitsPerSample + " bit "
+                    + (formatTag == PcmToWavUtil.WAVE_FORMAT_PCM ? "pcm" : "float") + " file");
+        }
+    }
+}
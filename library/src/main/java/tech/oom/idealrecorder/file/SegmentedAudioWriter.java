@@ -0,0 +1,242 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 分段写入录音文件 包装实际的 {@link AudioWriter}
+ * <p>
+ * 每段达到设定的长度后写入文件头并关闭，通过 {@link AudioFileListener#onSegmentComplete(String, long, long)} 回调，
+ * 之后的数据写入下一个文件；一次写入跨越分段边界时在帧边界处拆分 相邻分段之间不会丢失或重复采样。
+ * 下一个文件在有数据写入时才创建 录音恰好在分段边界结束时不会留下空文件。
+ * 分段文件的路径为录音路径的文件名后加序号 例如 rec.wav 的分段为 rec_0001.wav、rec_0002.wav ...
+ */
+class SegmentedAudioWriter implements AudioWriter {
+    private final AudioWriter writer;
+    private final IdealRecorder.RecordConfig config;
+    private final boolean isWav;
+    private final boolean reserveDs64;
+    private final long segmentBytes;
+    private final int blockAlign;
+    private final AudioFileListener listener;
+    private final String prefix;
+    private final String suffix;
+    /**
+     * 已完成分段的写入统计之和
+     */
+    private final WriteStats completedStats = new WriteStats();
+
+    private boolean open;
+    private int segmentIndex;
+    private volatile File currentFile;
+    /**
+     * 当前分段第一个采样的序号 按帧计算 从录音开始时为0
+     */
+    private long segmentStartSample;
+
+    /**
+     * @param writer       实际的写入方式
+     * @param target       录音路径 用于命名分段文件 不会创建该文件
+     * @param config       录音配置 用于生成文件头
+     * @param isWav        是否为wav文件
+     * @param reserveDs64  文件头是否预留ds64块
+     * @param segmentBytes 每段的数据长度 单位字节 需要为帧长度的整数倍
+     * @param listener     分段完成的回调
+     */
+    SegmentedAudioWriter(AudioWriter writer, File target, IdealRecorder.RecordConfig config, boolean isWav,
+                         boolean reserveDs64, long segmentBytes, AudioFileListener listener) {
+        this.writer = writer;
+        this.config = config;
+        this.isWav = isWav;
+        this.reserveDs64 = reserveDs64;
+        this.segmentBytes = segmentBytes;
+        this.blockAlign = config.getChannelCount() * config.getBitsPerSample() / 8;
+        this.listener = listener;
+        String path = target.getPath();
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf(File.separatorChar)) {
+            dot = path.length();
+        }
+        this.prefix = path.substring(0, dot);
+        this.suffix = path.substring(dot);
+    }
+
+    /**
+     * 第几个分段的文件
+     *
+     * @param index 分段序号 从1开始
+     */
+    File getSegmentFile(int index) {
+        return new File(prefix + String.format(Locale.US, "_%04d", index) + suffix);
+    }
+
+    /**
+     * 当前正在写入的分段文件 分段之间或未打开时为null
+     */
+    File getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * 最后一个创建的分段文件 没有创建过分段时为null
+     */
+    File getLastFile() {
+        return segmentIndex == 0 ? null : getSegmentFile(segmentIndex);
+    }
+
+    /**
+     * 只打开第一个分段 传入的header用于第一个分段
+     *
+     * @param target 忽略 分段文件由构造时的录音路径决定
+     */
+    @Override
+    public void open(File target, byte[] header) throws IOException {
+        segmentIndex = 0;
+        segmentStartSample = 0;
+        currentFile = null;
+        synchronized (completedStats) {
+            completedStats.reset();
+        }
+        open = true;
+        openSegment(header);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size) throws IOException {
+        while (size > 0 && open) {
+            if (currentFile == null) {
+                openSegment(header(0));
+            }
+            int n = (int) Math.min(size, segmentBytes - writer.getDataLength());
+            writer.write(data, offset, n);
+            offset += n;
+            size -= n;
+            completeSegmentIfFull();
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        int limit = data.limit();
+        while (data.hasRemaining() && open) {
+            if (currentFile == null) {
+                openSegment(header(0));
+            }
+            int n = (int) Math.min(data.remaining(), segmentBytes - writer.getDataLength());
+            data.limit(data.position() + n);
+            try {
+                writer.write(data);
+            } finally {
+                data.limit(limit);
+            }
+            completeSegmentIfFull();
+        }
+    }
+
+    /**
+     * 当前分段的数据长度
+     */
+    @Override
+    public long getDataLength() {
+        return currentFile == null ? 0 : writer.getDataLength();
+    }
+
+    @Override
+    public void checkpoint(byte[] header) throws IOException {
+        if (currentFile != null) {
+            writer.checkpoint(header);
+        }
+    }
+
+    /**
+     * 关闭当前分段并回调分段完成
+     *
+     * @param header 当前分段的最终文件头
+     */
+    @Override
+    public void close(byte[] header) throws IOException {
+        open = false;
+        if (currentFile != null) {
+            completeSegment(header);
+        }
+    }
+
+    /**
+     * 丢弃当前分段未写入的数据并关闭 已完成的分段不受影响
+     */
+    @Override
+    public void abort() {
+        open = false;
+        if (currentFile != null) {
+            writer.abort();
+        }
+    }
+
+    /**
+     * 本次录音所有分段的写入统计之和
+     */
+    @Override
+    public WriteStats getWriteStats() {
+        WriteStats snapshot = new WriteStats();
+        synchronized (completedStats) {
+            snapshot.copyFrom(completedStats);
+        }
+        if (currentFile != null) {
+            snapshot.add(writer.getWriteStats());
+        }
+        return snapshot;
+    }
+
+    private void openSegment(byte[] header) throws IOException {
+        File file = getSegmentFile(segmentIndex + 1);
+        try {
+            writer.open(file, header);
+        } catch (IOException e) {
+            open = false;
+            throw e;
+        }
+        segmentIndex++;
+        currentFile = file;
+    }
+
+    private void completeSegmentIfFull() throws IOException {
+        if (writer.getDataLength() >= segmentBytes) {
+            completeSegment(header(writer.getDataLength()));
+        }
+    }
+
+    private void completeSegment(byte[] header) throws IOException {
+        long samples = writer.getDataLength() / blockAlign;
+        File file = currentFile;
+        currentFile = null;
+        try {
+            writer.close(header);
+        } catch (IOException e) {
+            open = false;
+            throw e;
+        } finally {
+            synchronized (completedStats) {
+                completedStats.add(writer.getWriteStats());
+            }
+        }
+        long startSample = segmentStartSample;
+        segmentStartSample += samples;
+        if (listener != null) {
+            listener.onSegmentComplete(file.getPath(), startSample, segmentStartSample);
+        }
+    }
+
+    private byte[] header(long dataLength) {
+        return isWav ? PcmToWavUtil.getWaveFileHeader(config, dataLength, reserveDs64) : null;
+    }
+}
@@ -0,0 +1,145 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 写入 {@link OutputStream} 例如网络上传的连接
+ * <p>
+ * 输出流无法回到开头重写文件头 只适用于不需要重写文件头的格式(pcm、FLAC)；
+ * 关闭时只刷新输出流 不关闭，同一个输出流可以依次写入多次录音 输出流由调用者关闭
+ */
+public class StreamAudioWriter implements AudioWriter {
+    private final OutputStream out;
+    private final WriteStats stats = new WriteStats();
+    /**
+     * 直接内存的中转数组
+     */
+    private final byte[] scratch = new byte[4096];
+    private boolean open;
+
+    public StreamAudioWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * 写入文件头
+     *
+     * @param target 忽略
+     * @param header 文件头 可以为null
+     */
+    @Override
+    public void open(File target, byte[] header) throws IOException {
+        synchronized (stats) {
+            stats.reset();
+        }
+        open = true;
+        if (header != null) {
+            writeFully(header, 0, header.length);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size) throws IOException {
+        if (!open) {
+            return;
+        }
+        synchronized (stats) {
+            stats.submittedBytes += size;
+        }
+        writeFully(data, offset, size);
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+        while (data.hasRemaining()) {
+            int n = Math.min(data.remaining(), scratch.length);
+            data.get(scratch, 0, n);
+            write(scratch, 0, n);
+        }
+    }
+
+    @Override
+    public long getDataLength() {
+        synchronized (stats) {
+            return stats.submittedBytes;
+        }
+    }
+
+    /**
+     * 刷新输出流
+     *
+     * @param header 忽略 输出流无法重写文件头
+     */
+    @Override
+    public void checkpoint(byte[] header) throws IOException {
+        if (!open) {
+            return;
+        }
+        out.flush();
+        synchronized (stats) {
+            stats.checkpointCount++;
+            stats.flushCount++;
+        }
+    }
+
+    /**
+     * 刷新输出流 不关闭
+     *
+     * @param header 忽略 输出流无法重写文件头
+     */
+    @Override
+    public void close(byte[] header) throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        out.flush();
+        synchronized (stats) {
+            stats.flushCount++;
+        }
+    }
+
+    @Override
+    public void abort() {
+        open = false;
+    }
+
+    @Override
+    public WriteStats getWriteStats() {
+        WriteStats snapshot = new WriteStats();
+        synchronized (stats) {
+            snapshot.copyFrom(stats);
+        }
+        return snapshot;
+    }
+
+    private void writeFully(byte[] data, int offset, int size) throws IOException {
+        long start = System.nanoTime();
+        out.write(data, offset, size);
+        long elapsed = System.nanoTime() - start;
+        synchronized (stats) {
+            stats.writtenBytes += size;
+            stats.writeCount++;
+            stats.totalWriteNanos += elapsed;
+            if (elapsed > stats.maxWriteNanos) {
+                stats.maxWriteNanos = elapsed;
+            }
+            if (elapsed > WriteStats.SLOW_WRITE_NANOS) {
+                stats.slowWriteCount++;
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 解析wav和RF64文件的块结构 得到格式信息以及各个长度字段的位置
+ * <p>
+ * 逐块读取直到data块 不会读取整个文件头之外的数据；data块之后的块需要时通过 {@link #parseTrailing(FileChannel, long)} 读取
+ */
+class WavChunks {
+    static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int ID_RIFF = fourCc("RIFF");
+    private static final int ID_RF64 = fourCc("RF64");
+    private static final int ID_WAVE = fourCc("WAVE");
+    private static final int ID_FMT = fourCc("fmt ");
+    private static final int ID_FACT = fourCc("fact");
+    private static final int ID_DS64 = fourCc("ds64");
+    private static final int ID_JUNK = fourCc("JUNK");
+    private static final int ID_DATA = fourCc("data");
+
+    boolean rf64;
+    int formatTag;
+    int channels;
+    int sampleRate;
+    int bitsPerSample;
+    int blockAlign;
+    /**
+     * 每个块中每个声道的采样数 只有IMA ADPCM大于1
+     */
+    int samplesPerBlock = 1;
+    /**
+     * fact块中记录的采样数 没有时为-1
+     */
+    long factSampleCount = -1;
+    /**
+     * 文件头中记录的RIFF长度 RF64文件为ds64块中的长度
+     */
+    long riffSize;
+    /**
+     * ds64块或预留的JUNK块的数据位置 没有时为-1
+     */
+    long ds64Position = -1;
+    long factPosition = -1;
+    long dataSizePosition = -1;
+    long dataOffset;
+    /**
+     * 文件头中记录的数据长度 RF64文件为ds64块中的长度
+     */
+    long declaredDataLength;
+    /**
+     * 读取到的所有块 包括未知的块 按在文件中的顺序
+     */
+    final List<MappedWavReader.Chunk> list = new ArrayList<>();
+
+    /**
+     * @return 不是wav文件或者缺少fmt块、data块时返回null
+     */
+    static WavChunks parse(FileChannel channel) throws IOException {
+        long fileLength = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        if (!read(channel, buffer, 0, 12)) {
+            return null;
+        }
+        int riff = buffer.getInt(0);
+        if ((riff != ID_RIFF && riff != ID_RF64) || buffer.getInt(8) != ID_WAVE) {
+            return null;
+        }
+        WavChunks chunks = new WavChunks();
+        chunks.rf64 = riff == ID_RF64;
+        chunks.riffSize = buffer.getInt(4) & 0xFFFFFFFFL;
+        long ds64DataLength = -1;
+        boolean hasFmt = false;
+        long position = 12;
+        while (read(channel, buffer, position, 8)) {
+            int id = buffer.getInt(0);
+            long size = buffer.getInt(4) & 0xFFFFFFFFL;
+            long data = position + 8;
+            chunks.list.add(new MappedWavReader.Chunk(id, data, size));
+            if (id == ID_DATA) {
+                chunks.dataSizePosition = position + 4;
+                chunks.dataOffset = data;
+                chunks.declaredDataLength = chunks.rf64 && size == PcmToWavUtil.MAX_RIFF_SIZE && ds64DataLength >= 0
+                        ? ds64DataLength : size;
+                break;
+            }
+            if (id == ID_FMT && size >= 16 && read(channel, buffer, data, (int) Math.min(size, 26))) {
+                hasFmt = true;
+                chunks.formatTag = buffer.getShort(0) & 0xFFFF;
+                chunks.channels = buffer.getShort(2) & 0xFFFF;
+                chunks.sampleRate = buffer.getInt(4);
+                chunks.blockAlign = buffer.getShort(12) & 0xFFFF;
+                chunks.bitsPerSample = buffer.getShort(14) & 0xFFFF;
+                if (chunks.formatTag == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+                    // WAVE_FORMAT_EXTENSIBLE 的子格式GUID的前两个字节即格式
+                    chunks.formatTag = buffer.getShort(24) & 0xFFFF;
+                }
+                if (chunks.formatTag == PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM && size >= 20) {
+                    chunks.samplesPerBlock = Math.max(1, buffer.getShort(18) & 0xFFFF);
+                }
+            } else if (id == ID_FACT) {
+                chunks.factPosition = data;
+                if (size >= 4 && read(channel, buffer, data, 4)) {
+                    chunks.factSampleCount = buffer.getInt(0) & 0xFFFFFFFFL;
+                }
+            } else if (id == ID_DS64 && read(channel, buffer, data, 16)) {
+                chunks.ds64Position = data;
+                chunks.riffSize = buffer.getLong(0);
+                ds64DataLength = buffer.getLong(8);
+            } else if (id == ID_JUNK && position == 12 && size >= PcmToWavUtil.DS64_CHUNK_SIZE - 8) {
+                chunks.ds64Position = data;
+            }
+            position = data + size + (size & 1);
+            if (position > fileLength) {
+                break;
+            }
+        }
+        if (!hasFmt || chunks.dataSizePosition < 0 || chunks.blockAlign == 0) {
+            return null;
+        }
+        return chunks;
+    }
+
+    /**
+     * 读取data块之后的块(例如LIST块) 遇到不完整或者无法识别的块时停止 异常退出的录音末尾可能是任意数据
+     *
+     * @param dataLength 实际的数据长度
+     */
+    void parseTrailing(FileChannel channel, long dataLength) throws IOException {
+        long fileLength = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        long position = dataOffset + dataLength + (dataLength & 1);
+        while (position + 8 <= fileLength && read(channel, buffer, position, 8)) {
+            int id = buffer.getInt(0);
+            long size = buffer.getInt(4) & 0xFFFFFFFFL;
+            if (!isPrintable(id) || position + 8 + size > fileLength) {
+                break;
+            }
+            list.add(new MappedWavReader.Chunk(id, position + 8, size));
+            position += 8 + size + (size & 1);
+        }
+    }
+
+    private static boolean isPrintable(int id) {
+        for (int i = 0; i < 4; i++) {
+            int c = (id >> (i * 8)) & 0xFF;
+            if (c < 0x20 || c > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 根据文件的实际长度得到可以读取的数据长度 文件头中的长度为0、超出文件或者为32位的最大值(未知)时使用实际长度
+     */
+    long getDataLength(long fileLength) {
+        long actual = Math.max(0, fileLength - dataOffset);
+        actual -= actual % blockAlign;
+        if (declaredDataLength == 0 || declaredDataLength > actual
+                || (!rf64 && declaredDataLength == PcmToWavUtil.MAX_RIFF_SIZE)) {
+            return actual;
+        }
+        return declaredDataLength;
+    }
+
+    /**
+     * 数据对应的帧数 IMA ADPCM的最后一个块可能没有填满 fact块中的采样数落在最后一个块内时以它为准
+     */
+    long getFrameCount(long dataLength) {
+        long frames = dataLength / blockAlign * samplesPerBlock;
+        if (samplesPerBlock > 1 && factSampleCount > frames - samplesPerBlock && factSampleCount <= frames) {
+            return factSampleCount;
+        }
+        return frames;
+    }
+
+    static int fourCc(String id) {
+        return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+    }
+
+    private static boolean read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
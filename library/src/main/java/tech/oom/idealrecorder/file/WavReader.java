@@ -0,0 +1,289 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import tech.oom.idealrecorder.utils.G711;
+import tech.oom.idealrecorder.utils.ImaAdpcm;
+import tech.oom.idealrecorder.utils.PcmCodec;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 流式读取wav文件 支持超过4GB的RF64文件
+ * <p>
+ * 只解析文件头 数据按需从文件中读取 不会整个载入内存；
+ * 文件头中的长度为0或者超出文件长度时(例如异常退出的录音)以文件的实际长度为准。不是线程安全的
+ * <p>
+ * G.711 和 IMA ADPCM 文件可以通过 {@link #readShorts(short[], int, int)} 解码为16位数据；
+ * IMA ADPCM 按块存储 帧的位置单独记录 {@link #read(byte[], int, int)} 从当前帧所在的块开始读取原始数据
+ */
+public class WavReader implements Closeable {
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final WavChunks chunks;
+    private final long dataLength;
+    /**
+     * 下一次读取的位置 相对于数据的开始
+     */
+    private long position;
+    private byte[] scratch = new byte[0];
+    /**
+     * IMA ADPCM 下一次解码的帧的位置和已经解码的块
+     */
+    private long framePosition;
+    private short[] decoded;
+    private long decodedBlock = -1;
+
+    /**
+     * 打开并解析wav文件
+     *
+     * @throws IOException 文件无法读取或者不是wav文件
+     */
+    public WavReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        WavChunks parsed;
+        try {
+            parsed = WavChunks.parse(channel);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+        if (parsed == null) {
+            this.file.close();
+            throw new IOException("not a wav file: " + file);
+        }
+        this.chunks = parsed;
+        this.dataLength = parsed.getDataLength(channel.size());
+    }
+
+    /**
+     * 编码格式 {@link PcmToWavUtil#WAVE_FORMAT_PCM},{@link PcmToWavUtil#WAVE_FORMAT_IEEE_FLOAT}等
+     */
+    public int getFormatTag() {
+        return chunks.formatTag;
+    }
+
+    public int getSampleRate() {
+        return chunks.sampleRate;
+    }
+
+    public int getChannels() {
+        return chunks.channels;
+    }
+
+    public int getBitsPerSample() {
+        return chunks.bitsPerSample;
+    }
+
+    /**
+     * 每帧的字节数(所有声道) IMA ADPCM为每个块的字节数
+     */
+    public int getBlockAlign() {
+        return chunks.blockAlign;
+    }
+
+    /**
+     * 是否为RF64格式
+     */
+    public boolean isRf64() {
+        return chunks.rf64;
+    }
+
+    /**
+     * 数据在文件中的开始位置
+     */
+    public long getDataOffset() {
+        return chunks.dataOffset;
+    }
+
+    /**
+     * 数据的长度 单位字节
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * 帧数 即每个声道的采样数
+     */
+    public long getFrameCount() {
+        return chunks.getFrameCount(dataLength);
+    }
+
+    public long getDurationMillis() {
+        return getFrameCount() * 1000 / chunks.sampleRate;
+    }
+
+    /**
+     * 下一次读取的帧的位置
+     */
+    public long getFramePosition() {
+        return isImaAdpcm() ? framePosition : position / chunks.blockAlign;
+    }
+
+    /**
+     * 跳转到指定的帧
+     *
+     * @param frame 帧的位置 超出范围时取最接近的有效值
+     */
+    public void seekToFrame(long frame) {
+        frame = Math.max(0, Math.min(frame, getFrameCount()));
+        if (isImaAdpcm()) {
+            framePosition = frame;
+            position = Math.min(dataLength, frame / chunks.samplesPerBlock * chunks.blockAlign);
+        } else {
+            position = frame * chunks.blockAlign;
+        }
+    }
+
+    /**
+     * 读取数据
+     *
+     * @return 读取的字节数 已到结尾时返回-1
+     */
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        return read(ByteBuffer.wrap(dst, offset, length));
+    }
+
+    /**
+     * 读取数据到buffer中 从position写到limit
+     *
+     * @return 读取的字节数 已到结尾时返回-1
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        long remaining = dataLength - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        int limit = dst.limit();
+        if (dst.remaining() > remaining) {
+            dst.limit(dst.position() + (int) remaining);
+        }
+        int total = 0;
+        try {
+            while (dst.hasRemaining()) {
+                int n = channel.read(dst, chunks.dataOffset + position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+                total += n;
+            }
+        } finally {
+            dst.limit(limit);
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * 读取16位数据 G.711 和 IMA ADPCM 文件解码为16位
+     *
+     * @param length 采样数(所有声道) IMA ADPCM 按整帧读取
+     * @return 读取的采样数(所有声道) 已到结尾时返回-1
+     */
+    public int readShorts(short[] dst, int offset, int length) throws IOException {
+        int formatTag = chunks.formatTag;
+        if (formatTag == PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM) {
+            return readImaAdpcm(dst, offset, length / chunks.channels);
+        }
+        if (formatTag == PcmToWavUtil.WAVE_FORMAT_MULAW || formatTag == PcmToWavUtil.WAVE_FORMAT_ALAW) {
+            int read = read(ensureScratch(length), 0, length);
+            if (read < 0) {
+                return -1;
+            }
+            if (formatTag == PcmToWavUtil.WAVE_FORMAT_MULAW) {
+                G711.decodeMuLaw(scratch, 0, dst, offset, read);
+            } else {
+                G711.decodeALaw(scratch, 0, dst, offset, read);
+            }
+            return read;
+        }
+        if (chunks.bitsPerSample != 16) {
+            throw new IllegalStateException("not a 16 bit file: " + chunks.bitsPerSample);
+        }
+        int read = read(ensureScratch(length * 2), 0, length * 2);
+        if (read < 0) {
+            return -1;
+        }
+        PcmCodec.decodeShorts(scratch, 0, dst, offset, read / 2, ByteOrder.LITTLE_ENDIAN);
+        return read / 2;
+    }
+
+    /**
+     * 读取32位浮点数据
+     *
+     * @return 读取的采样数(所有声道) 已到结尾时返回-1
+     */
+    public int readFloats(float[] dst, int offset, int length) throws IOException {
+        if (chunks.formatTag != PcmToWavUtil.WAVE_FORMAT_IEEE_FLOAT || chunks.bitsPerSample != 32) {
+            throw new IllegalStateException("not a 32 bit float file");
+        }
+        int read = read(ensureScratch(length * 4), 0, length * 4);
+        if (read < 0) {
+            return -1;
+        }
+        PcmCodec.decodeFloats(scratch, 0, dst, offset, read / 4, ByteOrder.LITTLE_ENDIAN);
+        return read / 4;
+    }
+
+    private int readImaAdpcm(short[] dst, int offset, int frames) throws IOException {
+        long frameCount = getFrameCount();
+        if (framePosition >= frameCount) {
+            return -1;
+        }
+        int channels = chunks.channels;
+        int samplesPerBlock = chunks.samplesPerBlock;
+        int total = 0;
+        while (total < frames && framePosition < frameCount) {
+            long block = framePosition / samplesPerBlock;
+            if (block != decodedBlock) {
+                decodeBlock(block);
+            }
+            int start = (int) (framePosition - block * samplesPerBlock);
+            int n = (int) Math.min(Math.min(frames - total, samplesPerBlock - start), frameCount - framePosition);
+            System.arraycopy(decoded, start * channels, dst, offset + total * channels, n * channels);
+            total += n;
+            framePosition += n;
+        }
+        return total * channels;
+    }
+
+    private void decodeBlock(long block) throws IOException {
+        int blockAlign = chunks.blockAlign;
+        if (decoded == null) {
+            decoded = new short[chunks.samplesPerBlock * chunks.channels];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(ensureScratch(blockAlign), 0, blockAlign);
+        long start = block * blockAlign;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, chunks.dataOffset + start + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        ImaAdpcm.decodeBlock(scratch, 0, chunks.channels, decoded, 0, blockAlign);
+        decodedBlock = block;
+        position = start + blockAlign;
+    }
+
+    private boolean isImaAdpcm() {
+        return chunks.formatTag == PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private byte[] ensureScratch(int size) {
+        if (scratch.length < size) {
+            scratch = new byte[size];
+        }
+        return scratch;
+    }
+}
@@ -0,0 +1,337 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.Log;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * 修复异常退出(进程被杀、断电等)留下的录音文件 适合在应用启动时 开始录音之前对录音目录调用 {@link #scan(File)}
+ * <p>
+ * wav文件：根据文件的实际长度重写RIFF和data块的长度以及fact块的采样数，截掉不完整的采样，
+ * 预留了ds64块且超过4GB的文件转换为RF64格式。已经正确关闭的文件不会被修改。
+ * <p>
+ * pcm文件没有文件头 只截掉末尾不完整的采样
+ * <p>
+ * 内存映射写入({@link MappedAudioWriter})的文件末尾是预分配的区段，通过区段末尾的标记识别，
+ * 截掉标记以及文件头中记录的长度(例如 {@link IdealRecorder#setCheckpointInterval(long)} 的检查点)之后全为0的部分；
+ * 其它文件末尾的0是录音中的静音 按实际长度保留
+ */
+public class WavRecovery {
+    private static final String TAG = "WavRecovery";
+    /**
+     * 文件完整 没有修改
+     */
+    public static final int STATUS_OK = 0;
+    /**
+     * 文件已修复
+     */
+    public static final int STATUS_REPAIRED = 1;
+    /**
+     * 文件无法识别或读写失败
+     */
+    public static final int STATUS_FAILED = 2;
+
+    private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * 单个文件的修复结果
+     */
+    public static class Result {
+        private final File file;
+        private final int status;
+        private final long originalDataLength;
+        private final long dataLength;
+        private final String message;
+
+        Result(File file, int status, long originalDataLength, long dataLength, String message) {
+            this.file = file;
+            this.status = status;
+            this.originalDataLength = originalDataLength;
+            this.dataLength = dataLength;
+            this.message = message;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * {@link #STATUS_OK}, {@link #STATUS_REPAIRED}, {@link #STATUS_FAILED}
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * 修复前文件头中记录的数据长度 pcm文件为修复前的文件长度
+         */
+        public long getOriginalDataLength() {
+            return originalDataLength;
+        }
+
+        /**
+         * 修复后的数据长度 不包括文件头
+         */
+        public long getDataLength() {
+            return dataLength;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{file=" + file + ", status=" + status + ", originalDataLength=" + originalDataLength
+                    + ", dataLength=" + dataLength + ", message='" + message + "'}";
+        }
+    }
+
+    /**
+     * 修复目录中所有的wav和pcm文件 不包括子目录 pcm文件按默认录音配置(16位单声道)处理
+     *
+     * @param directory 录音目录
+     * @return 每个文件的修复结果
+     */
+    public static List<Result> scan(File directory) {
+        return scan(directory, new IdealRecorder.RecordConfig());
+    }
+
+    /**
+     * 修复目录中所有的wav和pcm文件 不包括子目录
+     *
+     * @param directory 录音目录
+     * @param pcmConfig pcm文件的录音配置 用于确定每个采样的字节数
+     * @return 每个文件的修复结果
+     */
+    public static List<Result> scan(File directory, IdealRecorder.RecordConfig pcmConfig) {
+        List<Result> results = new ArrayList<>();
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName().toLowerCase();
+                return file.isFile() && (name.endsWith(".wav") || name.endsWith(".pcm"));
+            }
+        });
+        if (files == null) {
+            return results;
+        }
+        Arrays.sort(files);
+        int pcmBlockAlign = pcmConfig.getChannelCount() * pcmConfig.getBitsPerSample() / 8;
+        int repaired = 0;
+        for (File file : files) {
+            Result result = file.getName().toLowerCase().endsWith(".wav") ? repairWav(file) : repairPcm(file, pcmBlockAlign);
+            if (result.getStatus() == STATUS_REPAIRED) {
+                repaired++;
+            }
+            results.add(result);
+        }
+        Log.d(TAG, "scanned " + files.length + " files in " + directory + ", repaired " + repaired);
+        return results;
+    }
+
+    /**
+     * 修复单个pcm文件 截掉末尾不完整的采样
+     *
+     * @param blockAlign 每个采样的字节数(所有声道)
+     */
+    public static Result repairPcm(File file, int blockAlign) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            long length = raf.length();
+            blockAlign = Math.max(1, blockAlign);
+            long aligned = length - length % blockAlign;
+            String message = "truncated partial sample";
+            if (hasExtentMarker(raf, 0, length)) {
+                aligned = trimPreallocated(raf, 0, 0, length, blockAlign);
+                message = "removed preallocated extent";
+            }
+            if (aligned == length) {
+                return new Result(file, STATUS_OK, length, length, "ok");
+            }
+            raf.setLength(aligned);
+            return new Result(file, STATUS_REPAIRED, length, aligned, message);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Result(file, STATUS_FAILED, -1, -1, e.toString());
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 修复单个wav文件 根据实际长度重写文件头中的长度 预留了ds64块的文件超过4GB时转换为RF64格式
+     */
+    public static Result repairWav(File file) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            long fileLength = raf.length();
+            WavChunks chunks = WavChunks.parse(raf.getChannel());
+            if (chunks == null) {
+                return new Result(file, STATUS_FAILED, -1, -1, "not a wav file");
+            }
+            int blockAlign = chunks.blockAlign;
+            long dataOffset = chunks.dataOffset;
+            long declared = chunks.declaredDataLength;
+            long actual = Math.max(0, fileLength - dataOffset);
+            long dataEnd = dataOffset + declared + (declared & 1);
+            if (declared > 0 && isChunkAt(raf, dataEnd, fileLength)) {
+                // data块之后还有其它块 说明文件是完整的
+                return new Result(file, STATUS_OK, declared, declared, "ok");
+            }
+            if (declared == actual && chunks.riffSize == fileLength - 8) {
+                return new Result(file, STATUS_OK, declared, declared, "ok");
+            }
+            long dataLength = actual - actual % blockAlign;
+            if (declared < dataLength && hasExtentMarker(raf, dataOffset, fileLength)) {
+                dataLength = trimPreallocated(raf, dataOffset, declared, fileLength, blockAlign);
+            }
+            boolean rf64 = chunks.ds64Position >= 0 && dataOffset + dataLength - 8 > PcmToWavUtil.MAX_RIFF_SIZE;
+            if (!rf64) {
+                // 没有预留ds64块时超出4GB的部分无法记录在32位的长度中
+                long maxDataLength = PcmToWavUtil.MAX_RIFF_SIZE + 8 - dataOffset;
+                maxDataLength -= maxDataLength % blockAlign;
+                dataLength = Math.min(dataLength, maxDataLength);
+            }
+            raf.setLength(dataOffset + dataLength);
+            ByteBuffer field = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            long riffSize = dataOffset + dataLength - 8;
+            long sampleCount = dataLength / blockAlign * chunks.samplesPerBlock;
+            if (rf64) {
+                raf.seek(0);
+                raf.write(new byte[]{'R', 'F', '6', '4'});
+                raf.seek(chunks.ds64Position - 8);
+                raf.write(new byte[]{'d', 's', '6', '4'});
+                writeLong(raf, field, chunks.ds64Position, riffSize);
+                writeLong(raf, field, chunks.ds64Position + 8, dataLength);
+                writeLong(raf, field, chunks.ds64Position + 16, sampleCount);
+            } else if (chunks.rf64) {
+                raf.seek(0);
+                raf.write(new byte[]{'R', 'I', 'F', 'F'});
+                raf.seek(chunks.ds64Position - 8);
+                raf.write(new byte[]{'J', 'U', 'N', 'K'});
+            }
+            writeInt(raf, field, 4, rf64 ? PcmToWavUtil.MAX_RIFF_SIZE : riffSize);
+            writeInt(raf, field, chunks.dataSizePosition, rf64 ? PcmToWavUtil.MAX_RIFF_SIZE : dataLength);
+            if (chunks.factPosition >= 0) {
+                writeInt(raf, field, chunks.factPosition, rf64 ? PcmToWavUtil.MAX_RIFF_SIZE : sampleCount);
+            }
+            Log.d(TAG, "repaired " + file + " data length " + declared + " -> " + dataLength + (rf64 ? " (RF64)" : ""));
+            return new Result(file, STATUS_REPAIRED, declared, dataLength, rf64 ? "rewrote header as RF64" : "rewrote header");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Result(file, STATUS_FAILED, -1, -1, e.toString());
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 指定位置是否为一个完整的块 块标识为可打印字符且块的长度不超出文件
+     */
+    private static boolean isChunkAt(RandomAccessFile raf, long position, long fileLength) throws IOException {
+        if (position + 8 > fileLength) {
+            return false;
+        }
+        byte[] chunk = new byte[8];
+        raf.seek(position);
+        raf.readFully(chunk);
+        for (int i = 0; i < 4; i++) {
+            if (chunk[i] < 0x20 || chunk[i] > 0x7E) {
+                return false;
+            }
+        }
+        long size = ByteBuffer.wrap(chunk, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+        return position + 8 + size <= fileLength;
+    }
+
+    /**
+     * 文件是否以 {@link MappedAudioWriter#EXTENT_MARKER} 结尾 即内存映射写入时异常退出
+     *
+     * @param dataOffset 数据的起始位置 标记只会出现在数据部分
+     */
+    private static boolean hasExtentMarker(RandomAccessFile raf, long dataOffset, long fileLength) throws IOException {
+        byte[] marker = MappedAudioWriter.EXTENT_MARKER;
+        if (fileLength - dataOffset < marker.length) {
+            return false;
+        }
+        byte[] tail = new byte[marker.length];
+        raf.seek(fileLength - marker.length);
+        raf.readFully(tail);
+        return Arrays.equals(marker, tail);
+    }
+
+    /**
+     * 计算去掉预分配区段后的数据长度 即标记之前最后一个不为0的字节所在的采样为止 不少于文件头中记录的长度
+     *
+     * @param declared 文件头中记录的数据长度
+     * @return 数据长度 按采样对齐 不包括文件头
+     */
+    private static long trimPreallocated(RandomAccessFile raf, long dataOffset, long declared, long fileLength,
+                                         int blockAlign) throws IOException {
+        long end = fileLength - MappedAudioWriter.EXTENT_MARKER.length;
+        long lastNonZero = findLastNonZero(raf, dataOffset + declared, end);
+        long used = lastNonZero < 0 ? declared : lastNonZero + 1 - dataOffset;
+        used = (used + blockAlign - 1) / blockAlign * blockAlign;
+        long available = end - dataOffset;
+        return Math.min(available - available % blockAlign, Math.max(declared - declared % blockAlign, used));
+    }
+
+    /**
+     * 从后向前查找最后一个不为0的字节
+     *
+     * @return 位置 [start, end) 中全为0时返回-1
+     */
+    private static long findLastNonZero(RandomAccessFile raf, long start, long end) throws IOException {
+        byte[] block = new byte[SCAN_BLOCK_SIZE];
+        long blockEnd = end;
+        while (blockEnd > start) {
+            int length = (int) Math.min(block.length, blockEnd - start);
+            long blockStart = blockEnd - length;
+            raf.seek(blockStart);
+            raf.readFully(block, 0, length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (block[i] != 0) {
+                    return blockStart + i;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return -1;
+    }
+
+    private static void writeInt(RandomAccessFile raf, ByteBuffer field, long position, long value) throws IOException {
+        field.putInt(0, (int) value);
+        raf.seek(position);
+        raf.write(field.array(), 0, 4);
+    }
+
+    private static void writeLong(RandomAccessFile raf, ByteBuffer field, long position, long value) throws IOException {
+        field.putLong(0, value);
+        raf.seek(position);
+        raf.write(field.array(), 0, 8);
+    }
+
+    private static void closeQuietly(RandomAccessFile raf) {
+        if (raf == null) {
+            return;
+        }
+        try {
+            raf.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
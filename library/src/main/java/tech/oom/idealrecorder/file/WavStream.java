@@ -0,0 +1,436 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+/**
+ * wav文件的流式视图 依次读出文件头和pcm数据，不把两者拼接到新的数组中
+ * <p>
+ * pcm数据可以是数组、数组的列表(例如 {@link tech.oom.idealrecorder.sink.MemoryAudioSink} 按块保存的录音)或者pcm文件，
+ * 除了文件头之外不额外占用内存；上传时可以直接作为 {@link InputStream} 或 {@link ReadableByteChannel} 使用，
+ * {@link #writeTo(WritableByteChannel)} 对文件数据使用 {@link FileChannel#transferTo} 在内核中复制。
+ * <p>
+ * 数组作为视图使用 读取期间不能修改；不是线程安全的
+ */
+public class WavStream extends InputStream implements ReadableByteChannel {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Segment[] segments;
+    private final byte[] single = new byte[1];
+    private final int headerLength;
+    private final long length;
+    private long position;
+    private long mark;
+    private int index;
+    private long segmentStart;
+    private boolean closed;
+
+    private WavStream(byte[] header, Segment[] data) {
+        segments = new Segment[data.length + 1];
+        segments[0] = new ArraySegment(header, 0, header.length);
+        System.arraycopy(data, 0, segments, 1, data.length);
+        long length = 0;
+        for (Segment segment : segments) {
+            length += segment.length;
+        }
+        this.headerLength = header.length;
+        this.length = length;
+    }
+
+    /**
+     * 数组中的pcm数据
+     *
+     * @param config 录音配置 决定文件头中的格式
+     */
+    public static WavStream of(IdealRecorder.RecordConfig config, byte[] pcm) {
+        return of(config, pcm, 0, pcm.length);
+    }
+
+    /**
+     * 数组中的一段pcm数据
+     *
+     * @param config 录音配置 决定文件头中的格式
+     */
+    public static WavStream of(IdealRecorder.RecordConfig config, byte[] pcm, int offset, int length) {
+        return new WavStream(header(config, length), new Segment[]{new ArraySegment(pcm, offset, length)});
+    }
+
+    /**
+     * 按顺序保存在多个数组中的pcm数据
+     *
+     * @param config     录音配置 决定文件头中的格式
+     * @param chunks     数组 除最后用到的数组外每个数组都全部使用
+     * @param dataLength pcm数据的总长度 不超过所有数组长度之和
+     */
+    public static WavStream of(IdealRecorder.RecordConfig config, List<byte[]> chunks, long dataLength) {
+        Segment[] data = new Segment[chunks.size()];
+        int count = 0;
+        long remaining = dataLength;
+        for (byte[] chunk : chunks) {
+            if (remaining <= 0) {
+                break;
+            }
+            int n = (int) Math.min(chunk.length, remaining);
+            data[count++] = new ArraySegment(chunk, 0, n);
+            remaining -= n;
+        }
+        if (remaining > 0) {
+            throw new IllegalArgumentException("data length " + dataLength + " exceeds chunks by " + remaining);
+        }
+        Segment[] used = new Segment[count];
+        System.arraycopy(data, 0, used, 0, count);
+        return new WavStream(header(config, dataLength), used);
+    }
+
+    /**
+     * pcm文件 末尾不完整的采样不会读出 关闭流时关闭文件
+     *
+     * @param config 录音配置 决定文件头中的格式
+     * @throws IOException 文件无法打开
+     */
+    public static WavStream of(IdealRecorder.RecordConfig config, File pcm) throws IOException {
+        FileChannel channel = new FileInputStream(pcm).getChannel();
+        try {
+            int blockAlign = config.getChannelCount() * config.getBitsPerSample() / 8;
+            long size = channel.size();
+            long dataLength = size - size % blockAlign;
+            return new WavStream(header(config, dataLength), new Segment[]{new FileSegment(channel, dataLength)});
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static byte[] header(IdealRecorder.RecordConfig config, long dataLength) {
+        boolean reserveDs64 = dataLength + PcmToWavUtil.getWaveFileHeaderSize(PcmToWavUtil.WAVE_FORMAT_PCM) - 8
+                > PcmToWavUtil.MAX_RIFF_SIZE;
+        return PcmToWavUtil.getWaveFileHeader(config, dataLength, reserveDs64);
+    }
+
+    /**
+     * wav文件的总长度 包括文件头 可以作为上传时的Content-Length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * 文件头的长度
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * pcm数据的长度
+     */
+    public long getDataLength() {
+        return length - headerLength;
+    }
+
+    /**
+     * 当前读取的位置
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == 1 ? single[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (!seekSegment()) {
+            return -1;
+        }
+        Segment segment = segments[index];
+        int n = (int) Math.min(len, segmentStart + segment.length - position);
+        segment.read(position - segmentStart, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (!seekSegment()) {
+            return -1;
+        }
+        Segment segment = segments[index];
+        int n = segment.read(position - segmentStart, dst, segmentStart + segment.length - position);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        mark = position;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        ensureOpen();
+        position = mark;
+    }
+
+    /**
+     * 从当前位置写出剩余的全部数据 文件数据在内核中复制
+     *
+     * @param target 阻塞模式的通道 例如文件或者阻塞的socket
+     * @return 写出的字节数
+     */
+    public long writeTo(WritableByteChannel target) throws IOException {
+        ensureOpen();
+        long start = position;
+        while (seekSegment()) {
+            Segment segment = segments[index];
+            position += segment.writeTo(position - segmentStart, segmentStart + segment.length - position, target);
+        }
+        return position - start;
+    }
+
+    /**
+     * 从当前位置写出剩余的全部数据 数组数据直接写出 不经过中间缓冲区
+     *
+     * @return 写出的字节数
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        ensureOpen();
+        long start = position;
+        byte[] buffer = null;
+        while (seekSegment()) {
+            Segment segment = segments[index];
+            long offset = position - segmentStart;
+            int remaining = (int) Math.min(Integer.MAX_VALUE, segment.length - offset);
+            if (segment instanceof ArraySegment) {
+                ArraySegment array = (ArraySegment) segment;
+                out.write(array.data, array.offset + (int) offset, remaining);
+                position += remaining;
+            } else {
+                if (buffer == null) {
+                    buffer = new byte[COPY_BUFFER_SIZE];
+                }
+                int n = Math.min(buffer.length, remaining);
+                segment.read(offset, buffer, 0, n);
+                out.write(buffer, 0, n);
+                position += n;
+            }
+        }
+        return position - start;
+    }
+
+    /**
+     * 拷贝全部pcm数据到新的数组 不包括文件头 不改变读取的位置
+     *
+     * @throws IOException 读取文件失败
+     */
+    public byte[] toPcmByteArray() throws IOException {
+        long dataLength = getDataLength();
+        if (dataLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("pcm data too large for an array: " + dataLength);
+        }
+        byte[] pcm = new byte[(int) dataLength];
+        int offset = 0;
+        for (int i = 1; i < segments.length; i++) {
+            int n = (int) segments[i].length;
+            segments[i].read(0, pcm, offset, n);
+            offset += n;
+        }
+        return pcm;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    /**
+     * 找到当前位置所在的段 跳过长度为0的段
+     *
+     * @return 已经读完时返回false
+     */
+    private boolean seekSegment() {
+        if (position >= length) {
+            return false;
+        }
+        if (position < segmentStart) {
+            index = 0;
+            segmentStart = 0;
+        }
+        while (position >= segmentStart + segments[index].length) {
+            segmentStart += segments[index].length;
+            index++;
+        }
+        return true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private abstract static class Segment {
+        final long length;
+
+        Segment(long length) {
+            this.length = length;
+        }
+
+        /**
+         * 读取段内从offset开始的len个字节 调用方保证不超出段的长度
+         */
+        abstract void read(long offset, byte[] b, int off, int len) throws IOException;
+
+        /**
+         * @param max 段内剩余的字节数
+         * @return 读取的字节数
+         */
+        abstract int read(long offset, ByteBuffer dst, long max) throws IOException;
+
+        /**
+         * @param max 段内剩余的字节数
+         * @return 写出的字节数 至少为1
+         */
+        abstract long writeTo(long offset, long max, WritableByteChannel target) throws IOException;
+
+        void close() throws IOException {
+        }
+    }
+
+    private static final class ArraySegment extends Segment {
+        final byte[] data;
+        final int offset;
+
+        ArraySegment(byte[] data, int offset, int length) {
+            super(length);
+            if (offset < 0 || length < 0 || offset + length > data.length) {
+                throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array " + data.length);
+            }
+            this.data = data;
+            this.offset = offset;
+        }
+
+        @Override
+        void read(long offset, byte[] b, int off, int len) {
+            System.arraycopy(data, this.offset + (int) offset, b, off, len);
+        }
+
+        @Override
+        int read(long offset, ByteBuffer dst, long max) {
+            int n = (int) Math.min(dst.remaining(), max);
+            dst.put(data, this.offset + (int) offset, n);
+            return n;
+        }
+
+        @Override
+        long writeTo(long offset, long max, WritableByteChannel target) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data, this.offset + (int) offset, (int) max);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            return max;
+        }
+    }
+
+    private static final class FileSegment extends Segment {
+        private final FileChannel channel;
+
+        FileSegment(FileChannel channel, long length) {
+            super(length);
+            this.channel = channel;
+        }
+
+        @Override
+        void read(long offset, byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position() - off) < 0) {
+                    throw new IOException("pcm file truncated while reading");
+                }
+            }
+        }
+
+        @Override
+        int read(long offset, ByteBuffer dst, long max) throws IOException {
+            int limit = dst.limit();
+            if (dst.remaining() > max) {
+                dst.limit(dst.position() + (int) max);
+            }
+            try {
+                int n = channel.read(dst, offset);
+                if (n < 0) {
+                    throw new IOException("pcm file truncated while reading");
+                }
+                return n;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        long writeTo(long offset, long max, WritableByteChannel target) throws IOException {
+            long n = channel.transferTo(offset, max, target);
+            if (n <= 0) {
+                throw new IOException("pcm file truncated while transferring");
+            }
+            return n;
+        }
+
+        @Override
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package tech.oom.idealrecorder.file;
+
+/**
+ * 异步写入队列的统计 用于判断存储设备是否跟得上录音
+ */
+public class WriteQueueStats {
+    int capacity;
+    int depth;
+    int highWaterMark;
+    long queuedFrames;
+    long droppedFrames;
+    long droppedBytes;
+    long spilledFrames;
+    long blockedNanos;
+
+    /**
+     * 队列中预分配的帧数
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 当前等待写入的帧数
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * 本次录音中等待写入的最大帧数
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * 进入队列的帧数
+     */
+    public long getQueuedFrames() {
+        return queuedFrames;
+    }
+
+    /**
+     * 队列已满时丢弃的帧数 只在 {@link AsyncAudioWriter#POLICY_DROP_OLDEST} 下出现
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * 队列已满时丢弃的字节数 这部分数据不会写入文件
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * 队列已满时额外分配内存保存的帧数 只在 {@link AsyncAudioWriter#POLICY_SPILL} 下出现
+     */
+    public long getSpilledFrames() {
+        return spilledFrames;
+    }
+
+    /**
+     * 队列已满时写入线程等待的总时长 单位纳秒 只在 {@link AsyncAudioWriter#POLICY_BLOCK} 下出现
+     */
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    public void copyFrom(WriteQueueStats other) {
+        this.capacity = other.capacity;
+        this.depth = other.depth;
+        this.highWaterMark = other.highWaterMark;
+        this.queuedFrames = other.queuedFrames;
+        this.droppedFrames = other.droppedFrames;
+        this.droppedBytes = other.droppedBytes;
+        this.spilledFrames = other.spilledFrames;
+        this.blockedNanos = other.blockedNanos;
+    }
+
+    void reset(int capacity) {
+        this.capacity = capacity;
+        depth = 0;
+        highWaterMark = 0;
+        queuedFrames = 0;
+        droppedFrames = 0;
+        droppedBytes = 0;
+        spilledFrames = 0;
+        blockedNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteQueueStats{capacity=" + capacity + ", depth=" + depth + ", highWaterMark=" + highWaterMark
+                + ", queuedFrames=" + queuedFrames + ", droppedFrames=" + droppedFrames + ", droppedBytes=" + droppedBytes
+                + ", spilledFrames=" + spilledFrames + ", blockedNanos=" + blockedNanos + '}';
+    }
+}
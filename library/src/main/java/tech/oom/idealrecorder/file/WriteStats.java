@@ -0,0 +1,156 @@
+package tech.oom.idealrecorder.file;
+
+/**
+ * 录音文件的写入统计 用于观察存储设备的写入延迟和写放大
+ * <p>
+ * 写入次数和延迟按实际的系统调用统计(包括文件头)；
+ * 写放大为写入文件的字节数与录音数据字节数之比 文件头和关闭时重写的文件头使其略大于1
+ */
+public class WriteStats {
+    /**
+     * 超过该时长的写入视为存储卡顿 单位纳秒
+     */
+    public static final long SLOW_WRITE_NANOS = 20000000L;
+
+    long submittedBytes;
+    long writtenBytes;
+    long writeCount;
+    long flushCount;
+    long forceCount;
+    long checkpointCount;
+    long slowWriteCount;
+    long totalWriteNanos;
+    long maxWriteNanos;
+
+    /**
+     * 录音数据的字节数
+     */
+    public long getSubmittedBytes() {
+        return submittedBytes;
+    }
+
+    /**
+     * 实际写入文件的字节数 包括文件头
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * 写入文件的系统调用次数
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * 缓冲区写入文件的次数
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * 同步到存储设备的次数
+     */
+    public long getForceCount() {
+        return forceCount;
+    }
+
+    /**
+     * 录音过程中重写文件头的次数
+     */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * 耗时超过 {@link #SLOW_WRITE_NANOS} 的写入次数
+     */
+    public long getSlowWriteCount() {
+        return slowWriteCount;
+    }
+
+    /**
+     * 写入和同步的总耗时 单位纳秒
+     */
+    public long getTotalWriteNanos() {
+        return totalWriteNanos;
+    }
+
+    /**
+     * 单次写入或同步的最大耗时 单位纳秒
+     */
+    public long getMaxWriteNanos() {
+        return maxWriteNanos;
+    }
+
+    /**
+     * 单次写入的平均耗时 单位纳秒
+     */
+    public long getAverageWriteNanos() {
+        return writeCount == 0 ? 0 : totalWriteNanos / writeCount;
+    }
+
+    /**
+     * 每次写入的平均字节数
+     */
+    public long getAverageWriteBytes() {
+        return writeCount == 0 ? 0 : writtenBytes / writeCount;
+    }
+
+    /**
+     * 写放大 写入文件的字节数与录音数据字节数之比
+     */
+    public double getWriteAmplification() {
+        return submittedBytes == 0 ? 0 : (double) writtenBytes / submittedBytes;
+    }
+
+    public void copyFrom(WriteStats other) {
+        this.submittedBytes = other.submittedBytes;
+        this.writtenBytes = other.writtenBytes;
+        this.writeCount = other.writeCount;
+        this.flushCount = other.flushCount;
+        this.forceCount = other.forceCount;
+        this.checkpointCount = other.checkpointCount;
+        this.slowWriteCount = other.slowWriteCount;
+        this.totalWriteNanos = other.totalWriteNanos;
+        this.maxWriteNanos = other.maxWriteNanos;
+    }
+
+    /**
+     * 累加另一个统计 用于合并多个文件的统计
+     */
+    void add(WriteStats other) {
+        this.submittedBytes += other.submittedBytes;
+        this.writtenBytes += other.writtenBytes;
+        this.writeCount += other.writeCount;
+        this.flushCount += other.flushCount;
+        this.forceCount += other.forceCount;
+        this.checkpointCount += other.checkpointCount;
+        this.slowWriteCount += other.slowWriteCount;
+        this.totalWriteNanos += other.totalWriteNanos;
+        this.maxWriteNanos = Math.max(this.maxWriteNanos, other.maxWriteNanos);
+    }
+
+    void reset() {
+        submittedBytes = 0;
+        writtenBytes = 0;
+        writeCount = 0;
+        flushCount = 0;
+        forceCount = 0;
+        checkpointCount = 0;
+        slowWriteCount = 0;
+        totalWriteNanos = 0;
+        maxWriteNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "WriteStats{submittedBytes=" + submittedBytes + ", writtenBytes=" + writtenBytes
+                + ", writeCount=" + writeCount + ", flushCount=" + flushCount + ", forceCount=" + forceCount
+                + ", checkpointCount=" + checkpointCount + ", slowWriteCount=" + slowWriteCount
+                + ", averageWriteNanos=" + getAverageWriteNanos() + ", maxWriteNanos=" + maxWriteNanos
+                + ", writeAmplification=" + getWriteAmplification() + '}';
+    }
+}
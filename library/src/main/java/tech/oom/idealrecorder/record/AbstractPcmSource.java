@@ -0,0 +1,181 @@
+package tech.oom.idealrecorder.record;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmCodec;
+import tech.oom.idealrecorder.utils.PcmConverter;
+
+/**
+ * 非实时采集数据源的基类
+ * <p>
+ * 子类只需要通过 {@link #fill(short[], int, int)} 产生16位数据，8位和浮点格式默认由16位数据转换得到；
+ * 默认以最快速度产生数据，调用 {@link #setRealtime(boolean)} 后按照采样率限速，模拟真实录音的节奏
+ */
+public abstract class AbstractPcmSource implements PcmSource {
+    protected int sampleRate;
+    protected int channels;
+    protected int bitsPerSample;
+    private boolean realtime;
+    private long startNanos;
+    private long deliveredSamples;
+    private short[] scratch = new short[0];
+
+    /**
+     * 设置是否按照实时速度产生数据
+     *
+     * @param realtime true 按采样率限速 false 以最快速度产生数据
+     * @return 当前数据源
+     */
+    public AbstractPcmSource setRealtime(boolean realtime) {
+        this.realtime = realtime;
+        return this;
+    }
+
+    @Override
+    public boolean open(IdealRecorder.RecordConfig config, int bufferSizeInBytes) {
+        sampleRate = config.getSampleRate();
+        channels = config.getChannelCount();
+        bitsPerSample = config.getBitsPerSample();
+        return onOpen();
+    }
+
+    @Override
+    public boolean start() {
+        startNanos = System.nanoTime();
+        deliveredSamples = 0;
+        return true;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        return delivered(fill(buffer, offset, length));
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        return delivered(fill(buffer, offset, length));
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int length) {
+        return delivered(fill(buffer, offset, length));
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int sizeInBytes) {
+        int len = fill(buffer, sizeInBytes);
+        delivered(len < 0 ? len : len / 2);
+        return len;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public boolean isLiveCapture() {
+        return false;
+    }
+
+    /**
+     * 数据源打开时回调 用于初始化相关资源
+     *
+     * @return 是否打开成功
+     */
+    protected boolean onOpen() {
+        return true;
+    }
+
+    /**
+     * 填充16位PCM数据
+     *
+     * @param buffer 目标数组
+     * @param offset 偏移
+     * @param length 需要填充的长度
+     * @return 实际填充的长度 或 {@link #END_OF_STREAM}
+     */
+    protected abstract int fill(short[] buffer, int offset, int length);
+
+    /**
+     * 填充8位PCM数据 默认通过 {@link #fill(short[], int, int)} 产生后转换
+     */
+    protected int fill(byte[] buffer, int offset, int length) {
+        short[] samples = scratch(length);
+        int len = fill(samples, 0, length);
+        if (len > 0) {
+            PcmConverter.pcm16ToPcm8(samples, 0, buffer, offset, len);
+        }
+        return len;
+    }
+
+    /**
+     * 填充浮点PCM数据 默认通过 {@link #fill(short[], int, int)} 产生后转换
+     */
+    protected int fill(float[] buffer, int offset, int length) {
+        short[] samples = scratch(length);
+        int len = fill(samples, 0, length);
+        if (len > 0) {
+            PcmConverter.pcm16ToFloat(samples, 0, buffer, offset, len);
+        }
+        return len;
+    }
+
+    /**
+     * 填充16位PCM数据到直接内存中 数据为小端字节序 默认通过 {@link #fill(short[], int, int)} 填充后写入
+     *
+     * @param buffer      目标buffer 从position开始写入 写入后position不变
+     * @param sizeInBytes 需要填充的字节数
+     * @return 实际填充的字节数 或 {@link #END_OF_STREAM}
+     */
+    protected int fill(ByteBuffer buffer, int sizeInBytes) {
+        int length = sizeInBytes / 2;
+        short[] samples = scratch(length);
+        int len = fill(samples, 0, length);
+        if (len <= 0) {
+            return len;
+        }
+        PcmCodec.encodeShorts(samples, 0, buffer, len, ByteOrder.LITTLE_ENDIAN);
+        return len * 2;
+    }
+
+    private short[] scratch(int length) {
+        if (scratch.length < length) {
+            scratch = new short[length];
+        }
+        return scratch;
+    }
+
+    /**
+     * 记录已产生的采样数 按实时速度产生数据时休眠到对应的时间
+     */
+    private int delivered(int samples) {
+        if (samples > 0) {
+            deliveredSamples += samples;
+            if (realtime) {
+                pace();
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 已产生数据对应的时长未到时则休眠等待
+     */
+    private void pace() {
+        long due = startNanos + deliveredSamples * 1000000000L / ((long) sampleRate * channels);
+        long waitNanos = due - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
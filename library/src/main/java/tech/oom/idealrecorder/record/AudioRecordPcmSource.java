@@ -0,0 +1,116 @@
+package tech.oom.idealrecorder.record;
+
+import android.annotation.TargetApi;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.Log;
+
+/**
+ * 基于 {@link AudioRecord} 的数据源 从麦克风采集数据
+ */
+public class AudioRecordPcmSource implements PcmSource {
+    private static final String TAG = "AudioRecordPcmSource";
+    private AudioRecord mAudioRecorder;
+
+    @Override
+    public boolean open(IdealRecorder.RecordConfig config, int bufferSizeInBytes) {
+        int sampleRate = config.getSampleRate();
+        int channelConfig = config.getChannelConfig();
+        int audioFormat = config.getAudioFormat();
+        if (audioFormat == AudioFormat.ENCODING_PCM_FLOAT && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            Log.e(TAG, "float capture requires API 23, current API " + Build.VERSION.SDK_INT);
+            return false;
+        }
+        int nMinSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
+        if (bufferSizeInBytes < nMinSize) {
+            bufferSizeInBytes = nMinSize;
+            Log.d(TAG, "Increasing buffer size to " + Integer.toString(bufferSizeInBytes));
+        }
+        if (mAudioRecorder != null) {
+            release();
+        }
+        mAudioRecorder = new AudioRecord(config.getAudioSource(), sampleRate, channelConfig, audioFormat, bufferSizeInBytes);
+        if (mAudioRecorder.getState() != AudioRecord.STATE_INITIALIZED) {
+            mAudioRecorder = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean start() {
+        if (mAudioRecorder == null || mAudioRecorder.getState() != AudioRecord.STATE_INITIALIZED) {
+            return false;
+        }
+        mAudioRecorder.stop();
+        mAudioRecorder.startRecording();
+        return mAudioRecorder.getRecordingState() != AudioRecord.RECORDSTATE_STOPPED;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (mAudioRecorder == null) {
+            return AudioRecord.ERROR_INVALID_OPERATION;
+        }
+        return mAudioRecorder.read(buffer, offset, length);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (mAudioRecorder == null) {
+            return AudioRecord.ERROR_INVALID_OPERATION;
+        }
+        return mAudioRecorder.read(buffer, offset, length);
+    }
+
+    /**
+     * 读取浮点数据 {@link AudioFormat#ENCODING_PCM_FLOAT} 需要API 23及以上 低版本在 {@link #open} 时失败
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    @Override
+    public int read(float[] buffer, int offset, int length) {
+        if (mAudioRecorder == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return AudioRecord.ERROR_INVALID_OPERATION;
+        }
+        return mAudioRecorder.read(buffer, offset, length, AudioRecord.READ_BLOCKING);
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int sizeInBytes) {
+        if (mAudioRecorder == null) {
+            return AudioRecord.ERROR_INVALID_OPERATION;
+        }
+        return mAudioRecorder.read(buffer, sizeInBytes);
+    }
+
+    @Override
+    public void stop() {
+        if (mAudioRecorder != null) {
+            mAudioRecorder.stop();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mAudioRecorder != null) {
+            try {
+                mAudioRecorder.stop();
+                mAudioRecorder.release();
+            } catch (Exception e) {
+                e.printStackTrace();
+                Log.e(TAG, "mAudioRecorder release error!");
+            }
+            mAudioRecorder = null;
+        }
+    }
+
+    @Override
+    public boolean isLiveCapture() {
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package tech.oom.idealrecorder.record;
+
+/**
+ * 录音的采样时钟 为每帧数据生成采样序号和采集时间戳，并统计采样时钟与系统时钟之间的偏差
+ * <p>
+ * 偏差 = 帧的采集时间 - (第一帧的采集时间 + 采样序号对应的时长)，
+ * 为正数表示系统时钟走得比采样时钟快(例如设备采样率偏低或有数据丢失)，为负数表示采样时钟更快(例如非实时的数据源)。
+ * 统计数据由录音线程更新，可以在任意线程读取
+ */
+public class CaptureClock {
+    private int sampleRate;
+    private volatile long nextSampleIndex;
+    private long baseTimeNanos;
+    private volatile long frameCount;
+    private volatile long driftNanos;
+    private volatile long minDriftNanos;
+    private volatile long maxDriftNanos;
+
+    /**
+     * 开始录音时重置时钟
+     *
+     * @param sampleRate 采样率
+     */
+    public void reset(int sampleRate) {
+        this.sampleRate = sampleRate;
+        nextSampleIndex = 0;
+        baseTimeNanos = 0;
+        frameCount = 0;
+        driftNanos = 0;
+        minDriftNanos = 0;
+        maxDriftNanos = 0;
+    }
+
+    /**
+     * 为刚读取完成的一帧数据生成元信息
+     *
+     * @param info          需要填充的元信息
+     * @param sampleCount   该帧的采样数(每个声道)
+     * @param readDoneNanos 读取完成时的 {@link System#nanoTime()}
+     */
+    public void stamp(FrameInfo info, int sampleCount, long readDoneNanos) {
+        long captureTime = readDoneNanos - sampleCount * 1000000000L / sampleRate;
+        if (frameCount == 0) {
+            baseTimeNanos = captureTime;
+        }
+        long drift = captureTime - baseTimeNanos - nextSampleIndex * 1000000000L / sampleRate;
+        info.set(nextSampleIndex, sampleCount, captureTime, sampleRate);
+        nextSampleIndex += sampleCount;
+        driftNanos = drift;
+        if (drift < minDriftNanos) {
+            minDriftNanos = drift;
+        }
+        if (drift > maxDriftNanos) {
+            maxDriftNanos = drift;
+        }
+        frameCount = frameCount + 1;
+    }
+
+    /**
+     * 根据采样数计算时长
+     *
+     * @param sampleCount 采样数(每个声道)
+     * @return 时长 单位纳秒
+     */
+    public long getFrameDurationNanos(int sampleCount) {
+        return sampleCount * 1000000000L / sampleRate;
+    }
+
+    /**
+     * 已录制的采样数(每个声道)
+     */
+    public long getSampleCount() {
+        return nextSampleIndex;
+    }
+
+    /**
+     * 已生成元信息的帧数
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 最近一帧采样时钟与系统时钟的偏差 单位纳秒
+     */
+    public long getDriftNanos() {
+        return driftNanos;
+    }
+
+    /**
+     * 本次录音中的最小偏差 单位纳秒
+     */
+    public long getMinDriftNanos() {
+        return minDriftNanos;
+    }
+
+    /**
+     * 本次录音中的最大偏差 单位纳秒
+     */
+    public long getMaxDriftNanos() {
+        return maxDriftNanos;
+    }
+}
@@ -0,0 +1,237 @@
+package tech.oom.idealrecorder.record;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import tech.oom.idealrecorder.utils.Log;
+import tech.oom.idealrecorder.utils.PcmCodec;
+import tech.oom.idealrecorder.utils.PcmConverter;
+
+/**
+ * 文件数据源 从PCM或WAV文件中读取数据
+ * <p>
+ * 文件的采样率、声道数、位数需要与录音配置一致；WAV文件会跳过文件头直接读取data块中的数据
+ */
+public class FilePcmSource extends AbstractPcmSource {
+    private static final String TAG = "FilePcmSource";
+    private final File file;
+    private boolean loop;
+    private FileInputStream inputStream;
+    private long dataOffset;
+    private long dataLength;
+    private long position;
+    private byte[] scratch = new byte[0];
+    private boolean ended;
+
+    public FilePcmSource(String path) {
+        this(new File(path));
+    }
+
+    public FilePcmSource(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 设置是否循环读取 循环读取时数据源不会结束 适用于长时间稳定性测试
+     */
+    public FilePcmSource setLoop(boolean loop) {
+        this.loop = loop;
+        return this;
+    }
+
+    @Override
+    protected boolean onOpen() {
+        closeQuietly();
+        try {
+            inputStream = new FileInputStream(file);
+            parseHeader();
+            inputStream.getChannel().position(dataOffset);
+            position = 0;
+            ended = false;
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "open pcm file failed " + e.getMessage());
+            closeQuietly();
+            return false;
+        }
+    }
+
+    @Override
+    protected int fill(short[] buffer, int offset, int length) {
+        int bytes = length * 2;
+        if (scratch.length < bytes) {
+            scratch = new byte[bytes];
+        }
+        int read = readBytes(scratch, 0, bytes);
+        if (read < 0) {
+            return read;
+        }
+        PcmCodec.decodeShorts(scratch, 0, buffer, offset, length, ByteOrder.LITTLE_ENDIAN);
+        return length;
+    }
+
+    @Override
+    protected int fill(byte[] buffer, int offset, int length) {
+        return readBytes(buffer, offset, length);
+    }
+
+    @Override
+    protected int fill(float[] buffer, int offset, int length) {
+        int bytes = length * 4;
+        if (scratch.length < bytes) {
+            scratch = new byte[bytes];
+        }
+        int read = readBytes(scratch, 0, bytes);
+        if (read < 0) {
+            return read;
+        }
+        PcmConverter.bytesToFloat(scratch, 0, buffer, offset, length);
+        return length;
+    }
+
+    /**
+     * 从文件中读取原始数据 文件末尾不足的部分补0
+     *
+     * @return 读取的字节数 即bytes 或 {@link #END_OF_STREAM}，-1表示读取错误
+     */
+    private int readBytes(byte[] buffer, int offset, int bytes) {
+        if (ended || inputStream == null) {
+            return END_OF_STREAM;
+        }
+        try {
+            int read = 0;
+            while (read < bytes) {
+                int len = (int) Math.min(bytes - read, dataLength - position);
+                len = len <= 0 ? -1 : inputStream.read(buffer, offset + read, len);
+                if (len < 0) {
+                    if (loop && position > 0) {
+                        inputStream.getChannel().position(dataOffset);
+                        position = 0;
+                        continue;
+                    }
+                    break;
+                }
+                read += len;
+                position += len;
+            }
+            if (read == 0) {
+                ended = true;
+                return END_OF_STREAM;
+            }
+            // 文件末尾不足一帧的部分补静音 8位无符号数据的静音为128
+            byte silence = bitsPerSample == 8 ? (byte) 128 : 0;
+            for (int i = read; i < bytes; i++) {
+                buffer[offset + i] = silence;
+            }
+            if (read < bytes) {
+                ended = true;
+            }
+            return bytes;
+        } catch (IOException e) {
+            Log.e(TAG, "read pcm file failed " + e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    protected int fill(ByteBuffer buffer, int sizeInBytes) {
+        if (ended || inputStream == null) {
+            return END_OF_STREAM;
+        }
+        FileChannel channel = inputStream.getChannel();
+        int start = buffer.position();
+        int limit = buffer.limit();
+        try {
+            int read = 0;
+            while (read < sizeInBytes) {
+                int len = (int) Math.min(sizeInBytes - read, dataLength - position);
+                if (len > 0) {
+                    buffer.limit(start + read + len);
+                    len = channel.read(buffer);
+                } else {
+                    len = -1;
+                }
+                if (len < 0) {
+                    if (loop && position > 0) {
+                        channel.position(dataOffset);
+                        position = 0;
+                        continue;
+                    }
+                    break;
+                }
+                read += len;
+                position += len;
+            }
+            if (read == 0) {
+                ended = true;
+                return END_OF_STREAM;
+            }
+            // 文件末尾不足一帧的部分补静音
+            for (int i = read; i < sizeInBytes; i++) {
+                buffer.put(start + i, (byte) 0);
+            }
+            if (read < sizeInBytes) {
+                ended = true;
+            }
+            return sizeInBytes;
+        } catch (IOException e) {
+            Log.e(TAG, "read pcm file failed " + e.getMessage());
+            return -1;
+        } finally {
+            buffer.limit(limit);
+            buffer.position(start);
+        }
+    }
+
+    @Override
+    public void release() {
+        closeQuietly();
+    }
+
+    /**
+     * 解析WAV文件头 找到data块的位置；不是WAV文件时整个文件作为PCM数据
+     */
+    private void parseHeader() throws IOException {
+        long fileLength = file.length();
+        dataOffset = 0;
+        dataLength = fileLength;
+        byte[] header = new byte[12];
+        if (inputStream.read(header) != 12 || header[0] != 'R' || header[1] != 'I'
+                || header[2] != 'F' || header[3] != 'F' || header[8] != 'W' || header[9] != 'A') {
+            return;
+        }
+        long offset = 12;
+        byte[] chunk = new byte[8];
+        while (offset + 8 <= fileLength) {
+            inputStream.getChannel().position(offset);
+            if (inputStream.read(chunk) != 8) {
+                break;
+            }
+            long size = (chunk[4] & 0xFFL) | (chunk[5] & 0xFFL) << 8 | (chunk[6] & 0xFFL) << 16 | (chunk[7] & 0xFFL) << 24;
+            if (chunk[0] == 'd' && chunk[1] == 'a' && chunk[2] == 't' && chunk[3] == 'a') {
+                dataOffset = offset + 8;
+                // 录音中断时data块大小可能没有写入 以文件实际长度为准
+                dataLength = size == 0 || dataOffset + size > fileLength ? fileLength - dataOffset : size;
+                return;
+            }
+            offset += 8 + size + (size & 1);
+        }
+        dataOffset = Math.min(44, fileLength);
+        dataLength = fileLength - dataOffset;
+    }
+
+    private void closeQuietly() {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            inputStream = null;
+        }
+    }
+}
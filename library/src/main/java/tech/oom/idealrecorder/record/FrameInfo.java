@@ -0,0 +1,81 @@
+package tech.oom.idealrecorder.record;
+
+/**
+ * 每帧录音数据的元信息 包含采样序号和采集时间戳
+ * <p>
+ * 采样序号从开始录音时的第一个采样开始计数(每个声道单独计数)，单调递增且不受帧长度或丢帧的影响；
+ * 采集时间戳基于 {@link System#nanoTime()}，为该帧第一个采样被采集的估计时间。
+ * 对象在录音过程中会被复用，需要在回调之外保存时请调用 {@link #copyFrom(FrameInfo)} 复制
+ */
+public class FrameInfo {
+    private long sampleIndex;
+    private int sampleCount;
+    private long captureTimeNanos;
+    private int sampleRate;
+
+    /**
+     * 该帧第一个采样的序号
+     */
+    public long getSampleIndex() {
+        return sampleIndex;
+    }
+
+    /**
+     * 该帧之后下一个采样的序号 即截止到该帧已录制的采样数
+     */
+    public long getEndSampleIndex() {
+        return sampleIndex + sampleCount;
+    }
+
+    /**
+     * 该帧包含的采样数(每个声道)
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 该帧第一个采样的采集时间 基于 {@link System#nanoTime()}
+     */
+    public long getCaptureTimeNanos() {
+        return captureTimeNanos;
+    }
+
+    /**
+     * 根据采样序号计算的该帧在录音中的时间位置 单位纳秒
+     */
+    public long getPresentationTimeNanos() {
+        return sampleIndex * 1000000000L / sampleRate;
+    }
+
+    /**
+     * 该帧的时长 单位纳秒
+     */
+    public long getDurationNanos() {
+        return sampleCount * 1000000000L / sampleRate;
+    }
+
+    public void copyFrom(FrameInfo other) {
+        this.sampleIndex = other.sampleIndex;
+        this.sampleCount = other.sampleCount;
+        this.captureTimeNanos = other.captureTimeNanos;
+        this.sampleRate = other.sampleRate;
+    }
+
+    void set(long sampleIndex, int sampleCount, long captureTimeNanos, int sampleRate) {
+        this.sampleIndex = sampleIndex;
+        this.sampleCount = sampleCount;
+        this.captureTimeNanos = captureTimeNanos;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameInfo{sampleIndex=" + sampleIndex + ", sampleCount=" + sampleCount
+                + ", captureTimeNanos=" + captureTimeNanos + ", sampleRate=" + sampleRate + '}';
+    }
+}
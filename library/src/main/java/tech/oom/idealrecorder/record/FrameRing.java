@@ -0,0 +1,297 @@
+package tech.oom.idealrecorder.record;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者单消费者的无锁帧环形缓冲区
+ * <p>
+ * 所有帧在创建时预先分配，生产者(录音线程)通过 {@link #claim()} 获取下一个可写的帧，写满后调用 {@link #publish()} 发布；
+ * 处理者(处理线程)通过 {@link #peekUnprocessed()} 依次处理已发布的帧，处理完后调用 {@link #markProcessed()}；
+ * 消费者(UI线程)通过 {@link #peek()} 获取最早处理完成的帧，使用完后调用 {@link #release()} 归还。
+ * 每个序号只由一个线程修改，帧在归还之前不会被生产者覆盖，处理者和消费者看到的数据是稳定的。
+ * 缓冲区已满时生产者不会阻塞，{@link #claim()} 返回-1并记录溢出次数
+ * <p>
+ * 上述方法返回的是帧在缓冲区中的位置，通过 {@link #shortsAt(int)}、{@link #bufferAt(int)} 等方法获取对应类型的数据；
+ * 另外还有一个不参与循环的备用帧 {@link #spare()}，供生产者在缓冲区已满时读取需要丢弃的数据
+ */
+public class FrameRing {
+    /**
+     * 帧数据为short数组 16位PCM
+     */
+    public static final int TYPE_SHORT = 0;
+    /**
+     * 帧数据为小端字节序的直接内存 {@link ByteBuffer} 16位PCM
+     */
+    public static final int TYPE_DIRECT_BUFFER = 1;
+    /**
+     * 帧数据为byte数组 8位PCM
+     */
+    public static final int TYPE_BYTE = 2;
+    /**
+     * 帧数据为float数组 32位浮点PCM
+     */
+    public static final int TYPE_FLOAT = 3;
+
+    private final int type;
+    private final int capacity;
+    private final short[][] frames;
+    private final byte[][] byteFrames;
+    private final float[][] floatFrames;
+    private final ByteBuffer[] buffers;
+    private final ShortBuffer[] workerViews;
+    private final ShortBuffer[] uiViews;
+    private final FrameInfo[] infos;
+    private final int mask;
+    private final int frameSize;
+    /**
+     * 下一个写入的序号 只由生产者修改
+     */
+    private final AtomicLong writeSequence = new AtomicLong();
+    /**
+     * 下一个处理的序号 只由处理者修改
+     */
+    private final AtomicLong processSequence = new AtomicLong();
+    /**
+     * 下一个读取的序号 只由消费者修改
+     */
+    private final AtomicLong readSequence = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    /**
+     * @param capacity  帧的数量 会向上取整为2的幂
+     * @param frameSize 每帧的采样数(所有声道)
+     */
+    public FrameRing(int capacity, int frameSize) {
+        this(capacity, frameSize, TYPE_SHORT);
+    }
+
+    /**
+     * @param capacity  帧的数量 会向上取整为2的幂
+     * @param frameSize 每帧的采样数(所有声道)
+     * @param type      帧数据的类型 {@link #TYPE_SHORT},{@link #TYPE_DIRECT_BUFFER},{@link #TYPE_BYTE},{@link #TYPE_FLOAT}
+     */
+    public FrameRing(int capacity, int frameSize, int type) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        // 多分配一个备用帧 位于最后
+        int slots = size + 1;
+        this.type = type;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.frameSize = frameSize;
+        this.infos = new FrameInfo[slots];
+        for (int i = 0; i < slots; i++) {
+            infos[i] = new FrameInfo();
+        }
+        frames = type == TYPE_SHORT ? new short[slots][frameSize] : null;
+        byteFrames = type == TYPE_BYTE ? new byte[slots][frameSize] : null;
+        floatFrames = type == TYPE_FLOAT ? new float[slots][frameSize] : null;
+        if (type == TYPE_DIRECT_BUFFER) {
+            buffers = new ByteBuffer[slots];
+            workerViews = new ShortBuffer[slots];
+            uiViews = new ShortBuffer[slots];
+            for (int i = 0; i < slots; i++) {
+                buffers[i] = ByteBuffer.allocateDirect(frameSize * 2).order(ByteOrder.LITTLE_ENDIAN);
+                // 处理线程和UI线程各自使用独立的只读视图 互不影响position
+                workerViews[i] = buffers[i].asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+                uiViews[i] = buffers[i].asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            }
+        } else {
+            buffers = null;
+            workerViews = null;
+            uiViews = null;
+        }
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * 生产者获取下一个可写的帧
+     *
+     * @return 可写的帧的位置 缓冲区已满时返回-1
+     */
+    public int claim() {
+        long write = writeSequence.get();
+        if (write - readSequence.get() >= capacity) {
+            overflowCount.incrementAndGet();
+            return -1;
+        }
+        return (int) write & mask;
+    }
+
+    /**
+     * 缓冲区是否已满 已满时 {@link #claim()} 会失败
+     */
+    public boolean isFull() {
+        return writeSequence.get() - readSequence.get() >= capacity;
+    }
+
+    /**
+     * 备用帧的位置 备用帧不会被发布 只用于读取需要丢弃的数据
+     */
+    public int spare() {
+        return capacity;
+    }
+
+    /**
+     * 拷贝帧数据 不拷贝元信息 例如将读取到备用帧中的数据移到获取的帧中发布
+     *
+     * @param from 源帧的位置
+     * @param to   目标帧的位置
+     */
+    public void copy(int from, int to) {
+        switch (type) {
+            case TYPE_BYTE:
+                System.arraycopy(byteFrames[from], 0, byteFrames[to], 0, frameSize);
+                break;
+            case TYPE_FLOAT:
+                System.arraycopy(floatFrames[from], 0, floatFrames[to], 0, frameSize);
+                break;
+            case TYPE_DIRECT_BUFFER:
+                ByteBuffer source = buffers[from];
+                ByteBuffer target = buffers[to];
+                source.clear();
+                target.clear();
+                target.put(source);
+                source.clear();
+                target.clear();
+                break;
+            default:
+                System.arraycopy(frames[from], 0, frames[to], 0, frameSize);
+                break;
+        }
+    }
+
+    /**
+     * 生产者发布通过 {@link #claim()} 获取并写满的帧
+     */
+    public void publish() {
+        writeSequence.lazySet(writeSequence.get() + 1);
+    }
+
+    /**
+     * 处理者获取最早发布且未处理的帧
+     *
+     * @return 帧的位置 没有需要处理的帧时返回-1
+     */
+    public int peekUnprocessed() {
+        long process = processSequence.get();
+        if (process >= writeSequence.get()) {
+            return -1;
+        }
+        return (int) process & mask;
+    }
+
+    /**
+     * 处理者标记通过 {@link #peekUnprocessed()} 获取的帧已处理完成
+     */
+    public void markProcessed() {
+        processSequence.lazySet(processSequence.get() + 1);
+    }
+
+    /**
+     * 消费者获取最早处理完成且未归还的帧
+     *
+     * @return 帧的位置 没有可读的帧时返回-1
+     */
+    public int peek() {
+        long read = readSequence.get();
+        if (read >= processSequence.get()) {
+            return -1;
+        }
+        return (int) read & mask;
+    }
+
+    /**
+     * 消费者归还通过 {@link #peek()} 获取的帧
+     */
+    public void release() {
+        readSequence.lazySet(readSequence.get() + 1);
+    }
+
+    /**
+     * 获取帧数据 仅 {@link #TYPE_SHORT} 类型可用
+     */
+    public short[] shortsAt(int slot) {
+        return frames[slot];
+    }
+
+    /**
+     * 获取帧数据 仅 {@link #TYPE_BYTE} 类型可用
+     */
+    public byte[] bytesAt(int slot) {
+        return byteFrames[slot];
+    }
+
+    /**
+     * 获取帧数据 仅 {@link #TYPE_FLOAT} 类型可用
+     */
+    public float[] floatsAt(int slot) {
+        return floatFrames[slot];
+    }
+
+    /**
+     * 获取帧数据 仅 {@link #TYPE_DIRECT_BUFFER} 类型可用 position和limit由调用者自行设置
+     */
+    public ByteBuffer bufferAt(int slot) {
+        return buffers[slot];
+    }
+
+    /**
+     * 获取处理线程使用的只读视图 仅 {@link #TYPE_DIRECT_BUFFER} 类型可用
+     */
+    public ShortBuffer workerViewAt(int slot) {
+        ShortBuffer view = workerViews[slot];
+        view.clear();
+        return view;
+    }
+
+    /**
+     * 获取UI线程使用的只读视图 仅 {@link #TYPE_DIRECT_BUFFER} 类型可用
+     */
+    public ShortBuffer uiViewAt(int slot) {
+        ShortBuffer view = uiViews[slot];
+        view.clear();
+        return view;
+    }
+
+    /**
+     * 获取帧对应的元信息
+     */
+    public FrameInfo infoAt(int slot) {
+        return infos[slot];
+    }
+
+    /**
+     * 当前已发布但未被处理的帧的数量
+     */
+    public int pending() {
+        return (int) (writeSequence.get() - processSequence.get());
+    }
+
+    /**
+     * 当前已发布但未被消费的帧的数量
+     */
+    public int size() {
+        return (int) (writeSequence.get() - readSequence.get());
+    }
+
+    /**
+     * 缓冲区已满导致帧无法交给消费者的次数
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+}
@@ -0,0 +1,92 @@
+package tech.oom.idealrecorder.record;
+
+import java.nio.ByteBuffer;
+
+import tech.oom.idealrecorder.IdealRecorder;
+
+/**
+ * 录音数据源 {@link Recorder} 从数据源中读取PCM数据
+ * <p>
+ * 默认实现为 {@link AudioRecordPcmSource} 即从麦克风采集；
+ * 也可使用 {@link FilePcmSource}、{@link SyntheticPcmSource}、{@link ReplayPcmSource}
+ * 在没有设备的情况下驱动整个录音流程，且可以远快于实时的速度运行
+ */
+public interface PcmSource {
+
+    /**
+     * 数据源已经结束 录音将正常停止
+     */
+    int END_OF_STREAM = -100;
+
+    /**
+     * 根据录音配置打开数据源
+     *
+     * @param config            录音配置
+     * @param bufferSizeInBytes 建议的内部缓冲区大小 单位字节
+     * @return 是否打开成功
+     */
+    boolean open(IdealRecorder.RecordConfig config, int bufferSizeInBytes);
+
+    /**
+     * 开始读取数据
+     *
+     * @return 是否开始成功 false 表示没有录音权限或者录音功能被占用
+     */
+    boolean start();
+
+    /**
+     * 读取16位PCM数据 阻塞直到读满或者数据源结束
+     *
+     * @param buffer 目标数组
+     * @param offset 偏移
+     * @param length 需要读取的长度
+     * @return 实际读取的长度，{@link #END_OF_STREAM} 表示数据源结束，其它负数表示读取错误
+     */
+    int read(short[] buffer, int offset, int length);
+
+    /**
+     * 读取8位PCM数据 阻塞直到读满或者数据源结束
+     *
+     * @param buffer 目标数组
+     * @param offset 偏移
+     * @param length 需要读取的长度
+     * @return 实际读取的长度，{@link #END_OF_STREAM} 表示数据源结束，其它负数表示读取错误
+     */
+    int read(byte[] buffer, int offset, int length);
+
+    /**
+     * 读取32位浮点PCM数据 阻塞直到读满或者数据源结束
+     *
+     * @param buffer 目标数组
+     * @param offset 偏移
+     * @param length 需要读取的长度
+     * @return 实际读取的长度，{@link #END_OF_STREAM} 表示数据源结束，其它负数表示读取错误
+     */
+    int read(float[] buffer, int offset, int length);
+
+    /**
+     * 读取16位PCM数据到直接内存中 阻塞直到读满或者数据源结束 数据为小端字节序
+     *
+     * @param buffer      目标buffer 从position开始写入 写入后position不变
+     * @param sizeInBytes 需要读取的字节数
+     * @return 实际读取的字节数，{@link #END_OF_STREAM} 表示数据源结束，其它负数表示读取错误
+     */
+    int read(ByteBuffer buffer, int sizeInBytes);
+
+    /**
+     * 停止读取数据
+     */
+    void stop();
+
+    /**
+     * 释放数据源相关的资源
+     */
+    void release();
+
+    /**
+     * 是否为实时采集的数据源 实时采集需要录音权限，且开始时会丢弃不稳定的前几帧数据
+     *
+     * @return 是否为实时采集
+     */
+    boolean isLiveCapture();
+}
@@ -0,0 +1,141 @@
+package tech.oom.idealrecorder.record;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 预录缓冲区 保存开始录音之前最近若干帧的数据
+ * <p>
+ * 数据保存在创建时分配的一整块基本类型数组中，按帧循环覆盖最早的数据，写入和取出都只是数组拷贝 不会分配内存；
+ * 只由录音线程访问 不需要同步
+ */
+public class PreRollBuffer {
+    private final int type;
+    private final int frameCount;
+    private final int frameSize;
+    private final short[] shorts;
+    private final byte[] bytes;
+    private final float[] floats;
+    private final long[] readDoneNanos;
+    /**
+     * 下一次写入的帧的位置
+     */
+    private int head;
+    private int size;
+
+    /**
+     * @param frameCount 保存的帧的数量
+     * @param frameSize  每帧的采样数(所有声道)
+     * @param type       帧数据的类型 与 {@link FrameRing} 的类型一致
+     */
+    public PreRollBuffer(int frameCount, int frameSize, int type) {
+        this.type = type;
+        this.frameCount = frameCount;
+        this.frameSize = frameSize;
+        this.readDoneNanos = new long[frameCount];
+        int length = frameCount * frameSize;
+        shorts = type == FrameRing.TYPE_SHORT ? new short[length] : null;
+        // 直接内存模式下按小端字节序保存16位数据
+        bytes = type == FrameRing.TYPE_BYTE ? new byte[length]
+                : type == FrameRing.TYPE_DIRECT_BUFFER ? new byte[length * 2] : null;
+        floats = type == FrameRing.TYPE_FLOAT ? new float[length] : null;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * 当前保存的帧的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * 保存环形缓冲区中指定位置的帧 已满时覆盖最早的帧
+     *
+     * @param ring          帧所在的环形缓冲区 类型需要一致
+     * @param slot          帧的位置
+     * @param readDoneNanos 该帧读取完成的时间
+     */
+    public void write(FrameRing ring, int slot, long readDoneNanos) {
+        int offset = head * frameSize;
+        switch (type) {
+            case FrameRing.TYPE_BYTE:
+                System.arraycopy(ring.bytesAt(slot), 0, bytes, offset, frameSize);
+                break;
+            case FrameRing.TYPE_FLOAT:
+                System.arraycopy(ring.floatsAt(slot), 0, floats, offset, frameSize);
+                break;
+            case FrameRing.TYPE_DIRECT_BUFFER:
+                ByteBuffer buffer = ring.bufferAt(slot);
+                buffer.clear();
+                buffer.get(bytes, offset * 2, frameSize * 2);
+                buffer.clear();
+                break;
+            default:
+                System.arraycopy(ring.shortsAt(slot), 0, shorts, offset, frameSize);
+                break;
+        }
+        this.readDoneNanos[head] = readDoneNanos;
+        head = head + 1 == frameCount ? 0 : head + 1;
+        if (size < frameCount) {
+            size++;
+        }
+    }
+
+    /**
+     * 将保存的帧拷贝到环形缓冲区中指定位置
+     *
+     * @param index 帧的序号 0为最早保存的帧
+     * @param ring  目标环形缓冲区 类型需要一致
+     * @param slot  目标位置
+     */
+    public void copyTo(int index, FrameRing ring, int slot) {
+        int offset = position(index) * frameSize;
+        switch (type) {
+            case FrameRing.TYPE_BYTE:
+                System.arraycopy(bytes, offset, ring.bytesAt(slot), 0, frameSize);
+                break;
+            case FrameRing.TYPE_FLOAT:
+                System.arraycopy(floats, offset, ring.floatsAt(slot), 0, frameSize);
+                break;
+            case FrameRing.TYPE_DIRECT_BUFFER:
+                ByteBuffer buffer = ring.bufferAt(slot);
+                buffer.clear();
+                buffer.put(bytes, offset * 2, frameSize * 2);
+                buffer.clear();
+                break;
+            default:
+                System.arraycopy(shorts, offset, ring.shortsAt(slot), 0, frameSize);
+                break;
+        }
+    }
+
+    /**
+     * 保存的帧读取完成的时间
+     *
+     * @param index 帧的序号 0为最早保存的帧
+     */
+    public long readDoneNanosAt(int index) {
+        return readDoneNanos[position(index)];
+    }
+
+    private int position(int index) {
+        int position = head - size + index;
+        return position < 0 ? position + frameCount : position;
+    }
+}
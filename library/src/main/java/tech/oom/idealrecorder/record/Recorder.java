@@ -1,7 +1,11 @@
 package tech.oom.idealrecorder.record;
 
 import android.media.AudioFormat;
-import android.media.AudioRecord;
+import android.os.Process;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.locks.LockSupport;
 
 import tech.oom.idealrecorder.IdealConst;
 import tech.oom.idealrecorder.IdealRecorder;
@@ -10,66 +14,365 @@ import tech.oom.idealrecorder.utils.Log;
 
 public class Recorder {
     /**
-     * 每次buffer语音对应的时长为100ms
+     * 默认每次buffer语音对应的时长为100ms 可通过 {@link IdealRecorder.RecordConfig#setFrameDuration(int)} 修改
      */
     public static final int TIMER_INTERVAL = 100;
+    /**
+     * 默认环形缓冲区中帧的数量 每帧时长较短时按照该数量对应的100ms帧的总时长计算
+     */
+    public static final int DEFAULT_FRAME_RING_CAPACITY = 16;
+    /**
+     * 预录的最大时长 单位毫秒
+     */
+    public static final int MAX_PRE_ROLL_MILLIS = 10000;
     private static final String TAG = "Recorder";
+    private static final int NO_ERROR = -1;
+    /**
+     * 非实时数据源等待缓冲区空出位置时每次休眠的时长 UI线程归还帧时不会唤醒录音线程
+     */
+    private static final long BACKPRESSURE_PARK_NANOS = 1000000L;
     private IdealRecorder.RecordConfig recordConfig;
-    private AudioRecord mAudioRecorder = null;
+    private PcmSource pcmSource = new AudioRecordPcmSource();
     private RecorderCallback mCallback;
     private int bufferSize;
-    private boolean isRecord = false;
-    private Thread mThread = null;
-    private short[] wave;
+    private volatile boolean isRecord = false;
+    /**
+     * 录音线程 停止录音时不清空 下次开始录音前据此等待上一次的录音线程结束
+     */
+    private volatile Thread mThread = null;
+    private volatile Thread mProcessThread = null;
+    private volatile boolean captureFinished;
+    private volatile boolean discardPending;
+    private volatile int captureError = NO_ERROR;
+    /**
+     * 本次录音中因处理线程不及时被丢弃的帧数 只由录音线程修改
+     */
+    private volatile long overrunCount;
+    /**
+     * 本次录音中数据源没有及时提供数据的次数 只由录音线程修改
+     */
+    private volatile long underrunCount;
+    /**
+     * 非实时数据源的录音线程正在等待缓冲区空出位置
+     */
+    private volatile boolean captureWaiting;
+    private boolean directBufferMode;
+    private final CaptureClock captureClock = new CaptureClock();
+    private int samplesPerFrame;
+    private FrameRing frameRing;
+    private int frameRingCapacity;
+    /**
+     * 是否处于预热状态 预热时录音线程在两次录音之间保持数据源的采集
+     */
+    private volatile boolean armed;
+    /**
+     * 每次开始录音时加1 预热的录音线程据此判断新的录音开始
+     */
+    private volatile int sessionId;
+    /**
+     * 录音线程创建时对应的录音序号 录音线程据此判断是否需要立即开始录音
+     */
+    private int threadSession;
+    private int sampleRate;
+    private volatile long startRequestNanos;
+    private volatile long startLatencyNanos = -1;
+    private int preRollMillis;
+    private PreRollBuffer preRollBuffer;
+    /**
+     * 录音线程 只负责以较高的优先级从数据源读取数据并发布到环形缓冲区 不做任何其它耗时操作；
+     * 预热状态下录音结束后继续读取并丢弃实时数据 直到下次开始录音或取消预热
+     */
     private Runnable RecordRun = new Runnable() {
 
         public void run() {
-            if ((mAudioRecorder != null) && (mAudioRecorder.getState() == 1)) {
-
-                try {
-                    mAudioRecorder.stop();
-                    mAudioRecorder.startRecording();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    recordFailed(IdealConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
-                    mAudioRecorder = null;
-                }
+            try {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            } catch (Exception e) {
+                Log.w(TAG, "set capture thread priority failed", e);
             }
-            if ((mAudioRecorder != null) &&
-                    (mAudioRecorder.getState() == 1) && (mAudioRecorder.getRecordingState() == 1)) {
-                Log.e(TAG, "no recorder permission or recorder is not available right now");
-                recordFailed(IdealConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
-                mAudioRecorder = null;
+            PcmSource source = pcmSource;
+            FrameRing ring = frameRing;
+            boolean live = source.isLiveCapture();
+            PreRollBuffer preRoll = armed && live ? preRollBuffer : null;
+            // 非实时数据源在预热时不读取 避免消耗数据 在开始录音时再启动
+            boolean sourceStarted = (live || !armed) && startSource(source, ring);
+            long frameNanos = captureClock.getFrameDurationNanos(samplesPerFrame);
+            int session = threadSession;
+            // 非预热启动时录音已经开始
+            boolean delivering = session != sessionId;
+            boolean firstFrame = delivering;
+            if (delivering) {
+                session = sessionId;
             }
-            for (int i = 0; i < 2; i++) {
-                if (mAudioRecorder == null) {
-                    isRecord = false;
-                    break;
+            long lastReadDone = 0;
+            while (true) {
+                if (delivering && !isRecord) {
+                    if (!armed) {
+                        break;
+                    }
+                    delivering = false;
+                    finishSession();
                 }
-                mAudioRecorder.read(wave, 0, wave.length);
-            }
-            while (isRecord) {
+                if (!delivering && isRecord && session != sessionId) {
+                    session = sessionId;
+                    delivering = true;
+                    firstFrame = true;
+                    lastReadDone = 0;
+                    if (!sourceStarted) {
+                        sourceStarted = startSource(source, ring);
+                        continue;
+                    }
+                    if (preRoll != null && preRoll.size() > 0) {
+                        lastReadDone = publishPreRoll(ring, preRoll);
+                        firstFrame = false;
+                    }
+                }
+                if (!delivering) {
+                    if (!armed) {
+                        break;
+                    }
+                    if (!live) {
+                        LockSupport.parkNanos(this, frameNanos);
+                        continue;
+                    }
+                }
+                if (delivering && !live && ring.isFull()) {
+                    // 非实时数据源不会溢出 等待处理线程和UI线程归还帧 不丢弃数据
+                    captureWaiting = true;
+                    LockSupport.parkNanos(this, BACKPRESSURE_PARK_NANOS);
+                    captureWaiting = false;
+                    continue;
+                }
+                // 处理线程不及时导致缓冲区已满时 读取到备用的帧中丢弃 保证数据源不会溢出；
+                // 预热时读取到备用的帧中 不占用缓冲区也不计入溢出 预录时再保存
+                int slot = delivering ? ring.claim() : -1;
+                boolean claimed = slot >= 0;
+                if (!claimed) {
+                    slot = ring.spare();
+                }
+                FrameInfo info = ring.infoAt(slot);
                 int nLen = 0;
                 try {
-                    nLen = mAudioRecorder.read(wave, 0, wave.length);
+                    nLen = readFrame(source, ring, slot);
                 } catch (Exception e) {
-                    isRecord = false;
-                    recordFailed(IdealConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
+                    captureFailed(IdealConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
+                    continue;
                 }
-                if (nLen == wave.length) {
-                    mCallback.onRecorded(wave);
+                if (!delivering) {
+                    if (preRoll != null && nLen == ring.getFrameSize()) {
+                        // 开始录音时在循环开始处先发布预录的数据
+                        preRoll.write(ring, slot, System.nanoTime());
+                        continue;
+                    }
+                    if (isRecord && session != sessionId && nLen == ring.getFrameSize()) {
+                        // 预热时读取的过程中开始了录音 这一帧作为第一帧发布 保证第一帧在一帧的时长内送达
+                        session = sessionId;
+                        delivering = true;
+                        firstFrame = true;
+                        lastReadDone = 0;
+                        int first = ring.claim();
+                        if (first >= 0) {
+                            ring.copy(slot, first);
+                            slot = first;
+                            info = ring.infoAt(slot);
+                            claimed = true;
+                        }
+                    } else {
+                        // 预热时持续读取并丢弃实时数据 帧没有发布 下次读取时会被覆盖
+                        if (nLen != ring.getFrameSize()) {
+                            Log.e(TAG, "read error while armed, disarm the recorder");
+                            synchronized (Recorder.this) {
+                                armed = false;
+                            }
+                        }
+                        continue;
+                    }
+                }
+                if (nLen == ring.getFrameSize()) {
+                    long readDone = System.nanoTime();
+                    // 实时采集时两次读取的间隔超过两帧的时长 说明数据源没有及时提供数据
+                    if (lastReadDone != 0 && readDone - lastReadDone > 2 * frameNanos && live) {
+                        underrunCount++;
+                    }
+                    lastReadDone = readDone;
+                    captureClock.stamp(info, samplesPerFrame, readDone);
+                    if (firstFrame) {
+                        firstFrame = false;
+                        startLatencyNanos = readDone - startRequestNanos;
+                        Log.d(TAG, "start latency " + startLatencyNanos / 1000 + "us");
+                    }
+                    if (claimed) {
+                        ring.publish();
+                        LockSupport.unpark(mProcessThread);
+                    } else {
+                        overrunCount++;
+                    }
+                } else if (nLen == PcmSource.END_OF_STREAM) {
+                    Log.i(TAG, "pcm source reached the end of stream");
+                    endCapture();
                 } else {
-                    recordFailed(IdealConst.RecorderErrorCode.RECORDER_READ_ERROR);
-                    isRecord = false;
+                    captureFailed(IdealConst.RecorderErrorCode.RECORDER_READ_ERROR);
                 }
             }
             Log.i(TAG, "out of the reading while loop,i'm going to stop");
             unInitializeRecord();
+            // 预热时开始了录音但录音线程还没来得及发布数据就结束了 同样需要通知处理线程
+            if (delivering || session != sessionId) {
+                finishSession();
+            }
+        }
+    };
+
+    /**
+     * 处理线程 依次处理录音线程发布的帧 回调 {@link RecorderCallback#onRecorded(short[], FrameInfo)}
+     * 或 {@link RecorderCallback#onRecorded(ByteBuffer, ShortBuffer, FrameInfo)}，录音线程结束后处理完剩余的帧再回调停止
+     */
+    private Runnable ProcessRun = new Runnable() {
+
+        public void run() {
+            FrameRing ring = frameRing;
+            long parkNanos = captureClock.getFrameDurationNanos(samplesPerFrame);
+            long reportedOverrun = 0;
+            long reportedUnderrun = 0;
+            while (true) {
+                int slot = ring.peekUnprocessed();
+                if (slot < 0) {
+                    if (!captureFinished) {
+                        LockSupport.parkNanos(this, parkNanos);
+                        continue;
+                    }
+                    slot = ring.peekUnprocessed();
+                    if (slot < 0) {
+                        break;
+                    }
+                }
+                if (!discardPending) {
+                    deliverFrame(ring, slot);
+                }
+                ring.markProcessed();
+                if (captureWaiting) {
+                    LockSupport.unpark(mThread);
+                }
+                if (overrunCount != reportedOverrun) {
+                    reportedOverrun = overrunCount;
+                    mCallback.onRecordOverrun(reportedOverrun);
+                }
+                if (underrunCount != reportedUnderrun) {
+                    reportedUnderrun = underrunCount;
+                    mCallback.onRecordUnderrun(reportedUnderrun);
+                }
+            }
+            if (overrunCount != reportedOverrun) {
+                mCallback.onRecordOverrun(overrunCount);
+            }
+            if (captureError != NO_ERROR) {
+                recordFailed(captureError);
+            }
             doRecordStop();
         }
     };
 
 
+    /**
+     * 按照帧的类型读取一帧数据到环形缓冲区的指定位置 类型在开始录音时确定
+     *
+     * @return 读取的采样数
+     */
+    private int readFrame(PcmSource source, FrameRing ring, int slot) {
+        switch (ring.getType()) {
+            case FrameRing.TYPE_BYTE:
+                return source.read(ring.bytesAt(slot), 0, ring.getFrameSize());
+            case FrameRing.TYPE_FLOAT:
+                return source.read(ring.floatsAt(slot), 0, ring.getFrameSize());
+            case FrameRing.TYPE_DIRECT_BUFFER:
+                ByteBuffer buffer = ring.bufferAt(slot);
+                buffer.clear();
+                int len = source.read(buffer, buffer.capacity());
+                return len < 0 ? len : len / 2;
+            default:
+                return source.read(ring.shortsAt(slot), 0, ring.getFrameSize());
+        }
+    }
+
+    /**
+     * 按照帧的类型回调对应的处理方法
+     */
+    private void deliverFrame(FrameRing ring, int slot) {
+        FrameInfo info = ring.infoAt(slot);
+        switch (ring.getType()) {
+            case FrameRing.TYPE_BYTE:
+                mCallback.onRecorded(ring.bytesAt(slot), info);
+                break;
+            case FrameRing.TYPE_FLOAT:
+                mCallback.onRecorded(ring.floatsAt(slot), info);
+                break;
+            case FrameRing.TYPE_DIRECT_BUFFER:
+                ByteBuffer buffer = ring.bufferAt(slot);
+                buffer.clear();
+                mCallback.onRecorded(buffer, ring.workerViewAt(slot), info);
+                break;
+            default:
+                mCallback.onRecorded(ring.shortsAt(slot), info);
+                break;
+        }
+    }
+
+    /**
+     * 启动数据源 实时采集时丢弃刚开始录音时不稳定的数据
+     *
+     * @return 是否启动成功
+     */
+    private boolean startSource(PcmSource source, FrameRing ring) {
+        try {
+            if (!source.start()) {
+                Log.e(TAG, "no recorder permission or recorder is not available right now");
+                captureFailed(IdealConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
+                return false;
+            }
+            if (source.isLiveCapture()) {
+                for (int i = 0; i < 2; i++) {
+                    readFrame(source, ring, ring.spare());
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            captureFailed(IdealConst.RecorderErrorCode.RECORDER_EXCEPTION_OCCUR);
+            return false;
+        }
+    }
+
+    /**
+     * 开始录音时将预录的帧依次发布到环形缓冲区 缓冲区剩余空间不足时丢弃最早的帧
+     *
+     * @return 最后一帧读取完成的时间
+     */
+    private long publishPreRoll(FrameRing ring, PreRollBuffer preRoll) {
+        int count = preRoll.size();
+        int skip = Math.max(0, count - (ring.getCapacity() - ring.size()));
+        overrunCount += skip;
+        for (int i = skip; i < count; i++) {
+            int slot = ring.claim();
+            preRoll.copyTo(i, ring, slot);
+            captureClock.stamp(ring.infoAt(slot), samplesPerFrame, preRoll.readDoneNanosAt(i));
+            ring.publish();
+        }
+        long lastReadDone = preRoll.readDoneNanosAt(count - 1);
+        preRoll.clear();
+        startLatencyNanos = System.nanoTime() - startRequestNanos;
+        Log.d(TAG, "publish " + (count - skip) + " pre-roll frames, start latency " + startLatencyNanos / 1000 + "us");
+        LockSupport.unpark(mProcessThread);
+        return lastReadDone;
+    }
+
+    /**
+     * 录音线程结束本次录音 处理线程处理完剩余的帧后回调停止
+     */
+    private void finishSession() {
+        captureFinished = true;
+        LockSupport.unpark(mProcessThread);
+    }
+
     public Recorder(IdealRecorder.RecordConfig config, RecorderCallback callback) {
         this.mCallback = callback;
         this.recordConfig = config;
@@ -79,53 +382,304 @@ public class Recorder {
         this.recordConfig = config;
     }
 
+    /**
+     * 设置录音的数据源 为null时使用 {@link AudioRecordPcmSource} 从麦克风采集
+     *
+     * @param source 数据源
+     */
+    public void setPcmSource(PcmSource source) {
+        synchronized (this) {
+            this.pcmSource = source == null ? new AudioRecordPcmSource() : source;
+        }
+    }
+
+    public PcmSource getPcmSource() {
+        return pcmSource;
+    }
+
+    /**
+     * 设置录音线程与处理线程之间环形缓冲区中帧的数量 下次开始录音时生效 缓冲区越大越能容忍处理线程的卡顿
+     *
+     * @param capacity 帧的数量 会向上取整为2的幂 小于等于0时根据每帧时长自动计算
+     */
+    public void setFrameRingCapacity(int capacity) {
+        this.frameRingCapacity = capacity;
+    }
+
+    /**
+     * 设置是否使用直接内存模式 下次开始录音时生效 仅对16位录音有效
+     * <p>
+     * 直接内存模式下数据读取到预先分配的小端字节序 {@link ByteBuffer} 中，
+     * 同一个buffer直接写入文件，并以只读 {@link ShortBuffer} 视图交给回调，整个过程没有额外的数组分配和字节序转换
+     *
+     * @param directBufferMode 是否使用直接内存模式
+     */
+    public void setDirectBufferMode(boolean directBufferMode) {
+        this.directBufferMode = directBufferMode;
+    }
+
+    public boolean isDirectBufferMode() {
+        return directBufferMode;
+    }
+
+    /**
+     * 获取录音的采样时钟 可用于查询采样时钟与系统时钟的偏差
+     *
+     * @return 采样时钟
+     */
+    public CaptureClock getCaptureClock() {
+        return captureClock;
+    }
+
+    /**
+     * 获取录音线程与处理线程、UI线程之间的环形缓冲区 录音线程为唯一的生产者
+     *
+     * @return 环形缓冲区 未开始过录音时为null
+     */
+    public FrameRing getFrameRing() {
+        return frameRing;
+    }
+
+
+    /**
+     * 预热录音 提前初始化并启动数据源 录音线程持续读取并丢弃数据，
+     * 之后调用 {@link #start()} 时不再需要初始化和丢弃不稳定的数据 第一帧在一帧的时长内送达；
+     * 录音结束后保持预热状态 直到调用 {@link #disarm()}。预热期间修改录音配置需要重新预热才能生效，
+     * 预热过程中发生错误时自动取消预热 下次开始录音时按照原流程初始化
+     *
+     * @return 是否预热成功
+     */
+    public boolean arm() {
+        if (armed) {
+            return true;
+        }
+        // 等待上一次的录音线程释放数据源 录音线程释放数据源时需要获取锁 所以在锁外等待
+        if (!isRecord) {
+            join(mThread);
+        }
+        synchronized (this) {
+            if (armed) {
+                return true;
+            }
+            if (isRecord) {
+                Log.e(TAG, "arm failed, because the recorder is recording");
+                return false;
+            }
+            if (isAlive(mThread)) {
+                Log.e(TAG, "arm failed, because the previous recording is still stopping");
+                return false;
+            }
+            int preRollFrames = preRollMillis <= 0 || recordConfig == null || !pcmSource.isLiveCapture() ? 0
+                    : (preRollMillis + recordConfig.getFrameDuration() - 1) / recordConfig.getFrameDuration();
+            if (!doRecordReady() || !initializeRecord(preRollFrames)) {
+                return false;
+            }
+            if (preRollFrames == 0) {
+                preRollBuffer = null;
+            } else if (preRollBuffer == null || preRollBuffer.getFrameCount() != preRollFrames
+                    || preRollBuffer.getFrameSize() != frameRing.getFrameSize() || preRollBuffer.getType() != frameRing.getType()) {
+                preRollBuffer = new PreRollBuffer(preRollFrames, frameRing.getFrameSize(), frameRing.getType());
+            } else {
+                preRollBuffer.clear();
+            }
+            armed = true;
+            threadSession = sessionId;
+            mThread = new Thread(RecordRun, "IdealRecorder-Capture");
+            mThread.start();
+            Log.d(TAG, "recorder armed");
+            return true;
+        }
+    }
+
+    /**
+     * 取消预热 释放数据源 正在录音时在本次录音结束后释放
+     */
+    public void disarm() {
+        Thread thread;
+        synchronized (this) {
+            if (!armed) {
+                return;
+            }
+            armed = false;
+            thread = mThread;
+            if (isRecord) {
+                return;
+            }
+        }
+        LockSupport.unpark(thread);
+        join(thread);
+        Log.d(TAG, "recorder disarmed");
+    }
+
+    /**
+     * 设置预录的时长 下次预热时生效 仅对实时采集的数据源有效
+     * <p>
+     * 预热期间录音线程将最近的数据保存在固定大小的缓冲区中，开始录音时先回调这部分数据 再回调实时数据 中间没有间隔，
+     * 用于保留用户在点击开始之前已经开始说的话
+     *
+     * @param preRollMillis 预录时长 单位毫秒 0为不预录 最大为 {@link #MAX_PRE_ROLL_MILLIS}
+     */
+    public void setPreRollMillis(int preRollMillis) {
+        if (preRollMillis < 0 || preRollMillis > MAX_PRE_ROLL_MILLIS) {
+            Log.e(TAG, "pre-roll duration must be between 0 and " + MAX_PRE_ROLL_MILLIS + "ms");
+            return;
+        }
+        this.preRollMillis = preRollMillis;
+    }
+
+    public int getPreRollMillis() {
+        return preRollMillis;
+    }
+
+    public boolean isArmed() {
+        return armed;
+    }
+
+    /**
+     * 最近一次开始录音的延迟 即从调用 {@link #start()} 到第一帧采集完成的时间
+     *
+     * @return 延迟 单位纳秒 尚未采集到第一帧时为-1
+     */
+    public long getStartLatencyNanos() {
+        return startLatencyNanos;
+    }
 
     public boolean start() {
-        isRecord = true;
+        if (isRecord) {
+            Log.e(TAG, "start failed, because the recorder is recording");
+            return false;
+        }
+        // 等待上一次录音的线程结束 避免旧的录音线程和处理线程与新的线程同时读写环形缓冲区；
+        // 录音线程释放数据源时需要获取锁 所以在锁外等待
+        if (!armed) {
+            join(mThread);
+        }
+        join(mProcessThread);
         synchronized (this) {
+            if (isRecord) {
+                Log.e(TAG, "start failed, because the recorder is recording");
+                return false;
+            }
+            if (!armed && isAlive(mThread) || isAlive(mProcessThread)) {
+                Log.e(TAG, "start failed, because the previous recording is still stopping");
+                return false;
+            }
+            startRequestNanos = System.nanoTime();
+            startLatencyNanos = -1;
+            if (armed && isAlive(mThread)) {
+                return startArmed();
+            }
+            // 预热的录音线程已经结束 按照原流程初始化
+            armed = false;
+            isRecord = true;
             if (doRecordReady()) {
                 Log.d(TAG, "doRecordReady");
-                if (initializeRecord()) {
+                if (initializeRecord(0)) {
                     Log.d(TAG, "initializeRecord");
                     if (doRecordStart()) {
                         Log.d(TAG, "doRecordStart");
 
-                        mThread = new Thread(RecordRun);
+                        resetSession();
+                        mProcessThread = new Thread(ProcessRun, "IdealRecorder-Process");
+                        threadSession = sessionId++;
+                        mThread = new Thread(RecordRun, "IdealRecorder-Capture");
+                        mProcessThread.start();
                         mThread.start();
                         return true;
                     }
                 }
             }
+            isRecord = false;
+            return false;
+        }
+    }
+
+    /**
+     * 预热状态下开始录音 数据源已经在采集 只需要启动处理线程并通知录音线程开始发布数据
+     */
+    private boolean startArmed() {
+        isRecord = true;
+        if (doRecordReady() && doRecordStart()) {
+            resetSession();
+            captureClock.reset(sampleRate);
+            mProcessThread = new Thread(ProcessRun, "IdealRecorder-Process");
+            mProcessThread.start();
+            sessionId++;
+            LockSupport.unpark(mThread);
+            return true;
         }
         isRecord = false;
         return false;
     }
 
+    private void resetSession() {
+        captureFinished = false;
+        discardPending = false;
+        captureError = NO_ERROR;
+        overrunCount = 0;
+        underrunCount = 0;
+    }
 
+    /**
+     * 停止录音 尚未处理的帧会被丢弃 不等待录音结束
+     */
     public void stop() {
         synchronized (this) {
-            mThread = null;
+            discardPending = true;
             isRecord = false;
         }
     }
 
+    /**
+     * 停止录音 等待已采集的帧处理完成并回调停止后返回
+     */
     public void immediateStop() {
         isRecord = false;
-        if (mThread != null) {
-            try {
-                mThread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        // 预热状态下录音线程在录音结束后继续运行
+        if (!armed) {
+            join(mThread);
+        }
+        join(mProcessThread);
+    }
+
+    /**
+     * 本次录音中因处理不及时被丢弃的帧数
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * 本次录音中数据源没有及时提供数据的次数
+     */
+    public long getUnderrunCount() {
+        return underrunCount;
+    }
+
+    private void join(Thread thread) {
+        // 在录音或处理线程中调用停止时不能等待自己结束
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
-        mThread = null;
+    }
+
+    private static boolean isAlive(Thread thread) {
+        return thread != null && thread.isAlive();
     }
 
     public boolean isStarted() {
         return isRecord;
     }
 
-    private boolean initializeRecord() {
+    /**
+     * @param extraFrames 环形缓冲区需要额外容纳的帧数 用于开始录音时一次发布预录的数据
+     */
+    private boolean initializeRecord(int extraFrames) {
         synchronized (this) {
             try {
                 if (mCallback == null) {
@@ -136,43 +690,28 @@ public class Recorder {
                     Log.e(TAG, "Error recordConfig is null");
                     return false;
                 }
-                short nChannels;
-                int sampleRate;
-                short bSamples;
-                int audioSource;
-                int audioFormat;
-                int channelConfig;
-                if (recordConfig.getAudioFormat() == AudioFormat.ENCODING_PCM_16BIT) {
-                    bSamples = 16;
-                } else {
-                    bSamples = 8;
-                }
-
-                if ((channelConfig = recordConfig.getChannelConfig()) == AudioFormat.CHANNEL_IN_MONO) {
-                    nChannels = 1;
-                } else {
-                    nChannels = 2;
-                }
-                audioSource = recordConfig.getAudioSource();
+                int nChannels = recordConfig.getChannelCount();
+                int bSamples = recordConfig.getBitsPerSample();
                 sampleRate = recordConfig.getSampleRate();
-                audioFormat = recordConfig.getAudioFormat();
-                int framePeriod = sampleRate * TIMER_INTERVAL / 1000;
-                bufferSize = framePeriod * 2 * bSamples * nChannels / 8;
-
-                wave = new short[framePeriod * bSamples / 8 * nChannels / 2];
-                Log.d(TAG, "buffersize = " + bufferSize);
-                int nMinSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
-                if (bufferSize < nMinSize) {
-                    bufferSize = nMinSize;
+                int frameDuration = recordConfig.getFrameDuration();
+                int framePeriod = sampleRate * frameDuration / 1000;
+                // 内部缓冲区至少保留200ms 每帧时长较短时不会增加延迟 但可以避免读取不及时导致的溢出
+                int bufferPeriod = sampleRate * Math.max(2 * frameDuration, 2 * TIMER_INTERVAL) / 1000;
+                bufferSize = bufferPeriod * bSamples * nChannels / 8;
 
-                    Log.d(TAG, "Increasing buffer size to " + Integer.toString(bufferSize));
+                samplesPerFrame = framePeriod;
+                int frameSize = framePeriod * nChannels;
+                captureClock.reset(sampleRate);
+                int capacity = frameRingCapacity > 0 ? Math.max(2, frameRingCapacity)
+                        : Math.max(DEFAULT_FRAME_RING_CAPACITY, DEFAULT_FRAME_RING_CAPACITY * TIMER_INTERVAL / frameDuration);
+                capacity += extraFrames;
+                int ringType = getFrameType(recordConfig);
+                if (frameRing == null || frameRing.getFrameSize() != frameSize
+                        || frameRing.getCapacity() < capacity || frameRing.getType() != ringType) {
+                    frameRing = new FrameRing(capacity, frameSize, ringType);
                 }
-                if (mAudioRecorder != null) {
-                    unInitializeRecord();
-                }
-                mAudioRecorder = new AudioRecord(audioSource, sampleRate, channelConfig, audioFormat, bufferSize);
-                if (mAudioRecorder.getState() != 1) {
-                    mAudioRecorder = null;
+                Log.d(TAG, "buffersize = " + bufferSize);
+                if (!pcmSource.open(recordConfig, bufferSize)) {
                     recordFailed(IdealConst.RecorderErrorCode.RECORDER_PERMISSION_ERROR);
                     Log.e(TAG, "AudioRecord initialization failed,because of no RECORD permission or unavailable AudioRecord ");
                     throw new Exception("AudioRecord initialization failed");
@@ -190,18 +729,28 @@ public class Recorder {
         }
     }
 
+    /**
+     * 根据录音格式确定帧的类型 录音过程中不再判断格式
+     */
+    private int getFrameType(IdealRecorder.RecordConfig config) {
+        switch (config.getAudioFormat()) {
+            case AudioFormat.ENCODING_PCM_8BIT:
+                return FrameRing.TYPE_BYTE;
+            case AudioFormat.ENCODING_PCM_FLOAT:
+                return FrameRing.TYPE_FLOAT;
+            default:
+                return directBufferMode ? FrameRing.TYPE_DIRECT_BUFFER : FrameRing.TYPE_SHORT;
+        }
+    }
+
     private void unInitializeRecord() {
         Log.i(TAG, "unInitializeRecord");
         synchronized (this) {
-            if (mAudioRecorder != null) {
-                try {
-                    mAudioRecorder.stop();
-                    mAudioRecorder.release();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Log.e(TAG, "mAudioRecorder release error!");
-                }
-                mAudioRecorder = null;
+            try {
+                pcmSource.release();
+            } catch (Exception e) {
+                e.printStackTrace();
+                Log.e(TAG, "pcm source release error!");
             }
         }
     }
@@ -226,6 +775,28 @@ public class Recorder {
         }
     }
 
+    /**
+     * 录音线程中发生错误 结束录音 错误由处理线程处理完剩余的帧后回调
+     */
+    private void captureFailed(int errorCode) {
+        if (captureError == NO_ERROR) {
+            captureError = errorCode;
+        }
+        // 数据源已经不可用 同时取消预热
+        endCapture();
+    }
+
+    /**
+     * 录音线程结束录音并取消预热 与开始录音使用同一个锁，
+     * 开始录音时看到的预热状态在释放锁之前不会被录音线程改变
+     */
+    private void endCapture() {
+        synchronized (this) {
+            armed = false;
+            isRecord = false;
+        }
+    }
+
     private void recordFailed(int errorCode) {
         if (mCallback != null) {
             mCallback.onRecordedFail(errorCode);
@@ -1,5 +1,8 @@
 package tech.oom.idealrecorder.record;
 
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
 public abstract interface RecorderCallback {
     /**
      * 录音开始
@@ -17,12 +20,52 @@ public abstract interface RecorderCallback {
     public abstract void onRecorderStop();
 
     /**
-     * 正在录音
+     * 正在录音 16位录音
      *
      * @param wave 录制的数据data
+     * @param info 该帧的采样序号和采集时间戳 对象会被复用
+     */
+    public abstract void onRecorded(short[] wave, FrameInfo info);
+
+    /**
+     * 正在录音 8位录音
+     *
+     * @param data 录制的8位无符号PCM数据
+     * @param info 该帧的采样序号和采集时间戳 对象会被复用
      */
-    public abstract void onRecorded(short[] wave);
+    public abstract void onRecorded(byte[] data, FrameInfo info);
 
+    /**
+     * 正在录音 浮点录音
+     *
+     * @param data 录制的32位浮点PCM数据
+     * @param info 该帧的采样序号和采集时间戳 对象会被复用
+     */
+    public abstract void onRecorded(float[] data, FrameInfo info);
+
+    /**
+     * 正在录音 直接内存模式 {@link Recorder#setDirectBufferMode(boolean)}
+     *
+     * @param data    录制的数据 小端字节序 position为0 limit为数据长度 可直接写入文件
+     * @param samples data的只读short视图
+     * @param info    该帧的采样序号和采集时间戳 对象会被复用
+     */
+    public abstract void onRecorded(ByteBuffer data, ShortBuffer samples, FrameInfo info);
+
+
+    /**
+     * 处理不及时 录音线程丢弃了数据 在处理线程中回调
+     *
+     * @param totalDroppedFrames 本次录音中被丢弃的总帧数
+     */
+    public abstract void onRecordOverrun(long totalDroppedFrames);
+
+    /**
+     * 数据源没有及时提供数据 在处理线程中回调
+     *
+     * @param totalUnderruns 本次录音中发生的总次数
+     */
+    public abstract void onRecordUnderrun(long totalUnderruns);
 
     /**
      * 录制失败
@@ -0,0 +1,61 @@
+package tech.oom.idealrecorder.record;
+
+/**
+ * 回放数据源 回放内存中已有的PCM数据 例如之前录制得到的数据
+ */
+public class ReplayPcmSource extends AbstractPcmSource {
+    private final short[] data;
+    private int loopCount = 1;
+    private int position;
+    private int remainingLoops;
+
+    /**
+     * @param data 需要回放的16位PCM数据 录音配置为8位或浮点格式时会自动转换
+     */
+    public ReplayPcmSource(short[] data) {
+        this.data = data;
+    }
+
+    /**
+     * 设置回放次数 默认为1次 小于等于0时无限循环回放
+     */
+    public ReplayPcmSource setLoopCount(int loopCount) {
+        this.loopCount = loopCount;
+        return this;
+    }
+
+    @Override
+    protected boolean onOpen() {
+        position = 0;
+        remainingLoops = loopCount;
+        return data != null;
+    }
+
+    @Override
+    protected int fill(short[] buffer, int offset, int length) {
+        if (data.length == 0 || (position >= data.length && remainingLoops == 1)) {
+            return END_OF_STREAM;
+        }
+        int filled = 0;
+        while (filled < length) {
+            if (position >= data.length) {
+                if (remainingLoops == 1) {
+                    // 最后不足一帧的部分补静音
+                    while (filled < length) {
+                        buffer[offset + filled++] = 0;
+                    }
+                    break;
+                }
+                if (remainingLoops > 1) {
+                    remainingLoops--;
+                }
+                position = 0;
+            }
+            int len = Math.min(length - filled, data.length - position);
+            System.arraycopy(data, position, buffer, offset + filled, len);
+            position += len;
+            filled += len;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,116 @@
+package tech.oom.idealrecorder.record;
+
+/**
+ * 合成数据源 产生正弦波、白噪声或静音数据 用于压测和长时间稳定性测试
+ */
+public class SyntheticPcmSource extends AbstractPcmSource {
+    public static final int TYPE_SILENCE = 0;
+    public static final int TYPE_SINE = 1;
+    public static final int TYPE_NOISE = 2;
+
+    private final int type;
+    private double frequency = 440;
+    private int amplitude = 8000;
+    private long seed = 0x2545F4914F6CDD1DL;
+    private long durationMillis = -1;
+
+    private long random;
+    private double phase;
+    private double phaseStep;
+    private long remainingSamples;
+    private int channelIndex;
+    private short current;
+
+    /**
+     * @param type 数据类型 {@link #TYPE_SILENCE},{@link #TYPE_SINE},{@link #TYPE_NOISE}
+     */
+    public SyntheticPcmSource(int type) {
+        this.type = type;
+    }
+
+    /**
+     * 设置正弦波频率 单位Hz 默认440Hz
+     */
+    public SyntheticPcmSource setFrequency(double frequency) {
+        this.frequency = frequency;
+        return this;
+    }
+
+    /**
+     * 设置正弦波或噪声的幅度 取值范围 0~32767 默认8000
+     */
+    public SyntheticPcmSource setAmplitude(int amplitude) {
+        this.amplitude = Math.max(0, Math.min(Short.MAX_VALUE, amplitude));
+        return this;
+    }
+
+    /**
+     * 设置噪声的随机种子 相同种子产生相同的数据
+     */
+    public SyntheticPcmSource setSeed(long seed) {
+        this.seed = seed == 0 ? 1 : seed;
+        return this;
+    }
+
+    /**
+     * 设置数据源的时长 到达时长后数据源结束 默认为-1 即一直产生数据直到停止录音
+     *
+     * @param durationMillis 时长 单位毫秒
+     */
+    public SyntheticPcmSource setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    @Override
+    protected boolean onOpen() {
+        random = seed;
+        phase = 0;
+        channelIndex = 0;
+        phaseStep = 2 * Math.PI * frequency / sampleRate;
+        remainingSamples = durationMillis < 0 ? Long.MAX_VALUE : durationMillis * sampleRate / 1000 * channels;
+        return true;
+    }
+
+    @Override
+    protected int fill(short[] buffer, int offset, int length) {
+        if (remainingSamples <= 0) {
+            return END_OF_STREAM;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            buffer[i] = nextChannelSample();
+        }
+        remainingSamples -= length;
+        return length;
+    }
+
+    /**
+     * 同一采样时刻的各个声道使用相同的数据
+     */
+    private short nextChannelSample() {
+        if (channelIndex == 0) {
+            current = nextSample();
+        }
+        channelIndex = (channelIndex + 1) % channels;
+        return current;
+    }
+
+    private short nextSample() {
+        switch (type) {
+            case TYPE_SINE:
+                double value = Math.sin(phase) * amplitude;
+                phase += phaseStep;
+                if (phase > 2 * Math.PI) {
+                    phase -= 2 * Math.PI;
+                }
+                return (short) value;
+            case TYPE_NOISE:
+                random ^= random << 13;
+                random ^= random >>> 7;
+                random ^= random << 17;
+                return (short) ((int) (random >>> 48) * amplitude / 32768 - amplitude);
+            default:
+                return 0;
+        }
+    }
+}
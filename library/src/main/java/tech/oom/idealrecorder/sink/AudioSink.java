@@ -0,0 +1,40 @@
+package tech.oom.idealrecorder.sink;
+
+import java.io.IOException;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.record.FrameInfo;
+
+/**
+ * 录音数据的输出 通过 {@link tech.oom.idealrecorder.RecordSession#addSink(AudioSink)} 添加，
+ * 同一次录音可以同时输出到多个sink
+ * <p>
+ * 每个sink的方法都在它自己的执行器中按顺序调用 不需要考虑线程安全；一个sink处理得慢不会影响录音和其它sink。
+ * 录音数据只转换一次 所有sink共用同一份数据
+ */
+public interface AudioSink {
+    /**
+     * 开始录音时调用
+     *
+     * @param config 录音配置 数据的格式与之一致
+     */
+    void open(IdealRecorder.RecordConfig config) throws IOException;
+
+    /**
+     * 写入一帧录音数据 为小端字节序的PCM 与wav文件中的数据格式一致
+     *
+     * @param data 录音数据 与其它sink共用 只能读取 返回后不能再使用
+     * @param info 该帧的元信息 返回后不能再使用 需要保存时调用 {@link FrameInfo#copyFrom(FrameInfo)}
+     */
+    void write(byte[] data, int offset, int size, FrameInfo info) throws IOException;
+
+    /**
+     * 录音正常结束时调用 之前写入的数据都已经处理
+     */
+    void close() throws IOException;
+
+    /**
+     * 录音失败或者之前的调用抛出异常时调用 代替 {@link #close()}，未处理的数据已经丢弃
+     */
+    void cancel();
+}
@@ -0,0 +1,536 @@
+package tech.oom.idealrecorder.sink;
+
+import android.media.AudioFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.utils.Log;
+import tech.oom.idealrecorder.utils.PcmConverter;
+
+/**
+ * 将录音数据分发到多个 {@link AudioSink}
+ * <p>
+ * 每帧数据只拷贝一次到共享的帧中 所有sink的队列引用同一帧，全部sink处理完后帧放回缓存 稳定后不分配内存；
+ * 多声道录音中有 {@link MonoAudioSink} 时每帧同时混合一份单声道数据 保存在同一帧中 所有单声道sink共用；
+ * 每个sink有自己的执行器和有界队列 队列已满时默认丢弃该sink的新帧并计数，录音线程和其它sink不会等待；
+ * 数据源快于实时(例如从文件读取)时可以使用 {@link #POLICY_BLOCK} 让录音线程等待 不丢弃数据。
+ * 没有指定执行器时 开始录音时为sink创建单独的线程 结束时停止
+ * <p>
+ * {@link #open(IdealRecorder.RecordConfig)}、{@link #write(byte[], int, int, FrameInfo)}、{@link #finish()} 和
+ * {@link #cancel()} 在录音线程中调用；添加和移除sink可以在任意线程中调用 下次开始录音时生效
+ */
+public class AudioSinkDispatcher {
+    private static final String TAG = "AudioSinkDispatcher";
+    /**
+     * 默认队列容量 帧数
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+    /**
+     * 队列已满时丢弃新帧并计数 默认
+     */
+    public static final int POLICY_DROP = 0;
+    /**
+     * 队列已满时录音线程等待sink处理 会拖慢录音和其它sink
+     */
+    public static final int POLICY_BLOCK = 1;
+
+    private static final Frame OPEN = new Frame(0);
+    private static final Frame CLOSE = new Frame(0);
+    private static final Frame CANCEL = new Frame(0);
+
+    private final AudioSinkListener listener;
+    private final List<Worker> workers = new ArrayList<Worker>();
+    /**
+     * 当前录音的sink 开始录音时从workers中复制
+     */
+    private Worker[] active = new Worker[0];
+    /**
+     * 当前录音是否需要混合单声道数据 以及混合用的格式 只在录音线程中访问
+     */
+    private boolean downmix;
+    private int channels;
+    private int bitsPerSample;
+    /**
+     * 空闲的帧 由处理完最后一个引用的执行器放回
+     */
+    private final Object poolLock = new Object();
+    private Frame[] pool = new Frame[0];
+    private int poolCount;
+
+    /**
+     * @param listener sink出错时的回调 可以为null
+     */
+    public AudioSinkDispatcher(AudioSinkListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 添加sink 队列已满时丢弃新帧 见 {@link #addSink(AudioSink, Executor, int, int)}
+     */
+    public void addSink(AudioSink sink, Executor executor, int capacity) {
+        addSink(sink, executor, capacity, POLICY_DROP);
+    }
+
+    /**
+     * 添加sink 已经添加过时替换执行器、队列容量和策略
+     *
+     * @param sink     录音数据的输出
+     * @param executor 执行sink的方法的执行器 为null时使用单独的线程；多个sink可以共用执行器 同一个sink的方法不会同时执行
+     * @param capacity 队列容量 帧数
+     * @param policy   {@link #POLICY_DROP}, {@link #POLICY_BLOCK}
+     */
+    public void addSink(AudioSink sink, Executor executor, int capacity, int policy) {
+        synchronized (workers) {
+            removeSink(sink);
+            workers.add(new Worker(sink, executor, Math.max(1, capacity), policy));
+        }
+    }
+
+    /**
+     * @return sink是否已经添加
+     */
+    public boolean removeSink(AudioSink sink) {
+        synchronized (workers) {
+            for (int i = 0; i < workers.size(); i++) {
+                if (workers.get(i).sink == sink) {
+                    workers.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public boolean hasSinks() {
+        synchronized (workers) {
+            return !workers.isEmpty();
+        }
+    }
+
+    /**
+     * 当前或最近一次录音中 该sink因为队列已满丢弃的帧数
+     *
+     * @return sink没有添加时返回0
+     */
+    public long getDroppedFrames(AudioSink sink) {
+        synchronized (workers) {
+            for (Worker worker : workers) {
+                if (worker.sink == sink) {
+                    synchronized (worker) {
+                        return worker.dropped;
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 开始录音 在各自的执行器中打开所有sink
+     */
+    public void open(IdealRecorder.RecordConfig config) {
+        synchronized (workers) {
+            active = workers.toArray(new Worker[workers.size()]);
+        }
+        // 每个sink的队列最多引用capacity个帧 另外一个正在处理 一个正在分发
+        int frames = 1;
+        for (Worker worker : active) {
+            frames += worker.capacity + 1;
+        }
+        synchronized (poolLock) {
+            if (pool.length < frames) {
+                Frame[] larger = new Frame[frames];
+                System.arraycopy(pool, 0, larger, 0, poolCount);
+                pool = larger;
+            }
+        }
+        channels = config.getChannelCount();
+        bitsPerSample = config.getBitsPerSample();
+        downmix = false;
+        IdealRecorder.RecordConfig monoConfig = null;
+        for (Worker worker : active) {
+            if (worker.sink instanceof MonoAudioSink && channels > 1) {
+                if (monoConfig == null) {
+                    monoConfig = new IdealRecorder.RecordConfig(config).setChannelConfig(AudioFormat.CHANNEL_IN_MONO);
+                }
+                downmix = true;
+                worker.start(monoConfig, true);
+            } else {
+                worker.start(config, false);
+            }
+        }
+    }
+
+    /**
+     * 拷贝一帧数据 需要时混合为单声道 分发到所有sink的队列
+     */
+    public void write(byte[] data, int offset, int size, FrameInfo info) {
+        Worker[] workers = active;
+        if (workers.length == 0) {
+            return;
+        }
+        Frame frame = obtain(size);
+        System.arraycopy(data, offset, frame.data, 0, size);
+        frame.size = size;
+        if (downmix) {
+            int frames = size / (channels * bitsPerSample / 8);
+            int monoSize = frames * bitsPerSample / 8;
+            if (frame.mono == null || frame.mono.length < monoSize) {
+                frame.mono = new byte[monoSize];
+            }
+            PcmConverter.downmixToMono(data, offset, frame.mono, 0, frames, channels, bitsPerSample);
+            frame.monoSize = monoSize;
+        }
+        frame.info.copyFrom(info);
+        // 分发期间持有一个引用 避免先处理完的sink提前放回
+        frame.refs.set(workers.length + 1);
+        for (Worker worker : workers) {
+            if (!worker.offer(frame)) {
+                release(frame);
+            }
+        }
+        release(frame);
+    }
+
+    /**
+     * 等待所有sink处理完队列中的数据后关闭
+     */
+    public void finish() {
+        Worker[] workers = active;
+        for (Worker worker : workers) {
+            worker.enqueue(CLOSE);
+        }
+        await(workers);
+    }
+
+    /**
+     * 丢弃队列中的数据 取消所有sink
+     */
+    public void cancel() {
+        Worker[] workers = active;
+        for (Worker worker : workers) {
+            worker.cancel();
+        }
+        await(workers);
+    }
+
+    private void await(Worker[] workers) {
+        for (Worker worker : workers) {
+            worker.await();
+        }
+        active = new Worker[0];
+    }
+
+    private Frame obtain(int size) {
+        synchronized (poolLock) {
+            if (poolCount > 0) {
+                Frame frame = pool[--poolCount];
+                pool[poolCount] = null;
+                if (frame.data.length >= size) {
+                    return frame;
+                }
+            }
+        }
+        return new Frame(size);
+    }
+
+    private void release(Frame frame) {
+        if (frame.refs.decrementAndGet() != 0) {
+            return;
+        }
+        synchronized (poolLock) {
+            if (poolCount < pool.length) {
+                pool[poolCount++] = frame;
+            }
+        }
+    }
+
+    private static boolean isCommand(Frame frame) {
+        return frame == OPEN || frame == CLOSE || frame == CANCEL;
+    }
+
+    private static final class Frame {
+        final byte[] data;
+        final FrameInfo info = new FrameInfo();
+        final AtomicInteger refs = new AtomicInteger();
+        int size;
+        /**
+         * 混合后的单声道数据 只在需要时分配 之后随帧复用
+         */
+        byte[] mono;
+        int monoSize;
+
+        Frame(int capacity) {
+            data = new byte[capacity];
+        }
+    }
+
+    /**
+     * 一个sink的队列 有数据时提交到执行器 按顺序处理完队列后结束 下次有数据时再提交
+     */
+    private final class Worker implements Runnable {
+        final AudioSink sink;
+        final Executor executor;
+        final int capacity;
+        final int policy;
+        /**
+         * 数据帧和打开、关闭、取消的命令 命令不占用容量
+         */
+        final Frame[] queue;
+        int head;
+        int count;
+        int dataCount;
+        long dropped;
+        boolean scheduled;
+        /**
+         * 录音线程在等待队列腾出空间
+         */
+        boolean waiting;
+        volatile boolean failed;
+        /**
+         * 只在执行器中访问
+         */
+        boolean opened;
+        IdealRecorder.RecordConfig config;
+        /**
+         * 写入混合后的单声道数据
+         */
+        boolean downmixed;
+        ExecutorService ownExecutor;
+        Executor current;
+
+        Worker(AudioSink sink, Executor executor, int capacity, int policy) {
+            this.sink = sink;
+            this.executor = executor;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.queue = new Frame[capacity + 2];
+        }
+
+        /**
+         * @param downmixed 是否写入混合后的单声道数据 config为对应的单声道配置
+         */
+        void start(IdealRecorder.RecordConfig config, boolean downmixed) {
+            synchronized (this) {
+                this.config = config;
+                this.downmixed = downmixed;
+                head = 0;
+                count = 0;
+                dataCount = 0;
+                dropped = 0;
+                failed = false;
+                current = executor;
+                if (executor == null) {
+                    ownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "IdealRecorder-Sink");
+                        }
+                    });
+                    current = ownExecutor;
+                }
+            }
+            enqueue(OPEN);
+        }
+
+        /**
+         * @return 帧是否进入队列 进入队列时由执行器释放引用
+         */
+        boolean offer(Frame frame) {
+            boolean schedule;
+            synchronized (this) {
+                while (policy == POLICY_BLOCK && dataCount >= capacity && !failed) {
+                    waiting = true;
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (failed) {
+                    return false;
+                }
+                if (dataCount >= capacity) {
+                    dropped++;
+                    return false;
+                }
+                dataCount++;
+                schedule = add(frame);
+            }
+            if (schedule) {
+                submit();
+            }
+            return true;
+        }
+
+        void enqueue(Frame command) {
+            boolean schedule;
+            synchronized (this) {
+                schedule = add(command);
+            }
+            if (schedule) {
+                submit();
+            }
+        }
+
+        /**
+         * 丢弃队列中的数据帧 已经打开时取消sink
+         */
+        void cancel() {
+            boolean schedule;
+            synchronized (this) {
+                clear();
+                schedule = add(CANCEL);
+            }
+            if (schedule) {
+                submit();
+            }
+        }
+
+        /**
+         * 等待队列处理完 停止单独创建的线程
+         */
+        void await() {
+            synchronized (this) {
+                while (scheduled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+                ownExecutor = null;
+            }
+        }
+
+        /**
+         * 丢弃队列中的数据帧和命令 需要持有锁
+         */
+        private void clear() {
+            while (count > 0) {
+                Frame frame = queue[head];
+                queue[head] = null;
+                head = (head + 1) % queue.length;
+                count--;
+                if (!isCommand(frame)) {
+                    release(frame);
+                }
+            }
+            dataCount = 0;
+        }
+
+        /**
+         * 加入队列 需要持有锁
+         *
+         * @return 是否需要提交到执行器
+         */
+        private boolean add(Frame frame) {
+            queue[(head + count) % queue.length] = frame;
+            count++;
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        private void submit() {
+            try {
+                current.execute(this);
+            } catch (RejectedExecutionException e) {
+                Log.e(TAG, "sink executor rejected " + sink);
+                synchronized (this) {
+                    failed = true;
+                    scheduled = false;
+                    clear();
+                    notifyAll();
+                }
+                if (listener != null) {
+                    listener.onSinkError(sink, e.toString());
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Frame frame;
+                synchronized (this) {
+                    if (count == 0) {
+                        scheduled = false;
+                        notifyAll();
+                        return;
+                    }
+                    frame = queue[head];
+                    queue[head] = null;
+                    head = (head + 1) % queue.length;
+                    count--;
+                    if (!isCommand(frame)) {
+                        dataCount--;
+                        if (waiting) {
+                            waiting = false;
+                            notifyAll();
+                        }
+                    }
+                }
+                process(frame);
+            }
+        }
+
+        private void process(Frame frame) {
+            if (frame == CANCEL) {
+                if (opened) {
+                    opened = false;
+                    sink.cancel();
+                }
+                return;
+            }
+            try {
+                if (frame == OPEN) {
+                    // 打开失败时也需要取消 释放已经分配的资源
+                    opened = true;
+                    sink.open(config);
+                } else if (frame == CLOSE) {
+                    if (opened) {
+                        sink.close();
+                        opened = false;
+                    }
+                } else if (opened && !failed) {
+                    if (downmixed) {
+                        sink.write(frame.mono, 0, frame.monoSize, frame.info);
+                    } else {
+                        sink.write(frame.data, 0, frame.size, frame.info);
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                failed = true;
+                if (opened) {
+                    opened = false;
+                    sink.cancel();
+                }
+                if (listener != null) {
+                    listener.onSinkError(sink, e.toString());
+                }
+            } finally {
+                if (!isCommand(frame)) {
+                    release(frame);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package tech.oom.idealrecorder.sink;
+
+/**
+ * {@link AudioSinkDispatcher} 的回调 在sink的执行器中回调
+ */
+public interface AudioSinkListener {
+    /**
+     * sink的方法抛出异常 之后这次录音不再向它写入数据
+     *
+     * @param sink   出错的sink
+     * @param reason 失败的原因
+     */
+    void onSinkError(AudioSink sink, String reason);
+}
@@ -0,0 +1,82 @@
+package tech.oom.idealrecorder.sink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.FlacAudioWriter;
+import tech.oom.idealrecorder.file.FlacEncoder;
+import tech.oom.idealrecorder.file.StreamAudioWriter;
+import tech.oom.idealrecorder.record.FrameInfo;
+
+/**
+ * 将录音数据编码为FLAC 写入输出流 例如上传录音的压缩副本
+ * <p>
+ * 按照录音配置的声道数编码 不混合为单声道 立体声录音输出立体声FLAC；
+ * 编码在sink的执行器中进行 不占用录音线程；每编码完一个块就写入输出流。
+ * 输出流无法回到开头重写文件头 STREAMINFO 中的总采样数、帧长度和MD5为0(未知) 标准的FLAC解码器都可以解码。
+ * 结束时只刷新输出流 不关闭 同一个输出流依次写入多次录音时为连续的多个FLAC流；只支持8位和16位录音
+ */
+public class EncoderAudioSink implements AudioSink {
+    private final StreamAudioWriter stream;
+    private final int blockSize;
+    private FlacAudioWriter writer;
+    /**
+     * 编码器的录音格式 录音配置可能被修改 单独保存
+     */
+    private int sampleRate;
+    private int channels;
+    private int bitsPerSample;
+
+    /**
+     * 默认块大小 {@link FlacEncoder#DEFAULT_BLOCK_SIZE}
+     */
+    public EncoderAudioSink(OutputStream out) {
+        this(out, FlacEncoder.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out       输出流 由调用者关闭
+     * @param blockSize FLAC块大小 每个声道的采样数 16~65535
+     */
+    public EncoderAudioSink(OutputStream out, int blockSize) {
+        this.stream = new StreamAudioWriter(out);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @throws IOException 浮点录音不支持
+     */
+    @Override
+    public void open(IdealRecorder.RecordConfig config) throws IOException {
+        if (config.isFloat()) {
+            throw new IOException("FLAC does not support float pcm");
+        }
+        // 编码器的数组与块大小和声道数有关 配置不变时复用
+        if (writer == null || sampleRate != config.getSampleRate() || channels != config.getChannelCount()
+                || bitsPerSample != config.getBitsPerSample()) {
+            writer = new FlacAudioWriter(stream, config, blockSize, 0);
+            sampleRate = config.getSampleRate();
+            channels = config.getChannelCount();
+            bitsPerSample = config.getBitsPerSample();
+        }
+        writer.open(null, null);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size, FrameInfo info) throws IOException {
+        writer.write(data, offset, size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close(null);
+    }
+
+    @Override
+    public void cancel() {
+        if (writer != null) {
+            writer.abort();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package tech.oom.idealrecorder.sink;
+
+import java.io.IOException;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.AudioFileHelper;
+import tech.oom.idealrecorder.file.AudioFileListener;
+import tech.oom.idealrecorder.record.FrameInfo;
+
+/**
+ * 写入录音文件 支持 {@link AudioFileHelper} 的所有格式和写入方式
+ * <p>
+ * 写入策略、分段、FLAC参数等通过 {@link #getFileHelper()} 在开始录音前设置；
+ * 写入失败时抛出异常 之后取消时删除未完成的文件
+ */
+public class FileAudioSink implements AudioSink {
+    private final String path;
+    private final AudioFileListener listener;
+    private final AudioFileHelper helper;
+    private volatile String failure;
+
+    /**
+     * 保存为wav文件
+     */
+    public FileAudioSink(String path) {
+        this(path, AudioFileHelper.FORMAT_WAV, null);
+    }
+
+    /**
+     * @param path     文件路径
+     * @param format   文件格式 见 {@link AudioFileHelper#setFormat(int)}
+     * @param listener 保存成功、失败和分段完成的回调 在sink的执行器中回调 可以为null
+     */
+    public FileAudioSink(String path, int format, AudioFileListener listener) {
+        this.path = path;
+        this.listener = listener;
+        this.helper = new AudioFileHelper(fileListener);
+        helper.setFormat(format);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 文件的写入设置 只能在录音开始前修改
+     */
+    public AudioFileHelper getFileHelper() {
+        return helper;
+    }
+
+    @Override
+    public void open(IdealRecorder.RecordConfig config) throws IOException {
+        failure = null;
+        helper.setRecorderConfig(config);
+        helper.setSavePath(path);
+        helper.start();
+        checkFailure();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size, FrameInfo info) throws IOException {
+        helper.save(data, offset, size);
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        helper.finish();
+        checkFailure();
+    }
+
+    @Override
+    public void cancel() {
+        helper.cancel();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    private final AudioFileListener fileListener = new AudioFileListener() {
+        @Override
+        public void onFailure(String reason) {
+            failure = reason;
+            if (listener != null) {
+                listener.onFailure(reason);
+            }
+        }
+
+        @Override
+        public void onSuccess(String savePath) {
+            if (listener != null) {
+                listener.onSuccess(savePath);
+            }
+        }
+
+        @Override
+        public void onSegmentComplete(String path, long startSample, long endSample) {
+            if (listener != null) {
+                listener.onSegmentComplete(path, startSample, endSample);
+            }
+        }
+    };
+}
@@ -0,0 +1,113 @@
+package tech.oom.idealrecorder.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.WavStream;
+import tech.oom.idealrecorder.record.FrameInfo;
+
+/**
+ * 在内存中保存全部录音数据 开始录音时清空
+ * <p>
+ * 数据按固定大小的块保存 增长时不需要复制已有的数据；{@link #toWavStream()} 直接读取这些块 不需要再拷贝一份。
+ * 长时间录音的数据无法全部放在内存中 可以设置最大长度 超出的部分丢弃
+ */
+public class MemoryAudioSink implements AudioSink {
+    /**
+     * 每块的大小
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private final long maxBytes;
+    /**
+     * 开始录音时换成新的列表 之前创建的 {@link WavStream} 仍然可以读取上一次的数据
+     */
+    private List<byte[]> chunks = new ArrayList<>();
+    private long size;
+    private long discardedBytes;
+    private IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+
+    public MemoryAudioSink() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBytes 最多保存的字节数
+     */
+    public MemoryAudioSink(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized void open(IdealRecorder.RecordConfig config) {
+        this.config = config;
+        chunks = new ArrayList<>();
+        size = 0;
+        discardedBytes = 0;
+    }
+
+    @Override
+    public synchronized void write(byte[] data, int offset, int size, FrameInfo info) {
+        int n = (int) Math.max(0, Math.min(size, maxBytes - this.size));
+        discardedBytes += size - n;
+        while (n > 0) {
+            int chunkOffset = (int) (this.size % CHUNK_SIZE);
+            if (chunkOffset == 0) {
+                chunks.add(new byte[CHUNK_SIZE]);
+            }
+            int count = Math.min(n, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(data, offset, chunks.get(chunks.size() - 1), chunkOffset, count);
+            offset += count;
+            n -= count;
+            this.size += count;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    /**
+     * 当前保存的全部数据的拷贝
+     *
+     * @throws IllegalStateException 数据超过数组的最大长度
+     */
+    public synchronized byte[] toByteArray() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("recorded data too large for an array: " + size);
+        }
+        byte[] data = new byte[(int) size];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            int n = Math.min(chunk.length, data.length - offset);
+            System.arraycopy(chunk, 0, data, offset, n);
+            offset += n;
+        }
+        return data;
+    }
+
+    /**
+     * 当前保存的数据加上wav文件头的流式视图 不拷贝数据
+     * <p>
+     * 之后写入的数据不会出现在该视图中；下次开始录音后仍然可以读取
+     */
+    public synchronized WavStream toWavStream() {
+        return WavStream.of(config, chunks, size);
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * 超过最大长度丢弃的字节数
+     */
+    public synchronized long getDiscardedBytes() {
+        return discardedBytes;
+    }
+}
@@ -0,0 +1,11 @@
+package tech.oom.idealrecorder.sink;
+
+/**
+ * 只需要单声道数据的sink 例如上传或识别用的副本
+ * <p>
+ * 多声道录音时由 {@link AudioSinkDispatcher} 把每帧混合为单声道(各声道的平均值 采样格式不变)，
+ * 混合只计算一次 所有单声道sink共用；{@link #open(tech.oom.idealrecorder.IdealRecorder.RecordConfig)}
+ * 收到的录音配置为单声道 写入的数据与之一致。单声道录音时与普通的sink相同
+ */
+public interface MonoAudioSink extends AudioSink {
+}
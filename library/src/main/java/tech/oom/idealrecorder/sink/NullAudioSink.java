@@ -0,0 +1,41 @@
+package tech.oom.idealrecorder.sink;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.record.FrameInfo;
+
+/**
+ * 丢弃录音数据 只统计帧数和字节数 用于测试和测量分发的开销
+ */
+public class NullAudioSink implements AudioSink {
+    private volatile long frames;
+    private volatile long bytes;
+
+    @Override
+    public void open(IdealRecorder.RecordConfig config) {
+        frames = 0;
+        bytes = 0;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int size, FrameInfo info) {
+        // 只在sink的执行器中写入
+        frames++;
+        bytes += size;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
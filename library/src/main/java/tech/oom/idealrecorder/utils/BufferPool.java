@@ -0,0 +1,71 @@
+package tech.oom.idealrecorder.utils;
+
+/**
+ * 线程安全的byte数组缓存池 多个录音会话之间共享 录音开始时取出 结束时归还 避免每次录音重新分配转换用的数组
+ */
+public class BufferPool {
+    private final byte[][] buffers;
+    private int count;
+
+    /**
+     * @param maxPooled 最多缓存的数组数量
+     */
+    public BufferPool(int maxPooled) {
+        buffers = new byte[Math.max(1, maxPooled)][];
+    }
+
+    /**
+     * 取出一个长度不小于minSize的数组 缓存中没有合适的数组时新分配
+     *
+     * @param minSize 需要的最小长度
+     * @return 数组 内容不确定
+     */
+    public byte[] acquire(int minSize) {
+        synchronized (this) {
+            for (int i = count - 1; i >= 0; i--) {
+                byte[] buffer = buffers[i];
+                if (buffer.length >= minSize) {
+                    buffers[i] = buffers[--count];
+                    buffers[count] = null;
+                    return buffer;
+                }
+            }
+        }
+        return new byte[minSize];
+    }
+
+    /**
+     * 归还数组 缓存已满时替换掉最小的数组
+     *
+     * @param buffer 通过 {@link #acquire(int)} 取出的数组
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (count < buffers.length) {
+                buffers[count++] = buffer;
+                return;
+            }
+            int smallest = 0;
+            for (int i = 1; i < count; i++) {
+                if (buffers[i].length < buffers[smallest].length) {
+                    smallest = i;
+                }
+            }
+            if (buffers[smallest].length < buffer.length) {
+                buffers[smallest] = buffer;
+            }
+        }
+    }
+
+    /**
+     * 当前缓存的数组数量
+     */
+    public int size() {
+        synchronized (this) {
+            return count;
+        }
+    }
+}
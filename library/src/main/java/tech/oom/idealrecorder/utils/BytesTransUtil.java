@@ -2,7 +2,14 @@ package tech.oom.idealrecorder.utils;
 
 import java.nio.ByteOrder;
 
+/**
+ * 字节转换工具类 未指定字节序的方法使用设备的字节序
+ * <p>
+ * 数组的批量转换通过 {@link PcmCodec} 完成 不再为每个数据分配临时数组；
+ * WAV文件中的数据为小端字节序 请直接使用 {@link PcmCodec} 并指定 {@link ByteOrder#LITTLE_ENDIAN}
+ */
 public class BytesTransUtil {
+    private static final ByteOrder NATIVE_ORDER = ByteOrder.nativeOrder();
     private static BytesTransUtil instance = null;
     private String TAG = "BytesTransUtil";
 
@@ -14,10 +21,7 @@ public class BytesTransUtil {
     }
 
     public boolean testCPU() {
-        if (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN) {
-            return true;
-        }
-        return false;
+        return NATIVE_ORDER == ByteOrder.BIG_ENDIAN;
     }
 
     public byte[] getBytes(short s, boolean bBigEnding) {
@@ -159,77 +163,38 @@ public class BytesTransUtil {
     }
 
     public short[] Bytes2Shorts(byte[] buf) {
-        byte bLength = 2;
-        short[] s = new short[buf.length / bLength];
-        for (int iLoop = 0; iLoop < s.length; iLoop++) {
-            byte[] temp = new byte[bLength];
-            for (int jLoop = 0; jLoop < bLength; jLoop++) {
-                temp[jLoop] = buf[(iLoop * bLength + jLoop)];
-            }
-            s[iLoop] = getShort(temp);
-        }
+        short[] s = new short[buf.length / 2];
+        PcmCodec.decodeShorts(buf, 0, s, 0, s.length, NATIVE_ORDER);
         return s;
     }
 
     public byte[] Shorts2Bytes(short[] s) {
-        byte bLength = 2;
-        byte[] buf = new byte[s.length * bLength];
-        for (int iLoop = 0; iLoop < s.length; iLoop++) {
-            byte[] temp = getBytes(s[iLoop]);
-            for (int jLoop = 0; jLoop < bLength; jLoop++) {
-                buf[(iLoop * bLength + jLoop)] = temp[jLoop];
-            }
-        }
+        byte[] buf = new byte[s.length * 2];
+        PcmCodec.encodeShorts(s, 0, buf, 0, s.length, NATIVE_ORDER);
         return buf;
     }
 
     public int[] Bytes2Ints(byte[] buf) {
-        byte bLength = 4;
-        int[] s = new int[buf.length / bLength];
-        for (int iLoop = 0; iLoop < s.length; iLoop++) {
-            byte[] temp = new byte[bLength];
-            for (int jLoop = 0; jLoop < bLength; jLoop++) {
-                temp[jLoop] = buf[(iLoop * bLength + jLoop)];
-            }
-            s[iLoop] = getInt(temp);
-        }
+        int[] s = new int[buf.length / 4];
+        PcmCodec.decodeInts(buf, 0, s, 0, s.length, NATIVE_ORDER);
         return s;
     }
 
     public byte[] Ints2Bytes(int[] s) {
-        byte bLength = 4;
-        byte[] buf = new byte[s.length * bLength];
-        for (int iLoop = 0; iLoop < s.length; iLoop++) {
-            byte[] temp = getBytes(s[iLoop]);
-            for (int jLoop = 0; jLoop < bLength; jLoop++) {
-                buf[(iLoop * bLength + jLoop)] = temp[jLoop];
-            }
-        }
+        byte[] buf = new byte[s.length * 4];
+        PcmCodec.encodeInts(s, 0, buf, 0, s.length, NATIVE_ORDER);
         return buf;
     }
 
     public long[] Bytes2Longs(byte[] buf) {
-        byte bLength = 8;
-        long[] s = new long[buf.length / bLength];
-        for (int iLoop = 0; iLoop < s.length; iLoop++) {
-            byte[] temp = new byte[bLength];
-            for (int jLoop = 0; jLoop < bLength; jLoop++) {
-                temp[jLoop] = buf[(iLoop * bLength + jLoop)];
-            }
-            s[iLoop] = getLong(temp);
-        }
+        long[] s = new long[buf.length / 8];
+        PcmCodec.decodeLongs(buf, 0, s, 0, s.length, NATIVE_ORDER);
         return s;
     }
 
     public byte[] Longs2Bytes(long[] s) {
-        byte bLength = 8;
-        byte[] buf = new byte[s.length * bLength];
-        for (int iLoop = 0; iLoop < s.length; iLoop++) {
-            byte[] temp = getBytes(s[iLoop]);
-            for (int jLoop = 0; jLoop < bLength; jLoop++) {
-                buf[(iLoop * bLength + jLoop)] = temp[jLoop];
-            }
-        }
+        byte[] buf = new byte[s.length * 8];
+        PcmCodec.encodeLongs(s, 0, buf, 0, s.length, NATIVE_ORDER);
         return buf;
     }
 }
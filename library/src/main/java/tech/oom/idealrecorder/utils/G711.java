@@ -0,0 +1,181 @@
+package tech.oom.idealrecorder.utils;
+
+/**
+ * G.711 µ-law 和 A-law 编解码 每个16位采样压缩为8位
+ * <p>
+ * 编码和解码都是查表 表在类加载时生成；µ-law 只使用16位采样的高14位 A-law 只使用高13位，
+ * 因此编码表按这些位索引 结果与逐个计算完全相同。所有方法都写入调用者提供的数组 不分配内存
+ */
+public class G711 {
+    private static final int[] SEG_U_END = {0x3F, 0x7F, 0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF, 0x1FFF};
+    private static final int[] SEG_A_END = {0x1F, 0x3F, 0x7F, 0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF};
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 8159;
+
+    private static final byte[] MULAW_ENCODE = new byte[1 << 14];
+    private static final byte[] ALAW_ENCODE = new byte[1 << 13];
+    private static final short[] MULAW_DECODE = new short[256];
+    private static final short[] ALAW_DECODE = new short[256];
+
+    static {
+        for (int i = 0; i < MULAW_ENCODE.length; i++) {
+            // 索引为14位的补码 还原为对应的16位采样
+            MULAW_ENCODE[i] = (byte) linearToMuLaw((short) (i << 2));
+        }
+        for (int i = 0; i < ALAW_ENCODE.length; i++) {
+            ALAW_ENCODE[i] = (byte) linearToALaw((short) (i << 3));
+        }
+        for (int i = 0; i < 256; i++) {
+            MULAW_DECODE[i] = (short) muLawToLinear(i);
+            ALAW_DECODE[i] = (short) aLawToLinear(i);
+        }
+    }
+
+    /**
+     * 16位采样编码为 µ-law
+     */
+    public static byte encodeMuLaw(short sample) {
+        return MULAW_ENCODE[(sample >> 2) & 0x3FFF];
+    }
+
+    /**
+     * µ-law 解码为16位采样
+     */
+    public static short decodeMuLaw(byte value) {
+        return MULAW_DECODE[value & 0xFF];
+    }
+
+    /**
+     * 16位采样编码为 A-law
+     */
+    public static byte encodeALaw(short sample) {
+        return ALAW_ENCODE[(sample >> 3) & 0x1FFF];
+    }
+
+    /**
+     * A-law 解码为16位采样
+     */
+    public static short decodeALaw(byte value) {
+        return ALAW_DECODE[value & 0xFF];
+    }
+
+    /**
+     * short数组编码为 µ-law
+     *
+     * @param dst    目标数组 长度至少为 dstOffset + length
+     * @param length 采样数
+     */
+    public static void encodeMuLaw(short[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = MULAW_ENCODE[(src[srcOffset + i] >> 2) & 0x3FFF];
+        }
+    }
+
+    /**
+     * µ-law 解码为short数组
+     *
+     * @param dst    目标数组 长度至少为 dstOffset + length
+     * @param length 采样数
+     */
+    public static void decodeMuLaw(byte[] src, int srcOffset, short[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = MULAW_DECODE[src[srcOffset + i] & 0xFF];
+        }
+    }
+
+    /**
+     * short数组编码为 A-law
+     *
+     * @param dst    目标数组 长度至少为 dstOffset + length
+     * @param length 采样数
+     */
+    public static void encodeALaw(short[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = ALAW_ENCODE[(src[srcOffset + i] >> 3) & 0x1FFF];
+        }
+    }
+
+    /**
+     * A-law 解码为short数组
+     *
+     * @param dst    目标数组 长度至少为 dstOffset + length
+     * @param length 采样数
+     */
+    public static void decodeALaw(byte[] src, int srcOffset, short[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = ALAW_DECODE[src[srcOffset + i] & 0xFF];
+        }
+    }
+
+    private static int linearToMuLaw(int pcm) {
+        pcm >>= 2;
+        int mask;
+        if (pcm < 0) {
+            pcm = -pcm;
+            mask = 0x7F;
+        } else {
+            mask = 0xFF;
+        }
+        if (pcm > CLIP) {
+            pcm = CLIP;
+        }
+        pcm += BIAS >> 2;
+        int seg = segment(pcm, SEG_U_END);
+        if (seg >= 8) {
+            return 0x7F ^ mask;
+        }
+        return ((seg << 4) | ((pcm >> (seg + 1)) & 0xF)) ^ mask;
+    }
+
+    private static int muLawToLinear(int value) {
+        value = ~value;
+        int t = ((value & 0x0F) << 3) + BIAS;
+        t <<= (value & 0x70) >> 4;
+        return (value & 0x80) != 0 ? BIAS - t : t - BIAS;
+    }
+
+    private static int linearToALaw(int pcm) {
+        pcm >>= 3;
+        int mask;
+        if (pcm >= 0) {
+            mask = 0xD5;
+        } else {
+            mask = 0x55;
+            pcm = -pcm - 1;
+        }
+        int seg = segment(pcm, SEG_A_END);
+        if (seg >= 8) {
+            return 0x7F ^ mask;
+        }
+        int value = seg << 4;
+        value |= seg < 2 ? (pcm >> 1) & 0x0F : (pcm >> seg) & 0x0F;
+        return value ^ mask;
+    }
+
+    private static int aLawToLinear(int value) {
+        value ^= 0x55;
+        int t = (value & 0x0F) << 4;
+        int seg = (value & 0x70) >> 4;
+        switch (seg) {
+            case 0:
+                t += 8;
+                break;
+            case 1:
+                t += 0x108;
+                break;
+            default:
+                t += 0x108;
+                t <<= seg - 1;
+        }
+        return (value & 0x80) != 0 ? t : -t;
+    }
+
+    private static int segment(int value, int[] table) {
+        for (int i = 0; i < table.length; i++) {
+            if (value <= table[i]) {
+                return i;
+            }
+        }
+        return table.length;
+    }
+}
@@ -0,0 +1,164 @@
+package tech.oom.idealrecorder.utils;
+
+/**
+ * IMA ADPCM (WAV格式 0x11) 的分块编解码 每个16位采样压缩为4位
+ * <p>
+ * 每个块的开头为各声道的4字节块头(第一个采样和步长索引)，之后每个声道每8个采样打包为4字节 各声道交替排列，
+ * 每个字节中先出现的采样在低4位。块之间独立 解码时可以从任意块开始；
+ * 编码时的步长索引通过state在块之间延续 所有方法都写入调用者提供的数组 不分配内存
+ */
+public class ImaAdpcm {
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+    private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8, -1, -1, -1, -1, 2, 4, 6, 8};
+
+    /**
+     * 常用的块大小 每11025Hz采样率256字节 与Windows的ACM编码器一致
+     *
+     * @param sampleRate 采样率
+     * @param channels   声道数
+     * @return 块的字节数
+     */
+    public static int getDefaultBlockAlign(int sampleRate, int channels) {
+        return 256 * channels * Math.max(1, sampleRate / 11025);
+    }
+
+    /**
+     * 每个块中每个声道的采样数
+     *
+     * @param blockAlign 块的字节数 需要为 4 * channels 的整数倍
+     */
+    public static int getSamplesPerBlock(int blockAlign, int channels) {
+        return (blockAlign - 4 * channels) * 8 / (4 * channels) + 1;
+    }
+
+    /**
+     * 编码一个块
+     *
+     * @param src        交错的16位采样
+     * @param srcOffset  源数组偏移
+     * @param frames     本块的帧数(每个声道的采样数) 不足 {@link #getSamplesPerBlock(int, int)} 时用最后一个采样补齐
+     * @param channels   声道数
+     * @param stepIndex  每个声道的步长索引 编码前为上一个块结束时的值 第一个块为0 编码后更新
+     * @param dst        目标数组 写入 blockAlign 字节
+     * @param dstOffset  目标数组偏移
+     * @param blockAlign 块的字节数
+     */
+    public static void encodeBlock(short[] src, int srcOffset, int frames, int channels, int[] stepIndex,
+                                   byte[] dst, int dstOffset, int blockAlign) {
+        int samplesPerBlock = getSamplesPerBlock(blockAlign, channels);
+        for (int c = 0; c < channels; c++) {
+            int predictor = src[srcOffset + c];
+            int index = stepIndex[c];
+            int header = dstOffset + c * 4;
+            dst[header] = (byte) predictor;
+            dst[header + 1] = (byte) (predictor >> 8);
+            dst[header + 2] = (byte) index;
+            dst[header + 3] = 0;
+            int out = dstOffset + 4 * channels + c * 4;
+            for (int i = 1; i < samplesPerBlock; i += 8) {
+                for (int k = 0; k < 8; k += 2) {
+                    int lo = encodeSample(src[srcOffset + Math.min(i + k, frames - 1) * channels + c], predictor, index);
+                    predictor = lo >> 12;
+                    index = (lo >> 4) & 0x7F;
+                    int hi = encodeSample(src[srcOffset + Math.min(i + k + 1, frames - 1) * channels + c], predictor, index);
+                    predictor = hi >> 12;
+                    index = (hi >> 4) & 0x7F;
+                    dst[out + k / 2] = (byte) ((lo & 0x0F) | (hi & 0x0F) << 4);
+                }
+                out += 4 * channels;
+            }
+            stepIndex[c] = index;
+        }
+    }
+
+    /**
+     * 解码一个块
+     *
+     * @param src        块数据 长度为 blockAlign
+     * @param srcOffset  源数组偏移
+     * @param channels   声道数
+     * @param dst        交错的16位采样 写入 {@link #getSamplesPerBlock(int, int)} * channels 个采样
+     * @param dstOffset  目标数组偏移
+     * @param blockAlign 块的字节数
+     * @return 每个声道解码的采样数
+     */
+    public static int decodeBlock(byte[] src, int srcOffset, int channels, short[] dst, int dstOffset, int blockAlign) {
+        int samplesPerBlock = getSamplesPerBlock(blockAlign, channels);
+        for (int c = 0; c < channels; c++) {
+            int header = srcOffset + c * 4;
+            int predictor = (short) ((src[header] & 0xFF) | (src[header + 1] << 8));
+            int index = Math.max(0, Math.min(88, src[header + 2] & 0xFF));
+            dst[dstOffset + c] = (short) predictor;
+            int in = srcOffset + 4 * channels + c * 4;
+            int frame = 1;
+            for (int i = 1; i < samplesPerBlock; i += 8) {
+                for (int k = 0; k < 4; k++) {
+                    int b = src[in + k];
+                    for (int n = 0; n < 2; n++, b >>= 4) {
+                        int nibble = b & 0x0F;
+                        int step = STEP_TABLE[index];
+                        int diff = step >> 3;
+                        if ((nibble & 4) != 0) {
+                            diff += step;
+                        }
+                        if ((nibble & 2) != 0) {
+                            diff += step >> 1;
+                        }
+                        if ((nibble & 1) != 0) {
+                            diff += step >> 2;
+                        }
+                        predictor += (nibble & 8) != 0 ? -diff : diff;
+                        predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+                        index = Math.max(0, Math.min(88, index + INDEX_TABLE[nibble]));
+                        dst[dstOffset + frame * channels + c] = (short) predictor;
+                        frame++;
+                    }
+                }
+                in += 4 * channels;
+            }
+        }
+        return samplesPerBlock;
+    }
+
+    /**
+     * 编码一个采样
+     *
+     * @return 低4位为编码 4~10位为新的步长索引 12位以上为新的预测值
+     */
+    private static int encodeSample(int sample, int predictor, int index) {
+        int step = STEP_TABLE[index];
+        int diff = sample - predictor;
+        int nibble = 0;
+        if (diff < 0) {
+            nibble = 8;
+            diff = -diff;
+        }
+        int delta = step >> 3;
+        if (diff >= step) {
+            nibble |= 4;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            nibble |= 2;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            nibble |= 1;
+            delta += step;
+        }
+        predictor += (nibble & 8) != 0 ? -delta : delta;
+        predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+        index = Math.max(0, Math.min(88, index + INDEX_TABLE[nibble]));
+        return predictor << 12 | index << 4 | nibble;
+    }
+}
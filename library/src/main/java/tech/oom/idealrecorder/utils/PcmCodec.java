@@ -0,0 +1,234 @@
+package tech.oom.idealrecorder.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * PCM数据与字节之间的批量编解码工具类
+ * <p>
+ * 所有方法都写入调用者提供的目标数组或buffer，不分配内存；字节序由调用者显式指定，
+ * WAV文件中的数据始终为小端字节序 {@link ByteOrder#LITTLE_ENDIAN}，与运行设备的字节序无关
+ */
+public class PcmCodec {
+
+    /**
+     * short数组编码为字节数组
+     *
+     * @param src       源数组
+     * @param srcOffset 源数组偏移
+     * @param dst       目标数组 长度至少为 dstOffset + length * 2
+     * @param dstOffset 目标数组偏移
+     * @param length    需要编码的short数量
+     * @param order     字节序
+     */
+    public static void encodeShorts(short[] src, int srcOffset, byte[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = srcOffset + length;
+        int j = dstOffset;
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = srcOffset; i < end; i++) {
+                short s = src[i];
+                dst[j++] = (byte) s;
+                dst[j++] = (byte) (s >> 8);
+            }
+        } else {
+            for (int i = srcOffset; i < end; i++) {
+                short s = src[i];
+                dst[j++] = (byte) (s >> 8);
+                dst[j++] = (byte) s;
+            }
+        }
+    }
+
+    /**
+     * 字节数组解码为short数组
+     *
+     * @param src       源数组 长度至少为 srcOffset + length * 2
+     * @param srcOffset 源数组偏移
+     * @param dst       目标数组
+     * @param dstOffset 目标数组偏移
+     * @param length    需要解码的short数量
+     * @param order     字节序
+     */
+    public static void decodeShorts(byte[] src, int srcOffset, short[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = dstOffset + length;
+        int j = srcOffset;
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = dstOffset; i < end; i++, j += 2) {
+                dst[i] = (short) ((src[j] & 0xFF) | (src[j + 1] << 8));
+            }
+        } else {
+            for (int i = dstOffset; i < end; i++, j += 2) {
+                dst[i] = (short) ((src[j] << 8) | (src[j + 1] & 0xFF));
+            }
+        }
+    }
+
+    /**
+     * short数组编码后写入buffer 从buffer的position开始写入 写入后position不变
+     *
+     * @param dst   目标buffer 剩余空间至少为 length * 2
+     * @param order 字节序 与buffer自身的字节序无关
+     */
+    public static void encodeShorts(short[] src, int srcOffset, ByteBuffer dst, int length, ByteOrder order) {
+        if (dst.hasArray()) {
+            encodeShorts(src, srcOffset, dst.array(), dst.arrayOffset() + dst.position(), length, order);
+            return;
+        }
+        int position = dst.position();
+        int end = srcOffset + length;
+        int hi = order == ByteOrder.LITTLE_ENDIAN ? 1 : 0;
+        int lo = 1 - hi;
+        for (int i = srcOffset; i < end; i++, position += 2) {
+            short s = src[i];
+            dst.put(position + lo, (byte) s);
+            dst.put(position + hi, (byte) (s >> 8));
+        }
+    }
+
+    /**
+     * 从buffer的position开始读取并解码为short数组 读取后position不变
+     *
+     * @param src   源buffer 剩余数据至少为 length * 2
+     * @param order 字节序 与buffer自身的字节序无关
+     */
+    public static void decodeShorts(ByteBuffer src, short[] dst, int dstOffset, int length, ByteOrder order) {
+        if (src.hasArray()) {
+            decodeShorts(src.array(), src.arrayOffset() + src.position(), dst, dstOffset, length, order);
+            return;
+        }
+        int position = src.position();
+        int end = dstOffset + length;
+        int hi = order == ByteOrder.LITTLE_ENDIAN ? 1 : 0;
+        int lo = 1 - hi;
+        for (int i = dstOffset; i < end; i++, position += 2) {
+            dst[i] = (short) ((src.get(position + lo) & 0xFF) | (src.get(position + hi) << 8));
+        }
+    }
+
+    /**
+     * int数组编码为字节数组
+     *
+     * @param dst 目标数组 长度至少为 dstOffset + length * 4
+     */
+    public static void encodeInts(int[] src, int srcOffset, byte[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = srcOffset + length;
+        int j = dstOffset;
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = srcOffset; i < end; i++) {
+                int v = src[i];
+                dst[j++] = (byte) v;
+                dst[j++] = (byte) (v >> 8);
+                dst[j++] = (byte) (v >> 16);
+                dst[j++] = (byte) (v >> 24);
+            }
+        } else {
+            for (int i = srcOffset; i < end; i++) {
+                int v = src[i];
+                dst[j++] = (byte) (v >> 24);
+                dst[j++] = (byte) (v >> 16);
+                dst[j++] = (byte) (v >> 8);
+                dst[j++] = (byte) v;
+            }
+        }
+    }
+
+    /**
+     * 字节数组解码为int数组
+     *
+     * @param src 源数组 长度至少为 srcOffset + length * 4
+     */
+    public static void decodeInts(byte[] src, int srcOffset, int[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = dstOffset + length;
+        int j = srcOffset;
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = dstOffset; i < end; i++, j += 4) {
+                dst[i] = (src[j] & 0xFF) | (src[j + 1] & 0xFF) << 8 | (src[j + 2] & 0xFF) << 16 | src[j + 3] << 24;
+            }
+        } else {
+            for (int i = dstOffset; i < end; i++, j += 4) {
+                dst[i] = src[j] << 24 | (src[j + 1] & 0xFF) << 16 | (src[j + 2] & 0xFF) << 8 | (src[j + 3] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * long数组编码为字节数组
+     *
+     * @param dst 目标数组 长度至少为 dstOffset + length * 8
+     */
+    public static void encodeLongs(long[] src, int srcOffset, byte[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = srcOffset + length;
+        int j = dstOffset;
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = srcOffset; i < end; i++, j += 8) {
+            long v = src[i];
+            for (int k = 0; k < 8; k++) {
+                dst[little ? j + k : j + 7 - k] = (byte) (v >> (8 * k));
+            }
+        }
+    }
+
+    /**
+     * 字节数组解码为long数组
+     *
+     * @param src 源数组 长度至少为 srcOffset + length * 8
+     */
+    public static void decodeLongs(byte[] src, int srcOffset, long[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = dstOffset + length;
+        int j = srcOffset;
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        for (int i = dstOffset; i < end; i++, j += 8) {
+            long v = 0;
+            for (int k = 0; k < 8; k++) {
+                v |= (src[little ? j + k : j + 7 - k] & 0xFFL) << (8 * k);
+            }
+            dst[i] = v;
+        }
+    }
+
+    /**
+     * float数组编码为字节数组 即 WAVE_FORMAT_IEEE_FLOAT 的数据格式
+     *
+     * @param dst 目标数组 长度至少为 dstOffset + length * 4
+     */
+    public static void encodeFloats(float[] src, int srcOffset, byte[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = srcOffset + length;
+        int j = dstOffset;
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = srcOffset; i < end; i++) {
+                int v = Float.floatToRawIntBits(src[i]);
+                dst[j++] = (byte) v;
+                dst[j++] = (byte) (v >> 8);
+                dst[j++] = (byte) (v >> 16);
+                dst[j++] = (byte) (v >> 24);
+            }
+        } else {
+            for (int i = srcOffset; i < end; i++) {
+                int v = Float.floatToRawIntBits(src[i]);
+                dst[j++] = (byte) (v >> 24);
+                dst[j++] = (byte) (v >> 16);
+                dst[j++] = (byte) (v >> 8);
+                dst[j++] = (byte) v;
+            }
+        }
+    }
+
+    /**
+     * 字节数组解码为float数组
+     *
+     * @param src 源数组 长度至少为 srcOffset + length * 4
+     */
+    public static void decodeFloats(byte[] src, int srcOffset, float[] dst, int dstOffset, int length, ByteOrder order) {
+        int end = dstOffset + length;
+        int j = srcOffset;
+        if (order == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = dstOffset; i < end; i++, j += 4) {
+                dst[i] = Float.intBitsToFloat((src[j] & 0xFF) | (src[j + 1] & 0xFF) << 8 | (src[j + 2] & 0xFF) << 16 | src[j + 3] << 24);
+            }
+        } else {
+            for (int i = dstOffset; i < end; i++, j += 4) {
+                dst[i] = Float.intBitsToFloat(src[j] << 24 | (src[j + 1] & 0xFF) << 16 | (src[j + 2] & 0xFF) << 8 | (src[j + 3] & 0xFF));
+            }
+        }
+    }
+}
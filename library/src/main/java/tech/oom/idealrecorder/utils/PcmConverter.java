@@ -0,0 +1,116 @@
+package tech.oom.idealrecorder.utils;
+
+import java.nio.ByteOrder;
+
+/**
+ * PCM格式转换工具类 在8位、16位、32位浮点格式之间转换
+ * <p>
+ * 所有方法都写入调用者提供的目标数组，不分配内存，仅在消费者需要其它格式时使用
+ */
+public class PcmConverter {
+
+    /**
+     * 8位无符号PCM转16位PCM
+     */
+    public static void pcm8ToPcm16(byte[] src, int srcOffset, short[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = (short) (((src[srcOffset + i] & 0xFF) - 128) << 8);
+        }
+    }
+
+    /**
+     * 16位PCM转8位无符号PCM
+     */
+    public static void pcm16ToPcm8(short[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = (byte) ((src[srcOffset + i] >> 8) + 128);
+        }
+    }
+
+    /**
+     * 16位PCM转浮点PCM 取值范围[-1,1)
+     */
+    public static void pcm16ToFloat(short[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = src[srcOffset + i] / 32768f;
+        }
+    }
+
+    /**
+     * 浮点PCM转16位PCM 超出[-1,1]范围的数据会被截断
+     */
+    public static void floatToPcm16(float[] src, int srcOffset, short[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            float sample = src[srcOffset + i] * 32768f;
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            dst[dstOffset + i] = (short) sample;
+        }
+    }
+
+    /**
+     * 浮点PCM转小端字节序的字节数组 即WAV文件中 WAVE_FORMAT_IEEE_FLOAT 的数据格式
+     *
+     * @param dst 目标数组 长度至少为 dstOffset + length * 4
+     */
+    public static void floatToBytes(float[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        PcmCodec.encodeFloats(src, srcOffset, dst, dstOffset, length, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 小端字节序的字节数组转浮点PCM
+     */
+    public static void bytesToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        PcmCodec.decodeFloats(src, srcOffset, dst, dstOffset, length, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 小端字节序的多声道PCM混合为单声道 取各声道的平均值 格式不变
+     *
+     * @param frames        帧数
+     * @param bitsPerSample 8(无符号)、16 或 32(浮点)
+     * @param dst           目标数组 长度至少为 dstOffset + frames * bitsPerSample / 8
+     */
+    public static void downmixToMono(byte[] src, int srcOffset, byte[] dst, int dstOffset, int frames, int channels,
+                                     int bitsPerSample) {
+        int in = srcOffset;
+        int out = dstOffset;
+        if (bitsPerSample == 8) {
+            for (int i = 0; i < frames; i++) {
+                int sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += src[in++] & 0xFF;
+                }
+                dst[out++] = (byte) (sum / channels);
+            }
+        } else if (bitsPerSample == 16) {
+            for (int i = 0; i < frames; i++) {
+                int sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += (short) ((src[in] & 0xFF) | (src[in + 1] << 8));
+                    in += 2;
+                }
+                int sample = sum / channels;
+                dst[out++] = (byte) sample;
+                dst[out++] = (byte) (sample >> 8);
+            }
+        } else {
+            for (int i = 0; i < frames; i++) {
+                float sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += Float.intBitsToFloat((src[in] & 0xFF) | (src[in + 1] & 0xFF) << 8
+                            | (src[in + 2] & 0xFF) << 16 | src[in + 3] << 24);
+                    in += 4;
+                }
+                int bits = Float.floatToRawIntBits(sum / channels);
+                dst[out++] = (byte) bits;
+                dst[out++] = (byte) (bits >> 8);
+                dst[out++] = (byte) (bits >> 16);
+                dst[out++] = (byte) (bits >> 24);
+            }
+        }
+    }
+}
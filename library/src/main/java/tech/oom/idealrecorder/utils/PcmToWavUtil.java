@@ -1,17 +1,24 @@
 package tech.oom.idealrecorder.utils;
 
-import android.media.AudioFormat;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.file.BatchWavConverter;
+import tech.oom.idealrecorder.file.BufferedAudioWriter;
+import tech.oom.idealrecorder.file.CompressedAudioWriter;
+import tech.oom.idealrecorder.file.WavReader;
+import tech.oom.idealrecorder.file.WavStream;
 
 import static android.content.ContentValues.TAG;
 
@@ -19,6 +26,194 @@ import static android.content.ContentValues.TAG;
  * pcm转wav工具类
  */
 public class PcmToWavUtil {
+    /**
+     * WAV文件的编码格式 整数PCM
+     */
+    public static final int WAVE_FORMAT_PCM = 1;
+    /**
+     * WAV文件的编码格式 IEEE浮点PCM
+     */
+    public static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    /**
+     * WAV文件的编码格式 G.711 A-law
+     */
+    public static final int WAVE_FORMAT_ALAW = 6;
+    /**
+     * WAV文件的编码格式 G.711 µ-law
+     */
+    public static final int WAVE_FORMAT_MULAW = 7;
+    /**
+     * WAV文件的编码格式 IMA ADPCM
+     */
+    public static final int WAVE_FORMAT_IMA_ADPCM = 0x11;
+
+    /**
+     * RIFF文件中32位长度字段能表示的最大值 超出时需要使用RF64格式
+     */
+    public static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+    /**
+     * 为RF64格式预留的ds64块的长度 包括块标识和长度字段
+     */
+    public static final int DS64_CHUNK_SIZE = 36;
+
+    /**
+     * 根据编码格式 采样率 通道数 采样位数 获取文件头
+     * <p>
+     * {@link #WAVE_FORMAT_PCM} 为标准的44字节文件头；其它格式的fmt块带有cbSize字段，并增加fact块记录采样数；
+     * 超过4GB的长度无法记录 长度字段为0xFFFFFFFF
+     *
+     * @param formatTag     编码格式 {@link #WAVE_FORMAT_PCM},{@link #WAVE_FORMAT_IEEE_FLOAT}
+     * @param sampleRate    采样率，如44100
+     * @param channels      通道数，如立体声为2
+     * @param bitsPerSample 采样精度，如16或32
+     * @param audioDataLen  音频数据的长度 不包括文件头
+     * @return wavHeader
+     */
+    public static byte[] getWaveFileHeader(int formatTag, int sampleRate, int channels, int bitsPerSample, long audioDataLen) {
+        return getWaveFileHeader(formatTag, sampleRate, channels, bitsPerSample, audioDataLen, false);
+    }
+
+    /**
+     * 根据编码格式 采样率 通道数 采样位数 获取文件头
+     * <p>
+     * reserveDs64为true时在fmt块之前预留ds64块的空间：文件小于4GB时预留的空间为JUNK块 文件仍然是普通的wav文件；
+     * 超过4GB时为RF64格式(EBU Tech 3306) 实际长度记录在ds64块中 32位长度字段为0xFFFFFFFF。
+     * 两种情况下文件头的长度相同 录音过程中可以原位重写
+     *
+     * @param reserveDs64 是否预留ds64块
+     * @return wavHeader
+     */
+    public static byte[] getWaveFileHeader(int formatTag, int sampleRate, int channels, int bitsPerSample,
+                                           long audioDataLen, boolean reserveDs64) {
+        int blockAlign = channels * bitsPerSample / 8;
+        return getWaveFileHeader(formatTag, sampleRate, channels, bitsPerSample, blockAlign, sampleRate * blockAlign,
+                1, audioDataLen, audioDataLen / blockAlign, reserveDs64);
+    }
+
+    /**
+     * 压缩格式的文件头 fmt块带有cbSize字段 并增加fact块记录采样数
+     * <p>
+     * G.711 每个采样8位 blockAlign为声道数；IMA ADPCM 每个采样4位 按块存储，
+     * fmt块中增加每个块的采样数 文件头为60字节
+     *
+     * @param formatTag    编码格式 {@link #WAVE_FORMAT_ALAW},{@link #WAVE_FORMAT_MULAW},{@link #WAVE_FORMAT_IMA_ADPCM}
+     * @param sampleRate   采样率
+     * @param channels     通道数
+     * @param blockAlign   每个块的字节数 G.711为声道数 IMA ADPCM见 {@link ImaAdpcm#getDefaultBlockAlign(int, int)}
+     * @param audioDataLen 编码后数据的长度 不包括文件头
+     * @param sampleCount  每个声道的采样数 记录在fact块中
+     * @return wavHeader
+     */
+    public static byte[] getCompressedWaveFileHeader(int formatTag, int sampleRate, int channels, int blockAlign,
+                                                     long audioDataLen, long sampleCount) {
+        if (formatTag == WAVE_FORMAT_IMA_ADPCM) {
+            int samplesPerBlock = ImaAdpcm.getSamplesPerBlock(blockAlign, channels);
+            return getWaveFileHeader(formatTag, sampleRate, channels, 4, blockAlign,
+                    (int) ((long) sampleRate * blockAlign / samplesPerBlock), samplesPerBlock, audioDataLen, sampleCount, false);
+        }
+        return getWaveFileHeader(formatTag, sampleRate, channels, 8, blockAlign, sampleRate * blockAlign,
+                1, audioDataLen, sampleCount, false);
+    }
+
+    private static byte[] getWaveFileHeader(int formatTag, int sampleRate, int channels, int bitsPerSample, int blockAlign,
+                                            int byteRate, int samplesPerBlock, long audioDataLen, long sampleCount,
+                                            boolean reserveDs64) {
+        boolean hasFact = formatTag != WAVE_FORMAT_PCM;
+        boolean hasSamplesPerBlock = formatTag == WAVE_FORMAT_IMA_ADPCM;
+        int fmtSize = hasSamplesPerBlock ? 20 : hasFact ? 18 : 16;
+        int headerSize = getWaveFileHeaderSize(formatTag, reserveDs64);
+        long riffSize = headerSize - 8 + audioDataLen;
+        boolean rf64 = reserveDs64 && riffSize > MAX_RIFF_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        if (rf64) {
+            header.put((byte) 'R').put((byte) 'F').put((byte) '6').put((byte) '4');
+        } else {
+            header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        }
+        header.putInt((int) (rf64 ? MAX_RIFF_SIZE : Math.min(riffSize, MAX_RIFF_SIZE)));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        if (reserveDs64) {
+            if (rf64) {
+                header.put((byte) 'd').put((byte) 's').put((byte) '6').put((byte) '4');
+            } else {
+                header.put((byte) 'J').put((byte) 'U').put((byte) 'N').put((byte) 'K');
+            }
+            header.putInt(DS64_CHUNK_SIZE - 8);
+            // JUNK块中为0
+            header.putLong(rf64 ? riffSize : 0);
+            header.putLong(rf64 ? audioDataLen : 0);
+            header.putLong(rf64 ? sampleCount : 0);
+            header.putInt(0); // table length
+        }
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(fmtSize);
+        header.putShort((short) formatTag);
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(byteRate);
+        header.putShort((short) blockAlign);
+        header.putShort((short) bitsPerSample);
+        if (hasSamplesPerBlock) {
+            header.putShort((short) 2); // cbSize
+            header.putShort((short) samplesPerBlock);
+        } else if (hasFact) {
+            header.putShort((short) 0); // cbSize
+        }
+        if (hasFact) {
+            header.put((byte) 'f').put((byte) 'a').put((byte) 'c').put((byte) 't');
+            header.putInt(4);
+            header.putInt((int) (rf64 ? MAX_RIFF_SIZE : Math.min(sampleCount, MAX_RIFF_SIZE))); // 每个声道的采样数
+        }
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) (rf64 ? MAX_RIFF_SIZE : Math.min(audioDataLen, MAX_RIFF_SIZE)));
+        return header.array();
+    }
+
+    /**
+     * 根据录音配置获取文件头 浮点格式使用 {@link #WAVE_FORMAT_IEEE_FLOAT}
+     *
+     * @param recordConfig 录音配置
+     * @param audioDataLen 音频数据的长度 不包括文件头
+     * @return wavHeader
+     */
+    public static byte[] getWaveFileHeader(IdealRecorder.RecordConfig recordConfig, long audioDataLen) {
+        return getWaveFileHeader(recordConfig, audioDataLen, false);
+    }
+
+    /**
+     * 根据录音配置获取文件头 浮点格式使用 {@link #WAVE_FORMAT_IEEE_FLOAT}
+     *
+     * @param recordConfig 录音配置
+     * @param audioDataLen 音频数据的长度 不包括文件头
+     * @param reserveDs64  是否预留ds64块 超过4GB时为RF64格式
+     * @return wavHeader
+     */
+    public static byte[] getWaveFileHeader(IdealRecorder.RecordConfig recordConfig, long audioDataLen, boolean reserveDs64) {
+        return getWaveFileHeader(recordConfig.isFloat() ? WAVE_FORMAT_IEEE_FLOAT : WAVE_FORMAT_PCM,
+                recordConfig.getSampleRate(), recordConfig.getChannelCount(), recordConfig.getBitsPerSample(),
+                audioDataLen, reserveDs64);
+    }
+
+    /**
+     * 获取文件头的长度
+     *
+     * @param formatTag 编码格式
+     * @return PCM为44字节 IMA ADPCM为60字节 其它格式为58字节
+     */
+    public static int getWaveFileHeaderSize(int formatTag) {
+        return getWaveFileHeaderSize(formatTag, false);
+    }
+
+    /**
+     * 获取文件头的长度
+     *
+     * @param formatTag   编码格式
+     * @param reserveDs64 是否预留ds64块 预留时增加 {@link #DS64_CHUNK_SIZE} 字节
+     */
+    public static int getWaveFileHeaderSize(int formatTag, boolean reserveDs64) {
+        int size = formatTag == WAVE_FORMAT_PCM ? 44 : formatTag == WAVE_FORMAT_IMA_ADPCM ? 60 : 58;
+        return size + (reserveDs64 ? DS64_CHUNK_SIZE : 0);
+    }
 
     /**
      * 根据采样率 通道数 采样位数 获取文件头
@@ -110,6 +305,8 @@ public class PcmToWavUtil {
 
     /**
      * pcm数据增加文件头
+     * <p>
+     * 会把全部数据拷贝到新的数组中 数据较大或者只需要依次读取(例如上传)时使用 {@link WavStream}
      *
      * @param headerArray 文件头数组
      * @param pcmArray    pcm数据数组
@@ -140,30 +337,22 @@ public class PcmToWavUtil {
 
     /**
      * 根据录音的配置信息和pcm数据，获取wav文件数据
+     * <p>
+     * 会把全部数据拷贝到新的数组中 数据较大或者只需要依次读取(例如上传)时使用 {@link WavStream}
      *
      * @param recordConfig 录音配置
      * @param pcmArray     pcm数据
      * @return wav数据
      */
     public static byte[] getWaveFile(IdealRecorder.RecordConfig recordConfig, byte[] pcmArray) {
-        short nChannels;
-        short bSamples;
-        if (recordConfig.getAudioFormat() == AudioFormat.ENCODING_PCM_16BIT) {
-            bSamples = 16;
-        } else {
-            bSamples = 8;
-        }
-
-        if (recordConfig.getChannelConfig() == AudioFormat.CHANNEL_IN_MONO) {
-            nChannels = 1;
-        } else {
-            nChannels = 2;
+        if (pcmArray == null) {
+            return null;
         }
-        return getWaveFile(recordConfig.getSampleRate(), nChannels, bSamples, pcmArray);
+        return addFileHeader(getWaveFileHeader(recordConfig, pcmArray.length), pcmArray);
     }
 
     /**
-     * 将pcm文件转换成wav文件
+     * 将pcm文件转换成wav文件 数据在内核中复制 大量文件见 {@link BatchWavConverter}
      *
      * @param srcConfig  源PCM音频文件的配置信息
      * @param srcPath    源PCM文件的路径
@@ -183,53 +372,120 @@ public class PcmToWavUtil {
             Log.e(TAG, "RecordConfig not set");
             return;
         }
-        File targetFile = new File(targetPath);
+        try {
+            BatchWavConverter.convert(srcConfig, new File(srcPath), new File(targetPath));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-        if (targetFile.exists()) {
-            targetFile.delete();
-        } else {
-            File parentDir = targetFile.getParentFile();
-            if (!parentDir.exists()) {
-                parentDir.mkdirs();
-            }
+
+    /**
+     * 将pcm文件转换成指定编码格式的wav文件
+     *
+     * @param srcConfig  源PCM音频文件的配置信息
+     * @param srcPath    源PCM文件的路径
+     * @param targetPath 生成目标wav文件的路径
+     * @param formatTag  编码格式 {@link #WAVE_FORMAT_PCM}(浮点PCM时为 {@link #WAVE_FORMAT_IEEE_FLOAT}),
+     *                   {@link #WAVE_FORMAT_MULAW},{@link #WAVE_FORMAT_ALAW},{@link #WAVE_FORMAT_IMA_ADPCM}
+     */
+    public static void transferPcmToWav(IdealRecorder.RecordConfig srcConfig, String srcPath, String targetPath, int formatTag) {
+        if (formatTag == WAVE_FORMAT_PCM || formatTag == WAVE_FORMAT_IEEE_FLOAT) {
+            transferPcmToWav(srcConfig, srcPath, targetPath);
+            return;
         }
-        RandomAccessFile randomAccessFile = null;
+        if (TextUtils.isEmpty(srcPath)) {
+            android.util.Log.e(TAG, "pcm src path not set ");
+            return;
+        }
+        if (TextUtils.isEmpty(targetPath)) {
+            android.util.Log.e(TAG, "target path not set");
+            return;
+        }
+        if (srcConfig == null) {
+            Log.e(TAG, "RecordConfig not set");
+            return;
+        }
+        File targetFile = new File(targetPath);
+        File parentDir = targetFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        CompressedAudioWriter writer = new CompressedAudioWriter(new BufferedAudioWriter(), srcConfig, formatTag);
         InputStream inputStream = null;
         try {
             inputStream = new FileInputStream(srcPath);
-            randomAccessFile = new RandomAccessFile(targetFile, "rw");
-            randomAccessFile.setLength(0);
-            byte[] waveFile = getWaveFile(srcConfig, new byte[0]);
-            randomAccessFile.write(waveFile);
+            writer.open(targetFile, null);
             byte[] aar = new byte[1024 * 3];
-            int len = 0;
+            int len;
             while ((len = inputStream.read(aar)) != -1) {
-                randomAccessFile.write(aar, 0, len);
+                writer.write(aar, 0, len);
             }
-            inputStream.close();
-            randomAccessFile.seek(4); // riff chunk size
-            randomAccessFile.writeInt(Integer.reverseBytes((int) (randomAccessFile.length() - 8)));
-            randomAccessFile.seek(40); // data chunk size
-            randomAccessFile.writeInt(Integer.reverseBytes((int) (randomAccessFile.length() - 44)));
-
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            writer.close(null);
         } catch (IOException e) {
             e.printStackTrace();
+            writer.abort();
         } finally {
+            closeQuietly(inputStream);
+        }
+    }
 
-            try {
-                if (randomAccessFile != null) {
-                    randomAccessFile.close();
-                    randomAccessFile = null;
+    /**
+     * 将wav文件转换成pcm文件 G.711 和 IMA ADPCM 解码为16位PCM 其它格式直接复制数据
+     *
+     * @param srcPath    源wav文件的路径
+     * @param targetPath 生成目标pcm文件的路径
+     */
+    public static void transferWavToPcm(String srcPath, String targetPath) {
+        if (TextUtils.isEmpty(srcPath)) {
+            android.util.Log.e(TAG, "wav src path not set ");
+            return;
+        }
+        if (TextUtils.isEmpty(targetPath)) {
+            android.util.Log.e(TAG, "target path not set");
+            return;
+        }
+        File targetFile = new File(targetPath);
+        File parentDir = targetFile.getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        WavReader reader = null;
+        OutputStream outputStream = null;
+        try {
+            reader = new WavReader(new File(srcPath));
+            outputStream = new FileOutputStream(targetFile);
+            int formatTag = reader.getFormatTag();
+            byte[] aar = new byte[1024 * 4];
+            int len;
+            if (formatTag == WAVE_FORMAT_MULAW || formatTag == WAVE_FORMAT_ALAW || formatTag == WAVE_FORMAT_IMA_ADPCM) {
+                short[] samples = new short[aar.length / 2];
+                while ((len = reader.readShorts(samples, 0, samples.length)) != -1) {
+                    PcmCodec.encodeShorts(samples, 0, aar, 0, len, ByteOrder.LITTLE_ENDIAN);
+                    outputStream.write(aar, 0, len * 2);
+                }
+            } else {
+                while ((len = reader.read(aar, 0, aar.length)) != -1) {
+                    outputStream.write(aar, 0, len);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-
-
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(reader);
+            closeQuietly(outputStream);
         }
+    }
 
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 
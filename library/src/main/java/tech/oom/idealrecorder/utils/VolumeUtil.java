@@ -0,0 +1,56 @@
+package tech.oom.idealrecorder.utils;
+
+import java.nio.ShortBuffer;
+
+/**
+ * 音量计算工具类 根据一帧数据的均方值计算音量 单位为分贝 各种格式的数据都按16位的幅度计算
+ */
+public class VolumeUtil {
+
+    public static int calculateVolume(short[] wave) {
+        long v = 0;
+        // 将 buffer 内容取出，进行平方和运算
+        for (int i = 0; i < wave.length; i++) {
+            v += wave[i] * wave[i];
+        }
+        // 平方和除以数据总长度，得到音量大小。
+        double mean = v / (double) wave.length;
+        double volume = 10 * Math.log10(mean);
+        return (int) volume;
+    }
+
+    public static int calculateVolume(byte[] wave) {
+        long v = 0;
+        for (int i = 0; i < wave.length; i++) {
+            // 8位无符号数据转换为16位的幅度 与16位录音的音量保持一致
+            int sample = ((wave[i] & 0xFF) - 128) << 8;
+            v += sample * sample;
+        }
+        double mean = v / (double) wave.length;
+        double volume = 10 * Math.log10(mean);
+        return (int) volume;
+    }
+
+    public static int calculateVolume(float[] wave) {
+        double v = 0;
+        for (int i = 0; i < wave.length; i++) {
+            double sample = wave[i] * 32768.0;
+            v += sample * sample;
+        }
+        double mean = v / wave.length;
+        double volume = 10 * Math.log10(mean);
+        return (int) volume;
+    }
+
+    public static int calculateVolume(ShortBuffer wave) {
+        long v = 0;
+        int length = wave.limit();
+        for (int i = 0; i < length; i++) {
+            short sample = wave.get(i);
+            v += sample * sample;
+        }
+        double mean = v / (double) length;
+        double volume = 10 * Math.log10(mean);
+        return (int) volume;
+    }
+}
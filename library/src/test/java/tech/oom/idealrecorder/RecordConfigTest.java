@@ -0,0 +1,27 @@
+package tech.oom.idealrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 每帧时长只接受采样数为整数的设置
+ */
+public class RecordConfigTest {
+    @Test
+    public void frameDurationMustBeWholeSamples() {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig()
+                .setSampleRate(IdealRecorder.RecordConfig.SAMPLE_RATE_11K_HZ);
+        // 11025Hz 每10毫秒110.25个采样 不生效
+        config.setFrameDuration(IdealRecorder.RecordConfig.FRAME_DURATION_10_MS);
+        assertEquals(IdealRecorder.RecordConfig.FRAME_DURATION_100_MS, config.getFrameDuration());
+        // 每40毫秒441个采样
+        config.setFrameDuration(IdealRecorder.RecordConfig.FRAME_DURATION_40_MS);
+        assertEquals(40, config.getFrameDuration());
+
+        config.setSampleRate(IdealRecorder.RecordConfig.SAMPLE_RATE_16K_HZ).setFrameDuration(1001);
+        assertEquals(40, config.getFrameDuration());
+        config.setFrameDuration(IdealRecorder.RecordConfig.FRAME_DURATION_10_MS);
+        assertEquals(10, config.getFrameDuration());
+    }
+}
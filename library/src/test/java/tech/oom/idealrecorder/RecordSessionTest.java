@@ -0,0 +1,64 @@
+package tech.oom.idealrecorder;
+
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.record.SyntheticPcmSource;
+import tech.oom.idealrecorder.sink.AudioSink;
+
+import static org.junit.Assert.*;
+
+/**
+ * 数据源结束后录音自行停止 之后可以再次开始录音
+ */
+public class RecordSessionTest {
+    @Test(timeout = 10000)
+    public void restartAfterEndOfStream() throws Exception {
+        RecordSession session = new RecordSessionFactory().newSession();
+        session.setPcmSource(new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE).setDurationMillis(100));
+        ClosingSink sink = new ClosingSink();
+        session.addSink(sink);
+
+        assertTrue(session.start());
+        // 录音没有结束时不能重复开始
+        assertFalse(session.start());
+        assertTrue(sink.closes.tryAcquire(5, TimeUnit.SECONDS));
+
+        // 数据源结束后录音自行停止 没有调用stop
+        assertTrue(session.start());
+        assertTrue(sink.closes.tryAcquire(5, TimeUnit.SECONDS));
+        assertEquals(2, sink.opens);
+        assertTrue(sink.bytes > 0);
+    }
+
+    /**
+     * 每次录音结束时关闭
+     */
+    private static class ClosingSink implements AudioSink {
+        private final Semaphore closes = new Semaphore(0);
+        private volatile int opens;
+        private volatile long bytes;
+
+        @Override
+        public void open(IdealRecorder.RecordConfig config) {
+            opens++;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int size, FrameInfo info) {
+            bytes += size;
+        }
+
+        @Override
+        public void close() {
+            closes.release();
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package tech.oom.idealrecorder.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+
+/**
+ * 异步写入在写入卡顿时按照队列策略等待、丢弃或额外分配内存
+ */
+public class AsyncAudioWriterTest {
+    private static final int FRAME_BYTES = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 10000)
+    public void blockPolicyWaitsAndKeepsEveryFrame() throws Exception {
+        File file = folder.newFile();
+        final GatedWriter writer = new GatedWriter();
+        writer.open(file, null);
+        AsyncAudioWriter async = new AsyncAudioWriter(null);
+        async.setQueue(2, AsyncAudioWriter.POLICY_BLOCK);
+        async.start(writer, FRAME_BYTES);
+        // 写入线程卡住时 录音线程在队列满后等待
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sleep(100);
+                writer.resume();
+            }
+        }).start();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(async.offer(frame(i), 0, FRAME_BYTES));
+        }
+        async.finish();
+        writer.close(null);
+
+        assertFrames(read(file), 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        WriteQueueStats stats = async.getStats();
+        assertEquals(10, stats.getQueuedFrames());
+        assertEquals(0, stats.getDroppedFrames());
+        assertEquals(0, stats.getSpilledFrames());
+        assertTrue(stats.getBlockedNanos() > 0);
+        assertFalse(async.isRunning());
+    }
+
+    @Test(timeout = 10000)
+    public void dropOldestKeepsNewestFrames() throws Exception {
+        File file = folder.newFile();
+        GatedWriter writer = new GatedWriter();
+        writer.open(file, null);
+        AsyncAudioWriter async = new AsyncAudioWriter(null);
+        async.setQueue(4, AsyncAudioWriter.POLICY_DROP_OLDEST);
+        async.start(writer, FRAME_BYTES);
+        assertTrue(async.offer(frame(0), 0, FRAME_BYTES));
+        writer.awaitFirstWrite();
+        // 第0帧正在写入 剩余3个数组 之后每一帧都会丢弃队列中最早的帧
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(async.offer(frame(i), 0, FRAME_BYTES));
+        }
+        WriteQueueStats stats = async.getStats();
+        assertEquals(3, stats.getDepth());
+        assertEquals(3, stats.getDroppedFrames());
+        assertEquals(3 * FRAME_BYTES, stats.getDroppedBytes());
+        writer.resume();
+        async.finish();
+        writer.close(null);
+
+        assertFrames(read(file), 0, 4, 5, 6);
+    }
+
+    @Test(timeout = 10000)
+    public void spillKeepsEveryFrameWithoutWaiting() throws Exception {
+        File file = folder.newFile();
+        GatedWriter writer = new GatedWriter();
+        writer.open(file, null);
+        AsyncAudioWriter async = new AsyncAudioWriter(null);
+        async.setQueue(2, AsyncAudioWriter.POLICY_SPILL);
+        async.start(writer, FRAME_BYTES);
+        assertTrue(async.offer(frame(0), 0, FRAME_BYTES));
+        writer.awaitFirstWrite();
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(async.offer(frame(i), 0, FRAME_BYTES));
+        }
+        WriteQueueStats stats = async.getStats();
+        assertEquals(4, stats.getSpilledFrames());
+        assertEquals(5, stats.getHighWaterMark());
+        assertEquals(0, stats.getBlockedNanos());
+        writer.resume();
+        async.finish();
+        writer.close(null);
+
+        assertFrames(read(file), 0, 1, 2, 3, 4, 5);
+        assertEquals(0, async.getStats().getDroppedFrames());
+    }
+
+    @Test(timeout = 10000)
+    public void cancelDiscardsQueuedFrames() throws Exception {
+        File file = folder.newFile();
+        GatedWriter writer = new GatedWriter();
+        writer.open(file, null);
+        final AsyncAudioWriter async = new AsyncAudioWriter(null);
+        async.start(writer, FRAME_BYTES);
+        assertTrue(async.offer(frame(0), 0, FRAME_BYTES));
+        writer.awaitFirstWrite();
+        assertTrue(async.offer(frame(1), 0, FRAME_BYTES));
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                async.cancel();
+            }
+        });
+        canceller.start();
+        // 取消后等待写入线程结束 这时再让写入线程继续
+        while (canceller.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+        writer.resume();
+        canceller.join();
+        // 结束后不再接收数据
+        assertFalse(async.offer(frame(2), 0, FRAME_BYTES));
+        writer.close(null);
+
+        assertFrames(read(file), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void writeFailureStopsAcceptingFrames() throws Exception {
+        File file = folder.newFile();
+        BufferedAudioWriter writer = new BufferedAudioWriter() {
+            @Override
+            public void write(byte[] data, int offset, int size) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        writer.open(file, null);
+        AsyncAudioWriter async = new AsyncAudioWriter(null);
+        async.start(writer, FRAME_BYTES);
+        assertTrue(async.offer(frame(0), 0, FRAME_BYTES));
+        async.finish();
+        assertFalse(async.offer(frame(1), 0, FRAME_BYTES));
+        writer.close(null);
+        assertEquals(0, file.length());
+    }
+
+    private static byte[] frame(int index) {
+        byte[] frame = new byte[FRAME_BYTES];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) index;
+        }
+        return frame;
+    }
+
+    private static void assertFrames(byte[] data, int... indices) {
+        assertEquals(indices.length * FRAME_BYTES, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(indices[i / FRAME_BYTES], data[i]);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 模拟存储卡顿 恢复之前写入线程一直等待
+     */
+    static class GatedWriter extends BufferedAudioWriter {
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final CountDownLatch firstWrite = new CountDownLatch(1);
+
+        void resume() {
+            gate.countDown();
+        }
+
+        void awaitFirstWrite() throws InterruptedException {
+            assertTrue(firstWrite.await(5, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int size) throws IOException {
+            firstWrite.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e.toString());
+            }
+            super.write(data, offset, size);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package tech.oom.idealrecorder.file;
+
+import android.media.AudioFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.random;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+import static tech.oom.idealrecorder.file.TestFiles.write;
+
+/**
+ * 批量转换pcm文件 检查文件头、数据长度和失败时的处理
+ */
+public class BatchWavConverterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void convertsWithFinalHeader() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig()
+                .setSampleRate(22050).setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        byte[] pcm = random(10003, 1);
+        File source = write(folder.newFile("a.pcm"), pcm);
+        File target = new File(folder.getRoot(), "out/sub/a.wav");
+
+        long dataLength = BatchWavConverter.convert(config, source, target);
+
+        // 末尾不完整的采样帧不写入
+        assertEquals(10000, dataLength);
+        assertEquals(44 + 10000, target.length());
+        byte[] wav = read(target);
+        assertArrayEquals(PcmToWavUtil.getWaveFileHeader(config, 10000, false), Arrays.copyOf(wav, 44));
+        assertArrayEquals(Arrays.copyOf(pcm, 10000), Arrays.copyOfRange(wav, 44, wav.length));
+
+        WavReader reader = new WavReader(target);
+        try {
+            assertEquals(22050, reader.getSampleRate());
+            assertEquals(2, reader.getChannels());
+            assertEquals(16, reader.getBitsPerSample());
+            assertEquals(10000, reader.getDataLength());
+            assertEquals(2500, reader.getFrameCount());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void outputDoesNotDependOnThreads() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        List<File> sources = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            sources.add(write(folder.newFile(i + ".pcm"), random(1000 * i + 1, i)));
+        }
+        byte[][] expected = null;
+        for (int threads : new int[]{1, 2, 4, 16}) {
+            File directory = new File(folder.getRoot(), "threads" + threads);
+            BatchWavConverter.Report report = new BatchWavConverter(config).setThreads(threads).convert(sources, directory);
+            assertEquals(9, report.getSucceededCount());
+            assertEquals(0, report.getFailedCount());
+            byte[][] outputs = new byte[9][];
+            long total = 0;
+            for (int i = 0; i < 9; i++) {
+                BatchWavConverter.Result result = report.getResults().get(i);
+                // 结果与传入的顺序一致
+                assertEquals(sources.get(i), result.getSource());
+                assertEquals(new File(directory, i + ".wav"), result.getTarget());
+                assertEquals(BatchWavConverter.STATUS_OK, result.getStatus());
+                assertEquals(1000 * i, result.getDataLength());
+                total += result.getDataLength();
+                outputs[i] = read(result.getTarget());
+            }
+            assertEquals(total, report.getTotalBytes());
+            if (expected == null) {
+                expected = outputs;
+            } else {
+                for (int i = 0; i < 9; i++) {
+                    assertArrayEquals("threads " + threads + " file " + i, expected[i], outputs[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void failedFileDoesNotAffectOthers() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        File good = write(folder.newFile("good.pcm"), random(2000, 3));
+        File missing = new File(folder.getRoot(), "missing.pcm");
+        File directory = folder.newFolder("out");
+        File stale = new File(directory, "missing.wav");
+        write(stale, new byte[10]);
+
+        BatchWavConverter.Report report = new BatchWavConverter(config).convert(Arrays.asList(missing, good), directory);
+
+        assertEquals(1, report.getSucceededCount());
+        assertEquals(1, report.getFailedCount());
+        assertEquals(2000, report.getTotalBytes());
+        BatchWavConverter.Result failed = report.getResults().get(0);
+        assertEquals(BatchWavConverter.STATUS_FAILED, failed.getStatus());
+        assertEquals(-1, failed.getDataLength());
+        assertNotNull(failed.getMessage());
+        // 失败时删除目标文件
+        assertFalse(stale.exists());
+        assertEquals(BatchWavConverter.STATUS_OK, report.getResults().get(1).getStatus());
+        assertEquals(44 + 2000, new File(directory, "good.wav").length());
+    }
+
+    @Test
+    public void emptyBatch() {
+        BatchWavConverter.Report report = new BatchWavConverter(new IdealRecorder.RecordConfig())
+                .convert(new ArrayList<File>(), new ArrayList<File>());
+        assertEquals(0, report.getResults().size());
+        assertEquals(0, report.getTotalBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sourcesAndTargetsMustMatch() {
+        new BatchWavConverter(new IdealRecorder.RecordConfig())
+                .convert(Arrays.asList(new File("a.pcm")), new ArrayList<File>());
+    }
+}
@@ -0,0 +1,195 @@
+package tech.oom.idealrecorder.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.concat;
+import static tech.oom.idealrecorder.file.TestFiles.random;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+
+/**
+ * 缓冲写入在各种写入策略下写入文件的时机 以及关闭时重写文件头
+ */
+public class BufferedAudioWriterTest {
+    private static final byte[] HEADER = {1, 2, 3, 4};
+    private static final byte[] FINAL_HEADER = {5, 6, 7, 8};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void flushesWhenBufferIsFullAndRewritesHeaderOnClose() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(3000, 1);
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.setFlushPolicy(FlushPolicy.onStop(1024));
+        writer.open(file, HEADER);
+        assertTrue(writer.isOpen());
+        try {
+            for (int i = 0; i < data.length; i += 100) {
+                writer.write(data, i, 100);
+                // 只有缓冲区写满时才写入文件
+                assertEquals(HEADER.length + (i + 100) / 1024 * 1024, file.length());
+            }
+            assertEquals(3000, writer.getDataLength());
+        } finally {
+            writer.close(FINAL_HEADER);
+        }
+        assertFalse(writer.isOpen());
+        assertArrayEquals(concat(FINAL_HEADER, data), read(file));
+
+        WriteStats stats = writer.getWriteStats();
+        assertEquals(3000, stats.getSubmittedBytes());
+        assertEquals(HEADER.length + 3000 + FINAL_HEADER.length, stats.getWrittenBytes());
+        assertEquals(3, stats.getFlushCount());
+        assertEquals(0, stats.getForceCount());
+    }
+
+    @Test
+    public void flushesBySize() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(300, 2);
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.setFlushPolicy(FlushPolicy.bySize(256));
+        assertEquals(FlushPolicy.DEFAULT_BUFFER_SIZE, writer.getFlushPolicy().getBufferSize());
+        writer.open(file, null);
+        try {
+            writer.write(data, 0, 100);
+            writer.write(data, 100, 100);
+            assertEquals(0, file.length());
+            writer.write(data, 200, 100);
+            assertEquals(300, file.length());
+        } finally {
+            writer.close(null);
+        }
+        assertArrayEquals(data, read(file));
+    }
+
+    @Test
+    public void flushesByTimeOnNextWrite() throws IOException, InterruptedException {
+        File file = folder.newFile();
+        byte[] data = random(20, 3);
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.setFlushPolicy(FlushPolicy.byTime(50));
+        writer.open(file, HEADER);
+        try {
+            writer.write(data, 0, 10);
+            assertEquals(HEADER.length, file.length());
+            // 不启动额外的线程 超时后的下一次写入时写入文件
+            Thread.sleep(80);
+            assertEquals(HEADER.length, file.length());
+            writer.write(data, 10, 10);
+            assertEquals(HEADER.length + 20, file.length());
+        } finally {
+            writer.close(null);
+        }
+        assertArrayEquals(concat(HEADER, data), read(file));
+    }
+
+    @Test
+    public void largeWritesBypassTheBuffer() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(500, 4);
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.setFlushPolicy(FlushPolicy.onStop(64));
+        writer.open(file, null);
+        try {
+            writer.write(data, 0, 10);
+            writer.write(data, 10, 200);
+            // 先写入缓冲区中的数据 保证顺序
+            assertEquals(210, file.length());
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.position(210).limit(500);
+            writer.write(buffer);
+            assertEquals(500, buffer.position());
+            assertEquals(500, file.length());
+        } finally {
+            writer.close(null);
+        }
+        assertArrayEquals(data, read(file));
+    }
+
+    @Test
+    public void bufferWritesHonourPositionAndLimit() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(100, 5);
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.setFlushPolicy(FlushPolicy.onStop(32));
+        writer.open(file, null);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+            buffer.put(data).flip();
+            buffer.position(5).limit(95);
+            writer.write(buffer);
+            assertEquals(95, buffer.position());
+            assertEquals(95, buffer.limit());
+        } finally {
+            writer.close(null);
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, 5, 95), read(file));
+    }
+
+    @Test
+    public void abortDiscardsBufferedData() throws IOException {
+        File file = folder.newFile();
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.open(file, HEADER);
+        writer.write(random(10, 6), 0, 10);
+        writer.abort();
+        assertFalse(writer.isOpen());
+        assertArrayEquals(HEADER, read(file));
+        // 关闭后的写入被忽略
+        writer.write(new byte[10], 0, 10);
+        writer.close(FINAL_HEADER);
+        assertArrayEquals(HEADER, read(file));
+    }
+
+    @Test
+    public void forceOnFlushSyncsEveryFlush() throws IOException {
+        File file = folder.newFile();
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.setFlushPolicy(FlushPolicy.onStop(16).setForceOnFlush(true));
+        writer.open(file, null);
+        try {
+            byte[] data = random(40, 7);
+            for (int i = 0; i < data.length; i += 4) {
+                writer.write(data, i, 4);
+            }
+        } finally {
+            writer.close(null);
+        }
+        WriteStats stats = writer.getWriteStats();
+        // 两次缓冲区已满 关闭时写入剩余数据并再同步一次
+        assertEquals(3, stats.getFlushCount());
+        assertEquals(4, stats.getForceCount());
+    }
+
+    @Test
+    public void flushPolicyIsCopied() {
+        FlushPolicy policy = FlushPolicy.bySize(128 * 1024).setFlushIntervalMillis(200);
+        assertEquals(128 * 1024, policy.getBufferSize());
+        assertEquals(128 * 1024, policy.getFlushBytes());
+        // 写入阈值不超过缓冲区大小 非法值被修正
+        policy.setFlushBytes(1 << 20);
+        assertEquals(policy.getBufferSize(), policy.getFlushBytes());
+        policy.setFlushIntervalMillis(-1).setBufferSize(0);
+        assertEquals(0, policy.getFlushIntervalMillis());
+        assertEquals(1, policy.getBufferSize());
+
+        BufferedAudioWriter writer = new BufferedAudioWriter();
+        writer.setFlushPolicy(policy);
+        policy.setBufferSize(10);
+        assertEquals(1, writer.getFlushPolicy().getBufferSize());
+        writer.getFlushPolicy().setBufferSize(20);
+        assertEquals(1, writer.getFlushPolicy().getBufferSize());
+        writer.setFlushPolicy(null);
+        assertEquals(FlushPolicy.DEFAULT_BUFFER_SIZE, writer.getFlushPolicy().getBufferSize());
+    }
+}
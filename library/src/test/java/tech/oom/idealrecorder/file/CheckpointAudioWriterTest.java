@@ -0,0 +1,113 @@
+package tech.oom.idealrecorder.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.concat;
+import static tech.oom.idealrecorder.file.TestFiles.random;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+
+/**
+ * 定期重写文件头 异常退出时文件头中的长度与已写入文件的数据一致
+ */
+public class CheckpointAudioWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+
+    @Test
+    public void everyWriteIsCheckpointedWhenIntervalElapsed() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(3000, 1);
+        CheckpointAudioWriter writer = new CheckpointAudioWriter(new BufferedAudioWriter(), config, true, false, 0);
+        writer.open(file, PcmToWavUtil.getWaveFileHeader(config, 0));
+        try {
+            for (int i = 0; i < data.length; i += 1000) {
+                writer.write(data, i, 1000);
+                // 缓冲的数据已经写入文件 文件头中的长度随之更新
+                byte[] header = PcmToWavUtil.getWaveFileHeader(config, i + 1000);
+                assertArrayEquals(concat(header, Arrays.copyOf(data, i + 1000)), read(file));
+            }
+            assertEquals(3, writer.getWriteStats().getCheckpointCount());
+        } finally {
+            writer.close(PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength()));
+        }
+        assertFalse(writer.isOpen());
+    }
+
+    @Test
+    public void noCheckpointBeforeInterval() throws IOException {
+        File file = folder.newFile();
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, 0);
+        CheckpointAudioWriter writer = new CheckpointAudioWriter(new BufferedAudioWriter(), config, true, false, 3600 * 1000);
+        writer.open(file, header);
+        try {
+            writer.write(random(1000, 2), 0, 1000);
+            assertArrayEquals(header, read(file));
+            assertEquals(0, writer.getWriteStats().getCheckpointCount());
+            // 手动重写后重新计时
+            writer.checkpoint(PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength()));
+            assertEquals(header.length + 1000, file.length());
+            assertEquals(1, writer.getWriteStats().getCheckpointCount());
+        } finally {
+            writer.close(null);
+        }
+    }
+
+    @Test
+    public void pcmCheckpointOnlyFlushes() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(500, 3);
+        CheckpointAudioWriter writer = new CheckpointAudioWriter(new BufferedAudioWriter(), config, false, false, 0);
+        writer.open(file, null);
+        try {
+            writer.write(data, 0, data.length);
+            assertArrayEquals(data, read(file));
+        } finally {
+            writer.close(null);
+        }
+    }
+
+    @Test
+    public void reservedDs64HeaderKeepsItsSize() throws IOException {
+        File file = folder.newFile();
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, 0, true);
+        CheckpointAudioWriter writer = new CheckpointAudioWriter(new BufferedAudioWriter(), config, true, true, 0);
+        writer.open(file, header);
+        try {
+            writer.write(random(100, 5), 0, 100);
+            // 重写的文件头同样预留ds64块 不会覆盖已写入的数据
+            assertArrayEquals(PcmToWavUtil.getWaveFileHeader(config, 100, true), read(file, 0, header.length));
+            assertEquals(header.length + 100, file.length());
+        } finally {
+            writer.close(null);
+        }
+    }
+
+    @Test
+    public void mappedCheckpointRewritesHeaderOnly() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(1000, 4);
+        MappedAudioWriter mapped = new MappedAudioWriter();
+        mapped.setExtentSize(4096);
+        CheckpointAudioWriter writer = new CheckpointAudioWriter(mapped, config, true, false, 0);
+        writer.open(file, PcmToWavUtil.getWaveFileHeader(config, 0));
+        writer.write(data, 0, data.length);
+        // 模拟异常退出 文件头中已经是检查点时的长度 末尾是预分配的空白区段
+        writer.abort();
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, 1000);
+        assertArrayEquals(header, read(file, 0, header.length));
+        assertArrayEquals(data, read(file, header.length, data.length));
+        assertEquals(1, mapped.getWriteStats().getCheckpointCount());
+    }
+}
@@ -0,0 +1,202 @@
+package tech.oom.idealrecorder.file;
+
+import android.media.AudioFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.G711;
+import tech.oom.idealrecorder.utils.ImaAdpcm;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.parse;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+
+/**
+ * G.711 和 IMA ADPCM wav文件的文件头、块结构和fact块 以及通过 {@link WavReader} 读回
+ */
+public class CompressedAudioWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void muLawRoundTrip() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        short[] pcm = sine(2, 3001);
+        File file = write(config, PcmToWavUtil.WAVE_FORMAT_MULAW, pcm, 777);
+
+        WavChunks chunks = parse(file);
+        assertEquals(PcmToWavUtil.WAVE_FORMAT_MULAW, chunks.formatTag);
+        assertEquals(2, chunks.channels);
+        assertEquals(8, chunks.bitsPerSample);
+        assertEquals(2, chunks.blockAlign);
+        assertEquals(3001, chunks.factSampleCount);
+        assertEquals(6002, chunks.declaredDataLength);
+        assertEquals(58, chunks.dataOffset);
+        assertEquals(58 + 6002, file.length());
+
+        short[] decoded = decode(file, 3001, 2);
+        for (int i = 0; i < pcm.length; i++) {
+            assertEquals(G711.decodeMuLaw(G711.encodeMuLaw(pcm[i])), decoded[i]);
+        }
+    }
+
+    @Test
+    public void aLawFromEightBit() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setAudioFormat(AudioFormat.ENCODING_PCM_8BIT);
+        byte[] pcm8 = new byte[1000];
+        for (int i = 0; i < pcm8.length; i++) {
+            pcm8[i] = (byte) i;
+        }
+        File file = folder.newFile();
+        CompressedAudioWriter writer = new CompressedAudioWriter(new BufferedAudioWriter(), config, PcmToWavUtil.WAVE_FORMAT_ALAW);
+        writer.open(file, null);
+        writer.write(pcm8, 0, pcm8.length);
+        writer.close(null);
+
+        WavChunks chunks = parse(file);
+        assertEquals(PcmToWavUtil.WAVE_FORMAT_ALAW, chunks.formatTag);
+        assertEquals(1000, chunks.factSampleCount);
+        short[] decoded = decode(file, 1000, 1);
+        for (int i = 0; i < pcm8.length; i++) {
+            short expected = (short) (((pcm8[i] & 0xFF) - 128) << 8);
+            assertEquals(G711.decodeALaw(G711.encodeALaw(expected)), decoded[i]);
+        }
+    }
+
+    @Test
+    public void imaAdpcmBlocksAndFactChunk() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        int blockAlign = ImaAdpcm.getDefaultBlockAlign(16000, 2);
+        int samplesPerBlock = ImaAdpcm.getSamplesPerBlock(blockAlign, 2);
+        int frames = samplesPerBlock * 3 + 17;
+        short[] pcm = sine(2, frames);
+        File file = write(config, PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM, pcm, 1001);
+
+        WavChunks chunks = parse(file);
+        assertEquals(PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM, chunks.formatTag);
+        assertEquals(4, chunks.bitsPerSample);
+        assertEquals(512, chunks.blockAlign);
+        assertEquals(samplesPerBlock, chunks.samplesPerBlock);
+        // 最后不完整的块补齐后写入 fact块记录实际的采样数
+        assertEquals(frames, chunks.factSampleCount);
+        assertEquals(60, chunks.dataOffset);
+        assertEquals(4 * blockAlign, chunks.declaredDataLength);
+        assertEquals(60 + 4 * blockAlign, file.length());
+        byte[] header = read(file, 0, 60);
+        assertEquals(16000 * blockAlign / samplesPerBlock, littleEndianInt(header, 28));
+
+        short[] decoded = decode(file, frames, 2);
+        for (int b = 0; b < 4; b++) {
+            int first = b * samplesPerBlock * 2;
+            // 每个块的第一个采样保存在块头中
+            assertEquals(pcm[first], decoded[first]);
+            assertEquals(pcm[first + 1], decoded[first + 1]);
+        }
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            signal += (double) pcm[i] * pcm[i];
+            noise += (double) (pcm[i] - decoded[i]) * (pcm[i] - decoded[i]);
+        }
+        assertTrue(10 * Math.log10(signal / noise) > 20);
+    }
+
+    @Test
+    public void imaAdpcmCheckpointWritesOnlyCompleteBlocks() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        int blockAlign = ImaAdpcm.getDefaultBlockAlign(16000, 1);
+        int samplesPerBlock = ImaAdpcm.getSamplesPerBlock(blockAlign, 1);
+        short[] pcm = sine(1, samplesPerBlock + 100);
+        File file = folder.newFile();
+        CompressedAudioWriter writer = new CompressedAudioWriter(new BufferedAudioWriter(), config, PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM);
+        writer.open(file, null);
+        writer.write(bytes(pcm), 0, pcm.length * 2);
+        writer.checkpoint(null);
+        assertEquals(pcm.length * 2, writer.getDataLength());
+
+        WavChunks chunks = parse(file);
+        assertEquals(samplesPerBlock, chunks.factSampleCount);
+        assertEquals(blockAlign, chunks.declaredDataLength);
+
+        writer.close(null);
+        assertEquals(samplesPerBlock + 100, parse(file).factSampleCount);
+    }
+
+    @Test
+    public void outputDoesNotDependOnWriteSizes() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        short[] pcm = sine(2, 2500);
+        for (int format : new int[]{PcmToWavUtil.WAVE_FORMAT_MULAW, PcmToWavUtil.WAVE_FORMAT_IMA_ADPCM}) {
+            File whole = write(config, format, pcm, pcm.length * 2);
+            // 奇数的写入长度使采样被拆分到两次写入中
+            File split = write(config, format, pcm, 3);
+            assertArrayEquals(read(whole), read(split));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPcmFormat() {
+        new CompressedAudioWriter(new BufferedAudioWriter(), new IdealRecorder.RecordConfig(), PcmToWavUtil.WAVE_FORMAT_PCM);
+    }
+
+    private static short[] sine(int channels, int frames) {
+        short[] pcm = new short[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < channels; c++) {
+                pcm[i * channels + c] = (short) (16000 * Math.sin(i * 2 * Math.PI * (300 + 200 * c) / 16000));
+            }
+        }
+        return pcm;
+    }
+
+    private static byte[] bytes(short[] pcm) {
+        byte[] data = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            data[2 * i] = (byte) pcm[i];
+            data[2 * i + 1] = (byte) (pcm[i] >> 8);
+        }
+        return data;
+    }
+
+    private File write(IdealRecorder.RecordConfig config, int formatTag, short[] pcm, int writeSize) throws IOException {
+        byte[] data = bytes(pcm);
+        File file = folder.newFile();
+        CompressedAudioWriter writer = new CompressedAudioWriter(new BufferedAudioWriter(), config, formatTag);
+        writer.open(file, null);
+        for (int offset = 0; offset < data.length; offset += writeSize) {
+            writer.write(data, offset, Math.min(writeSize, data.length - offset));
+        }
+        assertEquals(data.length, writer.getDataLength());
+        writer.close(null);
+        return file;
+    }
+
+    private static short[] decode(File file, int frames, int channels) throws IOException {
+        WavReader reader = new WavReader(file);
+        try {
+            assertEquals(frames, reader.getFrameCount());
+            short[] decoded = new short[frames * channels + 10];
+            int total = 0;
+            int n;
+            while ((n = reader.readShorts(decoded, total, Math.min(333, decoded.length - total))) > 0) {
+                total += n;
+            }
+            assertEquals(frames * channels, total);
+            return Arrays.copyOf(decoded, total);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static int littleEndianInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | data[offset + 3] << 24;
+    }
+}
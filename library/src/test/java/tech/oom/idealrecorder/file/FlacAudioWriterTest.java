@@ -0,0 +1,471 @@
+package tech.oom.idealrecorder.file;
+
+import android.media.AudioFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import tech.oom.idealrecorder.IdealRecorder;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+
+/**
+ * FLAC编码的往返测试 由测试中独立实现的解码器校验帧头CRC-8、帧CRC-16和 STREAMINFO 中的MD5，
+ * 并确认输出与编码线程数无关
+ */
+public class FlacAudioWriterTest {
+    private static final int BLOCK_SIZE = 1152;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mono16BitRoundTrip() throws Exception {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        byte[] pcm = pcm16(signal(1, 10000, 1), 1);
+
+        Decoded decoded = decode(encode(config, pcm, 0, pcm.length));
+
+        assertEquals(1, decoded.channels);
+        assertEquals(16, decoded.bitsPerSample);
+        assertEquals(16000, decoded.sampleRate);
+        assertEquals(10000, decoded.totalSamples);
+        assertEquals((10000 + BLOCK_SIZE - 1) / BLOCK_SIZE, decoded.frames);
+        assertArrayEquals(pcm, decoded.pcm);
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(pcm), decoded.md5);
+        assertArrayEquals(decoded.md5, decoded.computedMd5);
+        assertEquals(decoded.minFrameSizeSeen, decoded.minFrameSize);
+        assertEquals(decoded.maxFrameSizeSeen, decoded.maxFrameSize);
+    }
+
+    @Test
+    public void stereo16BitRoundTrip() throws Exception {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig()
+                .setSampleRate(44100).setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        // 两个声道高度相关时编码器会选择 left/side、right/side 或 mid/side
+        byte[] pcm = pcm16(signal(2, 20001, 2), 2);
+
+        Decoded decoded = decode(encode(config, pcm, 0, 4099));
+
+        assertEquals(2, decoded.channels);
+        assertEquals(20001, decoded.totalSamples);
+        assertTrue(decoded.decorrelatedFrames > 0);
+        assertArrayEquals(pcm, decoded.pcm);
+        assertArrayEquals(decoded.md5, decoded.computedMd5);
+    }
+
+    @Test
+    public void unsigned8BitRoundTrip() throws Exception {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig()
+                .setAudioFormat(AudioFormat.ENCODING_PCM_8BIT).setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        int[] samples = signal(2, 5000, 3);
+        byte[] pcm = new byte[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            pcm[i] = (byte) ((samples[i] >> 8) + 128);
+        }
+
+        Decoded decoded = decode(encode(config, pcm, 0, 333));
+
+        assertEquals(8, decoded.bitsPerSample);
+        assertArrayEquals(pcm, decoded.pcm);
+        // MD5按有符号的8位数据计算
+        byte[] signed = new byte[pcm.length];
+        for (int i = 0; i < pcm.length; i++) {
+            signed[i] = (byte) (pcm[i] ^ 0x80);
+        }
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(signed), decoded.md5);
+    }
+
+    @Test
+    public void silenceAndWastedBits() throws Exception {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        int[] samples = new int[6000];
+        Random random = new Random(4);
+        for (int i = 3000; i < samples.length; i++) {
+            // 8位数据放大到16位 低8位全为0
+            samples[i] = (random.nextInt(256) - 128) << 8;
+        }
+        byte[] pcm = pcm16(samples, 1);
+
+        Decoded decoded = decode(encode(config, pcm, 0, pcm.length));
+
+        assertArrayEquals(pcm, decoded.pcm);
+        assertTrue(decoded.constantSubframes > 0);
+        assertTrue(decoded.wastedBitSubframes > 0);
+    }
+
+    @Test
+    public void outputDoesNotDependOnThreadsOrWriteSizes() throws Exception {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        byte[] pcm = pcm16(signal(2, 30000, 5), 2);
+        byte[] expected = encode(config, pcm, 0, pcm.length);
+        for (int threads : new int[]{1, 2, 4}) {
+            // 奇数的写入长度使采样被拆分到两次写入中
+            assertArrayEquals("threads " + threads, expected, encode(config, pcm, threads, 1001));
+        }
+        assertArrayEquals(pcm, decode(expected).pcm);
+    }
+
+    @Test
+    public void partialSampleAtEndIsDropped() throws Exception {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        byte[] pcm = pcm16(signal(1, 2000, 6), 1);
+        byte[] withPartial = Arrays.copyOf(pcm, pcm.length + 1);
+
+        Decoded decoded = decode(encode(config, withPartial, 0, withPartial.length));
+
+        assertEquals(2000, decoded.totalSamples);
+        assertArrayEquals(pcm, decoded.pcm);
+        assertArrayEquals(decoded.md5, decoded.computedMd5);
+    }
+
+    /**
+     * 正弦波加噪声 后面的声道与第一个声道相关
+     */
+    private static int[] signal(int channels, int frames, long seed) {
+        Random random = new Random(seed);
+        int[] samples = new int[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            int base = (int) (12000 * Math.sin(i * 0.031)) + random.nextInt(400) - 200;
+            for (int c = 0; c < channels; c++) {
+                samples[i * channels + c] = Math.max(-32768, Math.min(32767, base + c * (random.nextInt(64) - 32)));
+            }
+        }
+        return samples;
+    }
+
+    private static byte[] pcm16(int[] samples, int channels) {
+        byte[] pcm = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            pcm[2 * i] = (byte) samples[i];
+            pcm[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return pcm;
+    }
+
+    /**
+     * @param writeSize 每次写入的字节数 为0时一次写入
+     */
+    private byte[] encode(IdealRecorder.RecordConfig config, byte[] pcm, int threads, int writeSize) throws IOException {
+        File file = folder.newFile();
+        FlacAudioWriter writer = new FlacAudioWriter(new BufferedAudioWriter(), config, BLOCK_SIZE, threads);
+        writer.open(file, null);
+        for (int offset = 0; offset < pcm.length; offset += writeSize) {
+            writer.write(pcm, offset, Math.min(writeSize, pcm.length - offset));
+        }
+        assertEquals(pcm.length, writer.getDataLength());
+        writer.close(null);
+        return read(file);
+    }
+
+    private static Decoded decode(byte[] flac) throws Exception {
+        return new Decoder(flac).decode();
+    }
+
+    static final class Decoded {
+        int channels;
+        int bitsPerSample;
+        int sampleRate;
+        long totalSamples;
+        int minFrameSize;
+        int maxFrameSize;
+        byte[] md5;
+        byte[] computedMd5;
+        byte[] pcm;
+        int frames;
+        int minFrameSizeSeen = Integer.MAX_VALUE;
+        int maxFrameSizeSeen;
+        int decorrelatedFrames;
+        int constantSubframes;
+        int wastedBitSubframes;
+    }
+
+    /**
+     * 按FLAC格式规范实现的最小解码器 只用于测试 每个帧都校验CRC
+     */
+    private static final class Decoder {
+        private final byte[] data;
+        private long bitPosition;
+        private final Decoded result = new Decoded();
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        Decoded decode() throws Exception {
+            assertEquals("fLaC", new String(data, 0, 4, "US-ASCII"));
+            bitPosition = 32;
+            boolean last = false;
+            while (!last) {
+                last = read(1) == 1;
+                int type = read(7);
+                int length = read(24);
+                long end = bitPosition + length * 8L;
+                if (type == 0) {
+                    read(16);
+                    read(16);
+                    result.minFrameSize = read(24);
+                    result.maxFrameSize = read(24);
+                    result.sampleRate = read(20);
+                    result.channels = read(3) + 1;
+                    result.bitsPerSample = read(5) + 1;
+                    result.totalSamples = ((long) read(4) << 32) | (read(32) & 0xFFFFFFFFL);
+                    result.md5 = Arrays.copyOfRange(data, (int) (bitPosition / 8), (int) (bitPosition / 8) + 16);
+                }
+                bitPosition = end;
+            }
+            int bytesPerSample = result.bitsPerSample / 8;
+            byte[] pcm = new byte[(int) result.totalSamples * result.channels * bytesPerSample];
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            int offset = 0;
+            while (bitPosition / 8 < data.length) {
+                int frameStart = (int) (bitPosition / 8);
+                int[][] samples = readFrame();
+                int frameLength = (int) (bitPosition / 8) - frameStart;
+                if (frameLength == 0) {
+                    break;
+                }
+                result.minFrameSizeSeen = Math.min(result.minFrameSizeSeen, frameLength);
+                result.maxFrameSizeSeen = Math.max(result.maxFrameSizeSeen, frameLength);
+                for (int i = 0; i < samples[0].length; i++) {
+                    for (int c = 0; c < result.channels; c++) {
+                        int s = samples[c][i];
+                        if (bytesPerSample == 1) {
+                            md5.update((byte) s);
+                            pcm[offset++] = (byte) (s + 128);
+                        } else {
+                            md5.update(new byte[]{(byte) s, (byte) (s >> 8)});
+                            pcm[offset++] = (byte) s;
+                            pcm[offset++] = (byte) (s >> 8);
+                        }
+                    }
+                }
+                result.frames++;
+            }
+            assertEquals(pcm.length, offset);
+            result.pcm = pcm;
+            result.computedMd5 = md5.digest();
+            return result;
+        }
+
+        private int[][] readFrame() {
+            int start = (int) (bitPosition / 8);
+            assertEquals("sync code", 0x3FFE, read(14));
+            assertEquals(0, read(1));
+            assertEquals("fixed block size", 0, read(1));
+            int blockSizeCode = read(4);
+            int sampleRateCode = read(4);
+            int assignment = read(4);
+            read(3);
+            assertEquals(0, read(1));
+            readUtf8();
+            int blockSize;
+            if (blockSizeCode == 1) {
+                blockSize = 192;
+            } else if (blockSizeCode >= 2 && blockSizeCode <= 5) {
+                blockSize = 576 << (blockSizeCode - 2);
+            } else if (blockSizeCode == 6) {
+                blockSize = read(8) + 1;
+            } else if (blockSizeCode == 7) {
+                blockSize = read(16) + 1;
+            } else {
+                blockSize = 256 << (blockSizeCode - 8);
+            }
+            if (sampleRateCode == 12) {
+                read(8);
+            } else if (sampleRateCode == 13 || sampleRateCode == 14) {
+                read(16);
+            }
+            int headerEnd = (int) (bitPosition / 8);
+            assertEquals("frame header crc-8", crc8(data, start, headerEnd - start), read(8));
+
+            int channels = assignment < 8 ? assignment + 1 : 2;
+            assertEquals(result.channels, channels);
+            int bps = result.bitsPerSample;
+            int[][] samples = new int[channels][];
+            for (int c = 0; c < channels; c++) {
+                boolean side = (assignment == 8 && c == 1) || (assignment == 9 && c == 0) || (assignment == 10 && c == 1);
+                samples[c] = readSubframe(blockSize, side ? bps + 1 : bps);
+            }
+            if (assignment >= 8) {
+                result.decorrelatedFrames++;
+            }
+            for (int i = 0; i < blockSize; i++) {
+                if (assignment == 8) {
+                    samples[1][i] = samples[0][i] - samples[1][i];
+                } else if (assignment == 9) {
+                    samples[0][i] += samples[1][i];
+                } else if (assignment == 10) {
+                    int mid = samples[0][i] << 1 | (samples[1][i] & 1);
+                    int side = samples[1][i];
+                    samples[0][i] = (mid + side) >> 1;
+                    samples[1][i] = (mid - side) >> 1;
+                }
+            }
+            bitPosition = (bitPosition + 7) / 8 * 8;
+            int end = (int) (bitPosition / 8);
+            assertEquals("frame crc-16", crc16(data, start, end - start), read(16));
+            return samples;
+        }
+
+        private int[] readSubframe(int n, int bps) {
+            assertEquals(0, read(1));
+            int type = read(6);
+            int wasted = 0;
+            if (read(1) == 1) {
+                wasted = 1;
+                while (read(1) == 0) {
+                    wasted++;
+                }
+                result.wastedBitSubframes++;
+            }
+            bps -= wasted;
+            int[] x = new int[n];
+            if (type == 0) {
+                Arrays.fill(x, readSigned(bps));
+                result.constantSubframes++;
+            } else if (type == 1) {
+                for (int i = 0; i < n; i++) {
+                    x[i] = readSigned(bps);
+                }
+            } else if (type >= 8 && type <= 12) {
+                int order = type - 8;
+                for (int i = 0; i < order; i++) {
+                    x[i] = readSigned(bps);
+                }
+                readResidual(x, n, order);
+                for (int i = order; i < n; i++) {
+                    switch (order) {
+                        case 1:
+                            x[i] += x[i - 1];
+                            break;
+                        case 2:
+                            x[i] += 2 * x[i - 1] - x[i - 2];
+                            break;
+                        case 3:
+                            x[i] += 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                            break;
+                        case 4:
+                            x[i] += 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } else if (type >= 32) {
+                int order = (type & 31) + 1;
+                for (int i = 0; i < order; i++) {
+                    x[i] = readSigned(bps);
+                }
+                int precision = read(4) + 1;
+                int shift = readSigned(5);
+                int[] coefficients = new int[order];
+                for (int i = 0; i < order; i++) {
+                    coefficients[i] = readSigned(precision);
+                }
+                readResidual(x, n, order);
+                for (int i = order; i < n; i++) {
+                    long sum = 0;
+                    for (int j = 0; j < order; j++) {
+                        sum += (long) coefficients[j] * x[i - 1 - j];
+                    }
+                    x[i] += (int) (sum >> shift);
+                }
+            } else {
+                fail("reserved subframe type " + type);
+            }
+            if (wasted > 0) {
+                for (int i = 0; i < n; i++) {
+                    x[i] <<= wasted;
+                }
+            }
+            return x;
+        }
+
+        private void readResidual(int[] x, int n, int order) {
+            int method = read(2);
+            assertTrue(method <= 1);
+            int parameterBits = method == 0 ? 4 : 5;
+            int escape = (1 << parameterBits) - 1;
+            int partitionOrder = read(4);
+            int partitions = 1 << partitionOrder;
+            int i = order;
+            for (int p = 0; p < partitions; p++) {
+                int k = read(parameterBits);
+                int end = (p + 1) * (n >> partitionOrder);
+                if (k == escape) {
+                    int bits = read(5);
+                    for (; i < end; i++) {
+                        x[i] = bits == 0 ? 0 : readSigned(bits);
+                    }
+                    continue;
+                }
+                for (; i < end; i++) {
+                    int q = 0;
+                    while (read(1) == 0) {
+                        q++;
+                    }
+                    long u = ((long) q << k) | (k == 0 ? 0 : read(k) & 0xFFFFFFFFL);
+                    x[i] = (int) ((u >>> 1) ^ -(u & 1));
+                }
+            }
+        }
+
+        private void readUtf8() {
+            int first = read(8);
+            int continuation = Integer.numberOfLeadingZeros(~(first << 24));
+            for (int i = 1; i < continuation; i++) {
+                assertEquals(2, read(2));
+                read(6);
+            }
+        }
+
+        private int read(int n) {
+            long value = 0;
+            for (int i = 0; i < n; i++) {
+                int bit = (data[(int) (bitPosition >>> 3)] >> (7 - (int) (bitPosition & 7))) & 1;
+                value = (value << 1) | bit;
+                bitPosition++;
+            }
+            return (int) value;
+        }
+
+        private int readSigned(int n) {
+            int value = read(n);
+            return n == 32 ? value : (value << (32 - n)) >> (32 - n);
+        }
+    }
+
+    /**
+     * 逐位计算 与编码器中的查表实现相互独立
+     */
+    private static int crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,183 @@
+package tech.oom.idealrecorder.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.concat;
+import static tech.oom.idealrecorder.file.TestFiles.random;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+
+/**
+ * 内存映射写入跨越多个区段 关闭时截断预分配的部分并重写文件头
+ */
+public class MappedAudioWriterTest {
+    private static final int EXTENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesAcrossExtentsAndTruncatesOnClose() throws IOException {
+        File file = folder.newFile();
+        byte[] header = random(44, 1);
+        byte[] finalHeader = random(44, 2);
+        byte[] data = random(10000, 3);
+        MappedAudioWriter writer = new MappedAudioWriter();
+        writer.setExtentSize(EXTENT_SIZE);
+        writer.open(file, header);
+        assertTrue(writer.isOpen());
+        try {
+            // 每次写入的长度与区段大小不对齐 数据会跨越区段的边界
+            for (int i = 0; i < data.length; i += 333) {
+                writer.write(data, i, Math.min(333, data.length - i));
+            }
+            // 写入时文件已经按区段预分配
+            assertEquals(44 + 3 * EXTENT_SIZE, file.length());
+            assertEquals(10000, writer.getDataLength());
+        } finally {
+            writer.close(finalHeader);
+        }
+        assertFalse(writer.isOpen());
+        assertArrayEquals(concat(finalHeader, data), read(file));
+
+        WriteStats stats = writer.getWriteStats();
+        assertEquals(10000, stats.getSubmittedBytes());
+        assertEquals(1, stats.getFlushCount());
+        // 两次写入文件头 三次映射区段
+        assertEquals(5, stats.getWriteCount());
+    }
+
+    @Test
+    public void bufferWritesHonourPositionAndLimit() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(9000, 4);
+        MappedAudioWriter writer = new MappedAudioWriter();
+        writer.setExtentSize(EXTENT_SIZE);
+        writer.open(file, null);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+            buffer.put(data).flip();
+            buffer.position(100).limit(8900);
+            writer.write(buffer);
+            assertEquals(8900, buffer.position());
+            assertEquals(8900, buffer.limit());
+            writer.force();
+        } finally {
+            writer.close(null);
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 8900), read(file));
+        assertEquals(1, writer.getWriteStats().getForceCount());
+    }
+
+    @Test
+    public void extentSizeHasLowerBound() {
+        MappedAudioWriter writer = new MappedAudioWriter();
+        assertEquals(MappedAudioWriter.DEFAULT_EXTENT_SIZE, writer.getExtentSize());
+        writer.setExtentSize(100);
+        assertEquals(4096, writer.getExtentSize());
+        assertEquals(MappedAudioWriter.DEFAULT_MAX_LIVE_EXTENTS, writer.getMaxLiveExtents());
+        writer.setMaxLiveExtents(0);
+        assertEquals(1, writer.getMaxLiveExtents());
+    }
+
+    @Test
+    public void abortIgnoresLaterWrites() throws IOException {
+        File file = folder.newFile();
+        MappedAudioWriter writer = new MappedAudioWriter();
+        writer.setExtentSize(EXTENT_SIZE);
+        writer.open(file, random(44, 5));
+        writer.write(random(100, 6), 0, 100);
+        writer.abort();
+        assertFalse(writer.isOpen());
+        writer.write(new byte[10], 0, 10);
+        writer.close(null);
+        assertEquals(100, writer.getDataLength());
+    }
+
+    @Test
+    public void mapFailureFallsBackToBufferedWrite() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(10000, 8);
+        MappedAudioWriter writer = new MappedAudioWriter() {
+            private int maps;
+
+            @Override
+            MappedByteBuffer mapExtent(long position, int size) throws IOException {
+                if (++maps > 1) {
+                    throw new IOException("Map failed", new OutOfMemoryError("Map failed"));
+                }
+                return super.mapExtent(position, size);
+            }
+        };
+        writer.setExtentSize(EXTENT_SIZE);
+        writer.open(file, random(44, 9));
+        try {
+            for (int i = 0; i < data.length; i += 333) {
+                writer.write(data, i, Math.min(333, data.length - i));
+            }
+            // 第一个区段之后的数据直接写入文件 预分配的部分已经截掉
+            assertTrue(writer.isFallenBack());
+            assertTrue(writer.isOpen());
+            writer.checkpoint(random(44, 10));
+            assertEquals(44 + 10000, file.length());
+        } finally {
+            writer.close(random(44, 2));
+        }
+        assertFalse(writer.isOpen());
+        assertArrayEquals(concat(random(44, 2), data), read(file));
+        assertEquals(10000, writer.getDataLength());
+        assertEquals(10000, writer.getWriteStats().getSubmittedBytes());
+    }
+
+    @Test
+    public void liveExtentsAreCapped() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(3 * EXTENT_SIZE, 11);
+        final List<MappedByteBuffer> held = new ArrayList<>();
+        MappedAudioWriter writer = new MappedAudioWriter() {
+            @Override
+            MappedByteBuffer mapExtent(long position, int size) throws IOException {
+                // 保留引用 区段不会被回收
+                MappedByteBuffer extent = super.mapExtent(position, size);
+                held.add(extent);
+                return extent;
+            }
+        };
+        writer.setExtentSize(EXTENT_SIZE);
+        writer.setMaxLiveExtents(2);
+        writer.open(file, null);
+        writer.write(data, 0, data.length);
+        writer.close(null);
+
+        assertEquals(2, held.size());
+        assertTrue(writer.isFallenBack());
+        assertArrayEquals(data, read(file));
+    }
+
+    @Test(timeout = 10000)
+    public void asyncWriterDrainsIntoMappedFile() throws IOException {
+        File file = folder.newFile();
+        byte[] data = random(64 * 320, 7);
+        MappedAudioWriter writer = new MappedAudioWriter();
+        writer.setExtentSize(EXTENT_SIZE);
+        writer.open(file, null);
+        AsyncAudioWriter async = new AsyncAudioWriter(null);
+        async.start(writer, 320);
+        for (int i = 0; i < data.length; i += 320) {
+            assertTrue(async.offer(data, i, 320));
+        }
+        async.finish();
+        writer.close(null);
+        assertArrayEquals(data, read(file));
+    }
+}
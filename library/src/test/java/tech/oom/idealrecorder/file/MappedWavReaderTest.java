@@ -0,0 +1,287 @@
+package tech.oom.idealrecorder.file;
+
+import android.media.AudioFormat;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.LARGE_DATA_LENGTH;
+import static tech.oom.idealrecorder.file.TestFiles.chunk;
+import static tech.oom.idealrecorder.file.TestFiles.concat;
+import static tech.oom.idealrecorder.file.TestFiles.fmt;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+import static tech.oom.idealrecorder.file.TestFiles.riff;
+import static tech.oom.idealrecorder.file.TestFiles.write;
+
+/**
+ * 内存映射的随机读取 包括长度为奇数的块、超过4GB的RF64文件和导出片段
+ */
+public class MappedWavReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void chunksAndSamples() throws IOException {
+        byte[] data = stereo16(1000);
+        byte[] list = {'I', 'N', 'F', 'O', 'x'};
+        File file = write(folder.newFile(), riff("RIFF",
+                chunk("LIST", list),
+                chunk("fmt ", fmt(1, 2, 16000, 4, 16)),
+                chunk("data", data),
+                chunk("id3 ", new byte[]{7, 8, 9})));
+
+        MappedWavReader reader = new MappedWavReader(file);
+        try {
+            assertFalse(reader.isRf64());
+            assertEquals(2, reader.getChannels());
+            assertEquals(16000, reader.getSampleRate());
+            assertEquals(4, reader.getBlockAlign());
+            assertEquals(4000, reader.getDataLength());
+            assertEquals(1000, reader.getFrameCount());
+            assertEquals(62, reader.getDurationMillis());
+
+            assertEquals(4, reader.getChunks().size());
+            assertEquals("LIST", reader.getChunks().get(0).getId());
+            assertEquals("fmt ", reader.getChunks().get(1).getId());
+            assertEquals("data", reader.getChunks().get(2).getId());
+            MappedWavReader.Chunk id3 = reader.findChunk("id3 ");
+            assertEquals(reader.getChunks().get(3), id3);
+            // RIFF(12) + LIST(8+5+1) + fmt(8+16) + data(8+4000) + id3块头(8)
+            assertEquals(12 + 14 + 24 + 4008 + 8, id3.getOffset());
+            assertArrayEquals(new byte[]{7, 8, 9}, reader.readChunk(id3));
+            assertArrayEquals(list, reader.readChunk(reader.findChunk("LIST")));
+            assertNull(reader.findChunk("cue "));
+            assertEquals(58, reader.getDataOffset());
+            assertEquals(58 + 999 * 4, reader.getFrameOffset(999));
+
+            assertEquals(left(0), reader.getShort(0, 0));
+            assertEquals(right(999), reader.getShort(999, 1));
+            ShortBuffer shorts = reader.shorts(10, 20);
+            assertEquals(40, shorts.remaining());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(left(10 + i), shorts.get(2 * i));
+                assertEquals(right(10 + i), shorts.get(2 * i + 1));
+            }
+            ByteBuffer bytes = reader.bytes(998, 2);
+            assertEquals(ByteOrder.LITTLE_ENDIAN, bytes.order());
+            assertEquals(8, bytes.remaining());
+            assertEquals(0, reader.bytes(1000, 0).remaining());
+            try {
+                bytes.put(0, (byte) 0);
+                fail();
+            } catch (ReadOnlyBufferException expected) {
+                // 视图是只读的
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void outOfRangeAndWrongFormat() throws IOException {
+        File file = write(folder.newFile(), riff("RIFF", chunk("fmt ", fmt(1, 2, 16000, 4, 16)), chunk("data", stereo16(10))));
+        MappedWavReader reader = new MappedWavReader(file);
+        try {
+            try {
+                reader.getShort(10, 0);
+                fail();
+            } catch (IndexOutOfBoundsException expected) {
+                // 超出帧数
+            }
+            try {
+                reader.getShort(0, 2);
+                fail();
+            } catch (IndexOutOfBoundsException expected) {
+                // 超出声道数
+            }
+            try {
+                reader.shorts(5, 6);
+                fail();
+            } catch (IndexOutOfBoundsException expected) {
+                // 超出帧数
+            }
+            try {
+                reader.getFloat(0, 0);
+                fail();
+            } catch (IllegalStateException expected) {
+                // 不是浮点文件
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void floatSamples() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(400).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 100; i++) {
+            data.putFloat(i / 100f - 0.5f);
+        }
+        File file = write(folder.newFile(), riff("RIFF", chunk("fmt ", fmt(PcmToWavUtil.WAVE_FORMAT_IEEE_FLOAT, 1, 48000, 4, 32)),
+                chunk("data", data.array())));
+        MappedWavReader reader = new MappedWavReader(file);
+        try {
+            assertEquals(100, reader.getFrameCount());
+            assertEquals(-0.5f, reader.getFloat(0, 0), 0f);
+            assertEquals(0.49f, reader.getFloat(99, 0), 0f);
+            FloatBuffer floats = reader.floats(50, 50);
+            for (int i = 0; i < 50; i++) {
+                assertEquals((50 + i) / 100f - 0.5f, floats.get(i), 0f);
+            }
+            try {
+                reader.shorts(0, 1);
+                fail();
+            } catch (IllegalStateException expected) {
+                // 不是16位整数文件
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void exportClip() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        byte[] data = stereo16(1000);
+        File file = write(folder.newFile(), riff("RIFF", chunk("fmt ", fmt(1, 2, 16000, 4, 16)), chunk("data", data),
+                chunk("LIST", new byte[]{1})));
+        MappedWavReader reader = new MappedWavReader(file);
+        try {
+            File clip = new File(folder.getRoot(), "clips/clip.wav");
+            assertEquals(400, reader.exportClip(100, 100, clip));
+            byte[] expected = concat(PcmToWavUtil.getWaveFileHeader(config, 400, false), Arrays.copyOfRange(data, 400, 800));
+            assertArrayEquals(expected, read(clip));
+
+            // 超出结尾时截取到结尾 只复制data块中的数据
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(40, reader.exportClip(990, 100, Channels.newChannel(out)));
+            expected = concat(PcmToWavUtil.getWaveFileHeader(config, 40, false), Arrays.copyOfRange(data, 3960, 4000));
+            assertArrayEquals(expected, out.toByteArray());
+
+            WavReader clipReader = new WavReader(clip);
+            try {
+                assertEquals(100, clipReader.getFrameCount());
+                short[] samples = new short[200];
+                assertEquals(200, clipReader.readShorts(samples, 0, 200));
+                assertEquals(left(100), samples[0]);
+                assertEquals(right(199), samples[199]);
+            } finally {
+                clipReader.close();
+            }
+            try {
+                reader.exportClip(1001, 1, clip);
+                fail();
+            } catch (IndexOutOfBoundsException expected2) {
+                // 开始的帧超出结尾
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void muLawClipKeepsFactChunk() throws IOException {
+        byte[] data = new byte[300];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        File file = write(folder.newFile(), PcmToWavUtil.getCompressedWaveFileHeader(PcmToWavUtil.WAVE_FORMAT_MULAW, 8000, 1, 1, 300, 300), data);
+        MappedWavReader reader = new MappedWavReader(file);
+        try {
+            assertEquals(300, reader.getFrameCount());
+            File clip = folder.newFile();
+            assertEquals(50, reader.exportClip(200, 50, clip));
+            byte[] expected = concat(PcmToWavUtil.getCompressedWaveFileHeader(PcmToWavUtil.WAVE_FORMAT_MULAW, 8000, 1, 1, 50, 50),
+                    Arrays.copyOfRange(data, 200, 250));
+            assertArrayEquals(expected, read(clip));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rf64PastFourGigabytes() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, LARGE_DATA_LENGTH, true);
+        File file = folder.newFile("large.wav");
+        Assume.assumeTrue(file.getUsableSpace() > 2 * LARGE_DATA_LENGTH);
+        long lastFrame = LARGE_DATA_LENGTH / 4 - 1;
+        // 第一段映射的结尾 每段映射为1GB
+        long boundaryFrame = (1L << 30) / 4 - 1;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(header);
+            raf.setLength(header.length + LARGE_DATA_LENGTH);
+            raf.seek(header.length + boundaryFrame * 4);
+            raf.write(new byte[]{1, 0, 2, 0, 3, 0, 4, 0});
+            raf.seek(header.length + lastFrame * 4);
+            raf.write(new byte[]{(byte) 0xFF, 0x7F, 0x00, (byte) 0x80});
+        } finally {
+            raf.close();
+        }
+
+        MappedWavReader reader = new MappedWavReader(file);
+        try {
+            assertTrue(reader.isRf64());
+            assertEquals(80, reader.getDataOffset());
+            assertEquals(LARGE_DATA_LENGTH, reader.getDataLength());
+            assertEquals(LARGE_DATA_LENGTH / 4, reader.getFrameCount());
+            assertEquals(Short.MAX_VALUE, reader.getShort(lastFrame, 0));
+            assertEquals(Short.MIN_VALUE, reader.getShort(lastFrame, 1));
+            // 跨越两段映射的视图
+            ShortBuffer shorts = reader.shorts(boundaryFrame, 2);
+            assertEquals(1, shorts.get(0));
+            assertEquals(2, shorts.get(1));
+            assertEquals(3, shorts.get(2));
+            assertEquals(4, shorts.get(3));
+            assertEquals("ds64", reader.getChunks().get(0).getId());
+
+            File clip = folder.newFile();
+            assertEquals(8, reader.exportClip(lastFrame - 1, 10, clip));
+            byte[] expected = concat(PcmToWavUtil.getWaveFileHeader(config, 8, false),
+                    new byte[]{0, 0, 0, 0, (byte) 0xFF, 0x7F, 0x00, (byte) 0x80});
+            assertArrayEquals(expected, read(clip));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonWavFile() throws IOException {
+        new MappedWavReader(write(folder.newFile(), new byte[100]));
+    }
+
+    private static short left(int frame) {
+        return (short) (frame * 31 - 15000);
+    }
+
+    private static short right(int frame) {
+        return (short) -(frame * 17);
+    }
+
+    private static byte[] stereo16(int frames) {
+        ByteBuffer data = ByteBuffer.allocate(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            data.putShort(left(i)).putShort(right(i));
+        }
+        return data.array();
+    }
+}
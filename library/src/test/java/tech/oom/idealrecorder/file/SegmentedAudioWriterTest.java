@@ -0,0 +1,130 @@
+package tech.oom.idealrecorder.file;
+
+import android.media.AudioFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.concat;
+import static tech.oom.idealrecorder.file.TestFiles.random;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+
+/**
+ * 分段写入在分段边界处拆分数据 各分段的采样范围连续 拼接后与原始数据一致
+ */
+public class SegmentedAudioWriterTest {
+    private static final int HEADER_SIZE = 44;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig()
+            .setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+    private final List<String> paths = new ArrayList<>();
+    private final List<long[]> ranges = new ArrayList<>();
+
+    private final AudioFileListener listener = new AudioFileListener() {
+        @Override
+        public void onFailure(String reason) {
+        }
+
+        @Override
+        public void onSuccess(String savePath) {
+        }
+
+        @Override
+        public void onSegmentComplete(String path, long startSample, long endSample) {
+            paths.add(path);
+            ranges.add(new long[]{startSample, endSample});
+        }
+    };
+
+    @Test
+    public void writesSplitAtSegmentBoundaries() throws IOException {
+        File target = new File(folder.getRoot(), "rec.wav");
+        byte[] data = random(2500, 1);
+        SegmentedAudioWriter writer = new SegmentedAudioWriter(new BufferedAudioWriter(), target, config,
+                true, false, 1000, listener);
+        writer.open(target, PcmToWavUtil.getWaveFileHeader(config, 0));
+        // 每次写入600字节 第二次写入跨越第一个分段的边界
+        for (int i = 0; i < data.length; i += 600) {
+            writer.write(data, i, Math.min(600, data.length - i));
+        }
+        assertEquals(500, writer.getDataLength());
+        assertEquals(writer.getSegmentFile(3), writer.getCurrentFile());
+        writer.close(PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength()));
+
+        assertFalse(writer.isOpen());
+        assertFalse(target.exists());
+        assertEquals(Arrays.asList(segment(1, ".wav"), segment(2, ".wav"), segment(3, ".wav")), paths);
+        // 立体声16位 每帧4字节
+        assertArrayEquals(new long[]{0, 250}, ranges.get(0));
+        assertArrayEquals(new long[]{250, 500}, ranges.get(1));
+        assertArrayEquals(new long[]{500, 625}, ranges.get(2));
+        byte[] joined = new byte[0];
+        for (int i = 1; i <= 3; i++) {
+            byte[] segment = read(writer.getSegmentFile(i));
+            long length = segment.length - HEADER_SIZE;
+            assertArrayEquals(PcmToWavUtil.getWaveFileHeader(config, length), Arrays.copyOf(segment, HEADER_SIZE));
+            joined = concat(joined, Arrays.copyOfRange(segment, HEADER_SIZE, segment.length));
+        }
+        assertArrayEquals(data, joined);
+        assertEquals(data.length, writer.getWriteStats().getSubmittedBytes());
+    }
+
+    @Test
+    public void noEmptySegmentAtExactBoundary() throws IOException {
+        File target = new File(folder.getRoot(), "rec.pcm");
+        byte[] data = random(2000, 2);
+        SegmentedAudioWriter writer = new SegmentedAudioWriter(new BufferedAudioWriter(), target, config,
+                false, false, 1000, listener);
+        writer.open(target, null);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        writer.write(buffer);
+        assertEquals(data.length, buffer.position());
+        assertEquals(data.length, buffer.limit());
+        // 录音恰好在分段边界结束 下一个分段还没有创建
+        assertNull(writer.getCurrentFile());
+        assertEquals(0, writer.getDataLength());
+        writer.close(null);
+
+        assertEquals(Arrays.asList(segment(1, ".pcm"), segment(2, ".pcm")), paths);
+        assertFalse(writer.getSegmentFile(3).exists());
+        assertEquals(writer.getSegmentFile(2), writer.getLastFile());
+        assertArrayEquals(Arrays.copyOf(data, 1000), read(writer.getSegmentFile(1)));
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 2000), read(writer.getSegmentFile(2)));
+    }
+
+    @Test
+    public void abortKeepsCompletedSegments() throws IOException {
+        File target = new File(folder.getRoot(), "rec");
+        SegmentedAudioWriter writer = new SegmentedAudioWriter(new BufferedAudioWriter(), target, config,
+                false, false, 1000, listener);
+        writer.open(target, null);
+        writer.write(random(1500, 3), 0, 1500);
+        writer.abort();
+
+        // 没有扩展名时序号加在文件名末尾
+        assertEquals(new File(folder.getRoot(), "rec_0001"), writer.getSegmentFile(1));
+        assertEquals(1, paths.size());
+        assertEquals(1000, writer.getSegmentFile(1).length());
+        assertTrue(writer.getSegmentFile(2).exists());
+        assertFalse(writer.isOpen());
+    }
+
+    private String segment(int index, String suffix) {
+        return new File(folder.getRoot(), String.format("rec_%04d", index) + suffix).getPath();
+    }
+}
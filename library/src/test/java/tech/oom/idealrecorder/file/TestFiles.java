@@ -0,0 +1,114 @@
+package tech.oom.idealrecorder.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * 文件相关测试共用的数据生成、文件读写和wav块结构的构造方法
+ */
+final class TestFiles {
+    /**
+     * 超过4GB的数据长度 用于RF64相关的测试
+     */
+    static final long LARGE_DATA_LENGTH = 5000000000L;
+
+    private TestFiles() {
+    }
+
+    /**
+     * 固定种子的随机数据 每次运行结果相同
+     */
+    static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, data, offset, part.length);
+            offset += part.length;
+        }
+        return data;
+    }
+
+    /**
+     * 依次写入各部分数据 文件已存在时覆盖
+     */
+    static File write(File file, byte[]... parts) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (byte[] part : parts) {
+                out.write(part);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    static byte[] read(File file) throws IOException {
+        return read(file, 0, (int) file.length());
+    }
+
+    static byte[] read(File file, long position, int length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[length];
+            raf.seek(position);
+            raf.readFully(data);
+            return data;
+        } finally {
+            raf.close();
+        }
+    }
+
+    static WavChunks parse(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return WavChunks.parse(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    static byte[] fmt(int formatTag, int channels, int sampleRate, int blockAlign, int bitsPerSample) {
+        ByteBuffer fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        fmt.putShort((short) formatTag).putShort((short) channels).putInt(sampleRate).putInt(sampleRate * blockAlign)
+                .putShort((short) blockAlign).putShort((short) bitsPerSample);
+        return fmt.array();
+    }
+
+    /**
+     * 块头、数据和长度为奇数时的填充字节
+     */
+    static byte[] chunk(String id, byte[] body) {
+        ByteBuffer chunk = ByteBuffer.allocate(8 + body.length + (body.length & 1)).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.put(id.getBytes()).putInt(body.length).put(body);
+        return chunk.array();
+    }
+
+    static byte[] riff(String id, byte[]... chunks) {
+        int size = 4;
+        for (byte[] chunk : chunks) {
+            size += chunk.length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(id.getBytes()).putInt(size).put("WAVE".getBytes());
+        byte[][] parts = new byte[chunks.length + 1][];
+        parts[0] = header.array();
+        System.arraycopy(chunks, 0, parts, 1, chunks.length);
+        return concat(parts);
+    }
+}
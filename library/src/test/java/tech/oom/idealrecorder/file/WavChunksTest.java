@@ -0,0 +1,148 @@
+package tech.oom.idealrecorder.file;
+
+import android.media.AudioFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.chunk;
+import static tech.oom.idealrecorder.file.TestFiles.fmt;
+import static tech.oom.idealrecorder.file.TestFiles.parse;
+import static tech.oom.idealrecorder.file.TestFiles.riff;
+import static tech.oom.idealrecorder.file.TestFiles.write;
+
+/**
+ * wav和RF64文件头的块结构 包括长度为奇数的块和预留的ds64块
+ */
+public class WavChunksTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void oddSizedChunksArePadded() throws IOException {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7};
+        File file = write(folder.newFile(), riff("RIFF",
+                chunk("LIST", new byte[]{'I', 'N', 'F', 'O', 'x'}),
+                chunk("fmt ", fmt(1, 1, 8000, 1, 8)),
+                chunk("data", data),
+                chunk("id3 ", new byte[]{9, 9, 9})));
+
+        WavChunks chunks = parse(file);
+
+        assertEquals(1, chunks.channels);
+        assertEquals(8, chunks.bitsPerSample);
+        // RIFF(12) + LIST(8+5+1) + fmt(8+16) + data块头(8)
+        assertEquals(58, chunks.dataOffset);
+        assertEquals(7, chunks.declaredDataLength);
+        assertEquals(7, chunks.getDataLength(file.length()));
+        assertEquals(3, chunks.list.size());
+        assertEquals("LIST", chunks.list.get(0).getId());
+        assertEquals(5, chunks.list.get(0).getSize());
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            chunks.parseTrailing(raf.getChannel(), 7);
+        } finally {
+            raf.close();
+        }
+        assertEquals(4, chunks.list.size());
+        assertEquals("id3 ", chunks.list.get(3).getId());
+        // data块之后的填充字节不属于下一个块
+        assertEquals(58 + 8 + 8, chunks.list.get(3).getOffset());
+        assertEquals(3, chunks.list.get(3).getSize());
+    }
+
+    @Test
+    public void trailingGarbageIsIgnored() throws IOException {
+        File file = write(folder.newFile(), riff("RIFF", chunk("fmt ", fmt(1, 1, 8000, 2, 16)), chunk("data", new byte[4])),
+                new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+        WavChunks chunks = parse(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            chunks.parseTrailing(raf.getChannel(), 4);
+        } finally {
+            raf.close();
+        }
+        assertEquals(2, chunks.list.size());
+    }
+
+    @Test
+    public void extensibleFormatUsesSubFormat() throws IOException {
+        ByteBuffer fmt = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        fmt.put(fmt(WavChunks.WAVE_FORMAT_EXTENSIBLE, 2, 48000, 8, 32));
+        fmt.putShort((short) 22).putShort((short) 32).putInt(3);
+        fmt.putShort((short) PcmToWavUtil.WAVE_FORMAT_IEEE_FLOAT);
+        File file = write(folder.newFile(), riff("RIFF", chunk("fmt ", fmt.array()), chunk("data", new byte[16])));
+
+        WavChunks chunks = parse(file);
+
+        assertEquals(PcmToWavUtil.WAVE_FORMAT_IEEE_FLOAT, chunks.formatTag);
+        assertEquals(2, chunks.getFrameCount(16));
+    }
+
+    @Test
+    public void reservedDs64IsJunkBelowFourGigabytes() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, 1000, true);
+        assertEquals(PcmToWavUtil.getWaveFileHeaderSize(PcmToWavUtil.WAVE_FORMAT_PCM, true), header.length);
+        assertEquals(44 + PcmToWavUtil.DS64_CHUNK_SIZE, header.length);
+        File file = write(folder.newFile(), header, new byte[1000]);
+
+        WavChunks chunks = parse(file);
+
+        assertFalse(chunks.rf64);
+        assertEquals(20, chunks.ds64Position);
+        assertEquals(header.length, chunks.dataOffset);
+        assertEquals(1000, chunks.declaredDataLength);
+        assertEquals(header.length - 8 + 1000, chunks.riffSize);
+        assertEquals("JUNK", chunks.list.get(0).getId());
+    }
+
+    @Test
+    public void rf64HeaderRecordsLengthsInDs64() throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        long dataLength = 5000000000L;
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, dataLength, true);
+        ByteBuffer fields = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RF64", new String(header, 0, 4, "US-ASCII"));
+        assertEquals(0xFFFFFFFF, fields.getInt(4));
+        assertEquals("ds64", new String(header, 12, 4, "US-ASCII"));
+        assertEquals(0xFFFFFFFF, fields.getInt(header.length - 4));
+        // 只写入文件头 数据的实际长度小于ds64块中的长度
+        File file = write(folder.newFile(), header);
+
+        WavChunks chunks = parse(file);
+
+        assertTrue(chunks.rf64);
+        assertEquals(header.length - 8 + dataLength, chunks.riffSize);
+        assertEquals(dataLength, chunks.declaredDataLength);
+        assertEquals(0, chunks.getDataLength(file.length()));
+        assertEquals(dataLength, chunks.getDataLength(header.length + dataLength));
+        assertEquals(dataLength / 4, chunks.getFrameCount(dataLength));
+    }
+
+    @Test
+    public void unknownLengthUsesFileLength() throws IOException {
+        byte[] header = PcmToWavUtil.getWaveFileHeader(new IdealRecorder.RecordConfig(), PcmToWavUtil.MAX_RIFF_SIZE, false);
+        File file = write(folder.newFile(), header, new byte[101]);
+        assertEquals(100, parse(file).getDataLength(file.length()));
+    }
+
+    @Test
+    public void notAWavFile() throws IOException {
+        assertNull(parse(write(folder.newFile(), new byte[]{'R', 'I', 'F', 'F', 0, 0, 0, 0, 'A', 'V', 'I', ' '})));
+        assertNull(parse(write(folder.newFile(), riff("RIFF", chunk("data", new byte[4])))));
+        assertNull(parse(write(folder.newFile(), new byte[3])));
+    }
+}
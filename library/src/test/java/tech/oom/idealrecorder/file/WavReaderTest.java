@@ -0,0 +1,180 @@
+package tech.oom.idealrecorder.file;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.LARGE_DATA_LENGTH;
+import static tech.oom.idealrecorder.file.TestFiles.chunk;
+import static tech.oom.idealrecorder.file.TestFiles.fmt;
+import static tech.oom.idealrecorder.file.TestFiles.riff;
+import static tech.oom.idealrecorder.file.TestFiles.write;
+
+/**
+ * 读取wav和超过4GB的RF64文件
+ * <p>
+ * 超过4GB的文件通过 {@link RandomAccessFile#setLength(long)} 创建 在支持稀疏文件的文件系统上不占用实际空间
+ */
+public class WavReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+
+    @Test
+    public void readsShortsAndSeeks() throws IOException {
+        short[] samples = new short[1000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i * 37 - 16000);
+        }
+        ByteBuffer data = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        data.asShortBuffer().put(samples);
+        File file = write(folder.newFile(), PcmToWavUtil.getWaveFileHeader(config, samples.length * 2, false), data.array());
+
+        WavReader reader = new WavReader(file);
+        try {
+            assertEquals(PcmToWavUtil.WAVE_FORMAT_PCM, reader.getFormatTag());
+            assertEquals(16000, reader.getSampleRate());
+            assertEquals(1, reader.getChannels());
+            assertEquals(44, reader.getDataOffset());
+            assertEquals(1000, reader.getFrameCount());
+            short[] read = new short[samples.length];
+            assertEquals(samples.length, reader.readShorts(read, 0, read.length));
+            assertArrayEquals(samples, read);
+            assertEquals(-1, reader.readShorts(read, 0, 1));
+
+            reader.seekToFrame(990);
+            assertEquals(10, reader.readShorts(read, 0, read.length));
+            assertEquals(samples[990], read[0]);
+            assertEquals(1000, reader.getFramePosition());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void oddLengthDataWithTrailingChunk() throws IOException {
+        byte[] data = {10, 20, 30, 40, 50};
+        File file = write(folder.newFile(), riff("RIFF",
+                chunk("fmt ", fmt(1, 1, 8000, 1, 8)),
+                chunk("data", data),
+                chunk("LIST", new byte[]{'I', 'N', 'F', 'O'})));
+
+        WavReader reader = new WavReader(file);
+        try {
+            assertEquals(5, reader.getDataLength());
+            byte[] read = new byte[16];
+            assertEquals(5, reader.read(read, 0, read.length));
+            assertEquals(50, read[4]);
+            assertEquals(-1, reader.read(read, 0, read.length));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readsRf64PastFourGigabytes() throws IOException {
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, LARGE_DATA_LENGTH, true);
+        File file = folder.newFile("large.wav");
+        Assume.assumeTrue(file.getUsableSpace() > 2 * LARGE_DATA_LENGTH);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(header);
+            raf.setLength(header.length + LARGE_DATA_LENGTH);
+            raf.seek(header.length + LARGE_DATA_LENGTH - 4);
+            raf.write(new byte[]{1, 0, 2, 0});
+        } finally {
+            raf.close();
+        }
+
+        WavReader reader = new WavReader(file);
+        try {
+            assertTrue(reader.isRf64());
+            assertEquals(LARGE_DATA_LENGTH, reader.getDataLength());
+            assertEquals(LARGE_DATA_LENGTH / 2, reader.getFrameCount());
+            assertEquals(LARGE_DATA_LENGTH / 2 * 1000 / 16000, reader.getDurationMillis());
+            reader.seekToFrame(reader.getFrameCount() - 2);
+            short[] read = new short[4];
+            assertEquals(2, reader.readShorts(read, 0, read.length));
+            assertEquals(1, read[0]);
+            assertEquals(2, read[1]);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void recoveryWritesRf64PastFourGigabytes() throws IOException {
+        // 预留了ds64块的文件在录音过程中异常退出 文件头中的长度仍为0
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, 0, true);
+        File file = folder.newFile("crashed.wav");
+        Assume.assumeTrue(file.getUsableSpace() > 2 * LARGE_DATA_LENGTH);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(header);
+            // 最后一个采样不为0 不会被当作预分配的空白区段 之后是不完整的采样
+            raf.seek(header.length + LARGE_DATA_LENGTH - 2);
+            raf.write(new byte[]{3, 0, 7});
+        } finally {
+            raf.close();
+        }
+
+        WavRecovery.Result result = WavRecovery.repairWav(file);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        assertEquals(LARGE_DATA_LENGTH, result.getDataLength());
+        assertEquals(header.length + LARGE_DATA_LENGTH, file.length());
+        WavReader reader = new WavReader(file);
+        try {
+            assertTrue(reader.isRf64());
+            assertEquals(LARGE_DATA_LENGTH, reader.getDataLength());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void withoutDs64RecoveryStopsAtFourGigabytes() throws IOException {
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, 0, false);
+        File file = folder.newFile("plain.wav");
+        Assume.assumeTrue(file.getUsableSpace() > 2 * LARGE_DATA_LENGTH);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(header);
+            raf.seek(header.length + LARGE_DATA_LENGTH - 2);
+            raf.write(new byte[]{3, 0});
+        } finally {
+            raf.close();
+        }
+
+        WavRecovery.Result result = WavRecovery.repairWav(file);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        // 32位长度能记录的最大值 按采样对齐
+        assertEquals(PcmToWavUtil.MAX_RIFF_SIZE + 8 - header.length - 1, result.getDataLength());
+        WavReader reader = new WavReader(file);
+        try {
+            assertFalse(reader.isRf64());
+            assertEquals(result.getDataLength(), reader.getDataLength());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonWavFile() throws IOException {
+        new WavReader(write(folder.newFile(), new byte[64]));
+    }
+
+}
@@ -0,0 +1,194 @@
+package tech.oom.idealrecorder.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+import static tech.oom.idealrecorder.file.TestFiles.write;
+
+/**
+ * 修复被截断的文件和内存映射写入预分配的末尾
+ */
+public class WavRecoveryTest {
+    private static final int HEADER_SIZE = 44;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+
+    @Test
+    public void completeFileIsUnchanged() throws IOException {
+        byte[] data = pcm(1000);
+        File file = writeWav("complete.wav", PcmToWavUtil.getWaveFileHeader(config, data.length), data);
+        byte[] before = read(file);
+
+        WavRecovery.Result result = WavRecovery.repairWav(file);
+
+        assertEquals(WavRecovery.STATUS_OK, result.getStatus());
+        assertEquals(data.length, result.getDataLength());
+        assertArrayEquals(before, read(file));
+    }
+
+    @Test
+    public void trailingChunkAfterDataMeansComplete() throws IOException {
+        byte[] data = pcm(1000);
+        byte[] list = {'L', 'I', 'S', 'T', 4, 0, 0, 0, 'I', 'N', 'F', 'O'};
+        File file = writeWav("list.wav", PcmToWavUtil.getWaveFileHeader(config, data.length), data, list);
+        byte[] before = read(file);
+
+        assertEquals(WavRecovery.STATUS_OK, WavRecovery.repairWav(file).getStatus());
+        assertArrayEquals(before, read(file));
+    }
+
+    @Test
+    public void truncatedFileGetsActualLength() throws IOException {
+        // 打开时写入的文件头长度为0 进程在写入一个采样的一半时退出
+        byte[] data = pcm(1001);
+        File file = writeWav("truncated.wav", PcmToWavUtil.getWaveFileHeader(config, 0), data);
+
+        WavRecovery.Result result = WavRecovery.repairWav(file);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        assertEquals(0, result.getOriginalDataLength());
+        assertEquals(1000, result.getDataLength());
+        assertEquals(HEADER_SIZE + 1000, file.length());
+        assertHeader(file, 1000);
+        assertArrayEquals(Arrays.copyOf(data, 1000), Arrays.copyOfRange(read(file), HEADER_SIZE, HEADER_SIZE + 1000));
+    }
+
+    @Test
+    public void preallocatedTailIsRemoved() throws IOException {
+        File file = folder.newFile("mapped.wav");
+        MappedAudioWriter writer = new MappedAudioWriter();
+        writer.setExtentSize(64 * 1024);
+        writer.open(file, PcmToWavUtil.getWaveFileHeader(config, 0));
+        byte[] checkpointed = pcm(10000);
+        writer.write(checkpointed, 0, checkpointed.length);
+        writer.checkpoint(PcmToWavUtil.getWaveFileHeader(config, writer.getDataLength()));
+        // 检查点之后写入的数据已经在映射的内存中 没有记录在文件头中
+        byte[] unrecorded = pcm(3000);
+        writer.write(unrecorded, 0, unrecorded.length);
+        writer.abort();
+        assertTrue(file.length() > HEADER_SIZE + 13000);
+
+        WavRecovery.Result result = WavRecovery.repairWav(file);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        assertEquals(10000, result.getOriginalDataLength());
+        assertEquals(13000, result.getDataLength());
+        assertEquals(HEADER_SIZE + 13000, file.length());
+        assertHeader(file, 13000);
+    }
+
+    @Test
+    public void silenceAfterCheckpointIsKept() throws IOException {
+        // 不是内存映射写入的文件 检查点之后的0是录音中的静音
+        byte[] data = pcm(2000);
+        File file = writeWav("zeros.wav", PcmToWavUtil.getWaveFileHeader(config, data.length), data, new byte[5001]);
+
+        WavRecovery.Result result = WavRecovery.repairWav(file);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        assertEquals(7000, result.getDataLength());
+        assertEquals(HEADER_SIZE + 7000, file.length());
+        assertHeader(file, 7000);
+    }
+
+    @Test
+    public void preallocatedPcmTailIsRemoved() throws IOException {
+        File file = folder.newFile("mapped.pcm");
+        MappedAudioWriter writer = new MappedAudioWriter();
+        writer.setExtentSize(4096);
+        writer.open(file, null);
+        byte[] data = pcm(5001);
+        writer.write(data, 0, data.length);
+        writer.abort();
+        assertEquals(2 * 4096, file.length());
+
+        WavRecovery.Result result = WavRecovery.repairPcm(file, 2);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        assertEquals(5002, file.length());
+        assertArrayEquals(data, Arrays.copyOf(read(file), data.length));
+        assertEquals(WavRecovery.STATUS_OK, WavRecovery.repairPcm(file, 2).getStatus());
+    }
+
+    @Test
+    public void rf64HeaderBelowFourGigabytesBecomesRiff() throws IOException {
+        byte[] data = pcm(400);
+        byte[] header = PcmToWavUtil.getWaveFileHeader(config, 0, true);
+        File file = writeWav("reserved.wav", header, data);
+
+        WavRecovery.Result result = WavRecovery.repairWav(file);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        assertEquals(400, result.getDataLength());
+        WavReader reader = new WavReader(file);
+        try {
+            assertFalse(reader.isRf64());
+            assertEquals(400, reader.getDataLength());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void pcmPartialSampleIsTruncated() throws IOException {
+        File file = writeWav("raw.pcm", new byte[0], pcm(999));
+
+        WavRecovery.Result result = WavRecovery.repairPcm(file, 2);
+
+        assertEquals(WavRecovery.STATUS_REPAIRED, result.getStatus());
+        assertEquals(998, file.length());
+        assertEquals(WavRecovery.STATUS_OK, WavRecovery.repairPcm(file, 2).getStatus());
+    }
+
+    @Test
+    public void scanRepairsWavAndPcmFiles() throws IOException {
+        writeWav("a.wav", PcmToWavUtil.getWaveFileHeader(config, 0), pcm(100));
+        writeWav("b.pcm", new byte[0], pcm(101));
+        writeWav("c.txt", new byte[0], pcm(101));
+        writeWav("d.wav", new byte[0], new byte[]{1, 2, 3});
+
+        List<WavRecovery.Result> results = WavRecovery.scan(folder.getRoot());
+
+        assertEquals(3, results.size());
+        assertEquals(WavRecovery.STATUS_REPAIRED, results.get(0).getStatus());
+        assertEquals(WavRecovery.STATUS_REPAIRED, results.get(1).getStatus());
+        assertEquals(WavRecovery.STATUS_FAILED, results.get(2).getStatus());
+    }
+
+    private void assertHeader(File file, long dataLength) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(read(file), 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(HEADER_SIZE - 8 + dataLength, header.getInt(4) & 0xFFFFFFFFL);
+        assertEquals(dataLength, header.getInt(40) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 不含0的数据 与预分配的空白区段区分
+     */
+    private static byte[] pcm(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 255 + 1);
+        }
+        return data;
+    }
+
+    private File writeWav(String name, byte[]... parts) throws IOException {
+        return write(folder.newFile(name), parts);
+    }
+}
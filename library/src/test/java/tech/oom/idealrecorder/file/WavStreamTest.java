@@ -0,0 +1,256 @@
+package tech.oom.idealrecorder.file;
+
+import android.media.AudioFormat;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.sink.MemoryAudioSink;
+import tech.oom.idealrecorder.utils.PcmToWavUtil;
+
+import static org.junit.Assert.*;
+import static tech.oom.idealrecorder.file.TestFiles.LARGE_DATA_LENGTH;
+import static tech.oom.idealrecorder.file.TestFiles.concat;
+import static tech.oom.idealrecorder.file.TestFiles.random;
+import static tech.oom.idealrecorder.file.TestFiles.read;
+import static tech.oom.idealrecorder.file.TestFiles.write;
+
+/**
+ * wav文件流式视图的文件头、长度和各种读取方式 读出的内容与拼接后的wav文件一致
+ */
+public class WavStreamTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig()
+            .setSampleRate(44100).setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+
+    @Test
+    public void arrayHeaderAndLength() throws IOException {
+        byte[] pcm = random(10000, 1);
+        WavStream stream = WavStream.of(config, pcm, 100, 8000);
+
+        assertEquals(44, stream.getHeaderLength());
+        assertEquals(8000, stream.getDataLength());
+        assertEquals(8044, stream.getLength());
+        byte[] expected = concat(PcmToWavUtil.getWaveFileHeader(config, 8000, false), Arrays.copyOfRange(pcm, 100, 8100));
+        assertArrayEquals(expected, readAll(stream, 777));
+        assertEquals(-1, stream.read());
+        assertArrayEquals(Arrays.copyOfRange(pcm, 100, 8100), stream.toPcmByteArray());
+    }
+
+    @Test
+    public void chunkListSkipsUnusedChunks() throws IOException {
+        byte[] pcm = random(10000, 2);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < 10000; i += 3000) {
+            chunks.add(Arrays.copyOfRange(pcm, i, i + 3000));
+        }
+        chunks.add(new byte[3000]);
+        WavStream stream = WavStream.of(config, chunks, 10000);
+
+        assertEquals(10044, stream.getLength());
+        assertArrayEquals(concat(PcmToWavUtil.getWaveFileHeader(config, 10000, false), pcm), readAll(stream, 4096));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkListTooShort() {
+        WavStream.of(config, Arrays.asList(new byte[10], new byte[10]), 21);
+    }
+
+    @Test
+    public void fileDropsPartialFrame() throws IOException {
+        byte[] pcm = random(10003, 3);
+        File file = write(folder.newFile(), pcm);
+        WavStream stream = WavStream.of(config, file);
+        try {
+            assertEquals(10000, stream.getDataLength());
+            byte[] expected = concat(PcmToWavUtil.getWaveFileHeader(config, 10000, false), Arrays.copyOf(pcm, 10000));
+            assertArrayEquals(expected, readAll(stream, 333));
+            assertArrayEquals(Arrays.copyOf(pcm, 10000), stream.toPcmByteArray());
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void channelReadsAndWriteTo() throws IOException {
+        byte[] pcm = random(20000, 4);
+        byte[] expected = concat(PcmToWavUtil.getWaveFileHeader(config, 20000, false), pcm);
+        for (WavStream stream : streams(pcm)) {
+            try {
+                // 小缓冲区读取 跨越文件头和数据的边界
+                ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                while (stream.read(buffer) > 0) {
+                    buffer.flip();
+                    byte[] part = new byte[buffer.remaining()];
+                    buffer.get(part);
+                    out.write(part);
+                    buffer.clear();
+                }
+                assertArrayEquals(expected, out.toByteArray());
+
+                // 从中间位置写出剩余的数据到文件通道
+                stream.reset();
+                assertEquals(1000, stream.skip(1000));
+                File target = folder.newFile();
+                FileChannel channel = new FileOutputStream(target).getChannel();
+                try {
+                    assertEquals(expected.length - 1000, stream.writeTo(channel));
+                } finally {
+                    channel.close();
+                }
+                assertArrayEquals(Arrays.copyOfRange(expected, 1000, expected.length), read(target));
+
+                // 写出到非文件通道和输出流
+                stream.reset();
+                ByteArrayOutputStream viaChannel = new ByteArrayOutputStream();
+                assertEquals(expected.length, stream.writeTo(Channels.newChannel(viaChannel)));
+                assertArrayEquals(expected, viaChannel.toByteArray());
+                stream.reset();
+                ByteArrayOutputStream viaStream = new ByteArrayOutputStream();
+                assertEquals(expected.length, stream.writeTo(viaStream));
+                assertArrayEquals(expected, viaStream.toByteArray());
+                assertEquals(expected.length, stream.getPosition());
+                assertEquals(0, stream.writeTo(viaStream));
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    @Test
+    public void markResetAndSkip() throws IOException {
+        byte[] pcm = random(5000, 5);
+        byte[] expected = concat(PcmToWavUtil.getWaveFileHeader(config, 5000, false), pcm);
+        for (WavStream stream : streams(pcm)) {
+            try {
+                assertTrue(stream.markSupported());
+                assertEquals(expected.length, stream.available());
+                assertEquals(expected[0] & 0xFF, stream.read());
+                assertEquals(2999, stream.skip(2999));
+                stream.mark(0);
+                byte[] first = new byte[100];
+                // 一次读取不超过当前段的结尾
+                for (int n = 0; n < 100; ) {
+                    n += stream.read(first, n, 100 - n);
+                }
+                assertArrayEquals(Arrays.copyOfRange(expected, 3000, 3100), first);
+                stream.reset();
+                assertEquals(3000, stream.getPosition());
+                // 跳过负数时不移动
+                stream.skip(-1);
+                assertEquals(3000, stream.getPosition());
+                assertEquals(expected.length - 3000, stream.skip(Long.MAX_VALUE));
+                assertEquals(-1, stream.read(first, 0, 100));
+                assertEquals(0, stream.available());
+                // 从结尾回到前面的段
+                stream.reset();
+                assertEquals(expected[3000] & 0xFF, stream.read());
+            } finally {
+                stream.close();
+            }
+            assertFalse(stream.isOpen());
+            try {
+                stream.read();
+                fail();
+            } catch (ClosedChannelException expectedException) {
+                // 关闭后不能读取
+            }
+        }
+    }
+
+    @Test
+    public void emptyData() throws IOException {
+        WavStream stream = WavStream.of(config, new byte[0]);
+        assertEquals(44, stream.getLength());
+        assertArrayEquals(PcmToWavUtil.getWaveFileHeader(config, 0, false), readAll(stream, 10));
+    }
+
+    @Test
+    public void largeFileUsesRf64Header() throws IOException {
+        File file = folder.newFile();
+        Assume.assumeTrue(file.getUsableSpace() > 2 * LARGE_DATA_LENGTH);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(LARGE_DATA_LENGTH + 1);
+        } finally {
+            raf.close();
+        }
+        WavStream stream = WavStream.of(config, file);
+        try {
+            assertEquals(80, stream.getHeaderLength());
+            assertEquals(LARGE_DATA_LENGTH, stream.getDataLength());
+            assertEquals(LARGE_DATA_LENGTH + 80, stream.getLength());
+            byte[] header = new byte[80];
+            assertEquals(80, stream.read(header, 0, 80));
+            assertArrayEquals(PcmToWavUtil.getWaveFileHeader(config, LARGE_DATA_LENGTH, true), header);
+            assertEquals("RF64", new String(header, 0, 4, "US-ASCII"));
+            assertEquals("ds64", new String(header, 12, 4, "US-ASCII"));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void memorySinkView() throws IOException {
+        MemoryAudioSink sink = new MemoryAudioSink();
+        sink.open(config);
+        byte[] pcm = random(MemoryAudioSink.CHUNK_SIZE * 2 + 1000, 6);
+        sink.write(pcm, 0, 1000, new FrameInfo());
+        sink.write(pcm, 1000, pcm.length - 1000, new FrameInfo());
+        sink.close();
+        WavStream stream = sink.toWavStream();
+
+        // 之后开始的录音不影响已经创建的视图
+        sink.open(config);
+        sink.write(new byte[100], 0, 100, new FrameInfo());
+
+        assertEquals(pcm.length, stream.getDataLength());
+        assertArrayEquals(concat(PcmToWavUtil.getWaveFileHeader(config, pcm.length, false), pcm), readAll(stream, 10000));
+        assertEquals(100, sink.toWavStream().getDataLength());
+    }
+
+    /**
+     * 相同数据的数组、数组列表和文件三种视图
+     */
+    private WavStream[] streams(byte[] pcm) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < pcm.length; i += 1500) {
+            chunks.add(Arrays.copyOfRange(pcm, i, i + 1500));
+        }
+        return new WavStream[]{
+                WavStream.of(config, pcm),
+                WavStream.of(config, chunks, pcm.length),
+                WavStream.of(config, write(folder.newFile(), pcm))
+        };
+    }
+
+    private static byte[] readAll(WavStream stream, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int n;
+        while ((n = stream.read(buffer, 0, buffer.length)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
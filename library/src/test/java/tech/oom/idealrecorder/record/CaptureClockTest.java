@@ -0,0 +1,74 @@
+package tech.oom.idealrecorder.record;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 采样时钟生成的采样序号、采集时间以及与系统时钟的偏差
+ */
+public class CaptureClockTest {
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void stampsSampleIndexAndCaptureTime() {
+        CaptureClock clock = new CaptureClock();
+        clock.reset(16000);
+        FrameInfo info = new FrameInfo();
+        long start = 5000 * MILLIS;
+        for (int i = 0; i < 5; i++) {
+            // 每帧10ms 读取完成的时间正好与采样时钟一致
+            clock.stamp(info, 160, start + (i + 1) * 10 * MILLIS);
+            assertEquals(160 * i, info.getSampleIndex());
+            assertEquals(160 * (i + 1), info.getEndSampleIndex());
+            assertEquals(160, info.getSampleCount());
+            assertEquals(16000, info.getSampleRate());
+            assertEquals(start + i * 10 * MILLIS, info.getCaptureTimeNanos());
+            assertEquals(i * 10 * MILLIS, info.getPresentationTimeNanos());
+            assertEquals(10 * MILLIS, info.getDurationNanos());
+            assertEquals(0, clock.getDriftNanos());
+        }
+        assertEquals(800, clock.getSampleCount());
+        assertEquals(5, clock.getFrameCount());
+    }
+
+    @Test
+    public void tracksDriftAgainstSystemClock() {
+        CaptureClock clock = new CaptureClock();
+        clock.reset(8000);
+        FrameInfo info = new FrameInfo();
+        clock.stamp(info, 80, 10 * MILLIS);
+        // 第二帧晚到3ms 第三帧比采样时钟早2ms
+        clock.stamp(info, 80, 23 * MILLIS);
+        assertEquals(3 * MILLIS, clock.getDriftNanos());
+        clock.stamp(info, 80, 28 * MILLIS);
+        assertEquals(-2 * MILLIS, clock.getDriftNanos());
+        assertEquals(-2 * MILLIS, clock.getMinDriftNanos());
+        assertEquals(3 * MILLIS, clock.getMaxDriftNanos());
+        // 采样序号只由采样数决定 不受时间的影响
+        assertEquals(160, info.getSampleIndex());
+
+        clock.reset(8000);
+        assertEquals(0, clock.getSampleCount());
+        assertEquals(0, clock.getFrameCount());
+        assertEquals(0, clock.getMinDriftNanos());
+        assertEquals(0, clock.getMaxDriftNanos());
+        clock.stamp(info, 80, 1000 * MILLIS);
+        assertEquals(0, info.getSampleIndex());
+        assertEquals(0, clock.getDriftNanos());
+    }
+
+    @Test
+    public void copyKeepsValuesAfterReuse() {
+        CaptureClock clock = new CaptureClock();
+        clock.reset(48000);
+        FrameInfo info = new FrameInfo();
+        FrameInfo copy = new FrameInfo();
+        clock.stamp(info, 480, 10 * MILLIS);
+        copy.copyFrom(info);
+        clock.stamp(info, 480, 20 * MILLIS);
+        assertEquals(0, copy.getSampleIndex());
+        assertEquals(480, info.getSampleIndex());
+        assertEquals(0, copy.getCaptureTimeNanos());
+    }
+}
@@ -0,0 +1,202 @@
+package tech.oom.idealrecorder.record;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 环形缓冲区的容量、序号循环和缓冲区已满时的溢出
+ */
+public class FrameRingTest {
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(2, new FrameRing(1, 10).getCapacity());
+        assertEquals(2, new FrameRing(2, 10).getCapacity());
+        assertEquals(4, new FrameRing(3, 10).getCapacity());
+        assertEquals(16, new FrameRing(16, 10).getCapacity());
+        assertEquals(32, new FrameRing(17, 10).getCapacity());
+        assertEquals(10, new FrameRing(4, 10).getFrameSize());
+    }
+
+    @Test
+    public void framesWrapAroundInOrder() {
+        FrameRing ring = new FrameRing(4, 3);
+        // 每次发布两帧再取出 序号多次越过容量
+        for (int i = 0; i < 40; i += 2) {
+            for (int j = i; j < i + 2; j++) {
+                int slot = ring.claim();
+                assertEquals(j % 4, slot);
+                ring.shortsAt(slot)[0] = (short) j;
+                ring.infoAt(slot).set(j, 1, 0, 8000);
+                ring.publish();
+            }
+            assertEquals(2, ring.pending());
+            // 处理之前消费者看不到
+            assertEquals(-1, ring.peek());
+            for (int j = i; j < i + 2; j++) {
+                int slot = ring.peekUnprocessed();
+                assertEquals(j, ring.shortsAt(slot)[0]);
+                assertEquals(j, ring.infoAt(slot).getSampleIndex());
+                ring.markProcessed();
+            }
+            assertEquals(-1, ring.peekUnprocessed());
+            assertEquals(0, ring.pending());
+            assertEquals(2, ring.size());
+            for (int j = i; j < i + 2; j++) {
+                int slot = ring.peek();
+                assertEquals(j % 4, slot);
+                assertEquals(j, ring.shortsAt(slot)[0]);
+                ring.release();
+            }
+            assertEquals(-1, ring.peek());
+        }
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.getOverflowCount());
+    }
+
+    @Test
+    public void fullRingCountsOverflowWithoutOverwriting() {
+        FrameRing ring = new FrameRing(4, 1);
+        for (int i = 0; i < 4; i++) {
+            ring.shortsAt(ring.claim())[0] = (short) i;
+            ring.publish();
+        }
+        assertEquals(-1, ring.claim());
+        // 已处理但消费者还没有归还的帧同样不能覆盖
+        for (int i = 0; i < 4; i++) {
+            ring.markProcessed();
+        }
+        assertEquals(-1, ring.claim());
+        assertEquals(2, ring.getOverflowCount());
+
+        // 消费者归还一帧后生产者可以继续写入 未归还的帧保持不变
+        assertEquals(0, ring.shortsAt(ring.peek())[0]);
+        ring.release();
+        ring.shortsAt(ring.claim())[0] = 4;
+        ring.publish();
+        ring.markProcessed();
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ring.shortsAt(ring.peek())[0]);
+            ring.release();
+        }
+        assertEquals(2, ring.getOverflowCount());
+    }
+
+    @Test
+    public void directBufferViewsKeepTheirOwnPosition() {
+        FrameRing ring = new FrameRing(2, 4, FrameRing.TYPE_DIRECT_BUFFER);
+        assertEquals(FrameRing.TYPE_DIRECT_BUFFER, ring.getType());
+        int slot = ring.claim();
+        ByteBuffer buffer = ring.bufferAt(slot);
+        assertTrue(buffer.isDirect());
+        assertEquals(8, buffer.capacity());
+        buffer.clear();
+        buffer.put(new byte[]{1, 0, (byte) 0xFF, (byte) 0xFF, 0, (byte) 0x80, (byte) 0xFF, 0x7F});
+        ring.publish();
+
+        // 处理线程和UI线程的视图为小端字节序 读取时互不影响position
+        ShortBuffer worker = ring.workerViewAt(ring.peekUnprocessed());
+        assertTrue(worker.isReadOnly());
+        assertEquals(1, worker.get());
+        assertEquals(-1, worker.get());
+        ring.markProcessed();
+        ShortBuffer ui = ring.uiViewAt(ring.peek());
+        assertEquals(0, ui.position());
+        short[] samples = new short[4];
+        ui.get(samples);
+        assertArrayEquals(new short[]{1, -1, Short.MIN_VALUE, Short.MAX_VALUE}, samples);
+        assertEquals(2, worker.position());
+        // 再次获取视图时从头开始
+        assertEquals(0, ring.workerViewAt(slot).position());
+        ring.release();
+    }
+
+    @Test
+    public void typedFramesAndSpareSlot() {
+        FrameRing bytes = new FrameRing(2, 5, FrameRing.TYPE_BYTE);
+        FrameRing floats = new FrameRing(2, 5, FrameRing.TYPE_FLOAT);
+        assertEquals(5, bytes.bytesAt(bytes.claim()).length);
+        assertEquals(5, floats.floatsAt(floats.claim()).length);
+
+        // 备用帧不在循环中 读取丢弃的数据时不会影响已发布的帧
+        FrameRing ring = new FrameRing(2, 1);
+        ring.shortsAt(ring.claim())[0] = 1;
+        ring.publish();
+        ring.shortsAt(ring.claim())[0] = 2;
+        ring.publish();
+        int spare = ring.spare();
+        assertEquals(2, spare);
+        ring.shortsAt(spare)[0] = 9;
+        assertEquals(0, ring.getOverflowCount());
+        assertEquals(1, ring.shortsAt(ring.peekUnprocessed())[0]);
+        ring.markProcessed();
+        assertEquals(2, ring.shortsAt(ring.peekUnprocessed())[0]);
+    }
+
+    @Test(timeout = 20000)
+    public void producerProcessorAndConsumerThreads() throws InterruptedException {
+        final FrameRing ring = new FrameRing(8, 2);
+        final int count = 100000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; ) {
+                    int slot = ring.claim();
+                    if (slot < 0) {
+                        Thread.yield();
+                        continue;
+                    }
+                    short[] frame = ring.shortsAt(slot);
+                    frame[0] = (short) i;
+                    frame[1] = (short) (i >> 16);
+                    ring.publish();
+                    i++;
+                }
+            }
+        });
+        final int[] processed = new int[1];
+        Thread processor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (processed[0] < count) {
+                    int slot = ring.peekUnprocessed();
+                    if (slot < 0) {
+                        Thread.yield();
+                        continue;
+                    }
+                    short[] frame = ring.shortsAt(slot);
+                    if ((frame[0] & 0xFFFF | frame[1] << 16) != processed[0]) {
+                        return;
+                    }
+                    ring.markProcessed();
+                    processed[0]++;
+                }
+            }
+        });
+        producer.start();
+        processor.start();
+        int expected = 0;
+        while (expected < count) {
+            int slot = ring.peek();
+            if (slot < 0) {
+                if (!processor.isAlive() && ring.peek() < 0) {
+                    break;
+                }
+                Thread.yield();
+                continue;
+            }
+            short[] frame = ring.shortsAt(slot);
+            assertEquals(expected, frame[0] & 0xFFFF | frame[1] << 16);
+            ring.release();
+            expected++;
+        }
+        producer.join();
+        processor.join();
+        assertEquals(count, processed[0]);
+        assertEquals(count, expected);
+        assertEquals(0, ring.size());
+    }
+}
@@ -0,0 +1,81 @@
+package tech.oom.idealrecorder.record;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 预录缓冲区循环覆盖最早的帧 以及各种帧类型的拷贝
+ */
+public class PreRollBufferTest {
+    @Test
+    public void keepsNewestFramesInOrder() {
+        FrameRing ring = new FrameRing(2, 2);
+        PreRollBuffer preRoll = new PreRollBuffer(3, 2, FrameRing.TYPE_SHORT);
+        int spare = ring.spare();
+        for (int i = 0; i < 7; i++) {
+            ring.shortsAt(spare)[0] = (short) i;
+            ring.shortsAt(spare)[1] = (short) -i;
+            preRoll.write(ring, spare, 100 + i);
+            assertEquals(Math.min(i + 1, 3), preRoll.size());
+        }
+        // 只保留最后3帧 序号0为最早的帧
+        for (int i = 0; i < 3; i++) {
+            int slot = ring.claim();
+            preRoll.copyTo(i, ring, slot);
+            assertArrayEquals(new short[]{(short) (4 + i), (short) -(4 + i)}, ring.shortsAt(slot));
+            assertEquals(104 + i, preRoll.readDoneNanosAt(i));
+            ring.publish();
+            ring.markProcessed();
+            ring.peek();
+            ring.release();
+        }
+        assertEquals(0, ring.getOverflowCount());
+
+        preRoll.clear();
+        assertEquals(0, preRoll.size());
+        ring.shortsAt(spare)[0] = 42;
+        preRoll.write(ring, spare, 200);
+        int slot = ring.claim();
+        preRoll.copyTo(0, ring, slot);
+        assertEquals(42, ring.shortsAt(slot)[0]);
+        assertEquals(200, preRoll.readDoneNanosAt(0));
+    }
+
+    @Test
+    public void copiesEveryFrameType() {
+        FrameRing bytes = new FrameRing(2, 3, FrameRing.TYPE_BYTE);
+        PreRollBuffer bytePreRoll = new PreRollBuffer(2, 3, FrameRing.TYPE_BYTE);
+        System.arraycopy(new byte[]{1, 2, 3}, 0, bytes.bytesAt(bytes.spare()), 0, 3);
+        bytePreRoll.write(bytes, bytes.spare(), 0);
+        int slot = bytes.claim();
+        bytePreRoll.copyTo(0, bytes, slot);
+        assertArrayEquals(new byte[]{1, 2, 3}, bytes.bytesAt(slot));
+
+        FrameRing floats = new FrameRing(2, 3, FrameRing.TYPE_FLOAT);
+        PreRollBuffer floatPreRoll = new PreRollBuffer(2, 3, FrameRing.TYPE_FLOAT);
+        System.arraycopy(new float[]{0.5f, -1f, 1f}, 0, floats.floatsAt(floats.spare()), 0, 3);
+        floatPreRoll.write(floats, floats.spare(), 0);
+        slot = floats.claim();
+        floatPreRoll.copyTo(0, floats, slot);
+        assertArrayEquals(new float[]{0.5f, -1f, 1f}, floats.floatsAt(slot), 0f);
+
+        // 直接内存的帧按字节拷贝 拷贝前后position和limit保持为整帧
+        FrameRing direct = new FrameRing(2, 2, FrameRing.TYPE_DIRECT_BUFFER);
+        PreRollBuffer directPreRoll = new PreRollBuffer(2, 2, FrameRing.TYPE_DIRECT_BUFFER);
+        ByteBuffer source = direct.bufferAt(direct.spare());
+        source.clear();
+        source.put(new byte[]{1, 0, (byte) 0xFF, (byte) 0xFF});
+        directPreRoll.write(direct, direct.spare(), 0);
+        assertEquals(0, source.position());
+        slot = direct.claim();
+        directPreRoll.copyTo(0, direct, slot);
+        ByteBuffer target = direct.bufferAt(slot);
+        assertEquals(0, target.position());
+        assertEquals(4, target.limit());
+        assertEquals(1, target.getShort(0));
+        assertEquals(-1, target.getShort(2));
+    }
+}
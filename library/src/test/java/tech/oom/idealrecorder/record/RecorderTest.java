@@ -0,0 +1,477 @@
+package tech.oom.idealrecorder.record;
+
+import android.media.AudioFormat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tech.oom.idealrecorder.IdealConst;
+import tech.oom.idealrecorder.IdealRecorder;
+
+import static org.junit.Assert.*;
+
+/**
+ * 录音线程与处理线程之间的交接 使用合成数据源驱动完整的录音流程
+ */
+public class RecorderTest {
+    private static final int FRAME_MILLIS = 10;
+    private static final int FRAME_SIZE = 160;
+
+    private final IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setFrameDuration(FRAME_MILLIS);
+
+    @Test(timeout = 10000)
+    public void framesAreProcessedInOrderOffTheCaptureThread() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        SyntheticPcmSource source = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+        source.setDurationMillis(300).setRealtime(true);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.start());
+        callback.awaitStop();
+
+        // 处理完所有的帧之后才回调停止
+        assertEquals(30, callback.frames.size());
+        assertEquals(30, callback.framesAtStop);
+        assertEquals(1, callback.stopCount);
+        assertFalse(recorder.isStarted());
+        assertEquals(0, recorder.getOverrunCount());
+        assertEquals(-1, callback.error);
+        SyntheticPcmSource expected = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+        expected.open(config, 0);
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i * FRAME_SIZE, callback.infos.get(i).getSampleIndex());
+            assertEquals(FRAME_SIZE, callback.infos.get(i).getSampleCount());
+            assertEquals("IdealRecorder-Process", callback.threads.get(i));
+            short[] frame = new short[FRAME_SIZE];
+            expected.read(frame, 0, FRAME_SIZE);
+            assertArrayEquals(frame, callback.frames.get(i));
+        }
+        assertEquals(30 * FRAME_SIZE, recorder.getCaptureClock().getSampleCount());
+    }
+
+    @Test(timeout = 10000)
+    public void directBufferModeDeliversSameSamples() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        recorder.setDirectBufferMode(true);
+        SyntheticPcmSource source = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+        source.setDurationMillis(100);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.start());
+        callback.awaitStop();
+
+        assertEquals(FrameRing.TYPE_DIRECT_BUFFER, recorder.getFrameRing().getType());
+        assertEquals(10, callback.frames.size());
+        SyntheticPcmSource expected = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+        expected.open(config, 0);
+        for (int i = 0; i < 10; i++) {
+            short[] frame = new short[FRAME_SIZE];
+            expected.read(frame, 0, FRAME_SIZE);
+            assertArrayEquals(frame, callback.frames.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void typedFormatsUseTheirOwnFrames() throws InterruptedException {
+        int[] formats = {AudioFormat.ENCODING_PCM_8BIT, AudioFormat.ENCODING_PCM_FLOAT};
+        for (int format : formats) {
+            IdealRecorder.RecordConfig typed = new IdealRecorder.RecordConfig()
+                    .setFrameDuration(FRAME_MILLIS).setAudioFormat(format);
+            Callback callback = new Callback();
+            Recorder recorder = callback.recorder = new Recorder(typed, callback);
+            SyntheticPcmSource source = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+            source.setDurationMillis(50);
+            recorder.setPcmSource(source);
+
+            assertTrue(recorder.start());
+            callback.awaitStop();
+
+            assertEquals(5, callback.frames.size());
+            SyntheticPcmSource expected = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+            expected.open(typed, 0);
+            for (int i = 0; i < 5; i++) {
+                if (format == AudioFormat.ENCODING_PCM_8BIT) {
+                    byte[] frame = new byte[FRAME_SIZE];
+                    expected.read(frame, 0, FRAME_SIZE);
+                    assertArrayEquals(frame, callback.byteFrames.get(i));
+                } else {
+                    float[] frame = new float[FRAME_SIZE];
+                    expected.read(frame, 0, FRAME_SIZE);
+                    assertArrayEquals(frame, callback.floatFrames.get(i), 0f);
+                }
+            }
+            assertEquals(format == AudioFormat.ENCODING_PCM_8BIT ? 0 : 5, callback.floatFrames.size());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void slowProcessingDropsLiveFrames() throws InterruptedException {
+        Callback callback = new Callback();
+        // 第一帧处理时卡顿 录音线程继续读取 缓冲区满后丢弃
+        callback.firstFrameDelayMillis = 100;
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        recorder.setFrameRingCapacity(2);
+        LivePcmSource source = new LivePcmSource();
+        source.setDurationMillis(400).setRealtime(true);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.start());
+        callback.awaitStop();
+
+        long overrun = recorder.getOverrunCount();
+        assertTrue(overrun > 0);
+        assertEquals(overrun, callback.reportedOverrun);
+        // 实时采集开始时丢弃两帧不稳定的数据 之后的每一帧都有采样序号 丢弃的帧不会回调
+        assertEquals(38, callback.frames.size() + overrun);
+        assertEquals(38 * FRAME_SIZE, recorder.getCaptureClock().getSampleCount());
+        // 丢弃的帧在采样序号中留下空缺
+        long gaps = 0;
+        long end = 0;
+        for (FrameInfo info : callback.infos) {
+            gaps += info.getSampleIndex() - end;
+            end = info.getEndSampleIndex();
+        }
+        gaps += recorder.getCaptureClock().getSampleCount() - end;
+        assertEquals(overrun * FRAME_SIZE, gaps);
+    }
+
+    @Test(timeout = 10000)
+    public void immediateStopWaitsForStopCallback() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        SyntheticPcmSource source = new SyntheticPcmSource(SyntheticPcmSource.TYPE_NOISE);
+        source.setRealtime(true);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.start());
+        assertTrue(callback.firstFrame.await(5, TimeUnit.SECONDS));
+        recorder.immediateStop();
+
+        assertEquals(1, callback.stopCount);
+        assertEquals(callback.frames.size(), callback.framesAtStop);
+        assertFalse(recorder.isStarted());
+    }
+
+    @Test(timeout = 10000)
+    public void readErrorIsReportedAfterPendingFrames() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        recorder.setPcmSource(new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE) {
+            private int reads;
+
+            @Override
+            protected int fill(short[] buffer, int offset, int length) {
+                return ++reads > 5 ? 0 : super.fill(buffer, offset, length);
+            }
+        });
+
+        assertTrue(recorder.start());
+        callback.awaitStop();
+
+        assertEquals(5, callback.frames.size());
+        assertEquals(IdealConst.RecorderErrorCode.RECORDER_READ_ERROR, callback.error);
+        assertEquals(5, callback.framesAtError);
+    }
+
+    @Test(timeout = 10000)
+    public void armedLiveSourceStaysWarmAcrossRecordings() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        LivePcmSource source = new LivePcmSource();
+        source.setRealtime(true);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.arm());
+        assertTrue(recorder.isArmed());
+        assertTrue(recorder.arm());
+        // 预热时持续读取并丢弃数据 不回调
+        Thread.sleep(100);
+        assertTrue(source.reads > 2);
+        assertEquals(0, callback.frames.size());
+        assertEquals(0, recorder.getOverrunCount());
+
+        for (int i = 0; i < 2; i++) {
+            int before = callback.frames.size();
+            assertTrue(recorder.start());
+            assertFalse(recorder.start());
+            Thread.sleep(100);
+            recorder.immediateStop();
+
+            // 每次录音的采样序号都从0开始 第一帧在一帧的时长内送达
+            assertEquals(i + 1, callback.stopCount);
+            assertTrue(callback.frames.size() - before > 3);
+            assertEquals(0, callback.infos.get(before).getSampleIndex());
+            assertTrue(recorder.getStartLatencyNanos() >= 0);
+            assertTrue(recorder.getStartLatencyNanos() < 100 * 1000000L);
+            assertTrue(recorder.isArmed());
+            assertEquals(0, source.releases);
+        }
+
+        recorder.disarm();
+        assertFalse(recorder.isArmed());
+        assertEquals(1, source.releases);
+        int reads = source.reads;
+        Thread.sleep(50);
+        assertEquals(reads, source.reads);
+    }
+
+    @Test(timeout = 10000)
+    public void armedIdleReadsDoNotCountOverflow() throws InterruptedException {
+        Callback callback = new Callback();
+        callback.keepUiFrames = true;
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        LivePcmSource source = new LivePcmSource();
+        source.setRealtime(true);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.arm());
+        assertTrue(recorder.start());
+        // UI线程没有归还帧 录音结束时缓冲区已满
+        FrameRing ring = recorder.getFrameRing();
+        while (!ring.isFull()) {
+            Thread.sleep(10);
+        }
+        recorder.immediateStop();
+        long overflow = ring.getOverflowCount();
+        int reads = source.reads;
+
+        // 预热时读取到备用帧中 不占用缓冲区 也不算作溢出
+        Thread.sleep(100);
+        assertTrue(source.reads > reads + 2);
+        assertEquals(overflow, ring.getOverflowCount());
+        recorder.disarm();
+    }
+
+    @Test(timeout = 10000)
+    public void disarmDuringRecordingReleasesAfterStop() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        LivePcmSource source = new LivePcmSource();
+        source.setRealtime(true);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.arm());
+        assertTrue(recorder.start());
+        assertTrue(callback.firstFrame.await(5, TimeUnit.SECONDS));
+        recorder.disarm();
+        assertFalse(recorder.isArmed());
+        // 录音继续 结束后才释放数据源
+        assertTrue(recorder.isStarted());
+        assertEquals(0, source.releases);
+        recorder.immediateStop();
+
+        assertEquals(1, callback.stopCount);
+        assertEquals(1, source.releases);
+    }
+
+    @Test(timeout = 10000)
+    public void armedNonLiveSourceIsNotReadBeforeStart() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        SyntheticPcmSource source = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+        source.setDurationMillis(100);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.arm());
+        Thread.sleep(50);
+        assertTrue(recorder.start());
+        callback.awaitStop();
+
+        // 数据从头开始 数据结束后自动取消预热
+        assertEquals(10, callback.frames.size());
+        SyntheticPcmSource expected = new SyntheticPcmSource(SyntheticPcmSource.TYPE_SINE);
+        expected.open(config, 0);
+        short[] frame = new short[FRAME_SIZE];
+        expected.read(frame, 0, FRAME_SIZE);
+        assertArrayEquals(frame, callback.frames.get(0));
+        assertFalse(recorder.isArmed());
+    }
+
+    @Test(timeout = 10000)
+    public void preRollIsDeliveredBeforeLiveFramesWithoutGap() throws InterruptedException {
+        Callback callback = new Callback();
+        Recorder recorder = callback.recorder = new Recorder(config, callback);
+        recorder.setPreRollMillis(50);
+        LivePcmSource source = new LivePcmSource();
+        source.setRealtime(true);
+        recorder.setPcmSource(source);
+
+        assertTrue(recorder.arm());
+        Thread.sleep(200);
+        long startNanos = System.nanoTime();
+        assertTrue(recorder.start());
+        Thread.sleep(100);
+        recorder.immediateStop();
+        recorder.disarm();
+
+        // 前5帧是开始之前采集的 之后的实时数据与预录的数据连续 采样序号从0开始没有空缺
+        assertTrue(callback.frames.size() > 5);
+        assertEquals(0, recorder.getOverrunCount());
+        for (int i = 0; i < callback.infos.size(); i++) {
+            assertEquals(i * FRAME_SIZE, callback.infos.get(i).getSampleIndex());
+        }
+        assertTrue(callback.infos.get(0).getCaptureTimeNanos() < startNanos);
+        assertTrue(recorder.getStartLatencyNanos() >= 0);
+        LivePcmSource expected = new LivePcmSource();
+        expected.open(config, 0);
+        short[] frame = new short[FRAME_SIZE];
+        int skipped = 0;
+        do {
+            expected.read(frame, 0, FRAME_SIZE);
+            assertTrue(++skipped < 100);
+        } while (!Arrays.equals(frame, callback.frames.get(0)));
+        for (int i = 1; i < callback.frames.size(); i++) {
+            expected.read(frame, 0, FRAME_SIZE);
+            assertArrayEquals(frame, callback.frames.get(i));
+        }
+    }
+
+    /**
+     * 模拟麦克风的实时数据源
+     */
+    static class LivePcmSource extends SyntheticPcmSource {
+        volatile int reads;
+        volatile int releases;
+
+        LivePcmSource() {
+            super(TYPE_NOISE);
+        }
+
+        @Override
+        protected int fill(short[] buffer, int offset, int length) {
+            reads++;
+            return super.fill(buffer, offset, length);
+        }
+
+        @Override
+        public void release() {
+            releases++;
+            super.release();
+        }
+
+        @Override
+        public boolean isLiveCapture() {
+            return true;
+        }
+    }
+
+    /**
+     * 记录处理线程中的回调 并像UI线程一样归还处理完的帧
+     */
+    static class Callback implements RecorderCallback {
+        final List<short[]> frames = new ArrayList<>();
+        final List<byte[]> byteFrames = new ArrayList<>();
+        final List<float[]> floatFrames = new ArrayList<>();
+        final List<FrameInfo> infos = new ArrayList<>();
+        final List<String> threads = new ArrayList<>();
+        final CountDownLatch firstFrame = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Recorder recorder;
+        long firstFrameDelayMillis;
+        volatile int stopCount;
+        volatile int framesAtStop;
+        volatile int framesAtError;
+        volatile int error = -1;
+        volatile long reportedOverrun;
+        /**
+         * 不归还帧 模拟UI线程没有及时处理
+         */
+        volatile boolean keepUiFrames;
+
+        void awaitStop() throws InterruptedException {
+            assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public boolean onRecorderStart() {
+            return true;
+        }
+
+        @Override
+        public boolean onRecorderReady() {
+            return true;
+        }
+
+        @Override
+        public void onRecorderStop() {
+            framesAtStop = frames.size();
+            stopCount++;
+            stopped.countDown();
+        }
+
+        @Override
+        public void onRecorded(short[] wave, FrameInfo info) {
+            record(wave.clone(), info);
+        }
+
+        @Override
+        public void onRecorded(byte[] data, FrameInfo info) {
+            byteFrames.add(data.clone());
+            record(new short[0], info);
+        }
+
+        @Override
+        public void onRecorded(float[] data, FrameInfo info) {
+            floatFrames.add(data.clone());
+            record(new short[0], info);
+        }
+
+        @Override
+        public void onRecorded(ByteBuffer data, ShortBuffer samples, FrameInfo info) {
+            assertTrue(data.isDirect());
+            assertEquals(samples.remaining() * 2, data.remaining());
+            short[] wave = new short[samples.remaining()];
+            samples.get(wave);
+            record(wave, info);
+        }
+
+        private void record(short[] wave, FrameInfo info) {
+            FrameRing ring = recorder.getFrameRing();
+            while (!keepUiFrames && ring.peek() >= 0) {
+                ring.release();
+            }
+            frames.add(wave);
+            FrameInfo copy = new FrameInfo();
+            copy.copyFrom(info);
+            infos.add(copy);
+            threads.add(Thread.currentThread().getName());
+            if (frames.size() == 1) {
+                firstFrame.countDown();
+                sleep(firstFrameDelayMillis);
+            }
+        }
+
+        @Override
+        public void onRecordOverrun(long totalDroppedFrames) {
+            reportedOverrun = totalDroppedFrames;
+        }
+
+        @Override
+        public void onRecordUnderrun(long totalUnderruns) {
+        }
+
+        @Override
+        public void onRecordedFail(int paramInt) {
+            framesAtError = frames.size();
+            error = paramInt;
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package tech.oom.idealrecorder.sink;
+
+import android.media.AudioFormat;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.record.FrameInfo;
+import tech.oom.idealrecorder.utils.PcmConverter;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分发到多个sink 多声道录音时单声道sink共用混合后的数据
+ */
+public class AudioSinkDispatcherTest {
+    @Test
+    public void monoSinksShareOneDownmix() {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(AudioFormat.CHANNEL_IN_STEREO);
+        RecordingSink stereo = new RecordingSink();
+        RecordingMonoSink mono1 = new RecordingMonoSink();
+        RecordingMonoSink mono2 = new RecordingMonoSink();
+        AudioSinkDispatcher dispatcher = new AudioSinkDispatcher(null);
+        dispatcher.addSink(stereo, null, 8, AudioSinkDispatcher.POLICY_BLOCK);
+        dispatcher.addSink(mono1, null, 8, AudioSinkDispatcher.POLICY_BLOCK);
+        dispatcher.addSink(mono2, null, 8, AudioSinkDispatcher.POLICY_BLOCK);
+
+        byte[] frame = new byte[400];
+        for (int i = 0; i < 100; i++) {
+            short left = (short) (i * 300 - 15000);
+            short right = (short) -(i * 100);
+            frame[4 * i] = (byte) left;
+            frame[4 * i + 1] = (byte) (left >> 8);
+            frame[4 * i + 2] = (byte) right;
+            frame[4 * i + 3] = (byte) (right >> 8);
+        }
+        dispatcher.open(config);
+        for (int i = 0; i < 20; i++) {
+            dispatcher.write(frame, 0, frame.length, new FrameInfo());
+        }
+        dispatcher.finish();
+
+        assertEquals(2, stereo.config.getChannelCount());
+        assertEquals(1, mono1.config.getChannelCount());
+        assertEquals(config.getSampleRate(), mono1.config.getSampleRate());
+        // 原来的配置不变
+        assertEquals(2, config.getChannelCount());
+
+        assertEquals(20 * 400, stereo.data.size());
+        assertEquals(20 * 200, mono1.data.size());
+        assertArrayEquals(mono1.data.toByteArray(), mono2.data.toByteArray());
+        byte[] mono = mono1.data.toByteArray();
+        for (int i = 0; i < 100; i++) {
+            int expected = ((short) (i * 300 - 15000) + (short) -(i * 100)) / 2;
+            assertEquals(expected, (short) ((mono[2 * i] & 0xFF) | mono[2 * i + 1] << 8));
+        }
+        // 两个单声道sink收到的是同一个数组
+        for (int i = 0; i < mono1.arrays.size(); i++) {
+            assertSame(mono1.arrays.get(i), mono2.arrays.get(i));
+        }
+        assertTrue(stereo.closed && mono1.closed && mono2.closed);
+    }
+
+    @Test
+    public void monoRecordingIsNotDownmixed() {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig();
+        RecordingSink plain = new RecordingSink();
+        RecordingMonoSink mono = new RecordingMonoSink();
+        AudioSinkDispatcher dispatcher = new AudioSinkDispatcher(null);
+        dispatcher.addSink(plain, null, 8, AudioSinkDispatcher.POLICY_BLOCK);
+        dispatcher.addSink(mono, null, 8, AudioSinkDispatcher.POLICY_BLOCK);
+        dispatcher.open(config);
+        dispatcher.write(new byte[]{1, 2, 3, 4}, 0, 4, new FrameInfo());
+        dispatcher.finish();
+
+        assertSame(config, mono.config);
+        assertSame(plain.arrays.get(0), mono.arrays.get(0));
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, mono.data.toByteArray());
+    }
+
+    @Test
+    public void downmixKeepsSampleFormat() {
+        byte[] pcm8 = {(byte) 0, (byte) 255, (byte) 128, (byte) 130, (byte) 10, (byte) 20, (byte) 30, (byte) 40, (byte) 50, (byte) 60};
+        byte[] mono8 = new byte[3];
+        PcmConverter.downmixToMono(pcm8, 1, mono8, 0, 3, 3, 8);
+        assertArrayEquals(new byte[]{(byte) 171, (byte) 20, (byte) 50}, mono8);
+
+        float[] floats = {0.5f, -0.25f, 1f, 1f};
+        byte[] pcmFloat = new byte[16];
+        PcmConverter.floatToBytes(floats, 0, pcmFloat, 0, 4);
+        byte[] monoFloat = new byte[8];
+        PcmConverter.downmixToMono(pcmFloat, 0, monoFloat, 0, 2, 2, 32);
+        float[] result = new float[2];
+        PcmConverter.bytesToFloat(monoFloat, 0, result, 0, 2);
+        assertEquals(0.125f, result[0], 0f);
+        assertEquals(1f, result[1], 0f);
+    }
+
+    private static class RecordingSink implements AudioSink {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final List<byte[]> arrays = new ArrayList<>();
+        IdealRecorder.RecordConfig config;
+        boolean closed;
+
+        @Override
+        public void open(IdealRecorder.RecordConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int size, FrameInfo info) {
+            this.data.write(data, offset, size);
+            arrays.add(data);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    private static class RecordingMonoSink extends RecordingSink implements MonoAudioSink {
+    }
+}
@@ -0,0 +1,46 @@
+package tech.oom.idealrecorder.sink;
+
+import android.media.AudioFormat;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import tech.oom.idealrecorder.IdealRecorder;
+import tech.oom.idealrecorder.record.FrameInfo;
+
+import static org.junit.Assert.*;
+
+/**
+ * FLAC输出的声道数与录音配置一致 不混合为单声道
+ */
+public class EncoderAudioSinkTest {
+    @Test
+    public void encodesConfiguredChannels() throws IOException {
+        assertEquals(2, streamInfoChannels(encode(AudioFormat.CHANNEL_IN_STEREO)));
+        assertEquals(1, streamInfoChannels(encode(AudioFormat.CHANNEL_IN_MONO)));
+    }
+
+    private static byte[] encode(int channelConfig) throws IOException {
+        IdealRecorder.RecordConfig config = new IdealRecorder.RecordConfig().setChannelConfig(channelConfig);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncoderAudioSink sink = new EncoderAudioSink(out, 256);
+        sink.open(config);
+        byte[] frame = new byte[1000 * config.getChannelCount() * 2];
+        for (int i = 0; i < frame.length; i += 2) {
+            frame[i] = (byte) (i * 7);
+        }
+        sink.write(frame, 0, frame.length, new FrameInfo());
+        sink.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * fLaC(4) + 块头(4) + 块大小(4) + 帧长度(6) 之后是20位采样率和3位的声道数减一
+     */
+    private static int streamInfoChannels(byte[] flac) {
+        assertEquals("fLaC", new String(flac, 0, 4));
+        return ((flac[20] & 0xFF) >> 1 & 7) + 1;
+    }
+}
@@ -0,0 +1,74 @@
+package tech.oom.idealrecorder.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * G.711 µ-law 和 A-law 的编解码
+ */
+public class G711Test {
+    @Test
+    public void knownValues() {
+        assertEquals((byte) 0xFF, G711.encodeMuLaw((short) 0));
+        assertEquals(0, G711.decodeMuLaw((byte) 0xFF));
+        assertEquals(-32124, G711.decodeMuLaw((byte) 0x00));
+        assertEquals(32124, G711.decodeMuLaw((byte) 0x80));
+        assertEquals((byte) 0xD5, G711.encodeALaw((short) 0));
+        assertEquals(8, G711.decodeALaw((byte) 0xD5));
+        assertEquals(-8, G711.decodeALaw((byte) 0x55));
+        assertEquals(32256, G711.decodeALaw((byte) 0xAA));
+        assertEquals(-32256, G711.decodeALaw((byte) 0x2A));
+    }
+
+    @Test
+    public void decodedValuesEncodeToThemselves() {
+        for (int i = 0; i < 256; i++) {
+            short mu = G711.decodeMuLaw((byte) i);
+            assertEquals("mu-law " + i, mu, G711.decodeMuLaw(G711.encodeMuLaw(mu)));
+            short a = G711.decodeALaw((byte) i);
+            assertEquals("a-law " + i, (byte) i, G711.encodeALaw(a));
+        }
+    }
+
+    @Test
+    public void quantizationErrorIsBounded() {
+        int previousMu = Integer.MIN_VALUE;
+        int previousA = Integer.MIN_VALUE;
+        for (int x = Short.MIN_VALUE; x <= Short.MAX_VALUE; x++) {
+            int mu = G711.decodeMuLaw(G711.encodeMuLaw((short) x));
+            int a = G711.decodeALaw(G711.encodeALaw((short) x));
+            // 对数量化 误差随幅度增大 超出最大值的部分被截断
+            int bound = Math.abs(x) / 16 + 16;
+            assertTrue("mu-law " + x + " -> " + mu, Math.abs(Math.max(-32124, Math.min(32124, x)) - mu) <= bound);
+            assertTrue("a-law " + x + " -> " + a, Math.abs(Math.max(-32256, Math.min(32256, x)) - a) <= bound);
+            // 单调不减
+            assertTrue(mu >= previousMu);
+            assertTrue(a >= previousA);
+            previousMu = mu;
+            previousA = a;
+        }
+    }
+
+    @Test
+    public void arrayMethodsMatchSingleSamples() {
+        short[] pcm = new short[1000];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (i * 65 - 32000);
+        }
+        byte[] mu = new byte[pcm.length + 2];
+        byte[] a = new byte[pcm.length + 2];
+        G711.encodeMuLaw(pcm, 0, mu, 2, pcm.length);
+        G711.encodeALaw(pcm, 0, a, 2, pcm.length);
+        short[] decodedMu = new short[pcm.length + 1];
+        short[] decodedA = new short[pcm.length + 1];
+        G711.decodeMuLaw(mu, 2, decodedMu, 1, pcm.length);
+        G711.decodeALaw(a, 2, decodedA, 1, pcm.length);
+        for (int i = 0; i < pcm.length; i++) {
+            assertEquals(G711.encodeMuLaw(pcm[i]), mu[i + 2]);
+            assertEquals(G711.encodeALaw(pcm[i]), a[i + 2]);
+            assertEquals(G711.decodeMuLaw(mu[i + 2]), decodedMu[i + 1]);
+            assertEquals(G711.decodeALaw(a[i + 2]), decodedA[i + 1]);
+        }
+    }
+}
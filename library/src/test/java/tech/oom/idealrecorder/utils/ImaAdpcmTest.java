@@ -0,0 +1,109 @@
+package tech.oom.idealrecorder.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * IMA ADPCM 的块大小、块结构和编解码
+ */
+public class ImaAdpcmTest {
+    @Test
+    public void blockSizes() {
+        assertEquals(256, ImaAdpcm.getDefaultBlockAlign(8000, 1));
+        assertEquals(256, ImaAdpcm.getDefaultBlockAlign(16000, 1));
+        assertEquals(1024, ImaAdpcm.getDefaultBlockAlign(44100, 1));
+        assertEquals(2048, ImaAdpcm.getDefaultBlockAlign(44100, 2));
+        // 块头中的一个采样加上每字节两个采样
+        assertEquals(505, ImaAdpcm.getSamplesPerBlock(256, 1));
+        assertEquals(505, ImaAdpcm.getSamplesPerBlock(512, 2));
+        assertEquals(2041, ImaAdpcm.getSamplesPerBlock(1024, 1));
+        assertEquals(2041, ImaAdpcm.getSamplesPerBlock(2048, 2));
+    }
+
+    @Test
+    public void blockLayout() {
+        int blockAlign = 512;
+        int samplesPerBlock = ImaAdpcm.getSamplesPerBlock(blockAlign, 2);
+        short[] pcm = new short[samplesPerBlock * 2];
+        pcm[0] = 1234;
+        pcm[1] = -1234;
+        for (int i = 1; i < samplesPerBlock; i++) {
+            // 左声道上升 右声道下降
+            pcm[2 * i] = (short) (1234 + i * 8);
+            pcm[2 * i + 1] = (short) (-1234 - i * 8);
+        }
+        int[] stepIndex = {0, 0};
+        byte[] block = new byte[blockAlign];
+        ImaAdpcm.encodeBlock(pcm, 0, samplesPerBlock, 2, stepIndex, block, 0, blockAlign);
+
+        // 每个声道的块头: 第一个采样(小端) 步长索引 保留字节
+        assertEquals(1234, (short) ((block[0] & 0xFF) | block[1] << 8));
+        assertEquals(0, block[2]);
+        assertEquals(0, block[3]);
+        assertEquals(-1234, (short) ((block[4] & 0xFF) | block[5] << 8));
+        assertEquals(0, block[6]);
+        // 之后每个声道4字节交替 左声道的差值为正 右声道为负(符号位在每个4位编码的最高位)
+        for (int i = 8; i < blockAlign; i += 8) {
+            for (int k = 0; k < 4; k++) {
+                assertEquals(0, block[i + k] & 0x88);
+                assertEquals(0x88, block[i + 4 + k] & 0x88);
+            }
+        }
+        assertTrue(stepIndex[0] > 0);
+        assertTrue(stepIndex[1] > 0);
+
+        short[] decoded = new short[samplesPerBlock * 2];
+        assertEquals(samplesPerBlock, ImaAdpcm.decodeBlock(block, 0, 2, decoded, 0, blockAlign));
+        assertEquals(1234, decoded[0]);
+        assertEquals(-1234, decoded[1]);
+        for (int i = 0; i < pcm.length; i++) {
+            assertTrue(i + ": " + pcm[i] + " -> " + decoded[i], Math.abs(pcm[i] - decoded[i]) < 64);
+        }
+    }
+
+    @Test
+    public void sineRoundTrip() {
+        int blockAlign = 256;
+        int samplesPerBlock = ImaAdpcm.getSamplesPerBlock(blockAlign, 1);
+        int blocks = 20;
+        short[] pcm = new short[samplesPerBlock * blocks];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (20000 * Math.sin(i * 2 * Math.PI * 440 / 16000));
+        }
+        int[] stepIndex = new int[1];
+        byte[] encoded = new byte[blockAlign * blocks];
+        short[] decoded = new short[pcm.length];
+        for (int b = 0; b < blocks; b++) {
+            ImaAdpcm.encodeBlock(pcm, b * samplesPerBlock, samplesPerBlock, 1, stepIndex, encoded, b * blockAlign, blockAlign);
+            ImaAdpcm.decodeBlock(encoded, b * blockAlign, 1, decoded, b * samplesPerBlock, blockAlign);
+            // 块之间独立 块头保存第一个采样
+            assertEquals(pcm[b * samplesPerBlock], decoded[b * samplesPerBlock]);
+        }
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            signal += (double) pcm[i] * pcm[i];
+            noise += (double) (pcm[i] - decoded[i]) * (pcm[i] - decoded[i]);
+        }
+        double snr = 10 * Math.log10(signal / noise);
+        assertTrue("snr " + snr, snr > 20);
+    }
+
+    @Test
+    public void shortBlockRepeatsLastSample() {
+        int blockAlign = 256;
+        int samplesPerBlock = ImaAdpcm.getSamplesPerBlock(blockAlign, 1);
+        short[] pcm = new short[samplesPerBlock];
+        short[] full = new short[samplesPerBlock];
+        for (int i = 0; i < samplesPerBlock; i++) {
+            pcm[i] = i < 100 ? (short) (i * 50) : 0;
+            full[i] = (short) (Math.min(i, 99) * 50);
+        }
+        byte[] partial = new byte[blockAlign];
+        byte[] padded = new byte[blockAlign];
+        ImaAdpcm.encodeBlock(pcm, 0, 100, 1, new int[1], partial, 0, blockAlign);
+        ImaAdpcm.encodeBlock(full, 0, samplesPerBlock, 1, new int[1], padded, 0, blockAlign);
+        assertArrayEquals(padded, partial);
+    }
+}
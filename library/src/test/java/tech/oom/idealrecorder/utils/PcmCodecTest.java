@@ -0,0 +1,112 @@
+package tech.oom.idealrecorder.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 批量编解码与 {@link ByteBuffer} 的结果一致 且只写入指定的范围
+ */
+public class PcmCodecTest {
+    private static final ByteOrder[] ORDERS = {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN};
+
+    @Test
+    public void shortsMatchByteBuffer() {
+        short[] src = {0, 1, -1, Short.MIN_VALUE, Short.MAX_VALUE, 0x1234, (short) 0x80FF};
+        for (ByteOrder order : ORDERS) {
+            ByteBuffer expected = ByteBuffer.allocate(src.length * 2).order(order);
+            for (short value : src) {
+                expected.putShort(value);
+            }
+            // 源和目标都带偏移 偏移之外的数据不被修改
+            byte[] dst = new byte[src.length * 2 + 3];
+            dst[0] = 7;
+            dst[dst.length - 1] = 7;
+            PcmCodec.encodeShorts(src, 1, dst, 1, src.length - 1, order);
+            assertEquals(7, dst[0]);
+            assertEquals(7, dst[dst.length - 1]);
+            for (int i = 0; i < (src.length - 1) * 2; i++) {
+                assertEquals(expected.get(2 + i), dst[1 + i]);
+            }
+
+            short[] decoded = new short[src.length];
+            PcmCodec.decodeShorts(dst, 1, decoded, 1, src.length - 1, order);
+            assertEquals(0, decoded[0]);
+            for (int i = 1; i < src.length; i++) {
+                assertEquals(src[i], decoded[i]);
+            }
+        }
+    }
+
+    @Test
+    public void bufferVariantsIgnoreBufferOrderAndKeepPosition() {
+        short[] src = {0x0102, (short) 0xFFFE, 0x7F00};
+        for (ByteOrder order : ORDERS) {
+            // buffer自身的字节序与指定的字节序相反
+            ByteOrder other = order == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(10).order(other);
+            buffer.position(2);
+            PcmCodec.encodeShorts(src, 0, buffer, src.length, order);
+            assertEquals(2, buffer.position());
+            for (int i = 0; i < src.length; i++) {
+                assertEquals(src[i], buffer.duplicate().order(order).getShort(2 + i * 2));
+            }
+            short[] decoded = new short[src.length];
+            PcmCodec.decodeShorts(buffer, decoded, 0, src.length, order);
+            assertEquals(2, buffer.position());
+            assertArrayEquals(src, decoded);
+        }
+    }
+
+    @Test
+    public void intsLongsAndFloatsRoundTrip() {
+        Random random = new Random(11);
+        int[] ints = new int[33];
+        long[] longs = new long[17];
+        float[] floats = {0f, -0f, 1f, -1f, Float.NaN, Float.MIN_VALUE, Float.MAX_VALUE, 0.123f};
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = random.nextInt();
+        }
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = random.nextLong();
+        }
+        for (ByteOrder order : ORDERS) {
+            byte[] bytes = new byte[ints.length * 4];
+            PcmCodec.encodeInts(ints, 0, bytes, 0, ints.length, order);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+            for (int value : ints) {
+                assertEquals(value, buffer.getInt());
+            }
+            int[] decodedInts = new int[ints.length];
+            PcmCodec.decodeInts(bytes, 0, decodedInts, 0, ints.length, order);
+            assertArrayEquals(ints, decodedInts);
+
+            bytes = new byte[longs.length * 8];
+            PcmCodec.encodeLongs(longs, 0, bytes, 0, longs.length, order);
+            buffer = ByteBuffer.wrap(bytes).order(order);
+            for (long value : longs) {
+                assertEquals(value, buffer.getLong());
+            }
+            long[] decodedLongs = new long[longs.length];
+            PcmCodec.decodeLongs(bytes, 0, decodedLongs, 0, longs.length, order);
+            assertArrayEquals(longs, decodedLongs);
+
+            // 浮点数按位编码 -0和NaN保持不变
+            bytes = new byte[floats.length * 4];
+            PcmCodec.encodeFloats(floats, 0, bytes, 0, floats.length, order);
+            buffer = ByteBuffer.wrap(bytes).order(order);
+            for (float value : floats) {
+                assertEquals(Float.floatToRawIntBits(value), buffer.getInt());
+            }
+            float[] decodedFloats = new float[floats.length];
+            PcmCodec.decodeFloats(bytes, 0, decodedFloats, 0, floats.length, order);
+            for (int i = 0; i < floats.length; i++) {
+                assertEquals(Float.floatToRawIntBits(floats[i]), Float.floatToRawIntBits(decodedFloats[i]));
+            }
+        }
+    }
+}